@@ -0,0 +1,349 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.bcpg.AEADEncDataPacket;
+import org.bouncycastle.bcpg.SymmetricEncIntegrityPacket;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPSessionKey;
+import org.bouncycastle.openpgp.operator.PGPDataDecryptor;
+import org.bouncycastle.openpgp.operator.PGPDigestCalculator;
+import org.bouncycastle.openpgp.operator.SessionKeyDataDecryptorFactory;
+import org.bouncycastle.util.io.Streams;
+import org.pgpainless.algorithm.AEADAlgorithm;
+import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
+import org.pgpainless.exception.ModificationDetectionException;
+import org.pgpainless.util.AEADChunkCipher;
+import org.pgpainless.util.BufferPool;
+
+/**
+ * {@link InputStream} which decrypts the body of a version 2 Symmetrically Encrypted Integrity Protected Data
+ * packet (AEAD).
+ *
+ * The ciphertext is read chunk by chunk. Up to {@link #DEFAULT_MAX_CHUNKS_IN_FLIGHT} chunks are decrypted
+ * concurrently on the {@link Executor}, if one is provided. Decrypted chunks are kept in a bounded reorder buffer and
+ * are released in order, each one only after its authentication tag was verified.
+ * The end of the stream is only signalled after the final authentication tag was verified, which protects against
+ * truncation of the message.
+ * If the decryption of a chunk did not start by the time it is needed, the reading thread decrypts it itself.
+ * Without an executor, each chunk is decrypted on the reading thread once it is needed.
+ */
+final class AEADDecryptionInputStream extends InputStream {
+
+    static final int DEFAULT_MAX_CHUNKS_IN_FLIGHT = 8;
+
+    private final InputStream source;
+    private final AEADChunkCipher cipher;
+    private final Executor executor;
+    private final int maxChunksInFlight;
+    private final int chunkLength;
+    private final int tagLength;
+    private final BufferPool bufferPool = BufferPool.getInstance();
+    private final ArrayDeque<FutureTask<byte[]>> pending = new ArrayDeque<>();
+
+    // Last octets of the previous read, which might turn out to be the final authentication tag
+    private final byte[] lookAhead;
+    private boolean hasLookAhead = false;
+
+    private long submittedChunks = 0;
+    private boolean sourceExhausted = false;
+    private long releasedChunks = 0;
+    private long totalLength = 0;
+    private boolean finished = false;
+    private boolean closed = false;
+
+    private byte[] current;
+    private int position;
+
+    AEADDecryptionInputStream(@Nonnull InputStream source,
+                              @Nonnull AEADChunkCipher cipher,
+                              @Nullable Executor executor) {
+        this(source, cipher, executor, DEFAULT_MAX_CHUNKS_IN_FLIGHT);
+    }
+
+    AEADDecryptionInputStream(@Nonnull InputStream source,
+                              @Nonnull AEADChunkCipher cipher,
+                              @Nullable Executor executor,
+                              int maxChunksInFlight) {
+        if (maxChunksInFlight < 1) {
+            throw new IllegalArgumentException("Number of chunks in flight must be positive.");
+        }
+        this.source = source;
+        this.cipher = cipher;
+        this.executor = executor;
+        this.maxChunksInFlight = executor == null ? 1 : maxChunksInFlight;
+        this.chunkLength = cipher.getChunkLength();
+        this.tagLength = cipher.getTagLength();
+        this.lookAhead = new byte[tagLength];
+    }
+
+    /**
+     * Read and submit the next chunk of ciphertext.
+     *
+     * @throws IOException if the ciphertext is truncated or cannot be read
+     */
+    private void submitChunk() throws IOException {
+        // Each chunk is followed by at least another tag, so we read one tag further to detect the last chunk
+        int encryptedChunkLength = chunkLength + tagLength;
+        byte[] buffer = bufferPool.acquire(encryptedChunkLength + tagLength);
+        int length = 0;
+        if (hasLookAhead) {
+            System.arraycopy(lookAhead, 0, buffer, 0, tagLength);
+            length = tagLength;
+        }
+        length += Streams.readFully(source, buffer, length, buffer.length - length);
+
+        final int ciphertextLength;
+        if (length == buffer.length) {
+            ciphertextLength = encryptedChunkLength;
+            System.arraycopy(buffer, encryptedChunkLength, lookAhead, 0, tagLength);
+            hasLookAhead = true;
+        } else {
+            // End of the packet, so the last octets are the final authentication tag
+            sourceExhausted = true;
+            hasLookAhead = false;
+            if (length < tagLength) {
+                bufferPool.release(buffer);
+                throw new ModificationDetectionException();
+            }
+            ciphertextLength = length - tagLength;
+            System.arraycopy(buffer, ciphertextLength, lookAhead, 0, tagLength);
+            if (ciphertextLength == 0) {
+                bufferPool.release(buffer);
+                return;
+            }
+        }
+
+        final byte[] ciphertext = buffer;
+        final long index = submittedChunks++;
+        FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws PGPException {
+                try {
+                    return cipher.decryptChunk(index, ciphertext, 0, ciphertextLength);
+                } finally {
+                    bufferPool.release(ciphertext);
+                }
+            }
+        });
+        pending.addLast(task);
+        if (executor != null) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // The task will be run by the reading thread
+            }
+        }
+    }
+
+    /**
+     * Make sure that there is plaintext available in the current chunk.
+     * Return false if the end of the message was reached and the final authentication tag was verified.
+     *
+     * @return true if plaintext is available
+     * @throws IOException if a chunk or the final authentication tag cannot be verified
+     */
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed.");
+        }
+        while (current == null || position == current.length) {
+            current = null;
+            if (finished) {
+                return false;
+            }
+            while (!sourceExhausted && pending.size() < maxChunksInFlight) {
+                submitChunk();
+            }
+            if (pending.isEmpty()) {
+                verifyFinalTag();
+                return false;
+            }
+            current = awaitChunk(pending.removeFirst());
+            position = 0;
+            releasedChunks++;
+            totalLength += current.length;
+        }
+        return true;
+    }
+
+    private byte[] awaitChunk(FutureTask<byte[]> task) throws IOException {
+        // Does nothing if the task already started on the executor
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decrypting chunk.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ModificationDetectionException(
+                    "Authentication tag of chunk " + releasedChunks + " does not match.", cause);
+        }
+    }
+
+    private void verifyFinalTag() throws IOException {
+        try {
+            cipher.verifyFinalTag(releasedChunks, totalLength, lookAhead, 0);
+        } catch (PGPException e) {
+            throw new ModificationDetectionException("Final authentication tag does not match.", e);
+        }
+        finished = true;
+    }
+
+    /**
+     * Decrypt the first chunk of the message and verify its authentication tag.
+     * Since there is no quick check for version 2 packets, this is used to detect a wrong session key before
+     * any data is consumed.
+     *
+     * @throws IOException if the first chunk cannot be verified
+     */
+    void verifyFirstChunk() throws IOException {
+        // fill() does not consume the chunk, so it is still available to the reader
+        fill();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            // Like the MDC of version 1 packets, the final authentication tag is verified when the stream is closed,
+            // even if the reader did not consume all of the plaintext
+            while (fill()) {
+                position = current.length;
+            }
+        } finally {
+            closed = true;
+            for (FutureTask<byte[]> task : pending) {
+                task.cancel(false);
+            }
+            pending.clear();
+            current = null;
+        }
+    }
+
+    /**
+     * {@link SessionKeyDataDecryptorFactory} which decrypts version 2 SEIPD packets using an
+     * {@link AEADDecryptionInputStream}.
+     * Bouncy Castle only hands out the parameters of the encrypted data packet (salt, algorithms, chunk size)
+     * to the decryptor factory, so the stream is created through this factory.
+     */
+    static final class DecryptorFactory implements SessionKeyDataDecryptorFactory {
+
+        private final PGPSessionKey sessionKey;
+        private final Executor executor;
+        private AEADDecryptionInputStream decryptionStream;
+
+        DecryptorFactory(@Nonnull PGPSessionKey sessionKey, @Nullable Executor executor) {
+            this.sessionKey = sessionKey;
+            this.executor = executor;
+        }
+
+        @Override
+        public PGPSessionKey getSessionKey() {
+            return sessionKey;
+        }
+
+        /**
+         * Return the stream created by the last call to {@link PGPDataDecryptor#getInputStream(InputStream)} on a
+         * decryptor of this factory.
+         *
+         * @return decryption stream
+         */
+        @Nullable
+        AEADDecryptionInputStream getDecryptionStream() {
+            return decryptionStream;
+        }
+
+        @Override
+        public PGPDataDecryptor createDataDecryptor(boolean withIntegrityPacket, int encAlgorithm, byte[] key)
+                throws PGPException {
+            throw new PGPException("Only version 2 SEIPD packets are supported.");
+        }
+
+        @Override
+        public PGPDataDecryptor createDataDecryptor(AEADEncDataPacket aeadEncDataPacket, PGPSessionKey sessionKey)
+                throws PGPException {
+            throw new PGPException("Only version 2 SEIPD packets are supported.");
+        }
+
+        @Override
+        public PGPDataDecryptor createDataDecryptor(SymmetricEncIntegrityPacket seipd, PGPSessionKey sessionKey)
+                throws PGPException {
+            SymmetricKeyAlgorithm symmetricKeyAlgorithm = SymmetricKeyAlgorithm.fromId(seipd.getCipherAlgorithm());
+            AEADAlgorithm aeadAlgorithm = AEADAlgorithm.fromId(seipd.getAeadAlgorithm());
+            if (symmetricKeyAlgorithm == null || aeadAlgorithm == null) {
+                throw new PGPException("Unsupported algorithms " + seipd.getCipherAlgorithm() + "/" +
+                        seipd.getAeadAlgorithm() + " in SEIPD packet.");
+            }
+            final AEADChunkCipher cipher = AEADChunkCipher.create(symmetricKeyAlgorithm, aeadAlgorithm,
+                    seipd.getChunkSize(), sessionKey.getKey(), seipd.getSalt());
+            return new PGPDataDecryptor() {
+                @Override
+                public InputStream getInputStream(InputStream in) {
+                    decryptionStream = new AEADDecryptionInputStream(in, cipher, executor);
+                    return decryptionStream;
+                }
+
+                @Override
+                public int getBlockSize() {
+                    return 0;
+                }
+
+                @Override
+                public PGPDigestCalculator getIntegrityCalculator() {
+                    return null;
+                }
+            };
+        }
+    }
+}
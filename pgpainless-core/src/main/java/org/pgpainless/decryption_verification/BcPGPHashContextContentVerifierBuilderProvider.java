@@ -0,0 +1,105 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.crypto.Signer;
+import org.bouncycastle.crypto.io.SignerOutputStream;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.operator.PGPContentVerifier;
+import org.bouncycastle.openpgp.operator.PGPContentVerifierBuilder;
+import org.bouncycastle.openpgp.operator.PGPContentVerifierBuilderProvider;
+import org.bouncycastle.openpgp.operator.bc.BcPGPKeyConverter;
+import org.pgpainless.algorithm.HashAlgorithm;
+import org.pgpainless.algorithm.PublicKeyAlgorithm;
+import org.pgpainless.encryption_signing.BcPGPHashContextContentSignerBuilder;
+
+/**
+ * Implementation of {@link PGPContentVerifierBuilderProvider} using the BC API, which can be used to verify
+ * signatures over hash contexts.
+ * This is the counterpart of {@link BcPGPHashContextContentSignerBuilder}. It comes in handy to verify
+ * signatures over data, which was already processed to calculate the hash context.
+ * The signature trailer is appended to the given hash context during verification.
+ */
+public class BcPGPHashContextContentVerifierBuilderProvider implements PGPContentVerifierBuilderProvider {
+
+    private final BcPGPKeyConverter keyConverter = new BcPGPKeyConverter();
+    private final MessageDigest messageDigest;
+    private final HashAlgorithm hashAlgorithm;
+
+    public BcPGPHashContextContentVerifierBuilderProvider(@Nonnull MessageDigest messageDigest) {
+        this.messageDigest = messageDigest;
+        HashAlgorithm hashAlgorithm = HashAlgorithm.fromName(messageDigest.getAlgorithm());
+        if (hashAlgorithm == null) {
+            throw new IllegalArgumentException("Cannot recognize OpenPGP Hash Algorithm: " + messageDigest.getAlgorithm());
+        }
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
+    /**
+     * Return true, if signatures made by keys of the given algorithm can be verified over hash contexts.
+     *
+     * @param keyAlgorithm public key algorithm id
+     * @return true if supported
+     */
+    public static boolean isSupported(int keyAlgorithm) {
+        switch (keyAlgorithm) {
+            case PublicKeyAlgorithmTags.RSA_GENERAL:
+            case PublicKeyAlgorithmTags.RSA_SIGN:
+            case PublicKeyAlgorithmTags.DSA:
+            case PublicKeyAlgorithmTags.ECDSA:
+            case PublicKeyAlgorithmTags.EDDSA_LEGACY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public PGPContentVerifierBuilder get(int keyAlgorithm, int hashAlgorithm) throws PGPException {
+        if (hashAlgorithm != this.hashAlgorithm.getAlgorithmId()) {
+            throw new PGPException("Hash algorithm mismatch. Hash context uses " + this.hashAlgorithm +
+                    ", but signature uses " + hashAlgorithm);
+        }
+
+        return new PGPContentVerifierBuilder() {
+            @Override
+            public PGPContentVerifier build(PGPPublicKey publicKey) throws PGPException {
+                AsymmetricKeyParameter pubKeyParam = keyConverter.getPublicKey(publicKey);
+                final Signer signer = BcPGPHashContextContentSignerBuilder.createSigner(
+                        PublicKeyAlgorithm.requireFromId(keyAlgorithm), messageDigest, pubKeyParam);
+                signer.init(false, pubKeyParam);
+
+                return new PGPContentVerifier() {
+                    public int getHashAlgorithm() {
+                        return hashAlgorithm;
+                    }
+
+                    public int getKeyAlgorithm() {
+                        return keyAlgorithm;
+                    }
+
+                    public long getKeyID() {
+                        return publicKey.getKeyID();
+                    }
+
+                    public boolean verify(byte[] expected) {
+                        return signer.verifySignature(expected);
+                    }
+
+                    public OutputStream getOutputStream() {
+                        return new SignerOutputStream(signer);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,176 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.bcpg.AEADEncDataPacket;
+import org.bouncycastle.bcpg.S2K;
+import org.bouncycastle.bcpg.SymmetricEncIntegrityPacket;
+import org.bouncycastle.bcpg.SymmetricKeyEncSessionPacket;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPSessionKey;
+import org.bouncycastle.openpgp.operator.PBEDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.PGPDataDecryptor;
+
+/**
+ * {@link PBEDataDecryptorFactory} which memoizes the keys derived from its passphrase.
+ * SKESKs which share the same S2K parameters (type, hash algorithm, salt, iteration count or Argon2 parameters)
+ * and key size only cause a single key derivation.
+ * Concurrent requests for the same derivation block until the first one is computed.
+ * Since BC calls {@link #makeKeyFromPassPhrase(int, S2K)} both when opening the data stream and when extracting
+ * the session key, this also avoids deriving the key twice for the SKESK that was used for decryption.
+ */
+final class CachingPBEDataDecryptorFactory extends PBEDataDecryptorFactory {
+
+    private final PBEDataDecryptorFactory delegate;
+    private final ConcurrentMap<Derivation, FutureTask<byte[]>> derivedKeys = new ConcurrentHashMap<>();
+
+    CachingPBEDataDecryptorFactory(@Nonnull PBEDataDecryptorFactory delegate) {
+        super(null, null);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public byte[] makeKeyFromPassPhrase(final int keyAlgorithm, final S2K s2k) throws PGPException {
+        Derivation derivation = new Derivation(keyAlgorithm, s2k);
+        FutureTask<byte[]> task = derivedKeys.get(derivation);
+        if (task == null) {
+            FutureTask<byte[]> newTask = new FutureTask<>(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws PGPException {
+                    return delegate.makeKeyFromPassPhrase(keyAlgorithm, s2k);
+                }
+            });
+            task = derivedKeys.putIfAbsent(derivation, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+
+        try {
+            // Hand out copies, since callers might clear the key
+            return task.get().clone();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PGPException("Interrupted while waiting for key derivation.", e);
+        } catch (ExecutionException e) {
+            // Do not cache failed derivations
+            derivedKeys.remove(derivation, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof PGPException) {
+                throw (PGPException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new PGPException("Key derivation failed.", (Exception) cause);
+        }
+    }
+
+    /**
+     * Return the number of distinct key derivations performed (or in progress) by this factory.
+     *
+     * @return number of derivations
+     */
+    int getNumberOfDerivations() {
+        return derivedKeys.size();
+    }
+
+    @Override
+    public byte[] recoverSessionData(int keyAlgorithm, byte[] key, byte[] seckKeyData) throws PGPException {
+        return delegate.recoverSessionData(keyAlgorithm, key, seckKeyData);
+    }
+
+    @Override
+    public byte[] recoverAEADEncryptedSessionData(SymmetricKeyEncSessionPacket keyData, byte[] ikm) throws PGPException {
+        return delegate.recoverAEADEncryptedSessionData(keyData, ikm);
+    }
+
+    @Override
+    public PGPDataDecryptor createDataDecryptor(boolean withIntegrityPacket, int encAlgorithm, byte[] key)
+            throws PGPException {
+        return delegate.createDataDecryptor(withIntegrityPacket, encAlgorithm, key);
+    }
+
+    @Override
+    public PGPDataDecryptor createDataDecryptor(AEADEncDataPacket aeadEncDataPacket, PGPSessionKey sessionKey)
+            throws PGPException {
+        return delegate.createDataDecryptor(aeadEncDataPacket, sessionKey);
+    }
+
+    @Override
+    public PGPDataDecryptor createDataDecryptor(SymmetricEncIntegrityPacket seipd, PGPSessionKey sessionKey)
+            throws PGPException {
+        return delegate.createDataDecryptor(seipd, sessionKey);
+    }
+
+    /**
+     * Parameters which uniquely identify the output of a key derivation for a fixed passphrase.
+     */
+    private static final class Derivation {
+        private final int keyAlgorithm;
+        private final int type;
+        private final int hashAlgorithm;
+        private final byte[] salt;
+        private final long iterationCount;
+        private final int passes;
+        private final int parallelism;
+        private final int memorySizeExponent;
+
+        private Derivation(int keyAlgorithm, S2K s2k) {
+            this.keyAlgorithm = keyAlgorithm;
+            this.type = s2k.getType();
+            this.hashAlgorithm = s2k.getHashAlgorithm();
+            this.salt = s2k.getIV();
+            this.iterationCount = s2k.getIterationCount();
+            this.passes = s2k.getPasses();
+            this.parallelism = s2k.getParallelism();
+            this.memorySizeExponent = s2k.getMemorySizeExponent();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Derivation)) {
+                return false;
+            }
+            Derivation other = (Derivation) obj;
+            return keyAlgorithm == other.keyAlgorithm &&
+                    type == other.type &&
+                    hashAlgorithm == other.hashAlgorithm &&
+                    iterationCount == other.iterationCount &&
+                    passes == other.passes &&
+                    parallelism == other.parallelism &&
+                    memorySizeExponent == other.memorySizeExponent &&
+                    Arrays.equals(salt, other.salt);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = keyAlgorithm;
+            result = 31 * result + type;
+            result = 31 * result + hashAlgorithm;
+            result = 31 * result + (int) (iterationCount ^ (iterationCount >>> 32));
+            result = 31 * result + passes;
+            result = 31 * result + parallelism;
+            result = 31 * result + memorySizeExponent;
+            result = 31 * result + Arrays.hashCode(salt);
+            return result;
+        }
+    }
+}
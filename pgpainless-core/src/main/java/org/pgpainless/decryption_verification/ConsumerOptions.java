@@ -6,17 +6,22 @@ package org.pgpainless.decryption_verification;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPPublicKeyRing;
 import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
 import org.bouncycastle.openpgp.PGPSecretKeyRing;
@@ -25,8 +30,10 @@ import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.operator.PublicKeyDataDecryptorFactory;
 import org.pgpainless.decryption_verification.cleartext_signatures.InMemoryMultiPassStrategy;
 import org.pgpainless.decryption_verification.cleartext_signatures.MultiPassStrategy;
+import org.pgpainless.key.OpenPgpFingerprint;
 import org.pgpainless.key.SubkeyIdentifier;
 import org.pgpainless.key.protection.SecretKeyRingProtector;
+import org.pgpainless.key.protection.UnlockedKeyCache;
 import org.pgpainless.signature.SignatureUtils;
 import org.pgpainless.util.Passphrase;
 import org.pgpainless.util.SessionKey;
@@ -52,6 +59,12 @@ public class ConsumerOptions {
             new HashMap<>();
 
     private final Map<PGPSecretKeyRing, SecretKeyRingProtector> decryptionKeys = new HashMap<>();
+    private DecryptionKeyIndex decryptionKeyIndex = null;
+    private UnlockedKeyCache unlockedKeyCache = null;
+    private Executor decryptionTrialExecutor = null;
+    private Executor pipelineExecutor = null;
+    private Executor chunkDecryptionExecutor = null;
+    private boolean sharedDigests = false;
     private final Set<Passphrase> decryptionPassphrases = new HashSet<>();
     private MissingKeyPassphraseStrategy missingKeyPassphraseStrategy = MissingKeyPassphraseStrategy.INTERACTIVE;
 
@@ -129,6 +142,19 @@ public class ConsumerOptions {
         return this;
     }
 
+    /**
+     * Add a {@link CertificateSource} for signature verification.
+     * The source is referenced, not copied, so a {@link CertificateSource#readOnly(Iterable) read-only}
+     * source of many certificates can be indexed once and then be shared between many {@link ConsumerOptions}.
+     *
+     * @param certificateSource source of certificates for signature verification
+     * @return options
+     */
+    public ConsumerOptions addVerificationCerts(@Nonnull CertificateSource certificateSource) {
+        this.certificates.addCertificateSource(certificateSource);
+        return this;
+    }
+
     /**
      * Add some detached signatures from the given {@link InputStream} for verification.
      *
@@ -244,6 +270,147 @@ public class ConsumerOptions {
         return this;
     }
 
+    /**
+     * Use a pre-evaluated {@link DecryptionKeyIndex} for message decryption.
+     * This is an alternative to {@link #addDecryptionKeys(PGPSecretKeyRingCollection, SecretKeyRingProtector)},
+     * which avoids evaluating the secret key rings anew for every message.
+     * The index is consulted after the explicitly added decryption keys.
+     *
+     * @param index decryption key index
+     * @return options
+     */
+    public ConsumerOptions setDecryptionKeyIndex(@Nullable DecryptionKeyIndex index) {
+        this.decryptionKeyIndex = index;
+        return this;
+    }
+
+    /**
+     * Return the {@link DecryptionKeyIndex} or null, if no index was set.
+     *
+     * @return decryption key index
+     */
+    public @Nullable DecryptionKeyIndex getDecryptionKeyIndex() {
+        return decryptionKeyIndex;
+    }
+
+    /**
+     * Set an {@link UnlockedKeyCache} which is used to cache unlocked decryption keys.
+     * This prevents expensive S2K derivation if the same key is used to decrypt many messages.
+     *
+     * @param cache cache for unlocked secret keys or null
+     * @return options
+     */
+    public ConsumerOptions setUnlockedKeyCache(@Nullable UnlockedKeyCache cache) {
+        this.unlockedKeyCache = cache;
+        return this;
+    }
+
+    /**
+     * Return the {@link UnlockedKeyCache} or null, if no cache was set.
+     *
+     * @return unlocked key cache
+     */
+    public @Nullable UnlockedKeyCache getUnlockedKeyCache() {
+        return unlockedKeyCache;
+    }
+
+    /**
+     * Set an {@link Executor} on which trial decryptions are run concurrently.
+     * For PKESKs with anonymous recipient (hidden recipients), each candidate decryption key needs to be tried on
+     * each anonymous PKESK. By default, these expensive asymmetric operations are performed one after another on
+     * the calling thread. If an executor is set, they are run on the executor instead and all remaining trials
+     * are cancelled once the first trial succeeded.
+     *
+     * @param executor executor for trial decryptions or null
+     * @return options
+     */
+    public ConsumerOptions setDecryptionTrialExecutor(@Nullable Executor executor) {
+        this.decryptionTrialExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Return the {@link Executor} for trial decryptions or null, if no executor was set.
+     *
+     * @return executor
+     */
+    public @Nullable Executor getDecryptionTrialExecutor() {
+        return decryptionTrialExecutor;
+    }
+
+    /**
+     * Set an {@link Executor} on which decryption and decompression of the message are run.
+     * By default, decryption, decompression and signature verification are all performed on the calling thread.
+     * If an executor is set, decrypted and decompressed data is read ahead on the executor and handed to the next
+     * processing stage in chunks, so that processing of large messages can make use of multiple cores.
+     * Each encryption or compression layer occupies one thread of the executor while the layer is being read.
+     * Reading ahead is bounded, so the executor stalls if the consumer of the message does not keep up.
+     * The {@link DecryptionStream} should always be closed. If it is abandoned, the stalled executor threads
+     * are only released after a timeout of 30 seconds.
+     *
+     * @param executor executor for decryption and decompression or null
+     * @return options
+     */
+    public ConsumerOptions setPipelineExecutor(@Nullable Executor executor) {
+        this.pipelineExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Return the {@link Executor} for decryption and decompression or null, if no executor was set.
+     *
+     * @return executor
+     */
+    public @Nullable Executor getPipelineExecutor() {
+        return pipelineExecutor;
+    }
+
+    /**
+     * Set an {@link Executor} on which the chunks of AEAD encrypted messages (version 2 SEIPD packets) are decrypted.
+     * By default, each chunk is decrypted on the reading thread once it is needed. If an executor is set, multiple
+     * chunks are decrypted concurrently instead. Decrypted chunks are still released in order, each only after its
+     * authentication tag was verified. The number of chunks decrypted ahead of the reader is bounded.
+     *
+     * @param executor executor for chunk decryption or null
+     * @return options
+     */
+    public ConsumerOptions setChunkDecryptionExecutor(@Nullable Executor executor) {
+        this.chunkDecryptionExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Return the {@link Executor} for chunk decryption or null, if no executor was set.
+     *
+     * @return executor
+     */
+    public @Nullable Executor getChunkDecryptionExecutor() {
+        return chunkDecryptionExecutor;
+    }
+
+    /**
+     * If set to true, signatures which use the same hash algorithm and signature type share a single digest
+     * of the signed data, which is copied once the data is processed in order to append the signature trailers.
+     * This way, the data is only hashed once per hash algorithm and signature type, instead of once per signature.
+     * Signatures made by keys which do not support verification of hash contexts are still calculated separately.
+     *
+     * @param sharedDigests whether to share digests between signatures
+     * @return options
+     */
+    public ConsumerOptions setSharedDigests(boolean sharedDigests) {
+        this.sharedDigests = sharedDigests;
+        return this;
+    }
+
+    /**
+     * Return true, if signatures share digests of the signed data.
+     *
+     * @return shared digests
+     */
+    public boolean isSharedDigests() {
+        return sharedDigests;
+    }
+
     /**
      * Add a passphrase for message decryption.
      * This passphrase will be used to try to decrypt messages which were symmetrically encrypted for a passphrase.
@@ -283,7 +450,8 @@ public class ConsumerOptions {
     }
 
     /**
-     * Return the set of available decryption keys.
+     * Return the set of explicitly added decryption keys.
+     * Keys of the {@link DecryptionKeyIndex} are not included.
      *
      * @return decryption keys
      */
@@ -337,7 +505,11 @@ public class ConsumerOptions {
      * @return protector for that particular secret key
      */
     public @Nonnull SecretKeyRingProtector getSecretKeyProtector(PGPSecretKeyRing decryptionKeyRing) {
-        return decryptionKeys.get(decryptionKeyRing);
+        SecretKeyRingProtector protector = decryptionKeys.get(decryptionKeyRing);
+        if (protector == null && decryptionKeyIndex != null) {
+            protector = decryptionKeyIndex.getSecretKeyProtector(decryptionKeyRing);
+        }
+        return protector;
     }
 
     /**
@@ -464,10 +636,37 @@ public class ConsumerOptions {
     /**
      * Source for OpenPGP certificates.
      * When verifying signatures on a message, this object holds available signer certificates.
+     * Certificates are indexed by the key-ids and fingerprints of all their (sub-)keys, so lookups are
+     * performed in constant time, regardless of the number of available certificates.
+     *
+     * A read-only {@link CertificateSource} created via {@link #readOnly(Iterable)} can be built once and then be
+     * shared safely between multiple {@link ConsumerOptions} instances (see
+     * {@link ConsumerOptions#addVerificationCerts(CertificateSource)}).
      */
     public static class CertificateSource {
 
-        private Set<PGPPublicKeyRing> explicitCertificates = new HashSet<>();
+        private final Set<PGPPublicKeyRing> explicitCertificates = new LinkedHashSet<>();
+        private final Map<Long, PGPPublicKeyRing> keyIdIndex = new HashMap<>();
+        private final Map<OpenPgpFingerprint, PGPPublicKeyRing> fingerprintIndex = new HashMap<>();
+        private final List<CertificateSource> sharedSources = new ArrayList<>();
+        private boolean readOnly = false;
+
+        /**
+         * Create a read-only {@link CertificateSource} which indexes the given certificates.
+         * The returned source cannot be modified afterwards and can therefore be shared between
+         * multiple {@link ConsumerOptions} instances and threads.
+         *
+         * @param certificates certificates
+         * @return read-only certificate source
+         */
+        public static CertificateSource readOnly(@Nonnull Iterable<PGPPublicKeyRing> certificates) {
+            CertificateSource source = new CertificateSource();
+            for (PGPPublicKeyRing certificate : certificates) {
+                source.addCertificate(certificate);
+            }
+            source.readOnly = true;
+            return source;
+        }
 
         /**
          * Add a certificate as verification cert explicitly.
@@ -475,29 +674,119 @@ public class ConsumerOptions {
          * @param certificate certificate
          */
         public void addCertificate(PGPPublicKeyRing certificate) {
-            this.explicitCertificates.add(certificate);
+            throwIfReadOnly();
+            if (!this.explicitCertificates.add(certificate)) {
+                return;
+            }
+
+            Iterator<PGPPublicKey> publicKeys = certificate.getPublicKeys();
+            while (publicKeys.hasNext()) {
+                PGPPublicKey publicKey = publicKeys.next();
+                // In case of key-id collisions, the first added certificate takes precedence
+                if (!keyIdIndex.containsKey(publicKey.getKeyID())) {
+                    keyIdIndex.put(publicKey.getKeyID(), certificate);
+                }
+                if (publicKey.getVersion() < 4) {
+                    // there are no fingerprint implementations for legacy keys
+                    continue;
+                }
+                OpenPgpFingerprint fingerprint = OpenPgpFingerprint.of(publicKey);
+                if (!fingerprintIndex.containsKey(fingerprint)) {
+                    fingerprintIndex.put(fingerprint, certificate);
+                }
+            }
+        }
+
+        /**
+         * Add another {@link CertificateSource}, whose certificates will be consulted if no matching certificate
+         * was found in this source.
+         * The added source is referenced, not copied, so it should not be modified afterwards.
+         * Use {@link #readOnly(Iterable)} to create a source that is safe to share.
+         *
+         * @param certificateSource certificate source
+         */
+        public void addCertificateSource(@Nonnull CertificateSource certificateSource) {
+            throwIfReadOnly();
+            if (certificateSource == this) {
+                throw new IllegalArgumentException("Cannot add CertificateSource to itself.");
+            }
+            this.sharedSources.add(certificateSource);
+        }
+
+        /**
+         * Return true, if this {@link CertificateSource} cannot be modified.
+         *
+         * @return true if read-only
+         */
+        public boolean isReadOnly() {
+            return readOnly;
+        }
+
+        private void throwIfReadOnly() {
+            if (readOnly) {
+                throw new IllegalStateException("CertificateSource is read-only.");
+            }
         }
 
         /**
          * Return the set of explicitly set verification certificates.
+         * This includes the certificates of any added {@link CertificateSource CertificateSources}.
+         *
          * @return explicitly set verification certs
          */
         public Set<PGPPublicKeyRing> getExplicitCertificates() {
-            return Collections.unmodifiableSet(explicitCertificates);
+            if (sharedSources.isEmpty()) {
+                return Collections.unmodifiableSet(explicitCertificates);
+            }
+
+            Set<PGPPublicKeyRing> certificates = new LinkedHashSet<>(explicitCertificates);
+            for (CertificateSource source : sharedSources) {
+                certificates.addAll(source.getExplicitCertificates());
+            }
+            return Collections.unmodifiableSet(certificates);
         }
 
         /**
          * Return a certificate which contains a subkey with the given keyId.
          * This method first checks all explicitly set verification certs and if no cert is found it consults
-         * the certificate stores.
+         * the added certificate sources.
          *
          * @param keyId key id
          * @return certificate
          */
         public PGPPublicKeyRing getCertificate(long keyId) {
+            PGPPublicKeyRing cert = keyIdIndex.get(keyId);
+            if (cert != null) {
+                return cert;
+            }
+
+            for (CertificateSource source : sharedSources) {
+                cert = source.getCertificate(keyId);
+                if (cert != null) {
+                    return cert;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Return a certificate which contains a (sub-)key with the given fingerprint.
+         * This method first checks all explicitly set verification certs and if no cert is found it consults
+         * the added certificate sources.
+         *
+         * @param fingerprint fingerprint of the primary key or a subkey
+         * @return certificate
+         */
+        public PGPPublicKeyRing getCertificate(@Nonnull OpenPgpFingerprint fingerprint) {
+            PGPPublicKeyRing cert = fingerprintIndex.get(fingerprint);
+            if (cert != null) {
+                return cert;
+            }
 
-            for (PGPPublicKeyRing cert : explicitCertificates) {
-                if (cert.getPublicKey(keyId) != null) {
+            for (CertificateSource source : sharedSources) {
+                cert = source.getCertificate(fingerprint);
+                if (cert != null) {
                     return cert;
                 }
             }
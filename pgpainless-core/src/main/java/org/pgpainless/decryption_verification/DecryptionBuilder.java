@@ -6,9 +6,14 @@ package org.pgpainless.decryption_verification;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Executor;
 import javax.annotation.Nonnull;
 
 import org.bouncycastle.openpgp.PGPException;
+import org.pgpainless.util.ByteBufferInputStream;
+import org.pgpainless.util.ChannelInputStream;
 
 /**
  * Builder class that takes an {@link InputStream} of ciphertext (or plaintext signed data)
@@ -22,6 +27,21 @@ public class DecryptionBuilder implements DecryptionBuilderInterface {
         return new DecryptWithImpl(inputStream);
     }
 
+    @Override
+    public DecryptWith onChannel(@Nonnull ReadableByteChannel channel) {
+        return new DecryptWithImpl(new ChannelInputStream(channel));
+    }
+
+    @Override
+    public DecryptWith onByteBuffer(@Nonnull ByteBuffer buffer) {
+        return new DecryptWithImpl(new ByteBufferInputStream(buffer));
+    }
+
+    @Override
+    public PushDecryptWith onPushedData(@Nonnull PushDecryptor.Callback callback) {
+        return new PushDecryptWithImpl(callback);
+    }
+
     static class DecryptWithImpl implements DecryptWith {
 
         private final InputStream inputStream;
@@ -39,4 +59,25 @@ public class DecryptionBuilder implements DecryptionBuilderInterface {
             return OpenPgpMessageInputStream.create(inputStream, consumerOptions);
         }
     }
+
+    static class PushDecryptWithImpl implements PushDecryptWith {
+
+        private final PushDecryptor.Callback callback;
+
+        PushDecryptWithImpl(PushDecryptor.Callback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public PushDecryptor withOptions(ConsumerOptions consumerOptions, Executor executor) {
+            if (consumerOptions == null) {
+                throw new IllegalArgumentException("Consumer options cannot be null.");
+            }
+            if (executor == null) {
+                throw new IllegalArgumentException("Executor cannot be null.");
+            }
+
+            return PushDecryptor.create(consumerOptions, executor, callback);
+        }
+    }
 }
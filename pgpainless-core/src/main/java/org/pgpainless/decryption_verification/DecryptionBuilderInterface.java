@@ -6,6 +6,9 @@ package org.pgpainless.decryption_verification;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Executor;
 import javax.annotation.Nonnull;
 
 import org.bouncycastle.openpgp.PGPException;
@@ -20,6 +23,35 @@ public interface DecryptionBuilderInterface {
      */
     DecryptWith onInputStream(@Nonnull InputStream inputStream);
 
+    /**
+     * Create a {@link DecryptionStream} on a (blocking) {@link ReadableByteChannel} which contains the encrypted
+     * and/or signed data.
+     * The channel is read in large chunks through a direct buffer.
+     *
+     * @param channel encrypted and/or signed data
+     * @return api handle
+     */
+    DecryptWith onChannel(@Nonnull ReadableByteChannel channel);
+
+    /**
+     * Create a {@link DecryptionStream} on the remaining bytes of a {@link ByteBuffer}, which contains the encrypted
+     * and/or signed data.
+     * The buffer can be direct, e.g. a memory mapped file. Reading the stream advances the position of the buffer.
+     *
+     * @param buffer encrypted and/or signed data
+     * @return api handle
+     */
+    DecryptWith onByteBuffer(@Nonnull ByteBuffer buffer);
+
+    /**
+     * Create a {@link PushDecryptor}, which is fed with chunks of the encrypted and/or signed data as they arrive,
+     * instead of reading them from an {@link InputStream}.
+     *
+     * @param callback callback for plaintext and results
+     * @return api handle
+     */
+    PushDecryptWith onPushedData(@Nonnull PushDecryptor.Callback callback);
+
     interface DecryptWith {
 
         /**
@@ -33,4 +65,17 @@ public interface DecryptionBuilderInterface {
         DecryptionStream withOptions(ConsumerOptions consumerOptions) throws PGPException, IOException;
 
     }
+
+    interface PushDecryptWith {
+
+        /**
+         * Add options for decryption / signature verification, such as keys, passphrases etc.
+         *
+         * @param consumerOptions consumer options
+         * @param executor executor on which the message is processed
+         * @return push decryptor
+         */
+        PushDecryptor withOptions(ConsumerOptions consumerOptions, Executor executor);
+
+    }
 }
@@ -0,0 +1,298 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.pgpainless.PGPainless;
+import org.pgpainless.key.SubkeyIdentifier;
+import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+import org.pgpainless.policy.Policy;
+
+/**
+ * Reusable, thread-safe index of secret keys for message decryption.
+ * Instead of evaluating each secret key ring (and thereby verifying all its self-signatures) for every PKESK of
+ * every message, this index evaluates all key rings once and maps the key-ids and algorithms of their
+ * decryption-capable subkeys to the respective {@link Entry}.
+ * The evaluation is repeated after the configured re-validation interval has passed, such that expiration
+ * of keys is eventually picked up.
+ *
+ * An index can be shared between many {@link ConsumerOptions} (see
+ * {@link ConsumerOptions#setDecryptionKeyIndex(DecryptionKeyIndex)}) and used from multiple threads concurrently.
+ */
+public class DecryptionKeyIndex {
+
+    /**
+     * Default re-validation interval of 5 minutes.
+     */
+    public static final long DEFAULT_REVALIDATION_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    private final Policy policy;
+    private final long revalidationIntervalMillis;
+
+    // guarded by this
+    private final Map<PGPSecretKeyRing, SecretKeyRingProtector> keys = new LinkedHashMap<>();
+    private volatile Snapshot snapshot = null;
+
+    /**
+     * Create a {@link DecryptionKeyIndex} which uses the global PGPainless {@link Policy} and the
+     * {@link #DEFAULT_REVALIDATION_INTERVAL_MILLIS default re-validation interval}.
+     */
+    public DecryptionKeyIndex() {
+        this(PGPainless.getPolicy(), DEFAULT_REVALIDATION_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Create a {@link DecryptionKeyIndex}.
+     *
+     * @param policy policy used to evaluate the secret key rings
+     * @param revalidationIntervalMillis interval in milliseconds after which the key rings are evaluated again
+     */
+    public DecryptionKeyIndex(@Nonnull Policy policy, long revalidationIntervalMillis) {
+        if (revalidationIntervalMillis < 0) {
+            throw new IllegalArgumentException("Re-validation interval cannot be negative.");
+        }
+        this.policy = policy;
+        this.revalidationIntervalMillis = revalidationIntervalMillis;
+    }
+
+    /**
+     * Add a key for message decryption. If the key is encrypted, the {@link SecretKeyRingProtector}
+     * is used to decrypt it when needed.
+     *
+     * @param key key
+     * @param keyRingProtector protector for the secret key
+     * @return index
+     */
+    public synchronized DecryptionKeyIndex addDecryptionKey(@Nonnull PGPSecretKeyRing key,
+                                                            @Nonnull SecretKeyRingProtector keyRingProtector) {
+        keys.put(key, keyRingProtector);
+        snapshot = null;
+        return this;
+    }
+
+    /**
+     * Add the keys in the provided key collection for message decryption.
+     *
+     * @param keys key collection
+     * @param keyRingProtector protector for encrypted secret keys
+     * @return index
+     */
+    public synchronized DecryptionKeyIndex addDecryptionKeys(@Nonnull PGPSecretKeyRingCollection keys,
+                                                             @Nonnull SecretKeyRingProtector keyRingProtector) {
+        for (PGPSecretKeyRing key : keys) {
+            addDecryptionKey(key, keyRingProtector);
+        }
+        return this;
+    }
+
+    /**
+     * Remove a key from the index.
+     *
+     * @param key key
+     * @return index
+     */
+    public synchronized DecryptionKeyIndex removeDecryptionKey(@Nonnull PGPSecretKeyRing key) {
+        if (keys.remove(key) != null) {
+            snapshot = null;
+        }
+        return this;
+    }
+
+    /**
+     * Discard the current evaluation of the key rings.
+     * The key rings will be evaluated again on the next lookup.
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * Return the set of secret key rings in this index.
+     *
+     * @return decryption keys
+     */
+    public synchronized @Nonnull Set<PGPSecretKeyRing> getDecryptionKeys() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(keys.keySet()));
+    }
+
+    /**
+     * Return the {@link SecretKeyRingProtector} for the given {@link PGPSecretKeyRing}.
+     *
+     * @param key secret key ring
+     * @return protector or null, if the key ring is not part of this index
+     */
+    public synchronized @Nullable SecretKeyRingProtector getSecretKeyProtector(@Nonnull PGPSecretKeyRing key) {
+        return keys.get(key);
+    }
+
+    /**
+     * Return the entry of the decryption subkey with the given key-id.
+     * If no such subkey exists, or if the subkey is not capable of decryption, return null.
+     *
+     * @param keyId key-id of the decryption subkey
+     * @return entry or null
+     */
+    public @Nullable Entry getDecryptionKey(long keyId) {
+        return currentSnapshot().byKeyId.get(keyId);
+    }
+
+    /**
+     * Return all entries of decryption subkeys using the given public key algorithm, whose secret key
+     * material is available.
+     * This is used to find decryption key candidates for PKESKs with anonymous recipient.
+     *
+     * @param algorithm public key algorithm id
+     * @return entries
+     */
+    public @Nonnull List<Entry> getDecryptionKeys(int algorithm) {
+        List<Entry> entries = currentSnapshot().byAlgorithm.get(algorithm);
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        return entries;
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current != null && !current.isOutdated(now, revalidationIntervalMillis)) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.isOutdated(now, revalidationIntervalMillis)) {
+                current = evaluate(new Date(now));
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    // needs to be called while holding the lock
+    private Snapshot evaluate(Date referenceTime) {
+        Map<Long, Entry> byKeyId = new HashMap<>();
+        Map<Integer, List<Entry>> byAlgorithm = new HashMap<>();
+
+        for (Map.Entry<PGPSecretKeyRing, SecretKeyRingProtector> key : keys.entrySet()) {
+            PGPSecretKeyRing secretKeys = key.getKey();
+            KeyRingInfo info = new KeyRingInfo(secretKeys, policy, referenceTime);
+            for (PGPPublicKey publicKey : info.getDecryptionSubkeys()) {
+                PGPSecretKey secretKey = secretKeys.getSecretKey(publicKey.getKeyID());
+                if (secretKey == null) {
+                    continue;
+                }
+                Entry entry = new Entry(secretKeys, secretKey, key.getValue());
+                // In case of key-id collisions, the first added key takes precedence
+                if (!byKeyId.containsKey(publicKey.getKeyID())) {
+                    byKeyId.put(publicKey.getKeyID(), entry);
+                }
+
+                if (!info.isSecretKeyAvailable(publicKey.getKeyID())) {
+                    continue;
+                }
+                List<Entry> entries = byAlgorithm.get(publicKey.getAlgorithm());
+                if (entries == null) {
+                    entries = new ArrayList<>();
+                    byAlgorithm.put(publicKey.getAlgorithm(), entries);
+                }
+                entries.add(entry);
+            }
+        }
+
+        for (Map.Entry<Integer, List<Entry>> entries : byAlgorithm.entrySet()) {
+            entries.setValue(Collections.unmodifiableList(entries.getValue()));
+        }
+        return new Snapshot(referenceTime.getTime(), byKeyId, byAlgorithm);
+    }
+
+    /**
+     * Immutable evaluation result of all key rings at a certain point in time.
+     */
+    private static final class Snapshot {
+        private final long evaluationTime;
+        private final Map<Long, Entry> byKeyId;
+        private final Map<Integer, List<Entry>> byAlgorithm;
+
+        private Snapshot(long evaluationTime, Map<Long, Entry> byKeyId, Map<Integer, List<Entry>> byAlgorithm) {
+            this.evaluationTime = evaluationTime;
+            this.byKeyId = byKeyId;
+            this.byAlgorithm = byAlgorithm;
+        }
+
+        private boolean isOutdated(long now, long revalidationIntervalMillis) {
+            return now - evaluationTime >= revalidationIntervalMillis;
+        }
+    }
+
+    /**
+     * Pre-validated decryption subkey along with its secret key ring and protector.
+     */
+    public static final class Entry {
+        private final PGPSecretKeyRing secretKeys;
+        private final PGPSecretKey secretKey;
+        private final SecretKeyRingProtector protector;
+        private final SubkeyIdentifier subkeyIdentifier;
+
+        private Entry(PGPSecretKeyRing secretKeys, PGPSecretKey secretKey, SecretKeyRingProtector protector) {
+            this.secretKeys = secretKeys;
+            this.secretKey = secretKey;
+            this.protector = protector;
+            this.subkeyIdentifier = new SubkeyIdentifier(secretKeys, secretKey.getKeyID());
+        }
+
+        /**
+         * Return the secret key ring containing the decryption subkey.
+         *
+         * @return secret key ring
+         */
+        public PGPSecretKeyRing getSecretKeyRing() {
+            return secretKeys;
+        }
+
+        /**
+         * Return the decryption subkey.
+         *
+         * @return secret subkey
+         */
+        public PGPSecretKey getSecretKey() {
+            return secretKey;
+        }
+
+        /**
+         * Return the protector for the secret key ring.
+         *
+         * @return protector
+         */
+        public SecretKeyRingProtector getProtector() {
+            return protector;
+        }
+
+        /**
+         * Return the identifier of the decryption subkey.
+         *
+         * @return subkey identifier
+         */
+        public SubkeyIdentifier getSubkeyIdentifier() {
+            return subkeyIdentifier;
+        }
+    }
+}
@@ -44,6 +44,7 @@ import org.pgpainless.algorithm.PublicKeyAlgorithm;
 import org.pgpainless.algorithm.SignatureType;
 import org.pgpainless.algorithm.StreamEncoding;
 import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
+import org.pgpainless.util.BufferPool;
 
 public class OpenPgpInputStream extends BufferedInputStream {
 
@@ -53,7 +54,8 @@ public class OpenPgpInputStream extends BufferedInputStream {
     // Buffer beginning bytes of the data
     public static final int MAX_BUFFER_SIZE = 8192 * 2;
 
-    private final byte[] buffer;
+    private final BufferPool bufferPool;
+    private byte[] buffer;
     private final int bufferLen;
 
     private boolean containsArmorHeader;
@@ -61,20 +63,52 @@ public class OpenPgpInputStream extends BufferedInputStream {
     private boolean isLikelyOpenPgpMessage;
 
     public OpenPgpInputStream(InputStream in, boolean check) throws IOException {
-        super(in, MAX_BUFFER_SIZE);
+        this(in, check, BufferPool.getInstance());
+    }
+
+    public OpenPgpInputStream(InputStream in) throws IOException {
+        this(in, true);
+    }
+
+    /**
+     * Create an {@link OpenPgpInputStream} which takes its buffers from the given {@link BufferPool}.
+     * The buffers are returned to the pool when the stream is closed.
+     *
+     * @param in underlying input stream
+     * @param check whether to inspect the beginning of the data
+     * @param bufferPool buffer pool
+     * @throws IOException in case of an IO error
+     */
+    public OpenPgpInputStream(InputStream in, boolean check, BufferPool bufferPool) throws IOException {
+        // Do not let BufferedInputStream allocate a buffer, since we take ours from the pool
+        super(in, 1);
+        this.bufferPool = bufferPool;
+        this.buf = bufferPool.acquire(MAX_BUFFER_SIZE);
 
         mark(MAX_BUFFER_SIZE);
-        buffer = new byte[MAX_BUFFER_SIZE];
-        bufferLen = read(buffer);
-        reset();
+        buffer = bufferPool.acquire(MAX_BUFFER_SIZE);
+        try {
+            bufferLen = read(buffer);
+            reset();
 
-        if (check) {
-            inspectBuffer();
+            if (check) {
+                inspectBuffer();
+            }
+        } finally {
+            // The copy of the beginning of the data is only required for inspection
+            bufferPool.release(buffer);
+            buffer = null;
         }
     }
 
-    public OpenPgpInputStream(InputStream in) throws IOException {
-        this(in, true);
+    @Override
+    public void close() throws IOException {
+        byte[] pooled = buf;
+        super.close();
+        // BufferedInputStream discards its buffer on close, so it is safe to recycle it now
+        if (pooled != null && buf == null) {
+            bufferPool.release(pooled);
+        }
     }
 
     private void inspectBuffer() throws IOException {
@@ -221,6 +255,13 @@ public class OpenPgpInputStream extends BufferedInputStream {
                         return;
                     }
                     // TODO: Parse S2K?
+                } else if (skeskVersion == 6) {
+                    // Version 6 SKESKs precede version 2 SEIPD packets (AEAD)
+                    bcpgIn.read(); // Skip count of the following fields
+                    int skeskAlg = bcpgIn.read();
+                    if (SymmetricKeyAlgorithm.fromId(skeskAlg) == null) {
+                        return;
+                    }
                 } else {
                     return;
                 }
@@ -328,7 +369,7 @@ public class OpenPgpInputStream extends BufferedInputStream {
 
             case SYM_ENC_INTEGRITY_PRO:
                 int seipVersion = bcpgIn.read();
-                if (seipVersion != 1) {
+                if (seipVersion != 1 && seipVersion != 2) {
                     return;
                 }
                 isLikelyOpenPgpMessage = true;
@@ -10,20 +10,27 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.bouncycastle.bcpg.ArmoredInputStream;
 import org.bouncycastle.bcpg.BCPGInputStream;
 import org.bouncycastle.bcpg.S2K;
+import org.bouncycastle.bcpg.SymmetricEncIntegrityPacket;
 import org.bouncycastle.bcpg.UnsupportedPacketVersionException;
 import org.bouncycastle.openpgp.PGPCompressedData;
 import org.bouncycastle.openpgp.PGPEncryptedData;
 import org.bouncycastle.openpgp.PGPEncryptedDataList;
 import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPKeyRing;
 import org.bouncycastle.openpgp.PGPLiteralData;
 import org.bouncycastle.openpgp.PGPOnePassSignature;
 import org.bouncycastle.openpgp.PGPPBEEncryptedData;
@@ -33,6 +40,7 @@ import org.bouncycastle.openpgp.PGPPublicKeyEncryptedData;
 import org.bouncycastle.openpgp.PGPPublicKeyRing;
 import org.bouncycastle.openpgp.PGPSecretKey;
 import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSessionKey;
 import org.bouncycastle.openpgp.PGPSessionKeyEncryptedData;
 import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.PGPSignatureList;
@@ -43,6 +51,7 @@ import org.bouncycastle.openpgp.operator.SessionKeyDataDecryptorFactory;
 import org.bouncycastle.util.io.TeeInputStream;
 import org.pgpainless.PGPainless;
 import org.pgpainless.algorithm.CompressionAlgorithm;
+import org.pgpainless.algorithm.HashAlgorithm;
 import org.pgpainless.algorithm.OpenPgpPacket;
 import org.pgpainless.algorithm.StreamEncoding;
 import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
@@ -51,20 +60,25 @@ import org.pgpainless.decryption_verification.cleartext_signatures.MultiPassStra
 import org.pgpainless.decryption_verification.syntax_check.InputSymbol;
 import org.pgpainless.decryption_verification.syntax_check.PDA;
 import org.pgpainless.decryption_verification.syntax_check.StackSymbol;
+import org.pgpainless.exception.KeyIntegrityException;
 import org.pgpainless.exception.MalformedOpenPgpMessageException;
 import org.pgpainless.exception.MessageNotIntegrityProtectedException;
 import org.pgpainless.exception.MissingDecryptionMethodException;
 import org.pgpainless.exception.MissingPassphraseException;
 import org.pgpainless.exception.SignatureValidationException;
 import org.pgpainless.exception.UnacceptableAlgorithmException;
+import org.pgpainless.implementation.CompressionFactory;
 import org.pgpainless.implementation.ImplementationFactory;
 import org.pgpainless.key.SubkeyIdentifier;
 import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.info.KeyRingInfoCache;
 import org.pgpainless.key.protection.SecretKeyRingProtector;
 import org.pgpainless.key.protection.UnlockSecretKey;
+import org.pgpainless.key.protection.UnlockedKeyCache;
 import org.pgpainless.key.util.KeyIdUtil;
 import org.pgpainless.key.util.KeyRingUtils;
 import org.pgpainless.policy.Policy;
+import org.pgpainless.signature.SharedDigests;
 import org.pgpainless.signature.SignatureUtils;
 import org.pgpainless.signature.consumer.CertificateValidator;
 import org.pgpainless.signature.consumer.OnePassSignatureCheck;
@@ -363,10 +377,26 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                 metadata.depth + 1);
 
         LOGGER.debug("Compressed Data Packet (" + compressionLayer.algorithm + ") at depth " + metadata.depth + " encountered");
-        InputStream decompressed = compressedData.getDataStream();
+        InputStream decompressed = pipelined(CompressionFactory.getInstance().getDecompressionStream(compressedData));
         nestedInputStream = new OpenPgpMessageInputStream(decompressed, options, compressionLayer, policy);
     }
 
+    /**
+     * If a pipeline executor is set, read the given stream of decrypted or decompressed data ahead on the executor.
+     * Data which needs to be hashed by one-pass-signatures of this layer is not pipelined, since the packet bytes are
+     * hashed while they are being read.
+     *
+     * @param inputStream nested data stream
+     * @return pipelined stream or the stream itself
+     */
+    private InputStream pipelined(InputStream inputStream) {
+        Executor executor = options.getPipelineExecutor();
+        if (executor == null || signatures.isHashingPackets()) {
+            return inputStream;
+        }
+        return new PipelinedInputStream(inputStream, executor);
+    }
+
     private void processOnePassSignature() throws PGPException, IOException {
         syntaxVerifier.next(InputSymbol.OnePassSignature);
         PGPOnePassSignature onePassSignature = packetInputStream.readOnePassSignature();
@@ -450,10 +480,15 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
 
             PGPSessionKeyEncryptedData sessionKeyEncryptedData = encDataList.extractSessionKeyEncryptedData();
             try {
-                InputStream decrypted = sessionKeyEncryptedData.getDataStream(decryptorFactory);
+                InputStream decrypted;
+                if (esks.isAEADEncrypted()) {
+                    decrypted = decryptAEAD(esks, decryptorFactory.getSessionKey());
+                } else {
+                    decrypted = new IntegrityProtectedInputStream(
+                            sessionKeyEncryptedData.getDataStream(decryptorFactory), sessionKeyEncryptedData, options);
+                }
                 encryptedData.sessionKey = sessionKey;
-                IntegrityProtectedInputStream integrityProtected = new IntegrityProtectedInputStream(decrypted, sessionKeyEncryptedData, options);
-                nestedInputStream = new OpenPgpMessageInputStream(integrityProtected, options, encryptedData, policy);
+                nestedInputStream = new OpenPgpMessageInputStream(pipelined(decrypted), options, encryptedData, policy);
                 LOGGER.debug("Successfully decrypted data with provided session key");
                 return true;
             } catch (PGPException e) {
@@ -463,22 +498,38 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
         }
 
         // Try passwords
-        for (Passphrase passphrase : options.getDecryptionPassphrases()) {
+        if (!options.getDecryptionPassphrases().isEmpty() && !esks.skesks.isEmpty()) {
+            List<PGPPBEEncryptedData> acceptableSkesks = new ArrayList<>();
             for (PGPPBEEncryptedData skesk : esks.skesks) {
-                LOGGER.debug("Attempt decryption with provided passphrase");
                 SymmetricKeyAlgorithm encapsulationAlgorithm = SymmetricKeyAlgorithm.requireFromId(skesk.getAlgorithm());
                 try {
                     throwIfUnacceptable(encapsulationAlgorithm);
+                    acceptableSkesks.add(skesk);
                 } catch (UnacceptableAlgorithmException e) {
                     LOGGER.debug("Skipping SKESK with unacceptable encapsulation algorithm", e);
-                    continue;
                 }
+            }
+
+            // One factory per passphrase, so that SKESKs with identical S2K parameters share the derived key
+            List<PBEDataDecryptorFactory> decryptorFactories = new ArrayList<>();
+            for (Passphrase passphrase : options.getDecryptionPassphrases()) {
+                decryptorFactories.add(new CachingPBEDataDecryptorFactory(
+                        ImplementationFactory.getInstance().getPBEDataDecryptorFactory(passphrase)));
+            }
 
-                PBEDataDecryptorFactory decryptorFactory = ImplementationFactory.getInstance()
-                        .getPBEDataDecryptorFactory(passphrase);
-                if (decryptSKESKAndStream(esks, skesk, decryptorFactory)) {
+            if (options.getDecryptionTrialExecutor() != null) {
+                if (decryptSKESKsConcurrently(esks, acceptableSkesks, decryptorFactories)) {
                     return true;
                 }
+            } else {
+                for (PBEDataDecryptorFactory decryptorFactory : decryptorFactories) {
+                    for (PGPPBEEncryptedData skesk : acceptableSkesks) {
+                        LOGGER.debug("Attempt decryption with provided passphrase");
+                        if (decryptSKESKAndStream(esks, skesk, decryptorFactory)) {
+                            return true;
+                        }
+                    }
+                }
             }
         }
 
@@ -508,32 +559,38 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                 continue;
             }
 
-            PGPPrivateKey privateKey = UnlockSecretKey.unlockSecretKey(secretKey, protector);
+            PGPPrivateKey privateKey = UnlockSecretKey.unlockSecretKey(secretKey, protector, options.getUnlockedKeyCache());
             if (decryptWithPrivateKey(esks, privateKey, decryptionKeyId, pkesk)) {
                 return true;
             }
         }
 
         // try anonymous secret keys
-        for (PGPPublicKeyEncryptedData pkesk : esks.anonPkesks) {
-            for (Tuple<PGPSecretKeyRing, PGPSecretKey> decryptionKeyCandidate : findPotentialDecryptionKeys(pkesk)) {
-                PGPSecretKeyRing decryptionKeys = decryptionKeyCandidate.getA();
-                PGPSecretKey secretKey = decryptionKeyCandidate.getB();
-                SubkeyIdentifier decryptionKeyId = new SubkeyIdentifier(decryptionKeys, secretKey.getKeyID());
-                if (hasUnsupportedS2KSpecifier(secretKey, decryptionKeyId)) {
-                    continue;
-                }
-                LOGGER.debug("Attempt decryption of anonymous PKESK with key " + decryptionKeyId);
-                SecretKeyRingProtector protector = options.getSecretKeyProtector(decryptionKeyCandidate.getA());
-                if (!protector.hasPassphraseFor(secretKey.getKeyID())) {
-                    LOGGER.debug("Missing passphrase for key " + decryptionKeyId + ". Postponing decryption until all other keys were tried.");
-                    postponedDueToMissingPassphrase.add(new Tuple<>(secretKey, pkesk));
-                    continue;
-                }
+        if (options.getDecryptionTrialExecutor() != null) {
+            if (decryptAnonymousPKESKsConcurrently(esks, postponedDueToMissingPassphrase)) {
+                return true;
+            }
+        } else {
+            for (PGPPublicKeyEncryptedData pkesk : esks.anonPkesks) {
+                for (Tuple<PGPSecretKeyRing, PGPSecretKey> decryptionKeyCandidate : findPotentialDecryptionKeys(pkesk)) {
+                    PGPSecretKeyRing decryptionKeys = decryptionKeyCandidate.getA();
+                    PGPSecretKey secretKey = decryptionKeyCandidate.getB();
+                    SubkeyIdentifier decryptionKeyId = new SubkeyIdentifier(decryptionKeys, secretKey.getKeyID());
+                    if (hasUnsupportedS2KSpecifier(secretKey, decryptionKeyId)) {
+                        continue;
+                    }
+                    LOGGER.debug("Attempt decryption of anonymous PKESK with key " + decryptionKeyId);
+                    SecretKeyRingProtector protector = options.getSecretKeyProtector(decryptionKeyCandidate.getA());
+                    if (!protector.hasPassphraseFor(secretKey.getKeyID())) {
+                        LOGGER.debug("Missing passphrase for key " + decryptionKeyId + ". Postponing decryption until all other keys were tried.");
+                        postponedDueToMissingPassphrase.add(new Tuple<>(secretKey, pkesk));
+                        continue;
+                    }
 
-                PGPPrivateKey privateKey = UnlockSecretKey.unlockSecretKey(secretKey, protector);
-                if (decryptWithPrivateKey(esks, privateKey, decryptionKeyId, pkesk)) {
-                    return true;
+                    PGPPrivateKey privateKey = UnlockSecretKey.unlockSecretKey(secretKey, protector, options.getUnlockedKeyCache());
+                    if (decryptWithPrivateKey(esks, privateKey, decryptionKeyId, pkesk)) {
+                        return true;
+                    }
                 }
             }
         }
@@ -565,7 +622,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
 
                     LOGGER.debug("Attempt decryption with key " + decryptionKeyId + " while interactively requesting its passphrase");
                     SecretKeyRingProtector protector = options.getSecretKeyProtector(decryptionKey);
-                    PGPPrivateKey privateKey = UnlockSecretKey.unlockSecretKey(secretKey, protector);
+                    PGPPrivateKey privateKey = UnlockSecretKey.unlockSecretKey(secretKey, protector, options.getUnlockedKeyCache());
                     if (decryptWithPrivateKey(esks, privateKey, decryptionKeyId, pkesk)) {
                         return true;
                     }
@@ -581,6 +638,185 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
         return false;
     }
 
+    private boolean decryptAnonymousPKESKsConcurrently(
+            final SortedESKs esks,
+            List<Tuple<PGPSecretKey, PGPPublicKeyEncryptedData>> postponedDueToMissingPassphrase)
+            throws PGPException, IOException {
+        // Keys are unlocked by the first trial using them, so that keys are not unlocked once another key succeeded.
+        // Keys without passphrase are postponed above, so the protectors are not interactive.
+        Map<SubkeyIdentifier, LazyPrivateKey> candidateKeys = new HashMap<>();
+        List<AnonymousPKESKTrial> trials = new ArrayList<>();
+        for (PGPPublicKeyEncryptedData pkesk : esks.anonPkesks) {
+            for (Tuple<PGPSecretKeyRing, PGPSecretKey> decryptionKeyCandidate : findPotentialDecryptionKeys(pkesk)) {
+                PGPSecretKeyRing decryptionKeys = decryptionKeyCandidate.getA();
+                PGPSecretKey secretKey = decryptionKeyCandidate.getB();
+                SubkeyIdentifier decryptionKeyId = new SubkeyIdentifier(decryptionKeys, secretKey.getKeyID());
+                if (hasUnsupportedS2KSpecifier(secretKey, decryptionKeyId)) {
+                    continue;
+                }
+                SecretKeyRingProtector protector = options.getSecretKeyProtector(decryptionKeys);
+                if (!protector.hasPassphraseFor(secretKey.getKeyID())) {
+                    LOGGER.debug("Missing passphrase for key " + decryptionKeyId + ". Postponing decryption until all other keys were tried.");
+                    postponedDueToMissingPassphrase.add(new Tuple<>(secretKey, pkesk));
+                    continue;
+                }
+
+                LazyPrivateKey privateKey = candidateKeys.get(decryptionKeyId);
+                if (privateKey == null) {
+                    privateKey = new LazyPrivateKey(secretKey, protector, options.getUnlockedKeyCache());
+                    candidateKeys.put(decryptionKeyId, privateKey);
+                }
+                trials.add(new AnonymousPKESKTrial(pkesk, decryptionKeyId, privateKey));
+            }
+        }
+
+        LOGGER.debug("Attempt concurrent decryption of " + esks.anonPkesks.size() + " anonymous PKESK(s) using " +
+                candidateKeys.size() + " key(s)");
+        // Like for SKESKs, the recovered session key is checked against the encrypted data on the calling thread,
+        // so that a session key which only passes the checksum does not end the search
+        AnonymousPKESKTrial successful = ParallelTrials.firstVerified(options.getDecryptionTrialExecutor(), trials,
+                new ParallelTrials.Verifier<AnonymousPKESKTrial>() {
+                    @Override
+                    public boolean verify(@Nonnull AnonymousPKESKTrial trial) throws PGPException, IOException {
+                        return decryptWithPrivateKey(esks, trial.privateKey.unlock(), trial.decryptionKeyId,
+                                trial.pkesk);
+                    }
+                });
+        if (successful != null) {
+            return true;
+        }
+        // Report keys which could not be unlocked, as it happens with sequential decryption
+        for (LazyPrivateKey privateKey : candidateKeys.values()) {
+            privateKey.throwIfFailed();
+        }
+        return false;
+    }
+
+    private boolean decryptSKESKsConcurrently(final SortedESKs esks,
+                                              List<PGPPBEEncryptedData> skesks,
+                                              List<PBEDataDecryptorFactory> decryptorFactories)
+            throws PGPException, IOException {
+        List<SKESKTrial> trials = new ArrayList<>();
+        for (PBEDataDecryptorFactory decryptorFactory : decryptorFactories) {
+            for (PGPPBEEncryptedData skesk : skesks) {
+                trials.add(new SKESKTrial(skesk, decryptorFactory));
+            }
+        }
+
+        LOGGER.debug("Attempt concurrent decryption of " + skesks.size() + " SKESK(s) using " +
+                decryptorFactories.size() + " passphrase(s)");
+        // Recovering a session key does not prove that the passphrase was correct,
+        // so candidates are checked against the encrypted data on the calling thread.
+        // The derived keys are cached by the factory, so this does not repeat the expensive S2K.
+        SKESKTrial successful = ParallelTrials.firstVerified(options.getDecryptionTrialExecutor(), trials,
+                new ParallelTrials.Verifier<SKESKTrial>() {
+                    @Override
+                    public boolean verify(@Nonnull SKESKTrial trial) throws PGPException, IOException {
+                        return decryptSKESKAndStream(esks, trial.skesk, trial.decryptorFactory);
+                    }
+                });
+        return successful != null;
+    }
+
+    /**
+     * Trial recovery of the session key of a SKESK using a passphrase.
+     * Returns itself if a session key could be recovered, null otherwise.
+     */
+    private static final class SKESKTrial implements Callable<SKESKTrial> {
+        private final PGPPBEEncryptedData skesk;
+        private final PBEDataDecryptorFactory decryptorFactory;
+
+        private SKESKTrial(PGPPBEEncryptedData skesk, PBEDataDecryptorFactory decryptorFactory) {
+            this.skesk = skesk;
+            this.decryptorFactory = decryptorFactory;
+        }
+
+        @Override
+        public SKESKTrial call() {
+            try {
+                skesk.getSessionKey(decryptorFactory);
+                return this;
+            } catch (PGPException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Trial decryption of the session key of an anonymous PKESK using a candidate key.
+     * Returns itself on success, null otherwise.
+     */
+    private static final class AnonymousPKESKTrial implements Callable<AnonymousPKESKTrial> {
+        private final PGPPublicKeyEncryptedData pkesk;
+        private final SubkeyIdentifier decryptionKeyId;
+        private final LazyPrivateKey privateKey;
+
+        private AnonymousPKESKTrial(PGPPublicKeyEncryptedData pkesk,
+                                    SubkeyIdentifier decryptionKeyId,
+                                    LazyPrivateKey privateKey) {
+            this.pkesk = pkesk;
+            this.decryptionKeyId = decryptionKeyId;
+            this.privateKey = privateKey;
+        }
+
+        @Override
+        public AnonymousPKESKTrial call() {
+            try {
+                PublicKeyDataDecryptorFactory decryptorFactory = ImplementationFactory.getInstance()
+                        .getPublicKeyDataDecryptorFactory(privateKey.unlock());
+                pkesk.getSessionKey(decryptorFactory);
+                LOGGER.debug("Anonymous PKESK can be decrypted using key " + decryptionKeyId);
+                return this;
+            } catch (PGPException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Secret key, which is unlocked on first use.
+     * The trials of a key share one instance, so the key is unlocked at most once.
+     */
+    private static final class LazyPrivateKey {
+        private final PGPSecretKey secretKey;
+        private final SecretKeyRingProtector protector;
+        private final UnlockedKeyCache unlockedKeyCache;
+        private PGPPrivateKey privateKey;
+        private PGPException failure;
+        private KeyIntegrityException integrityFailure;
+
+        private LazyPrivateKey(PGPSecretKey secretKey,
+                               SecretKeyRingProtector protector,
+                               @Nullable UnlockedKeyCache unlockedKeyCache) {
+            this.secretKey = secretKey;
+            this.protector = protector;
+            this.unlockedKeyCache = unlockedKeyCache;
+        }
+
+        private synchronized PGPPrivateKey unlock() throws PGPException {
+            if (privateKey == null && failure == null && integrityFailure == null) {
+                try {
+                    privateKey = UnlockSecretKey.unlockSecretKey(secretKey, protector, unlockedKeyCache);
+                } catch (PGPException e) {
+                    failure = e;
+                } catch (KeyIntegrityException e) {
+                    integrityFailure = e;
+                }
+            }
+            throwIfFailed();
+            return privateKey;
+        }
+
+        private synchronized void throwIfFailed() throws PGPException {
+            if (failure != null) {
+                throw failure;
+            }
+            if (integrityFailure != null) {
+                throw integrityFailure;
+            }
+        }
+    }
+
     private boolean decryptWithPrivateKey(SortedESKs esks,
                                           PGPPrivateKey privateKey,
                                           SubkeyIdentifier decryptionKeyId,
@@ -608,9 +844,18 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                                           PBEDataDecryptorFactory decryptorFactory)
             throws IOException, UnacceptableAlgorithmException {
         try {
-            InputStream decrypted = symEsk.getDataStream(decryptorFactory);
-            SessionKey sessionKey = new SessionKey(symEsk.getSessionKey(decryptorFactory));
-            throwIfUnacceptable(sessionKey.getAlgorithm());
+            InputStream decrypted;
+            SessionKey sessionKey;
+            if (esks.isAEADEncrypted()) {
+                PGPSessionKey pgpSessionKey = symEsk.getSessionKey(decryptorFactory);
+                sessionKey = new SessionKey(pgpSessionKey);
+                throwIfUnacceptable(sessionKey.getAlgorithm());
+                decrypted = decryptAEAD(esks, pgpSessionKey);
+            } else {
+                decrypted = new IntegrityProtectedInputStream(symEsk.getDataStream(decryptorFactory), symEsk, options);
+                sessionKey = new SessionKey(symEsk.getSessionKey(decryptorFactory));
+                throwIfUnacceptable(sessionKey.getAlgorithm());
+            }
             MessageMetadata.EncryptedData encryptedData = new MessageMetadata.EncryptedData(
                     sessionKey.getAlgorithm(), metadata.depth + 1);
             encryptedData.sessionKey = sessionKey;
@@ -619,8 +864,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                 encryptedData.recipients.add(pkesk.getKeyID());
             }
             LOGGER.debug("Successfully decrypted data with passphrase");
-            IntegrityProtectedInputStream integrityProtected = new IntegrityProtectedInputStream(decrypted, symEsk, options);
-            nestedInputStream = new OpenPgpMessageInputStream(integrityProtected, options, encryptedData, policy);
+            nestedInputStream = new OpenPgpMessageInputStream(pipelined(decrypted), options, encryptedData, policy);
             return true;
         } catch (UnacceptableAlgorithmException e) {
             throw e;
@@ -636,9 +880,19 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                                           PGPPublicKeyEncryptedData asymEsk)
             throws IOException, UnacceptableAlgorithmException {
         try {
-            InputStream decrypted = asymEsk.getDataStream(decryptorFactory);
-            SessionKey sessionKey = new SessionKey(asymEsk.getSessionKey(decryptorFactory));
-            throwIfUnacceptable(sessionKey.getAlgorithm());
+            InputStream decrypted;
+            SessionKey sessionKey;
+            if (esks.isAEADEncrypted()) {
+                // BC does not decrypt version 2 SEIPD packets using public key data decryptor factories
+                PGPSessionKey pgpSessionKey = asymEsk.getSessionKey(decryptorFactory);
+                sessionKey = new SessionKey(pgpSessionKey);
+                throwIfUnacceptable(sessionKey.getAlgorithm());
+                decrypted = decryptAEAD(esks, pgpSessionKey);
+            } else {
+                decrypted = new IntegrityProtectedInputStream(asymEsk.getDataStream(decryptorFactory), asymEsk, options);
+                sessionKey = new SessionKey(asymEsk.getSessionKey(decryptorFactory));
+                throwIfUnacceptable(sessionKey.getAlgorithm());
+            }
 
             MessageMetadata.EncryptedData encryptedData = new MessageMetadata.EncryptedData(
                     SymmetricKeyAlgorithm.requireFromId(asymEsk.getSymmetricAlgorithm(decryptorFactory)),
@@ -654,8 +908,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
             }
 
             LOGGER.debug("Successfully decrypted data with key " + decryptionKeyId);
-            IntegrityProtectedInputStream integrityProtected = new IntegrityProtectedInputStream(decrypted, asymEsk, options);
-            nestedInputStream = new OpenPgpMessageInputStream(integrityProtected, options, encryptedData, policy);
+            nestedInputStream = new OpenPgpMessageInputStream(pipelined(decrypted), options, encryptedData, policy);
             return true;
         } catch (UnacceptableAlgorithmException e) {
             throw e;
@@ -665,6 +918,33 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
         return false;
     }
 
+    /**
+     * Decrypt a version 2 SEIPD packet (AEAD) using the given session key.
+     * The first chunk is decrypted right away, so that a wrong session key is detected before the stream is returned.
+     *
+     * @param esks encrypted session keys and data
+     * @param sessionKey session key
+     * @return decrypted data
+     *
+     * @throws PGPException if the session key does not match or the algorithms are not supported
+     */
+    private InputStream decryptAEAD(SortedESKs esks, PGPSessionKey sessionKey)
+            throws PGPException {
+        AEADDecryptionInputStream.DecryptorFactory decryptorFactory =
+                new AEADDecryptionInputStream.DecryptorFactory(sessionKey, options.getChunkDecryptionExecutor());
+        esks.encryptedDataList.extractSessionKeyEncryptedData().getDataStream(decryptorFactory);
+        AEADDecryptionInputStream decrypted = decryptorFactory.getDecryptionStream();
+        if (decrypted == null) {
+            throw new PGPException("Encrypted data packet is not a version 2 SEIPD packet.");
+        }
+        try {
+            decrypted.verifyFirstChunk();
+        } catch (IOException e) {
+            throw new PGPException("Cannot decrypt AEAD encrypted data. Session key mismatch?", e);
+        }
+        return decrypted;
+    }
+
     private void throwIfUnacceptable(SymmetricKeyAlgorithm algorithm)
             throws UnacceptableAlgorithmException {
         if (!policy.getSymmetricKeyDecryptionAlgorithmPolicy().isAcceptable(algorithm)) {
@@ -677,7 +957,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
         List<Tuple<PGPSecretKeyRing, PGPSecretKey>> decryptionKeyCandidates = new ArrayList<>();
 
         for (PGPSecretKeyRing secretKeys : options.getDecryptionKeys()) {
-            KeyRingInfo info = PGPainless.inspectKeyRing(secretKeys);
+            KeyRingInfo info = KeyRingInfoCache.inspect(secretKeys, policy, new Date());
             for (PGPPublicKey publicKey : info.getDecryptionSubkeys()) {
                 if (publicKey.getAlgorithm() == algorithm && info.isSecretKeyAvailable(publicKey.getKeyID())) {
                     PGPSecretKey candidate = secretKeys.getSecretKey(publicKey.getKeyID());
@@ -685,6 +965,13 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                 }
             }
         }
+
+        DecryptionKeyIndex index = options.getDecryptionKeyIndex();
+        if (index != null) {
+            for (DecryptionKeyIndex.Entry entry : index.getDecryptionKeys(algorithm)) {
+                decryptionKeyCandidates.add(new Tuple<>(entry.getSecretKeyRing(), entry.getSecretKey()));
+            }
+        }
         return decryptionKeyCandidates;
     }
 
@@ -695,7 +982,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                 continue;
             }
 
-            KeyRingInfo info = new KeyRingInfo(secretKeys, policy, new Date());
+            KeyRingInfo info = KeyRingInfoCache.inspect(secretKeys, policy, new Date());
             List<PGPPublicKey> encryptionKeys = info.getDecryptionSubkeys();
             for (PGPPublicKey key : encryptionKeys) {
                 if (key.getKeyID() == keyID) {
@@ -705,6 +992,14 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
 
             LOGGER.debug("Subkey " + Long.toHexString(keyID) + " cannot be used for decryption.");
         }
+
+        DecryptionKeyIndex index = options.getDecryptionKeyIndex();
+        if (index != null) {
+            DecryptionKeyIndex.Entry entry = index.getDecryptionKey(keyID);
+            if (entry != null) {
+                return entry.getSecretKeyRing();
+            }
+        }
         return null;
     }
 
@@ -823,11 +1118,16 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
 
     private static class SortedESKs {
 
+        private final PGPEncryptedDataList encryptedDataList;
+        private final boolean aeadEncrypted;
         private final List<PGPPBEEncryptedData> skesks = new ArrayList<>();
         private final List<PGPPublicKeyEncryptedData> pkesks = new ArrayList<>();
         private final List<PGPPublicKeyEncryptedData> anonPkesks = new ArrayList<>();
 
         SortedESKs(PGPEncryptedDataList esks) {
+            this.encryptedDataList = esks;
+            this.aeadEncrypted = esks.isIntegrityProtected() &&
+                    esks.extractSessionKeyEncryptedData().getVersion() == SymmetricEncIntegrityPacket.VERSION_2;
             for (PGPEncryptedData esk : esks) {
                 if (esk instanceof PGPPBEEncryptedData) {
                     skesks.add((PGPPBEEncryptedData) esk);
@@ -845,6 +1145,15 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
             }
         }
 
+        /**
+         * Return true, if the data is encrypted using a version 2 SEIPD packet (AEAD).
+         *
+         * @return true if AEAD encrypted
+         */
+        public boolean isAEADEncrypted() {
+            return aeadEncrypted;
+        }
+
         public List<PGPEncryptedData> all() {
             List<PGPEncryptedData> esks = new ArrayList<>();
             esks.addAll(skesks);
@@ -870,6 +1179,10 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
         final List<SignatureVerification.Failure> inbandSignaturesWithMissingCert = new ArrayList<>();
         final List<SignatureVerification.Failure> detachedSignaturesWithMissingCert = new ArrayList<>();
         boolean isLiteral = true;
+        // Digests shared between signatures with the same hash algorithm and signature type, or null
+        final SharedDigests<Object> sharedDigests;
+        SharedDigests<Object>.Updater literalUpdater;
+        SharedDigests<Object>.Updater packetUpdater;
 
         private Signatures(ConsumerOptions options) {
             this.options = options;
@@ -878,6 +1191,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
             this.onePassSignatures = new ArrayList<>();
             this.opsUpdateStack = new Stack<>();
             this.correspondingSignatures = new ArrayList<>();
+            this.sharedDigests = options.isSharedDigests() ? new SharedDigests<>() : null;
         }
 
         void addDetachedSignatures(Collection<PGPSignature> signatures) {
@@ -891,6 +1205,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
             long keyId = SignatureUtils.determineIssuerKeyId(signature);
             if (check != null) {
                 detachedSignatures.add(check);
+                shareDigest(check, signature.getKeyAlgorithm(), signature.getHashAlgorithm(), signature.getSignatureType());
             } else {
                 LOGGER.debug("No suitable certificate for verification of signature by key " + KeyIdUtil.formatKeyId(keyId) + " found.");
                 this.detachedSignaturesWithMissingCert.add(new SignatureVerification.Failure(
@@ -905,6 +1220,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
             long keyId = SignatureUtils.determineIssuerKeyId(signature);
             if (check != null) {
                 this.prependedSignatures.add(check);
+                shareDigest(check, signature.getKeyAlgorithm(), signature.getHashAlgorithm(), signature.getSignatureType());
             } else {
                 LOGGER.debug("No suitable certificate for verification of signature by key " + KeyIdUtil.formatKeyId(keyId) + " found.");
                 this.prependedSignaturesWithMissingCert.add(new SignatureVerification.Failure(
@@ -935,6 +1251,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                 onePassSignatures.add(ops);
 
                 literalOPS.add(ops);
+                shareDigest(ops, signature.getKeyAlgorithm(), signature.getHashAlgorithm(), signature.getSignatureType());
             }
             if (signature.isContaining()) {
                 enterNesting();
@@ -959,6 +1276,12 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                 SignatureVerification verification = new SignatureVerification(signature,
                         new SubkeyIdentifier(onePassSignature.getVerificationKeys(), onePassSignature.getOnePassSignature().getKeyID()));
 
+                if (sharedDigests != null && sharedDigests.contains(onePassSignature)) {
+                    initialize(onePassSignature.getOnePassSignature(), onePassSignature.getVerificationKeys(),
+                            new BcPGPHashContextContentVerifierBuilderProvider(sharedDigests.getDigest(onePassSignature)));
+                    sharedDigests.remove(onePassSignature);
+                }
+
                 try {
                     SignatureValidator.signatureWasCreatedInBounds(options.getVerifyNotBefore(), options.getVerifyNotAfter())
                             .verify(signature);
@@ -983,6 +1306,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
         void enterNesting() {
             opsUpdateStack.push(literalOPS);
             literalOPS = new ArrayList<>();
+            invalidateUpdaters();
         }
 
         void leaveNesting() {
@@ -990,11 +1314,69 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                 return;
             }
             opsUpdateStack.pop();
+            invalidateUpdaters();
+        }
+
+        /**
+         * Hash the signed data of the given signature check into a shared digest, if shared digests are enabled
+         * and the signature can be verified over a hash context.
+         *
+         * @param check signature check
+         * @param keyAlgorithm public key algorithm of the signature
+         * @param hashAlgorithmId hash algorithm of the signature
+         * @param signatureType signature type
+         */
+        private void shareDigest(Object check, int keyAlgorithm, int hashAlgorithmId, int signatureType) {
+            if (sharedDigests == null) {
+                return;
+            }
+            invalidateUpdaters();
+
+            HashAlgorithm hashAlgorithm = HashAlgorithm.fromId(hashAlgorithmId);
+            if (hashAlgorithm == null || !BcPGPHashContextContentVerifierBuilderProvider.isSupported(keyAlgorithm)) {
+                return;
+            }
+            sharedDigests.add(check, hashAlgorithm, signatureType == PGPSignature.CANONICAL_TEXT_DOCUMENT);
+        }
+
+        private boolean isSharingDigest(Object check) {
+            return sharedDigests != null && sharedDigests.contains(check);
+        }
+
+        private void invalidateUpdaters() {
+            literalUpdater = null;
+            packetUpdater = null;
+        }
+
+        private SharedDigests<Object>.Updater literalUpdater() {
+            if (literalUpdater == null) {
+                List<Object> targets = new ArrayList<>();
+                targets.addAll(literalOPS);
+                targets.addAll(detachedSignatures);
+                targets.addAll(prependedSignatures);
+                literalUpdater = sharedDigests.updater(targets);
+            }
+            return literalUpdater;
+        }
+
+        private SharedDigests<Object>.Updater packetUpdater() {
+            if (packetUpdater == null) {
+                List<Object> targets = new ArrayList<>();
+                for (List<OnePassSignatureCheck> nestedOPSs : opsUpdateStack) {
+                    targets.addAll(nestedOPSs);
+                }
+                packetUpdater = sharedDigests.updater(targets);
+            }
+            return packetUpdater;
         }
 
         private static void initialize(@Nonnull PGPSignature signature, @Nonnull PGPPublicKeyRing certificate, long keyId) {
-            PGPContentVerifierBuilderProvider verifierProvider = ImplementationFactory.getInstance()
-                    .getPGPContentVerifierBuilderProvider();
+            initialize(signature, certificate, keyId, ImplementationFactory.getInstance()
+                    .getPGPContentVerifierBuilderProvider());
+        }
+
+        private static void initialize(@Nonnull PGPSignature signature, @Nonnull PGPKeyRing certificate, long keyId,
+                                       @Nonnull PGPContentVerifierBuilderProvider verifierProvider) {
             try {
                 signature.init(verifierProvider, certificate.getPublicKey(keyId));
             } catch (PGPException e) {
@@ -1003,8 +1385,12 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
         }
 
         private static void initialize(@Nonnull PGPOnePassSignature ops, @Nonnull PGPPublicKeyRing certificate) {
-            PGPContentVerifierBuilderProvider verifierProvider = ImplementationFactory.getInstance()
-                    .getPGPContentVerifierBuilderProvider();
+            initialize(ops, certificate, ImplementationFactory.getInstance()
+                    .getPGPContentVerifierBuilderProvider());
+        }
+
+        private static void initialize(@Nonnull PGPOnePassSignature ops, @Nonnull PGPPublicKeyRing certificate,
+                                       @Nonnull PGPContentVerifierBuilderProvider verifierProvider) {
             try {
                 ops.init(verifierProvider, certificate.getPublicKey(ops.getKeyID()));
             } catch (PGPException e) {
@@ -1025,53 +1411,110 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
         }
 
         public void updateLiteral(byte b) {
+            if (sharedDigests != null) {
+                literalUpdater().update(b);
+            }
+
             for (OnePassSignatureCheck ops : literalOPS) {
-                ops.getOnePassSignature().update(b);
+                if (!isSharingDigest(ops)) {
+                    ops.getOnePassSignature().update(b);
+                }
             }
 
             for (SignatureCheck detached : detachedSignatures) {
-                detached.getSignature().update(b);
+                if (!isSharingDigest(detached)) {
+                    detached.getSignature().update(b);
+                }
             }
 
             for (SignatureCheck prepended : prependedSignatures) {
-                prepended.getSignature().update(b);
+                if (!isSharingDigest(prepended)) {
+                    prepended.getSignature().update(b);
+                }
             }
         }
 
         public void updateLiteral(byte[] b, int off, int len) {
+            if (sharedDigests != null) {
+                literalUpdater().update(b, off, len);
+            }
+
             for (OnePassSignatureCheck ops : literalOPS) {
-                ops.getOnePassSignature().update(b, off, len);
+                if (!isSharingDigest(ops)) {
+                    ops.getOnePassSignature().update(b, off, len);
+                }
             }
 
             for (SignatureCheck detached : detachedSignatures) {
-                detached.getSignature().update(b, off, len);
+                if (!isSharingDigest(detached)) {
+                    detached.getSignature().update(b, off, len);
+                }
             }
 
             for (SignatureCheck prepended : prependedSignatures) {
-                prepended.getSignature().update(b, off, len);
+                if (!isSharingDigest(prepended)) {
+                    prepended.getSignature().update(b, off, len);
+                }
+            }
+        }
+
+        /**
+         * Return true, if packet bytes of this layer need to be hashed, since they are covered by
+         * one-pass-signatures.
+         *
+         * @return true if packets are hashed
+         */
+        boolean isHashingPackets() {
+            for (List<OnePassSignatureCheck> nestedOPSs : opsUpdateStack) {
+                if (!nestedOPSs.isEmpty()) {
+                    return true;
+                }
             }
+            return false;
         }
 
         public void updatePacket(byte b) {
+            if (sharedDigests != null && isHashingPackets()) {
+                packetUpdater().update(b);
+            }
+
             for (int i = opsUpdateStack.size() - 1; i >= 0; i--) {
                 List<OnePassSignatureCheck> nestedOPSs = opsUpdateStack.get(i);
                 for (OnePassSignatureCheck ops : nestedOPSs) {
-                    ops.getOnePassSignature().update(b);
+                    if (!isSharingDigest(ops)) {
+                        ops.getOnePassSignature().update(b);
+                    }
                 }
             }
         }
 
         public void updatePacket(byte[] buf, int off, int len) {
+            if (sharedDigests != null && isHashingPackets()) {
+                packetUpdater().update(buf, off, len);
+            }
+
             for (int i = opsUpdateStack.size() - 1; i >= 0; i--) {
                 List<OnePassSignatureCheck> nestedOPSs = opsUpdateStack.get(i);
                 for (OnePassSignatureCheck ops : nestedOPSs) {
-                    ops.getOnePassSignature().update(buf, off, len);
+                    if (!isSharingDigest(ops)) {
+                        ops.getOnePassSignature().update(buf, off, len);
+                    }
                 }
             }
         }
 
+        private void resolveSharedDigest(SignatureCheck check) {
+            if (!isSharingDigest(check)) {
+                return;
+            }
+            initialize(check.getSignature(), check.getSigningKeyRing(), check.getSigningKeyIdentifier().getSubkeyId(),
+                    new BcPGPHashContextContentVerifierBuilderProvider(sharedDigests.getDigest(check)));
+            sharedDigests.remove(check);
+        }
+
         public void finish(MessageMetadata.Layer layer, Policy policy) {
             for (SignatureCheck detached : detachedSignatures) {
+                resolveSharedDigest(detached);
                 SignatureVerification verification = new SignatureVerification(detached.getSignature(), detached.getSigningKeyIdentifier());
                 try {
                     SignatureValidator.signatureWasCreatedInBounds(options.getVerifyNotBefore(), options.getVerifyNotAfter())
@@ -1087,6 +1530,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
             }
 
             for (SignatureCheck prepended : prependedSignatures) {
+                resolveSharedDigest(prepended);
                 SignatureVerification verification = new SignatureVerification(prepended.getSignature(), prepended.getSigningKeyIdentifier());
                 try {
                     SignatureValidator.signatureWasCreatedInBounds(options.getVerifyNotBefore(), options.getVerifyNotAfter())
@@ -1129,6 +1573,7 @@ public class OpenPgpMessageInputStream extends DecryptionStream {
                 isLiteral = true;
                 if (literalOPS.isEmpty() && !opsUpdateStack.isEmpty()) {
                     literalOPS = opsUpdateStack.pop();
+                    invalidateUpdaters();
                 }
             } else {
                 isLiteral = false;
@@ -0,0 +1,184 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility to run a number of independent decryption trials concurrently.
+ * A trial is successful if it returns a non-null result.
+ * Failed trials either return null or throw an exception.
+ */
+final class ParallelTrials {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelTrials.class);
+
+    private ParallelTrials() {
+
+    }
+
+    /**
+     * Check applied to the result of a trial on the calling thread.
+     *
+     * @param <T> result type
+     */
+    interface Verifier<T> {
+
+        /**
+         * Return true if the given trial result is accepted.
+         *
+         * @param result non-null result of a trial
+         * @return true if accepted, false otherwise
+         *
+         * @throws PGPException in case of an OpenPGP error
+         * @throws IOException in case of an IO error
+         */
+        boolean verify(@Nonnull T result) throws PGPException, IOException;
+    }
+
+    /**
+     * Run the given trials on the executor and return the result of the first successful trial.
+     * Once a trial succeeded, all remaining trials are cancelled.
+     * If no trial succeeds, return null.
+     *
+     * @param executor executor
+     * @param trials trials
+     * @param <T> result type
+     * @return result of the first successful trial or null
+     *
+     * @throws InterruptedIOException if the calling thread was interrupted while waiting for results
+     */
+    @Nullable
+    static <T> T firstSuccessful(@Nonnull Executor executor, @Nonnull List<? extends Callable<T>> trials)
+            throws InterruptedIOException {
+        try {
+            return firstVerified(executor, trials, new Verifier<T>() {
+                @Override
+                public boolean verify(@Nonnull T result) {
+                    return true;
+                }
+            });
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (PGPException | IOException e) {
+            // cannot happen, since the verifier above does not throw
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Run the given trials on the executor and return the first non-null result which is accepted by the verifier.
+     * Results are verified on the calling thread in the order in which the trials complete.
+     * Trials which the executor rejects or did not start yet are run on the calling thread, so that this method
+     * neither fails nor blocks on a saturated, busy or same-thread executor.
+     * Once a result was accepted, all remaining trials are cancelled.
+     * If no result is accepted, return null.
+     *
+     * @param executor executor
+     * @param trials trials
+     * @param verifier verifier
+     * @param <T> result type
+     * @return first accepted result or null
+     *
+     * @throws InterruptedIOException if the calling thread was interrupted while waiting for results
+     * @throws PGPException if the verifier throws
+     * @throws IOException if the verifier throws
+     */
+    @Nullable
+    static <T> T firstVerified(@Nonnull Executor executor,
+                               @Nonnull List<? extends Callable<T>> trials,
+                               @Nonnull Verifier<T> verifier)
+            throws PGPException, IOException {
+        if (trials.isEmpty()) {
+            return null;
+        }
+
+        // No need to hand off a single trial to another thread
+        if (trials.size() == 1) {
+            T result;
+            try {
+                result = trials.get(0).call();
+            } catch (Exception e) {
+                LOGGER.debug("Trial failed.", e);
+                return null;
+            }
+            return result != null && verifier.verify(result) ? result : null;
+        }
+
+        final BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<>();
+        List<FutureTask<T>> tasks = new ArrayList<>(trials.size());
+        for (Callable<T> trial : trials) {
+            tasks.add(new FutureTask<T>(trial) {
+                @Override
+                protected void done() {
+                    completed.add(this);
+                }
+            });
+        }
+        try {
+            for (FutureTask<T> task : tasks) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // Saturated executor, the remaining trials are run by the calling thread
+                    break;
+                }
+            }
+
+            // Trials, which the executor did not start yet, are run by the calling thread instead of waiting,
+            // so that a busy or same-thread executor cannot stall the decryption.
+            // Running a trial which was already started or completed does nothing.
+            int unstarted = tasks.size() - 1;
+            for (int i = 0; i < tasks.size(); i++) {
+                Future<T> next = completed.poll();
+                while (next == null && unstarted >= 0) {
+                    tasks.get(unstarted--).run();
+                    next = completed.poll();
+                }
+                if (next == null) {
+                    // All remaining trials are running on other threads
+                    next = completed.take();
+                }
+                T result;
+                try {
+                    result = next.get();
+                } catch (ExecutionException e) {
+                    LOGGER.debug("Trial failed.", e.getCause());
+                    continue;
+                }
+                if (result != null && verifier.verify(result)) {
+                    return result;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while awaiting decryption trials.");
+            interrupted.initCause(e);
+            throw interrupted;
+        } finally {
+            for (FutureTask<T> task : tasks) {
+                task.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nonnull;
+
+import org.pgpainless.util.BufferPool;
+
+/**
+ * {@link InputStream} which reads its source stream on an {@link Executor}.
+ * The worker task reads chunks from the source stream into a bounded ring of buffers, from which the consumer reads.
+ * If the ring is full, the worker waits for the consumer (backpressure).
+ * This allows expensive source streams (like decrypting or decompressing streams) to run on another core,
+ * while the consumer processes the previous chunks.
+ *
+ * Exceptions thrown by the source stream are rethrown to the consumer once it has consumed all data that was read
+ * before the exception occurred.
+ * The source stream is closed on the consumer thread after the worker stopped, so that exceptions thrown
+ * by the source when closing it (e.g. failed integrity checks) are thrown by {@link #close()}, just like when
+ * reading the source directly.
+ *
+ * If the worker task does not start in time when the consumer needs data (e.g. because all threads of the executor
+ * are busy), the consumer takes over and reads the source stream itself. This prevents deadlocks on bounded executors.
+ *
+ * If the consumer does not read from a full ring for longer than the stall timeout (e.g. because the stream was
+ * abandoned without closing it), the worker gives up and frees its executor thread.
+ * The consumer then reads the remaining chunks, followed by the source stream itself, so no data is lost.
+ */
+final class PipelinedInputStream extends InputStream {
+
+    static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+    static final int DEFAULT_NUMBER_OF_CHUNKS = 4;
+    // Time the consumer waits for a submitted worker to start, before it reads the source itself
+    static final long WORKER_START_TIMEOUT_MILLIS = 50;
+    // Time the worker waits for the consumer to free a slot of the full ring, before it stops
+    static final long DEFAULT_STALL_TIMEOUT_MILLIS = 30 * 1000;
+
+    private enum State {
+        // worker task was submitted, but did not yet start
+        pending,
+        // worker task is reading the source
+        running,
+        // worker task stopped due to end of stream, an exception or close()
+        stopped,
+        // consumer reads the source directly, once all chunks in the ring are consumed
+        direct
+    }
+
+    private final InputStream source;
+    private final BufferPool bufferPool;
+    private final byte[][] chunks;
+    private final int[] chunkLengths;
+    private final long stallTimeoutMillis;
+
+    // guarded by this
+    private State state = State.pending;
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+    private Throwable failure = null;
+    private Thread submitter;
+
+    // only accessed by the consumer
+    private int position = 0;
+    private boolean sourceClosed = false;
+
+    PipelinedInputStream(@Nonnull InputStream source, @Nonnull Executor executor) {
+        this(source, executor, DEFAULT_CHUNK_SIZE, DEFAULT_NUMBER_OF_CHUNKS, BufferPool.getInstance());
+    }
+
+    PipelinedInputStream(@Nonnull InputStream source,
+                         @Nonnull Executor executor,
+                         int chunkSize,
+                         int numberOfChunks,
+                         @Nonnull BufferPool bufferPool) {
+        this(source, executor, chunkSize, numberOfChunks, bufferPool, DEFAULT_STALL_TIMEOUT_MILLIS);
+    }
+
+    PipelinedInputStream(@Nonnull InputStream source,
+                         @Nonnull Executor executor,
+                         int chunkSize,
+                         int numberOfChunks,
+                         @Nonnull BufferPool bufferPool,
+                         long stallTimeoutMillis) {
+        if (chunkSize < 1 || numberOfChunks < 1) {
+            throw new IllegalArgumentException("Chunk size and number of chunks must be positive.");
+        }
+        if (stallTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Stall timeout must be positive.");
+        }
+        this.stallTimeoutMillis = stallTimeoutMillis;
+        this.source = source;
+        this.bufferPool = bufferPool;
+        this.chunks = new byte[numberOfChunks][];
+        for (int i = 0; i < numberOfChunks; i++) {
+            chunks[i] = bufferPool.acquire(chunkSize);
+        }
+        this.chunkLengths = new int[numberOfChunks];
+
+        synchronized (this) {
+            submitter = Thread.currentThread();
+        }
+        try {
+            executor.execute(new Worker());
+        } catch (RejectedExecutionException e) {
+            // Fall back to reading the source directly
+            synchronized (this) {
+                state = State.direct;
+            }
+        }
+        synchronized (this) {
+            submitter = null;
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            synchronized (PipelinedInputStream.this) {
+                // An executor which runs the task on the submitting thread would block the consumer forever
+                if (state != State.pending || Thread.currentThread() == submitter) {
+                    return;
+                }
+                state = State.running;
+                PipelinedInputStream.this.notifyAll();
+            }
+
+            try {
+                fill();
+            } finally {
+                synchronized (PipelinedInputStream.this) {
+                    if (state == State.running) {
+                        state = State.stopped;
+                    }
+                    PipelinedInputStream.this.notifyAll();
+                }
+            }
+        }
+
+        private void fill() {
+            while (true) {
+                int slot;
+                synchronized (PipelinedInputStream.this) {
+                    long deadline = System.currentTimeMillis() + stallTimeoutMillis;
+                    while (count == chunks.length && !closed) {
+                        long timeout = deadline - System.currentTimeMillis();
+                        if (timeout <= 0) {
+                            // The consumer stalled or abandoned the stream without closing it.
+                            // Free the executor thread and let the consumer read the source after the ring.
+                            state = State.direct;
+                            return;
+                        }
+                        try {
+                            PipelinedInputStream.this.wait(timeout);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            failure = new InterruptedIOException("Interrupted while reading source stream.");
+                            return;
+                        }
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    slot = (head + count) % chunks.length;
+                }
+
+                // The free slot is owned by the worker until it gets published
+                int read;
+                try {
+                    read = source.read(chunks[slot], 0, chunks[slot].length);
+                } catch (IOException | RuntimeException | Error e) {
+                    synchronized (PipelinedInputStream.this) {
+                        failure = e;
+                    }
+                    return;
+                }
+
+                synchronized (PipelinedInputStream.this) {
+                    if (read == -1) {
+                        return;
+                    }
+                    if (read > 0) {
+                        chunkLengths[slot] = read;
+                        count++;
+                        PipelinedInputStream.this.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until a chunk is available.
+     * Return false if the stream ended, or if the consumer took over reading the source.
+     *
+     * @return true if a chunk is available
+     * @throws IOException if the source stream threw an exception or the consumer got interrupted
+     */
+    private synchronized boolean awaitChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed.");
+        }
+        long deadline = System.currentTimeMillis() + WORKER_START_TIMEOUT_MILLIS;
+        while (state == State.pending) {
+            long timeout = deadline - System.currentTimeMillis();
+            if (timeout <= 0) {
+                // Worker did not start in time (e.g. the executor is busy), so we take over
+                state = State.direct;
+                break;
+            }
+            try {
+                wait(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data.");
+            }
+        }
+        while (count == 0 && state == State.running) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data.");
+            }
+        }
+        if (count != 0) {
+            return true;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return false;
+    }
+
+    private synchronized boolean isDirect() {
+        return state == State.direct;
+    }
+
+    private synchronized void releaseChunk() {
+        head = (head + 1) % chunks.length;
+        count--;
+        position = 0;
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!awaitChunk()) {
+            return isDirect() ? source.read() : -1;
+        }
+
+        int b = chunks[head][position++] & 0xff;
+        if (position == chunkLengths[head]) {
+            releaseChunk();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!awaitChunk()) {
+            return isDirect() ? source.read(b, off, len) : -1;
+        }
+
+        int n = Math.min(len, chunkLengths[head] - position);
+        System.arraycopy(chunks[head], position, b, off, n);
+        position += n;
+        if (position == chunkLengths[head]) {
+            releaseChunk();
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+        if (state == State.direct && count == 0) {
+            return source.available();
+        }
+        return count == 0 ? 0 : chunkLengths[head] - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (state == State.pending) {
+                state = State.stopped;
+            }
+            notifyAll();
+            // The source must not be closed while the worker is still reading it
+            while (state == State.running) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the worker to stop.");
+                }
+            }
+            for (byte[] chunk : chunks) {
+                bufferPool.release(chunk);
+            }
+        }
+
+        if (!sourceClosed) {
+            sourceClosed = true;
+            source.close();
+        }
+    }
+}
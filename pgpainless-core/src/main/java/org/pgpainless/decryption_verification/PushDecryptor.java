@@ -0,0 +1,418 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.pgpainless.PGPainless;
+import org.pgpainless.policy.Policy;
+
+/**
+ * Push-based counterpart of {@link DecryptionStream}.
+ * Instead of pulling ciphertext from an {@link InputStream}, chunks of the encrypted and/or signed message are
+ * {@link #feed(ByteBuffer) fed} as they arrive. Plaintext and the final {@link MessageMetadata} are delivered to
+ * a {@link Callback}.
+ *
+ * Feeding data never blocks. The fed data is buffered and processed on an {@link Executor} using the same
+ * message processing (syntax checks, decryption and signature verification) as {@link DecryptionStream}.
+ * By default, processing starts once the end of the message was signalled via {@link #finish()}, so it never
+ * waits for data and the executor may be an event loop. The amount of buffered data is limited by
+ * {@link #setMaxBufferedBytes(long)}. Use {@link #getBufferedBytes()} to apply backpressure to the source of the data.
+ *
+ * Optionally, large messages can be processed while they arrive by setting a
+ * {@link #setStreamingThreshold(int) streaming threshold}. In that case, a thread of the executor blocks while
+ * processing waits for more data, so the executor MUST NOT be an event loop or run tasks on the feeding thread.
+ *
+ * Callbacks are invoked on the executor. Only if the executor rejects processing of the message, or if the
+ * buffered data exceeds the limit, {@link Callback#onError(Exception)} is invoked on the thread which fed the data.
+ */
+public final class PushDecryptor {
+
+    /**
+     * Default limit for the amount of fed data, which was not yet processed.
+     */
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 64L * 1024 * 1024;
+
+    // Streaming threshold, which disables processing before the end of the message is reached
+    private static final int STREAMING_DISABLED = -1;
+
+    private static final int PLAINTEXT_BUFFER_SIZE = 8192;
+
+    /**
+     * Receives the results of a {@link PushDecryptor}.
+     */
+    public interface Callback {
+
+        /**
+         * Called with a chunk of plaintext.
+         * The buffer is only valid during the call.
+         *
+         * @param plaintext plaintext chunk
+         */
+        void onPlaintext(@Nonnull ByteBuffer plaintext);
+
+        /**
+         * Called once the message was processed completely.
+         *
+         * @param metadata message metadata
+         */
+        void onComplete(@Nonnull MessageMetadata metadata);
+
+        /**
+         * Called if the message cannot be processed.
+         * No further callbacks follow.
+         *
+         * @param e exception
+         */
+        void onError(@Nonnull Exception e);
+    }
+
+    private final ConsumerOptions options;
+    private final Policy policy;
+    private final Executor executor;
+    private final Callback callback;
+
+    // guarded by this
+    private final Deque<byte[]> chunks = new ArrayDeque<>();
+    private int chunkOffset = 0;
+    private long bufferedBytes = 0;
+    private boolean finished = false;
+    private boolean cancelled = false;
+    private boolean started = false;
+    // set once onComplete or onError was invoked or the decryptor was cancelled
+    private boolean terminated = false;
+    private Thread startingThread;
+    private int streamingThreshold = STREAMING_DISABLED;
+    private long maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+
+    PushDecryptor(@Nonnull ConsumerOptions options,
+                  @Nonnull Policy policy,
+                  @Nonnull Executor executor,
+                  @Nonnull Callback callback) {
+        this.options = options;
+        this.policy = policy;
+        this.executor = executor;
+        this.callback = callback;
+    }
+
+    /**
+     * Create a {@link PushDecryptor}.
+     * This factory method uses the global PGPainless {@link Policy}.
+     *
+     * @param options options for consuming the message
+     * @param executor executor on which the message is processed
+     * @param callback callback for plaintext and results
+     * @return push decryptor
+     */
+    @Nonnull
+    public static PushDecryptor create(@Nonnull ConsumerOptions options,
+                                       @Nonnull Executor executor,
+                                       @Nonnull Callback callback) {
+        return new PushDecryptor(options, PGPainless.getPolicy(), executor, callback);
+    }
+
+    /**
+     * Set the amount of buffered data, after which processing starts before {@link #finish()} is called.
+     * Must be set before data is fed.
+     * Once processing started, a thread of the executor blocks while waiting for more data. Therefore, streaming
+     * MUST NOT be used with event loops or executors, which run tasks on the calling thread.
+     * The latter are detected and reported via {@link Callback#onError(Exception)}.
+     * By default, processing does not start before {@link #finish()} is called.
+     *
+     * @param streamingThreshold threshold in bytes
+     * @return this
+     */
+    @Nonnull
+    public synchronized PushDecryptor setStreamingThreshold(int streamingThreshold) {
+        if (streamingThreshold < 0) {
+            throw new IllegalArgumentException("Streaming threshold cannot be negative.");
+        }
+        this.streamingThreshold = streamingThreshold;
+        return this;
+    }
+
+    /**
+     * Set the maximum amount of fed data, which was not yet processed.
+     * If more data is fed, processing of the message fails with an {@link IOException}.
+     * Defaults to {@link #DEFAULT_MAX_BUFFERED_BYTES}.
+     *
+     * @param maxBufferedBytes limit in bytes
+     * @return this
+     */
+    @Nonnull
+    public synchronized PushDecryptor setMaxBufferedBytes(long maxBufferedBytes) {
+        if (maxBufferedBytes < 0) {
+            throw new IllegalArgumentException("Maximum amount of buffered data cannot be negative.");
+        }
+        this.maxBufferedBytes = maxBufferedBytes;
+        return this;
+    }
+
+    /**
+     * Feed the next chunk of the message.
+     * The remaining bytes of the buffer are copied, so the buffer can be reused after this method returns.
+     * If the {@link #setMaxBufferedBytes(long) limit} of buffered data is exceeded, the message is discarded and
+     * {@link Callback#onError(Exception)} is invoked.
+     *
+     * @param data chunk of the message
+     * @return this
+     */
+    @Nonnull
+    public PushDecryptor feed(@Nonnull ByteBuffer data) {
+        byte[] chunk = new byte[data.remaining()];
+        data.get(chunk);
+        boolean overflow = false;
+        synchronized (this) {
+            if (finished) {
+                throw new IllegalStateException("PushDecryptor is already finished.");
+            }
+            if (cancelled) {
+                return this;
+            }
+            if (chunk.length != 0) {
+                chunks.addLast(chunk);
+                bufferedBytes += chunk.length;
+                overflow = bufferedBytes > maxBufferedBytes;
+                notifyAll();
+            }
+        }
+        if (overflow) {
+            fail(new IOException("Buffered data exceeds the limit of " + maxBufferedBytes + " bytes."));
+            return this;
+        }
+        startIfReady();
+        return this;
+    }
+
+    /**
+     * Feed the next chunk of the message.
+     *
+     * @param data buffer
+     * @param off offset of the chunk
+     * @param len length of the chunk
+     * @return this
+     */
+    @Nonnull
+    public PushDecryptor feed(@Nonnull byte[] data, int off, int len) {
+        return feed(ByteBuffer.wrap(data, off, len));
+    }
+
+    /**
+     * Signal that the whole message was fed.
+     */
+    public void finish() {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            notifyAll();
+        }
+        startIfReady();
+    }
+
+    /**
+     * Abort processing of the message.
+     * Buffered data is discarded and no further callbacks are invoked.
+     */
+    public synchronized void cancel() {
+        terminated = true;
+        discard();
+    }
+
+    // guarded by this
+    private void discard() {
+        cancelled = true;
+        chunks.clear();
+        bufferedBytes = 0;
+        notifyAll();
+    }
+
+    /**
+     * Discard the message and report the error on the calling thread, unless the decryptor already terminated.
+     *
+     * @param e error
+     */
+    private void fail(Exception e) {
+        synchronized (this) {
+            discard();
+        }
+        if (terminate()) {
+            callback.onError(e);
+        }
+    }
+
+    /**
+     * Return true exactly once, if no final callback was invoked and the decryptor was not cancelled.
+     *
+     * @return whether the final callback may be invoked
+     */
+    private synchronized boolean terminate() {
+        if (terminated) {
+            return false;
+        }
+        terminated = true;
+        return true;
+    }
+
+    /**
+     * Return the amount of data which was fed, but not yet processed.
+     *
+     * @return buffered bytes
+     */
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    private void startIfReady() {
+        synchronized (this) {
+            if (started || cancelled) {
+                return;
+            }
+            if (!finished && (streamingThreshold == STREAMING_DISABLED || bufferedBytes < streamingThreshold)) {
+                return;
+            }
+            started = true;
+            startingThread = Thread.currentThread();
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    process();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fail(e);
+        }
+    }
+
+    private void process() {
+        synchronized (this) {
+            if (!finished && Thread.currentThread() == startingThread) {
+                // Waiting for data which can only be fed by this very thread would never end
+                discard();
+            }
+        }
+        if (isCancelled()) {
+            if (terminate()) {
+                callback.onError(new IllegalStateException("Streaming requires an executor, " +
+                        "which does not run tasks on the thread feeding the data."));
+            }
+            return;
+        }
+
+        MessageMetadata metadata;
+        try {
+            DecryptionStream decryptionStream = OpenPgpMessageInputStream.create(new FedInputStream(), options, policy);
+            byte[] buffer = new byte[PLAINTEXT_BUFFER_SIZE];
+            int read;
+            while ((read = decryptionStream.read(buffer)) != -1) {
+                if (isCancelled()) {
+                    return;
+                }
+                callback.onPlaintext(ByteBuffer.wrap(buffer, 0, read).asReadOnlyBuffer());
+            }
+            decryptionStream.close();
+            metadata = decryptionStream.getMetadata();
+        } catch (IOException | PGPException | RuntimeException e) {
+            if (!isCancelled() && terminate()) {
+                callback.onError(e);
+            }
+            return;
+        }
+
+        if (!isCancelled() && terminate()) {
+            callback.onComplete(metadata);
+        }
+    }
+
+    private synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * {@link InputStream} of the fed data.
+     */
+    private final class FedInputStream extends InputStream {
+
+        /**
+         * Wait until data is available.
+         *
+         * @return false if the end of the message is reached
+         * @throws IOException if processing was cancelled or interrupted
+         */
+        private boolean awaitData() throws IOException {
+            while (chunks.isEmpty() && !finished && !cancelled) {
+                try {
+                    PushDecryptor.this.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for data.");
+                }
+            }
+            if (cancelled) {
+                throw new IOException("PushDecryptor was cancelled.");
+            }
+            return !chunks.isEmpty();
+        }
+
+        private void consumed(byte[] chunk, int n) {
+            chunkOffset += n;
+            bufferedBytes -= n;
+            if (chunkOffset == chunk.length) {
+                chunks.removeFirst();
+                chunkOffset = 0;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            synchronized (PushDecryptor.this) {
+                if (!awaitData()) {
+                    return -1;
+                }
+                byte[] chunk = chunks.peekFirst();
+                int b = chunk[chunkOffset] & 0xff;
+                consumed(chunk, 1);
+                return b;
+            }
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            synchronized (PushDecryptor.this) {
+                if (!awaitData()) {
+                    return -1;
+                }
+
+                byte[] chunk = chunks.peekFirst();
+                int n = Math.min(len, chunk.length - chunkOffset);
+                System.arraycopy(chunk, chunkOffset, b, off, n);
+                consumed(chunk, n);
+                return n;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (PushDecryptor.this) {
+                return chunks.isEmpty() ? 0 : chunks.peekFirst().length - chunkOffset;
+            }
+        }
+    }
+}
@@ -32,6 +32,7 @@ import javax.annotation.Nonnull;
  * we need to delay teeing out that byte to signature verifiers.
  * Hence, the reading methods of the {@link TeeBCPGInputStream} handle pushing this byte to the output stream using
  * {@link DelayedTeeInputStream#squeeze()}.
+ * Only single-byte reads are delayed. Bulk reads are teed out as a whole range.
  */
 public class TeeBCPGInputStream {
 
@@ -124,20 +125,23 @@ public class TeeBCPGInputStream {
 
         @Override
         public int read(@Nonnull byte[] b, int off, int len) throws IOException {
-            if (last != -1) {
-                outputStream.write(last);
-            }
+            // Flush a byte held back by a single-byte read (e.g. the tag peeked by nextPacketTag())
+            squeeze();
 
             int r = inputStream.read(b, off, len);
             if (r > 0) {
-                outputStream.write(b, off, r - 1);
-                last = b[off + r - 1];
-            } else {
-                last = -1;
+                // BC only reads packet contents in bulk, which never extends past the current packet.
+                // Therefore, there is no need to hold back the last byte, and the whole range is teed out at once.
+                outputStream.write(b, off, r);
             }
             return r;
         }
 
+        @Override
+        public int available() throws IOException {
+            return inputStream.available();
+        }
+
         /**
          * Squeeze the last byte out and update the output stream.
          *
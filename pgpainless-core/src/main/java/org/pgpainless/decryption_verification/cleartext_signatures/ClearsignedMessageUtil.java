@@ -17,6 +17,7 @@ import org.bouncycastle.util.Strings;
 import org.pgpainless.exception.WrongConsumingMethodException;
 import org.pgpainless.implementation.ImplementationFactory;
 import org.pgpainless.util.ArmoredInputStreamFactory;
+import org.pgpainless.util.TextCanonicalizer;
 
 /**
  * Utility class to deal with cleartext-signed messages.
@@ -55,24 +56,22 @@ public final class ClearsignedMessageUtil {
 
         OutputStream out = new BufferedOutputStream(messageOutputStream);
         try {
-            ByteArrayOutputStream lineOut = new ByteArrayOutputStream();
+            // The line buffer is reused for all lines, instead of copying each line out of it
+            LineBuffer lineOut = new LineBuffer();
             int lookAhead = readInputLine(lineOut, in);
             byte[] lineSep = getLineSeparator();
 
             if (lookAhead != -1 && in.isClearText()) {
-                byte[] line = lineOut.toByteArray();
-                out.write(line, 0, getLengthWithoutSeparatorOrTrailingWhitespace(line));
+                lineOut.writeWithoutTrailingWhitespace(out);
 
                 while (lookAhead != -1 && in.isClearText()) {
                     lookAhead = readInputLine(lineOut, lookAhead, in);
-                    line = lineOut.toByteArray();
                     out.write(lineSep);
-                    out.write(line, 0, getLengthWithoutSeparatorOrTrailingWhitespace(line));
+                    lineOut.writeWithoutTrailingWhitespace(out);
                 }
             } else {
                 if (lookAhead != -1) {
-                    byte[] line = lineOut.toByteArray();
-                    out.write(line, 0, getLengthWithoutSeparatorOrTrailingWhitespace(line));
+                    lineOut.writeWithoutTrailingWhitespace(out);
                 }
             }
         } finally {
@@ -149,21 +148,13 @@ public final class ClearsignedMessageUtil {
         return nlBytes;
     }
 
-    private static int getLengthWithoutSeparatorOrTrailingWhitespace(byte[] line) {
-        int    end = line.length - 1;
+    /**
+     * {@link ByteArrayOutputStream} which gives access to its buffer, so that lines do not need to be copied.
+     */
+    private static final class LineBuffer extends ByteArrayOutputStream {
 
-        while (end >= 0 && isWhiteSpace(line[end])) {
-            end--;
+        private void writeWithoutTrailingWhitespace(OutputStream out) throws IOException {
+            out.write(buf, 0, TextCanonicalizer.lengthWithoutTrailingWhitespace(buf, 0, count));
         }
-
-        return end + 1;
-    }
-
-    private static boolean isLineEnding(byte b) {
-        return b == '\r' || b == '\n';
-    }
-
-    private static boolean isWhiteSpace(byte b) {
-        return isLineEnding(b) || b == '\t' || b == ' ';
     }
 }
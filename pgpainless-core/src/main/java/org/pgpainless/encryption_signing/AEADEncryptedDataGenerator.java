@@ -0,0 +1,315 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.bcpg.ContainedPacket;
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.bcpg.SymmetricEncIntegrityPacket;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.PBEKeyEncryptionMethodGenerator;
+import org.bouncycastle.openpgp.operator.PGPKeyEncryptionMethodGenerator;
+import org.pgpainless.algorithm.AEADAlgorithm;
+import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
+import org.pgpainless.util.AEADChunkCipher;
+import org.pgpainless.util.BufferPool;
+
+/**
+ * Generator for messages, which are encrypted using a version 2 Symmetrically Encrypted Integrity Protected
+ * Data packet (AEAD).
+ *
+ * Contrary to the CFB based version 1 packet, the chunks of a version 2 packet are encrypted independently of one
+ * another. The returned stream therefore encrypts up to {@link #DEFAULT_MAX_CHUNKS_IN_FLIGHT} chunks concurrently on
+ * the {@link Executor}, if one is provided. The encrypted chunks are written out in order.
+ * If the encryption of a chunk did not start by the time it needs to be written, the writing thread encrypts it
+ * itself. Without an executor, each chunk is encrypted on the writing thread as soon as it is complete.
+ *
+ * The session key is encrypted using version 3 PKESKs for public keys and version 6 SKESKs for passphrases,
+ * since that is what Bouncy Castles {@link org.bouncycastle.openpgp.PGPEncryptedDataGenerator} emits for
+ * version 2 packets.
+ */
+final class AEADEncryptedDataGenerator {
+
+    static final int DEFAULT_MAX_CHUNKS_IN_FLIGHT = 8;
+
+    private final SymmetricKeyAlgorithm symmetricKeyAlgorithm;
+    private final AEADAlgorithm aeadAlgorithm;
+    private final int chunkSize;
+    private final Executor executor;
+    private final int maxChunksInFlight;
+    private final List<PGPKeyEncryptionMethodGenerator> methods = new ArrayList<>();
+    private final List<PGPKeyEncryptionMethodGenerator> originalMethods = new ArrayList<>();
+    private final BufferPool bufferPool = BufferPool.getInstance();
+
+    AEADEncryptedDataGenerator(@Nonnull SymmetricKeyAlgorithm symmetricKeyAlgorithm,
+                               @Nonnull AEADAlgorithm aeadAlgorithm,
+                               int chunkSize,
+                               @Nullable Executor executor) {
+        this(symmetricKeyAlgorithm, aeadAlgorithm, chunkSize, executor, DEFAULT_MAX_CHUNKS_IN_FLIGHT);
+    }
+
+    AEADEncryptedDataGenerator(@Nonnull SymmetricKeyAlgorithm symmetricKeyAlgorithm,
+                               @Nonnull AEADAlgorithm aeadAlgorithm,
+                               int chunkSize,
+                               @Nullable Executor executor,
+                               int maxChunksInFlight) {
+        if (maxChunksInFlight < 1) {
+            throw new IllegalArgumentException("Number of chunks in flight must be positive.");
+        }
+        this.symmetricKeyAlgorithm = symmetricKeyAlgorithm;
+        this.aeadAlgorithm = aeadAlgorithm;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+        this.maxChunksInFlight = maxChunksInFlight;
+    }
+
+    /**
+     * Add the encryption methods for the session key.
+     * The methods are passed as originally added to the {@link EncryptionOptions}, as well as wrapped for
+     * concurrent session key encryption (see {@link EncryptionOptions#getConcurrentEncryptionMethods()}),
+     * in the same order.
+     *
+     * @param originalMethods original encryption methods
+     * @param methods encryption methods used to generate the encrypted session key packets
+     * @return this
+     */
+    AEADEncryptedDataGenerator addMethods(@Nonnull Collection<PGPKeyEncryptionMethodGenerator> originalMethods,
+                                          @Nonnull List<PGPKeyEncryptionMethodGenerator> methods) {
+        if (originalMethods.size() != methods.size()) {
+            throw new IllegalArgumentException("Mismatching number of encryption methods.");
+        }
+        this.originalMethods.addAll(originalMethods);
+        this.methods.addAll(methods);
+        return this;
+    }
+
+    /**
+     * Write the encrypted session key packets and the header of the encrypted data packet to the given
+     * {@link OutputStream} and return a stream, which encrypts the data written to it.
+     * Closing the returned stream finishes the packet, but does not close the underlying stream.
+     *
+     * @param out output stream
+     * @param buffer buffer for the partial body chunks of the encrypted data packet
+     * @return encrypting output stream
+     *
+     * @throws IOException in case of an IO error
+     * @throws PGPException if the session key cannot be encrypted
+     */
+    OutputStream open(@Nonnull OutputStream out, @Nonnull byte[] buffer)
+            throws IOException, PGPException {
+        if (methods.isEmpty()) {
+            throw new IllegalStateException("No encryption methods specified.");
+        }
+        SecureRandom random = new SecureRandom();
+        int algorithmId = symmetricKeyAlgorithm.getAlgorithmId();
+        byte[] sessionKey = PGPUtil.makeRandomKey(algorithmId, random);
+        byte[] salt = new byte[AEADChunkCipher.SALT_LENGTH];
+        random.nextBytes(salt);
+        AEADChunkCipher cipher = AEADChunkCipher.create(symmetricKeyAlgorithm, aeadAlgorithm, chunkSize, sessionKey, salt);
+
+        byte[] sessionInfo = createSessionInfo(algorithmId, sessionKey);
+        writeEncryptedSessionKeys(out, originalMethods, methods, algorithmId, aeadAlgorithm, sessionInfo);
+
+        BCPGOutputStream packetOut = new BCPGOutputStream(out, PacketTags.SYM_ENC_INTEGRITY_PRO, buffer);
+        packetOut.write(SymmetricEncIntegrityPacket.VERSION_2);
+        packetOut.write(algorithmId);
+        packetOut.write(aeadAlgorithm.getAlgorithmId());
+        packetOut.write(chunkSize);
+        packetOut.write(salt);
+        return new ChunkEncryptionStream(packetOut, cipher);
+    }
+
+    /**
+     * Write the encrypted session key packets, which precede a version 2 SEIPD packet.
+     *
+     * @param out output stream
+     * @param originalMethods encryption methods as added to the {@link EncryptionOptions}
+     * @param methods encryption methods used to generate the packets, in the same order
+     * @param algorithmId symmetric key algorithm of the encrypted data
+     * @param aeadAlgorithm AEAD algorithm of the encrypted data
+     * @param sessionInfo algorithm id, session key and checksum
+     *
+     * @throws IOException in case of an IO error
+     * @throws PGPException if the session key cannot be encrypted
+     */
+    static void writeEncryptedSessionKeys(@Nonnull OutputStream out,
+                                          @Nonnull List<PGPKeyEncryptionMethodGenerator> originalMethods,
+                                          @Nonnull List<PGPKeyEncryptionMethodGenerator> methods,
+                                          int algorithmId,
+                                          @Nonnull AEADAlgorithm aeadAlgorithm,
+                                          @Nonnull byte[] sessionInfo)
+            throws IOException, PGPException {
+        for (int i = 0; i < methods.size(); i++) {
+            PGPKeyEncryptionMethodGenerator originalMethod = originalMethods.get(i);
+            ContainedPacket esk;
+            if (originalMethod instanceof PBEKeyEncryptionMethodGenerator) {
+                // BC only accepts version 6 SKESKs in front of version 2 SEIPD packets
+                int kekAlgorithm = ((PBEKeyEncryptionMethodGenerator) originalMethod)
+                        .getSessionKeyWrapperAlgorithm(algorithmId);
+                esk = methods.get(i).generateV6(kekAlgorithm, aeadAlgorithm.getAlgorithmId(), sessionInfo);
+            } else {
+                esk = methods.get(i).generate(algorithmId, sessionInfo);
+            }
+            out.write(esk.getEncoded());
+        }
+    }
+
+    private static byte[] createSessionInfo(int algorithm, byte[] sessionKey) {
+        byte[] sessionInfo = new byte[sessionKey.length + 3];
+        sessionInfo[0] = (byte) algorithm;
+        System.arraycopy(sessionKey, 0, sessionInfo, 1, sessionKey.length);
+        int checksum = 0;
+        for (byte b : sessionKey) {
+            checksum += b & 0xff;
+        }
+        sessionInfo[sessionInfo.length - 2] = (byte) (checksum >> 8);
+        sessionInfo[sessionInfo.length - 1] = (byte) checksum;
+        return sessionInfo;
+    }
+
+    private final class ChunkEncryptionStream extends OutputStream {
+
+        private final BCPGOutputStream packetOut;
+        private final AEADChunkCipher cipher;
+        private final int chunkLength;
+        private final ArrayDeque<FutureTask<byte[]>> pending = new ArrayDeque<>();
+
+        private byte[] chunk;
+        private int position = 0;
+        private long chunkIndex = 0;
+        private long totalLength = 0;
+        private boolean closed = false;
+
+        private ChunkEncryptionStream(BCPGOutputStream packetOut, AEADChunkCipher cipher) {
+            this.packetOut = packetOut;
+            this.cipher = cipher;
+            this.chunkLength = cipher.getChunkLength();
+            this.chunk = bufferPool.acquire(chunkLength);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            chunk[position++] = (byte) b;
+            if (position == chunkLength) {
+                submitChunk();
+            }
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, chunkLength - position);
+                System.arraycopy(b, off, chunk, position, n);
+                position += n;
+                off += n;
+                len -= n;
+                if (position == chunkLength) {
+                    submitChunk();
+                }
+            }
+        }
+
+        private void submitChunk() throws IOException {
+            final byte[] plaintext = chunk;
+            final int length = position;
+            final long index = chunkIndex++;
+            totalLength += length;
+            chunk = bufferPool.acquire(chunkLength);
+            position = 0;
+
+            FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws PGPException {
+                    try {
+                        return cipher.encryptChunk(index, plaintext, 0, length);
+                    } finally {
+                        bufferPool.release(plaintext);
+                    }
+                }
+            });
+            pending.addLast(task);
+            if (executor != null) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // The task will be run by the writing thread
+                }
+            }
+            if (executor == null || pending.size() >= maxChunksInFlight) {
+                writeChunk();
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            FutureTask<byte[]> task = pending.removeFirst();
+            // Does nothing if the task already started on the executor
+            task.run();
+            try {
+                packetOut.write(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encrypting chunk.");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException("Cannot encrypt chunk.", cause);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            packetOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (position > 0) {
+                    submitChunk();
+                }
+                while (!pending.isEmpty()) {
+                    writeChunk();
+                }
+                packetOut.write(cipher.finalTag(chunkIndex, totalLength));
+            } catch (PGPException e) {
+                throw new IOException("Cannot compute final authentication tag.", e);
+            } finally {
+                for (FutureTask<byte[]> task : pending) {
+                    task.cancel(false);
+                }
+                pending.clear();
+                bufferPool.release(chunk);
+            }
+            packetOut.finish();
+            packetOut.flush();
+        }
+    }
+}
@@ -36,7 +36,7 @@ import org.pgpainless.algorithm.PublicKeyAlgorithm;
  * This can come in handy to sign data, which was already processed to calculate the hash context, without the
  * need to process it again to calculate the OpenPGP signature.
  */
-class BcPGPHashContextContentSignerBuilder extends PGPHashContextContentSignerBuilder {
+public class BcPGPHashContextContentSignerBuilder extends PGPHashContextContentSignerBuilder {
 
     private final BcPGPKeyConverter keyConverter = new BcPGPKeyConverter();
     private final MessageDigest messageDigest;
@@ -97,7 +97,19 @@ class BcPGPHashContextContentSignerBuilder extends PGPHashContextContentSignerBu
         };
     }
 
-    static Signer createSigner(
+    /**
+     * Create a {@link Signer} for the given key algorithm, which operates on the given hash context.
+     * The signer does not reset the hash context, so it can be used to sign or verify data, which was already
+     * processed.
+     *
+     * @param keyAlgorithm public key algorithm
+     * @param messageDigest hash context
+     * @param keyParam private key parameters for signing, public key parameters for verification
+     * @return signer
+     *
+     * @throws PGPException if the key algorithm is not supported
+     */
+    public static Signer createSigner(
             PublicKeyAlgorithm keyAlgorithm,
             MessageDigest messageDigest,
             CipherParameters keyParam)
@@ -6,44 +6,53 @@
 package org.pgpainless.encryption_signing;
 
 import org.pgpainless.algorithm.StreamEncoding;
+import org.pgpainless.util.TextCanonicalizer;
 
+import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.OutputStream;
 
 /**
  * {@link OutputStream} which applies CR-LF encoding of its input data, based on the desired {@link StreamEncoding}.
  * This implementation originates from the Bouncy Castle library.
+ * Line endings are converted in bulk using a {@link TextCanonicalizer}.
  */
 public class CRLFGeneratorStream extends OutputStream {
 
     protected final OutputStream crlfOut;
     private final boolean isBinary;
-    private int lastB = 0;
+    private final TextCanonicalizer canonicalizer;
 
     public CRLFGeneratorStream(OutputStream crlfOut, StreamEncoding encoding) {
         this.crlfOut = crlfOut;
         this.isBinary = encoding == StreamEncoding.BINARY;
+        this.canonicalizer = new TextCanonicalizer(new TextCanonicalizer.Sink() {
+            @Override
+            public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+                crlfOut.write(b, off, len);
+            }
+        }, false);
     }
 
     public void write(int b) throws IOException {
-        if (!isBinary) {
-            if (b == '\n' && lastB != '\r') {   // Unix
-                crlfOut.write('\r');
-            } else if (lastB == '\r') {         // MAC
-                if (b != '\n') {
-                    crlfOut.write('\n');
-                }
-            }
-            lastB = b;
+        if (isBinary) {
+            crlfOut.write(b);
+        } else {
+            canonicalizer.update((byte) b);
         }
+    }
 
-        crlfOut.write(b);
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        if (isBinary) {
+            crlfOut.write(b, off, len);
+        } else {
+            canonicalizer.update(b, off, len);
+        }
     }
 
     public void close() throws IOException {
-        if (!isBinary && lastB == '\r') {       // MAC
-            crlfOut.write('\n');
-        }
+        canonicalizer.finish();
         crlfOut.close();
     }
 
@@ -0,0 +1,58 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import java.util.zip.Deflater;
+import javax.annotation.Nonnull;
+
+/**
+ * Estimates whether data is worth compressing by deflating a sample of it at the fastest level.
+ * Data which is already compressed (images, archives, PDFs...) hardly shrinks, or even grows.
+ */
+final class CompressibilityEstimator {
+
+    /**
+     * Data is only considered compressible, if the sample shrinks to at most this fraction of its size.
+     */
+    static final double MAX_COMPRESSION_RATIO = 0.9;
+
+    private static final int OUTPUT_BUFFER_SIZE = 4096;
+
+    private CompressibilityEstimator() {
+
+    }
+
+    /**
+     * Return true, if the given sample compresses well enough to justify compressing the data.
+     *
+     * @param sample buffer containing the sample
+     * @param off offset of the sample
+     * @param len length of the sample
+     * @return true if the data is compressible
+     */
+    static boolean isCompressible(@Nonnull byte[] sample, int off, int len) {
+        if (len == 0) {
+            return false;
+        }
+        long limit = (long) (len * MAX_COMPRESSION_RATIO);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, off, len);
+            deflater.finish();
+            byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+            long compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(output);
+                if (compressed > limit) {
+                    // No need to compress the rest of the sample
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            deflater.end();
+        }
+    }
+}
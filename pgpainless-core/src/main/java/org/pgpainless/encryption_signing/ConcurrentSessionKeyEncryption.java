@@ -0,0 +1,143 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.bcpg.ContainedPacket;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.operator.PBEKeyEncryptionMethodGenerator;
+import org.bouncycastle.openpgp.operator.PGPKeyEncryptionMethodGenerator;
+
+/**
+ * Encrypts the session key of a message for multiple {@link PGPKeyEncryptionMethodGenerator PGPKeyEncryptionMethodGenerators}
+ * concurrently.
+ *
+ * BCs {@link org.bouncycastle.openpgp.PGPEncryptedDataGenerator} generates the encrypted session key packets one
+ * after another by calling {@link PGPKeyEncryptionMethodGenerator#generate(int, byte[])} on each of its methods
+ * in order. The methods returned by {@link #getMethods()} wrap the original methods. The first call to one of them
+ * submits the session key encryption for all methods to the {@link Executor}. Each call then returns the packet of
+ * its own method, so the packets are still written in the order in which the methods were added.
+ *
+ * If a task did not start by the time its packet is requested, it is run on the calling thread instead.
+ * That way, a busy or bounded executor cannot block the encryption.
+ */
+final class ConcurrentSessionKeyEncryption {
+
+    private final List<PGPKeyEncryptionMethodGenerator> delegates;
+    private final Executor executor;
+    private final List<PGPKeyEncryptionMethodGenerator> methods;
+
+    // guarded by this
+    private int encAlgorithm;
+    private byte[] sessionInfo;
+    private List<FutureTask<ContainedPacket>> tasks;
+
+    ConcurrentSessionKeyEncryption(@Nonnull Collection<PGPKeyEncryptionMethodGenerator> delegates,
+                                   @Nonnull Executor executor) {
+        this.delegates = new ArrayList<>(delegates);
+        this.executor = executor;
+        this.methods = new ArrayList<>(this.delegates.size());
+        for (int i = 0; i < this.delegates.size(); i++) {
+            PGPKeyEncryptionMethodGenerator delegate = this.delegates.get(i);
+            // BC treats messages with a single passphrase specially, which requires the original method
+            methods.add(delegates.size() == 1 && delegate instanceof PBEKeyEncryptionMethodGenerator ?
+                    delegate : new Method(i));
+        }
+    }
+
+    /**
+     * Return the methods which encrypt the session key concurrently, in the order of the original methods.
+     *
+     * @return methods
+     */
+    @Nonnull
+    List<PGPKeyEncryptionMethodGenerator> getMethods() {
+        return methods;
+    }
+
+    private synchronized FutureTask<ContainedPacket> getTask(int index, final int encAlgorithm, final byte[] sessionInfo) {
+        if (tasks == null || encAlgorithm != this.encAlgorithm || !Arrays.equals(sessionInfo, this.sessionInfo)) {
+            // New session key, so encrypt it for all methods
+            this.encAlgorithm = encAlgorithm;
+            this.sessionInfo = sessionInfo.clone();
+            tasks = new ArrayList<>(delegates.size());
+            for (final PGPKeyEncryptionMethodGenerator delegate : delegates) {
+                tasks.add(new FutureTask<>(new Callable<ContainedPacket>() {
+                    @Override
+                    public ContainedPacket call() throws PGPException {
+                        return delegate.generate(encAlgorithm, sessionInfo);
+                    }
+                }));
+            }
+            for (FutureTask<ContainedPacket> task : tasks) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // The task will be run by the thread which requests its packet
+                    break;
+                }
+            }
+        }
+        return tasks.get(index);
+    }
+
+    private ContainedPacket generate(int index, int encAlgorithm, byte[] sessionInfo) throws PGPException {
+        FutureTask<ContainedPacket> task = getTask(index, encAlgorithm, sessionInfo);
+        // Does nothing if the task already started on the executor
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PGPException("Interrupted while encrypting the session key.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof PGPException) {
+                throw (PGPException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new PGPException("Cannot encrypt the session key.", (Exception) cause);
+        }
+    }
+
+    private final class Method extends PGPKeyEncryptionMethodGenerator {
+
+        private final int index;
+
+        private Method(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public ContainedPacket generate(int encAlgorithm, byte[] sessionInfo) throws PGPException {
+            return ConcurrentSessionKeyEncryption.this.generate(index, encAlgorithm, sessionInfo);
+        }
+
+        @Override
+        public ContainedPacket generateV5(int kekAlgorithm, int aeadAlgorithm, byte[] sessionInfo) throws PGPException {
+            return delegates.get(index).generateV5(kekAlgorithm, aeadAlgorithm, sessionInfo);
+        }
+
+        @Override
+        public ContainedPacket generateV6(int kekAlgorithm, int aeadAlgorithm, byte[] sessionInfo) throws PGPException {
+            return delegates.get(index).generateV6(kekAlgorithm, aeadAlgorithm, sessionInfo);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import java.security.MessageDigest;
+import javax.annotation.Nonnull;
+
+/**
+ * {@link MessageDigest} whose state is provided later on.
+ * This is used to create {@link org.bouncycastle.openpgp.PGPSignatureGenerator PGPSignatureGenerators} up front,
+ * while the signed data is hashed into a {@link org.pgpainless.signature.SharedDigests shared digest}.
+ * Once the data is hashed, a copy of the shared digest is handed to this digest via {@link #resolve(MessageDigest)},
+ * so that the signature trailer can be appended to it.
+ *
+ * Since BCs {@link org.bouncycastle.openpgp.PGPSignatureGenerator} first finishes the digest to calculate the
+ * signature and then asks for the digest again to determine the left 16 bits of the hash, the result of the first
+ * call to {@link #digest()} is retained.
+ */
+final class DeferredMessageDigest extends MessageDigest {
+
+    private final int digestLength;
+    private MessageDigest delegate;
+    private byte[] result;
+
+    DeferredMessageDigest(@Nonnull MessageDigest prototype) {
+        super(prototype.getAlgorithm());
+        this.digestLength = prototype.getDigestLength();
+    }
+
+    /**
+     * Provide the state of the digest.
+     *
+     * @param digest digest
+     */
+    void resolve(@Nonnull MessageDigest digest) {
+        this.delegate = digest;
+        this.result = null;
+    }
+
+    private MessageDigest requireDelegate() {
+        if (delegate == null) {
+            throw new IllegalStateException("Shared digest was not yet resolved.");
+        }
+        return delegate;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return digestLength;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        requireDelegate().update(input);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        requireDelegate().update(input, offset, len);
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        if (result == null) {
+            result = requireDelegate().digest();
+        }
+        return result.clone();
+    }
+
+    @Override
+    protected void engineReset() {
+        // The state is owned by the shared digest
+    }
+}
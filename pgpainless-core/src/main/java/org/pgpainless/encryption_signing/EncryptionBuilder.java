@@ -6,6 +6,7 @@ package org.pgpainless.encryption_signing;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -17,6 +18,7 @@ import org.pgpainless.algorithm.CompressionAlgorithm;
 import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
 import org.pgpainless.algorithm.negotiation.SymmetricKeyAlgorithmNegotiator;
 import org.pgpainless.key.SubkeyIdentifier;
+import org.pgpainless.util.ChannelOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +34,11 @@ public class EncryptionBuilder implements EncryptionBuilderInterface {
         return new WithOptionsImpl();
     }
 
+    @Override
+    public WithOptions onOutputChannel(@Nonnull WritableByteChannel channel) {
+        return onOutputStream(new ChannelOutputStream(channel));
+    }
+
     class WithOptionsImpl implements WithOptions {
         @Override
         public EncryptionStream withOptions(ProducerOptions options) throws PGPException, IOException {
@@ -40,6 +47,42 @@ public class EncryptionBuilder implements EncryptionBuilderInterface {
             }
             return new EncryptionStream(outputStream, options);
         }
+
+        @Override
+        public EncryptionStream withTemplate(ProducerTemplate template) throws PGPException, IOException {
+            if (template == null) {
+                throw new NullPointerException("ProducerTemplate cannot be null.");
+            }
+            return withOptions(template.createProducerOptions());
+        }
+    }
+
+    @Override
+    public WithOutputStreams onOutputStreams() {
+        return new WithOutputStreamsImpl();
+    }
+
+    static class WithOutputStreamsImpl implements WithOutputStreams {
+
+        private final List<EncryptionStream.Output> outputs = new ArrayList<>();
+
+        @Override
+        public WithOutputStreams addOutputStream(@Nonnull OutputStream outputStream,
+                                                 @Nonnull EncryptionOptions encryptionOptions) {
+            outputs.add(new EncryptionStream.Output(outputStream, encryptionOptions));
+            return this;
+        }
+
+        @Override
+        public EncryptionStream withOptions(ProducerOptions options) throws PGPException, IOException {
+            if (options == null) {
+                throw new NullPointerException("ProducerOptions cannot be null.");
+            }
+            if (options.getEncryptionOptions() != null) {
+                throw new IllegalArgumentException("EncryptionOptions must be set per output stream.");
+            }
+            return new EncryptionStream(new ArrayList<>(outputs), options);
+        }
     }
 
     /**
@@ -6,6 +6,7 @@ package org.pgpainless.encryption_signing;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import javax.annotation.Nonnull;
 
 import org.bouncycastle.openpgp.PGPException;
@@ -21,6 +22,26 @@ public interface EncryptionBuilderInterface {
      */
     WithOptions onOutputStream(@Nonnull OutputStream outputStream);
 
+    /**
+     * Create an {@link EncryptionStream} which writes the encrypted and/or signed data to a
+     * {@link WritableByteChannel}.
+     * The data is collected in a direct buffer and written to the channel in large chunks.
+     * Closing the {@link EncryptionStream} flushes the buffer, but does not close the channel.
+     *
+     * @param channel channel for the encrypted and/or signed data
+     * @return api handle
+     */
+    WithOptions onOutputChannel(@Nonnull WritableByteChannel channel);
+
+    /**
+     * Create an {@link EncryptionStream} which writes the same message to multiple {@link OutputStream OutputStreams},
+     * each of which is encrypted for its own recipients.
+     * The plain data is compressed and signed only once for all outputs.
+     *
+     * @return api handle
+     */
+    WithOutputStreams onOutputStreams();
+
     interface WithOptions {
 
         /**
@@ -34,5 +55,44 @@ public interface EncryptionBuilderInterface {
          */
         EncryptionStream withOptions(ProducerOptions options) throws PGPException, IOException;
 
+        /**
+         * Create an {@link EncryptionStream} from a compiled {@link ProducerTemplate}.
+         * Only the signature generators and encryption streams of the message are created, the keys and algorithms
+         * are taken from the template.
+         *
+         * @param template template
+         * @return encryption stream
+         *
+         * @throws PGPException if something goes wrong during encryption stream preparation
+         * @throws IOException if something goes wrong during encryption stream preparation (writing headers)
+         */
+        EncryptionStream withTemplate(ProducerTemplate template) throws PGPException, IOException;
+
+    }
+
+    interface WithOutputStreams {
+
+        /**
+         * Add an output, to which the message is written encrypted using the given encryption options.
+         *
+         * @param outputStream output stream of the encrypted message
+         * @param encryptionOptions recipients and passphrases of this output
+         * @return api handle
+         */
+        WithOutputStreams addOutputStream(@Nonnull OutputStream outputStream,
+                                          @Nonnull EncryptionOptions encryptionOptions);
+
+        /**
+         * Create an {@link EncryptionStream} with the given options (signers, algorithms...), which writes to all
+         * added outputs.
+         * The options must not contain {@link EncryptionOptions}, since those are set per output.
+         *
+         * @param options options
+         * @return encryption stream
+         *
+         * @throws PGPException if something goes wrong during encryption stream preparation
+         * @throws IOException if something goes wrong during encryption stream preparation (writing headers)
+         */
+        EncryptionStream withOptions(ProducerOptions options) throws PGPException, IOException;
     }
 }
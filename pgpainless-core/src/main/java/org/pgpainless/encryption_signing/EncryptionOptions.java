@@ -4,6 +4,7 @@
 
 package org.pgpainless.encryption_signing;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -13,7 +14,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPPublicKeyRing;
@@ -21,6 +24,7 @@ import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
 import org.bouncycastle.openpgp.operator.PBEKeyEncryptionMethodGenerator;
 import org.bouncycastle.openpgp.operator.PGPKeyEncryptionMethodGenerator;
 import org.bouncycastle.openpgp.operator.PublicKeyKeyEncryptionMethodGenerator;
+import org.pgpainless.algorithm.AEADAlgorithm;
 import org.pgpainless.algorithm.EncryptionPurpose;
 import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
 import org.pgpainless.exception.KeyException;
@@ -29,6 +33,8 @@ import org.pgpainless.key.OpenPgpFingerprint;
 import org.pgpainless.key.SubkeyIdentifier;
 import org.pgpainless.key.info.KeyAccessor;
 import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.info.KeyRingInfoCache;
+import org.pgpainless.util.AEADChunkCipher;
 import org.pgpainless.util.Passphrase;
 
 /**
@@ -59,14 +65,25 @@ import org.pgpainless.util.Passphrase;
  */
 public class EncryptionOptions {
 
+    /**
+     * Default chunk size octet for AEAD encrypted messages (chunks of 256 KiB).
+     */
+    public static final int DEFAULT_AEAD_CHUNK_SIZE = 12;
+
     private final EncryptionPurpose purpose;
     private final Set<PGPKeyEncryptionMethodGenerator> encryptionMethods = new LinkedHashSet<>();
+    // passphrases of the methods added via addPassphrase(), used to create fresh methods for each message of a template
+    private final Map<PGPKeyEncryptionMethodGenerator, Passphrase> passphrases = new HashMap<>();
     private final Set<SubkeyIdentifier> encryptionKeys = new LinkedHashSet<>();
     private final Map<SubkeyIdentifier, KeyRingInfo> keyRingInfo = new HashMap<>();
     private final Map<SubkeyIdentifier, KeyAccessor> keyViews = new HashMap<>();
     private final EncryptionKeySelector encryptionKeySelector = encryptToAllCapableSubkeys();
 
     private SymmetricKeyAlgorithm encryptionAlgorithmOverride = null;
+    private Executor sessionKeyEncryptionExecutor = null;
+    private AEADAlgorithm aeadAlgorithm = null;
+    private int aeadChunkSize = DEFAULT_AEAD_CHUNK_SIZE;
+    private Executor chunkEncryptionExecutor = null;
 
     /**
      * Encrypt to keys both carrying the key flag {@link org.pgpainless.algorithm.KeyFlag#ENCRYPT_COMMS}
@@ -171,7 +188,7 @@ public class EncryptionOptions {
     public EncryptionOptions addRecipient(@Nonnull PGPPublicKeyRing key,
                                           @Nonnull CharSequence userId,
                                           @Nonnull EncryptionKeySelector encryptionKeySelectionStrategy) {
-        KeyRingInfo info = new KeyRingInfo(key, new Date());
+        KeyRingInfo info = KeyRingInfoCache.inspect(key, new Date());
 
         List<PGPPublicKey> encryptionSubkeys = encryptionKeySelectionStrategy
                 .selectEncryptionSubkeys(info.getEncryptionSubkeys(userId.toString(), purpose));
@@ -237,7 +254,7 @@ public class EncryptionOptions {
     private EncryptionOptions addAsRecipient(PGPPublicKeyRing key, EncryptionKeySelector encryptionKeySelectionStrategy, boolean wildcardKeyId) {
         Date evaluationDate = new Date();
         KeyRingInfo info;
-        info = new KeyRingInfo(key, evaluationDate);
+        info = KeyRingInfoCache.inspect(key, evaluationDate);
 
         Date primaryKeyExpiration;
         try {
@@ -287,6 +304,7 @@ public class EncryptionOptions {
         }
         PBEKeyEncryptionMethodGenerator encryptionMethod = ImplementationFactory
                 .getInstance().getPBEKeyEncryptionMethodGenerator(passphrase);
+        passphrases.put(encryptionMethod, new Passphrase(passphrase.getChars()));
         return addEncryptionMethod(encryptionMethod);
     }
 
@@ -307,7 +325,164 @@ public class EncryptionOptions {
     }
 
     Set<PGPKeyEncryptionMethodGenerator> getEncryptionMethods() {
-        return new HashSet<>(encryptionMethods);
+        // Keep the order, so that the encrypted session key packets are written in a deterministic order
+        return new LinkedHashSet<>(encryptionMethods);
+    }
+
+    /**
+     * Set an {@link Executor} on which the session key is encrypted for the recipients.
+     * By default, the session key is encrypted for one recipient after another on the calling thread, before the
+     * first byte of the message is written. For messages with many recipients, this asymmetric encryption dominates
+     * the time to the first byte. If an executor is set, the session key is encrypted for all recipients
+     * concurrently instead. The encrypted session keys are still written in the order in which the recipients
+     * were added.
+     *
+     * @param executor executor for session key encryption or null
+     * @return this
+     */
+    public EncryptionOptions setSessionKeyEncryptionExecutor(@Nullable Executor executor) {
+        this.sessionKeyEncryptionExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Return the {@link Executor} for session key encryption or null, if no executor was set.
+     *
+     * @return executor
+     */
+    public @Nullable Executor getSessionKeyEncryptionExecutor() {
+        return sessionKeyEncryptionExecutor;
+    }
+
+    /**
+     * Return the encryption methods, which encrypt the session key on the
+     * {@link #setSessionKeyEncryptionExecutor(Executor) session key encryption executor}, if one is set.
+     *
+     * @return encryption methods
+     */
+    List<PGPKeyEncryptionMethodGenerator> getConcurrentEncryptionMethods() {
+        Set<PGPKeyEncryptionMethodGenerator> methods = getEncryptionMethods();
+        if (sessionKeyEncryptionExecutor == null || methods.size() < 2) {
+            return new ArrayList<>(methods);
+        }
+        return new ConcurrentSessionKeyEncryption(methods, sessionKeyEncryptionExecutor).getMethods();
+    }
+
+    /**
+     * Encrypt the message using a version 2 Symmetrically Encrypted Integrity Protected Data packet with the given
+     * AEAD algorithm, instead of a version 1 packet (CFB mode with modification detection code).
+     * Note, that AEAD encryption is only supported in combination with AES and that not all implementations
+     * can decrypt such messages yet.
+     * Passing null restores the default (version 1 packet).
+     *
+     * @param aeadAlgorithm AEAD algorithm or null
+     * @return this
+     */
+    public EncryptionOptions setAEADAlgorithm(@Nullable AEADAlgorithm aeadAlgorithm) {
+        this.aeadAlgorithm = aeadAlgorithm;
+        return this;
+    }
+
+    /**
+     * Return the AEAD algorithm used to encrypt the message, or null, if the message is encrypted using
+     * a version 1 packet.
+     *
+     * @return AEAD algorithm
+     */
+    public @Nullable AEADAlgorithm getAEADAlgorithm() {
+        return aeadAlgorithm;
+    }
+
+    /**
+     * Set the chunk size octet for AEAD encryption.
+     * The plaintext is split into chunks of <pre>2^(chunkSize + 6)</pre> octets, each of which is encrypted and
+     * authenticated independently. A decrypting party releases a chunk only once its authentication tag was
+     * verified, so it needs to buffer at least one chunk.
+     * Defaults to {@link #DEFAULT_AEAD_CHUNK_SIZE}.
+     *
+     * @param chunkSize chunk size octet between {@link AEADChunkCipher#MIN_CHUNK_SIZE} and
+     *                  {@link AEADChunkCipher#MAX_CHUNK_SIZE}
+     * @return this
+     */
+    public EncryptionOptions setAEADChunkSize(int chunkSize) {
+        if (chunkSize < AEADChunkCipher.MIN_CHUNK_SIZE || chunkSize > AEADChunkCipher.MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size octet MUST be between " + AEADChunkCipher.MIN_CHUNK_SIZE +
+                    " and " + AEADChunkCipher.MAX_CHUNK_SIZE + ".");
+        }
+        this.aeadChunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Return the chunk size octet for AEAD encryption.
+     *
+     * @return chunk size octet
+     */
+    public int getAEADChunkSize() {
+        return aeadChunkSize;
+    }
+
+    /**
+     * Set an {@link Executor} on which the chunks of an AEAD encrypted message are encrypted.
+     * By default, each chunk is encrypted on the writing thread. If an executor is set, multiple chunks are encrypted
+     * concurrently instead, while the encrypted chunks are still written in order.
+     * This setting has no effect, unless an {@link #setAEADAlgorithm(AEADAlgorithm) AEAD algorithm} is set.
+     *
+     * @param executor executor for chunk encryption or null
+     * @return this
+     */
+    public EncryptionOptions setChunkEncryptionExecutor(@Nullable Executor executor) {
+        this.chunkEncryptionExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Return the {@link Executor} for chunk encryption or null, if no executor was set.
+     *
+     * @return executor
+     */
+    public @Nullable Executor getChunkEncryptionExecutor() {
+        return chunkEncryptionExecutor;
+    }
+
+    /**
+     * Return a copy of these options, which encrypts using the same encryption methods and settings, but the given
+     * symmetric key algorithm.
+     * The copy does not contain the evaluated recipient keys, so no algorithm negotiation takes place when it is used.
+     * This is used to create the encryption options of a message from a {@link ProducerTemplate}.
+     * <p>
+     * A {@link PBEKeyEncryptionMethodGenerator} caches its S2K salt and therefore its key encryption key.
+     * Sharing it between messages would encrypt the session keys of all messages with the same key and - since
+     * symmetric-key encrypted session key packets use CFB mode with an all-zero IV - the same key stream.
+     * Therefore, passphrase methods are never shared. Instead, the copy contains fresh methods for the same passphrases.
+     *
+     * @param encryptionAlgorithm symmetric key algorithm used to encrypt the message, or null if no encryption methods are set
+     * @return copy
+     *
+     * @throws IllegalArgumentException if a passphrase method was added via
+     * {@link #addEncryptionMethod(PGPKeyEncryptionMethodGenerator)}, since its passphrase is unknown
+     */
+    EncryptionOptions copyWithAlgorithm(@Nullable SymmetricKeyAlgorithm encryptionAlgorithm) {
+        EncryptionOptions copy = new EncryptionOptions(purpose);
+        for (PGPKeyEncryptionMethodGenerator method : encryptionMethods) {
+            if (!(method instanceof PBEKeyEncryptionMethodGenerator)) {
+                copy.encryptionMethods.add(method);
+                continue;
+            }
+            Passphrase passphrase = passphrases.get(method);
+            if (passphrase == null) {
+                throw new IllegalArgumentException("Passphrase-based encryption methods can only be reused if they " +
+                        "were added via addPassphrase().");
+            }
+            copy.addPassphrase(passphrase);
+        }
+        copy.encryptionKeys.addAll(encryptionKeys);
+        copy.encryptionAlgorithmOverride = encryptionAlgorithm;
+        copy.sessionKeyEncryptionExecutor = sessionKeyEncryptionExecutor;
+        copy.aeadAlgorithm = aeadAlgorithm;
+        copy.aeadChunkSize = aeadChunkSize;
+        copy.chunkEncryptionExecutor = chunkEncryptionExecutor;
+        return copy;
     }
 
     Map<SubkeyIdentifier, KeyRingInfo> getKeyRingInfo() {
@@ -23,6 +23,7 @@ public final class EncryptionResult {
 
     private final SymmetricKeyAlgorithm encryptionAlgorithm;
     private final CompressionAlgorithm compressionAlgorithm;
+    private final boolean compressionSkipped;
 
     private final MultiMap<SubkeyIdentifier, PGPSignature> detachedSignatures;
     private final Set<SubkeyIdentifier> recipients;
@@ -32,6 +33,7 @@ public final class EncryptionResult {
 
     private EncryptionResult(SymmetricKeyAlgorithm encryptionAlgorithm,
                              CompressionAlgorithm compressionAlgorithm,
+                             boolean compressionSkipped,
                              MultiMap<SubkeyIdentifier, PGPSignature> detachedSignatures,
                              Set<SubkeyIdentifier> recipients,
                              String fileName,
@@ -39,6 +41,7 @@ public final class EncryptionResult {
                              StreamEncoding encoding) {
         this.encryptionAlgorithm = encryptionAlgorithm;
         this.compressionAlgorithm = compressionAlgorithm;
+        this.compressionSkipped = compressionSkipped;
         this.detachedSignatures = detachedSignatures;
         this.recipients = Collections.unmodifiableSet(recipients);
         this.fileName = fileName;
@@ -64,6 +67,17 @@ public final class EncryptionResult {
         return compressionAlgorithm;
     }
 
+    /**
+     * Return true, if {@link ProducerOptions#setAdaptiveCompression(boolean) adaptive compression} was enabled and
+     * the data turned out to be incompressible, so that it was not compressed.
+     * In that case, {@link #getCompressionAlgorithm()} returns {@link CompressionAlgorithm#UNCOMPRESSED}.
+     *
+     * @return true if compression was skipped
+     */
+    public boolean isCompressionSkipped() {
+        return compressionSkipped;
+    }
+
     /**
      * Return a {@link MultiMap} of key identifiers and detached signatures that were generated for the message.
      * Each key of the map represents a signing key, which has one or more detached signatures associated with it.
@@ -152,6 +166,7 @@ public final class EncryptionResult {
 
         private SymmetricKeyAlgorithm encryptionAlgorithm;
         private CompressionAlgorithm compressionAlgorithm;
+        private boolean compressionSkipped = false;
 
         private final MultiMap<SubkeyIdentifier, PGPSignature> detachedSignatures = new MultiMap<>();
         private final Set<SubkeyIdentifier> recipients = new HashSet<>();
@@ -169,6 +184,11 @@ public final class EncryptionResult {
             return this;
         }
 
+        public Builder setCompressionSkipped(boolean compressionSkipped) {
+            this.compressionSkipped = compressionSkipped;
+            return this;
+        }
+
         public Builder addRecipient(SubkeyIdentifier recipient) {
             this.recipients.add(recipient);
             return this;
@@ -202,8 +222,8 @@ public final class EncryptionResult {
                 throw new IllegalStateException("Compression algorithm not set.");
             }
 
-            return new EncryptionResult(encryptionAlgorithm, compressionAlgorithm, detachedSignatures, recipients,
-                    fileName, modificationDate, encoding);
+            return new EncryptionResult(encryptionAlgorithm, compressionAlgorithm, compressionSkipped,
+                    detachedSignatures, recipients, fileName, modificationDate, encoding);
         }
     }
 }
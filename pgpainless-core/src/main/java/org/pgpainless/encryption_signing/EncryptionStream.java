@@ -8,15 +8,16 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.bouncycastle.bcpg.ArmoredOutputStream;
 import org.bouncycastle.bcpg.BCPGOutputStream;
-import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
 import org.bouncycastle.openpgp.PGPEncryptedDataGenerator;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPLiteralDataGenerator;
@@ -24,14 +25,18 @@ import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.PGPSignatureGenerator;
 import org.bouncycastle.openpgp.operator.PGPDataEncryptorBuilder;
 import org.bouncycastle.openpgp.operator.PGPKeyEncryptionMethodGenerator;
+import org.bouncycastle.util.Strings;
+import org.pgpainless.algorithm.AEADAlgorithm;
 import org.pgpainless.algorithm.CompressionAlgorithm;
 import org.pgpainless.algorithm.HashAlgorithm;
 import org.pgpainless.algorithm.StreamEncoding;
 import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
+import org.pgpainless.implementation.CompressionFactory;
 import org.pgpainless.implementation.ImplementationFactory;
 import org.pgpainless.key.SubkeyIdentifier;
 import org.pgpainless.util.ArmorUtils;
 import org.pgpainless.util.ArmoredOutputStreamFactory;
+import org.pgpainless.util.BufferPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +44,10 @@ import org.slf4j.LoggerFactory;
  * OutputStream that produces an OpenPGP message. The message can be encrypted, signed, or both,
  * depending on its configuration.
  *
+ * The message can also be written to multiple outputs, each of which is encrypted for its own set of recipients
+ * (see {@link EncryptionBuilderInterface#onOutputStreams()}). In that case, the plaintext is compressed, framed
+ * and signed only once, and only the encryption (and armoring) is done per output.
+ *
  * This class is based upon Jens Neuhalfen's Bouncy-GPG PGPEncryptingStream.
  * @see <a href="https://github.com/neuhalje/bouncy-gpg/blob/master/src/main/java/name/neuhalfen/projects/crypto/bouncycastle/openpgp/encrypting/PGPEncryptingStream.java">Source</a>
  */
@@ -47,50 +56,92 @@ public final class EncryptionStream extends OutputStream {
     private static final Logger LOGGER = LoggerFactory.getLogger(EncryptionStream.class);
 
     private final ProducerOptions options;
-    private final EncryptionResult.Builder resultBuilder = EncryptionResult.builder();
+    private final List<Output> outputs;
 
     private boolean closed = false;
     // 1 << 8 causes wrong partial body length encoding
     //  1 << 9 fixes this.
     //  see https://github.com/pgpainless/pgpainless/issues/160
     private static final int BUFFER_SIZE = 1 << 9;
+    // Size of the buffers of BufferedOutputStreams
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    private final BufferPool bufferPool = BufferPool.getInstance();
+    // Buffers acquired from the pool, which are released once the stream is closed
+    private final List<byte[]> pooledBuffers = new ArrayList<>();
 
     OutputStream outermostStream;
     OutputStream signatureLayerStream;
+    // Innermost shared layer, on top of which the compression, signing and literal data layers are stacked
+    private OutputStream encryptionLayerStream;
 
-    private ArmoredOutputStream armorOutputStream = null;
-    private OutputStream publicKeyEncryptedStream = null;
-    private PGPCompressedDataGenerator compressedDataGenerator;
+    private OutputStream compressionStream;
     private BCPGOutputStream basicCompressionStream;
     private PGPLiteralDataGenerator literalDataGenerator;
     private OutputStream literalDataStream;
 
+    // Number of plaintext octets written so far
+    private long plaintextLength = 0;
+    // Whether any packet was written with a definite length computed from the expected plaintext length
+    private boolean definiteLength = false;
+
     EncryptionStream(@Nonnull OutputStream targetOutputStream,
                      @Nonnull ProducerOptions options)
             throws IOException, PGPException {
+        this(Collections.singletonList(new Output(targetOutputStream, options.getEncryptionOptions())), options);
+    }
+
+    EncryptionStream(@Nonnull List<Output> outputs,
+                     @Nonnull ProducerOptions options)
+            throws IOException, PGPException {
+        if (outputs.isEmpty()) {
+            throw new IllegalArgumentException("At least one output is required.");
+        }
+        if (outputs.size() > 1 && options.isCleartextSigned()) {
+            throw new IllegalArgumentException("Cleartext signed messages cannot be written to multiple outputs.");
+        }
         this.options = options;
-        outermostStream = targetOutputStream;
+        this.outputs = outputs;
+
+        CompressionAlgorithm compressionAlgorithm = EncryptionBuilder.negotiateCompressionAlgorithm(options);
+        for (Output output : outputs) {
+            prepareArmor(output);
+            prepareEncryption(output, compressionAlgorithm);
+        }
+        // Everything below the encryption layer is only produced once
+        encryptionLayerStream = outputs.size() == 1 ? outputs.get(0).stream : new FanOutOutputStream(outputs);
+
+        if (options.isAdaptiveCompression() && !options.isCleartextSigned() &&
+                compressionAlgorithm != CompressionAlgorithm.UNCOMPRESSED) {
+            // The remaining layers are prepared once we know whether the data is compressible
+            outermostStream = new CompressionSamplingStream(compressionAlgorithm,
+                    acquireBuffer(options.getAdaptiveCompressionSampleSize()));
+            return;
+        }
+        prepareLayers(compressionAlgorithm, false);
+    }
 
-        prepareArmor();
-        prepareEncryption();
-        prepareCompression();
+    private void prepareLayers(CompressionAlgorithm compressionAlgorithm, boolean compressionSkipped)
+            throws IOException, PGPException {
+        outermostStream = encryptionLayerStream;
+        prepareCompression(compressionAlgorithm, compressionSkipped);
         prepareOnePassSignatures();
-        prepareLiteralDataProcessing();
+        prepareLiteralDataProcessing(compressionAlgorithm);
         prepareSigningStream();
         prepareInputEncoding();
     }
 
-    private void prepareArmor() {
+    private void prepareArmor(Output output) {
         if (!options.isAsciiArmor()) {
             LOGGER.debug("Output will be unarmored");
             return;
         }
 
         // ArmoredOutputStream better be buffered
-        outermostStream = new BufferedOutputStream(outermostStream);
+        output.stream = new PooledBufferedOutputStream(output.stream, acquireBuffer(STREAM_BUFFER_SIZE));
 
         LOGGER.debug("Wrap encryption output in ASCII armor");
-        armorOutputStream = ArmoredOutputStreamFactory.get(outermostStream, options);
+        ArmoredOutputStream armorOutputStream = ArmoredOutputStreamFactory.get(output.stream, options);
         if (options.hasComment()) {
             String[] commentLines = options.getComment().split("\n");
             for (String commentLine : commentLines) {
@@ -105,19 +156,38 @@ public final class EncryptionStream extends OutputStream {
                 ArmorUtils.setVersionHeader(armorOutputStream, version);
             }
         }
-        outermostStream = armorOutputStream;
+        output.armorOutputStream = armorOutputStream;
+        output.stream = armorOutputStream;
     }
 
-    private void prepareEncryption() throws IOException, PGPException {
-        EncryptionOptions encryptionOptions = options.getEncryptionOptions();
+    private void prepareEncryption(Output output, CompressionAlgorithm compressionAlgorithm)
+            throws IOException, PGPException {
+        EncryptionOptions encryptionOptions = output.encryptionOptions;
         if (encryptionOptions == null || encryptionOptions.getEncryptionMethods().isEmpty()) {
             // No encryption options/methods -> no encryption
-            resultBuilder.setEncryptionAlgorithm(SymmetricKeyAlgorithm.NULL);
+            output.resultBuilder.setEncryptionAlgorithm(SymmetricKeyAlgorithm.NULL);
             return;
         }
 
         SymmetricKeyAlgorithm encryptionAlgorithm = EncryptionBuilder.negotiateSymmetricEncryptionAlgorithm(encryptionOptions);
-        resultBuilder.setEncryptionAlgorithm(encryptionAlgorithm);
+        output.resultBuilder.setEncryptionAlgorithm(encryptionAlgorithm);
+        for (SubkeyIdentifier recipientSubkeyIdentifier : encryptionOptions.getEncryptionKeyIdentifiers()) {
+            output.resultBuilder.addRecipient(recipientSubkeyIdentifier);
+        }
+
+        AEADAlgorithm aeadAlgorithm = encryptionOptions.getAEADAlgorithm();
+        if (aeadAlgorithm != null) {
+            LOGGER.debug("Encrypt message using {} in {} mode", encryptionAlgorithm, aeadAlgorithm);
+            AEADEncryptedDataGenerator encryptedDataGenerator = new AEADEncryptedDataGenerator(
+                    encryptionAlgorithm, aeadAlgorithm, encryptionOptions.getAEADChunkSize(),
+                    encryptionOptions.getChunkEncryptionExecutor())
+                    .addMethods(encryptionOptions.getEncryptionMethods(),
+                            encryptionOptions.getConcurrentEncryptionMethods());
+            output.encryptedStream = encryptedDataGenerator.open(output.stream, acquireBuffer(BUFFER_SIZE));
+            output.stream = output.encryptedStream;
+            return;
+        }
+
         LOGGER.debug("Encrypt message using {}", encryptionAlgorithm);
         PGPDataEncryptorBuilder dataEncryptorBuilder =
                 ImplementationFactory.getInstance().getPGPDataEncryptorBuilder(encryptionAlgorithm);
@@ -125,29 +195,90 @@ public final class EncryptionStream extends OutputStream {
 
         PGPEncryptedDataGenerator encryptedDataGenerator =
                 new PGPEncryptedDataGenerator(dataEncryptorBuilder);
-        for (PGPKeyEncryptionMethodGenerator encryptionMethod : encryptionOptions.getEncryptionMethods()) {
+        for (PGPKeyEncryptionMethodGenerator encryptionMethod : encryptionOptions.getConcurrentEncryptionMethods()) {
             encryptedDataGenerator.addMethod(encryptionMethod);
         }
 
-        for (SubkeyIdentifier recipientSubkeyIdentifier : encryptionOptions.getEncryptionKeyIdentifiers()) {
-            resultBuilder.addRecipient(recipientSubkeyIdentifier);
+        if (isDefiniteLengthEncryptedData(compressionAlgorithm)) {
+            // The encrypted data only consists of the literal data packet
+            long length = packetLength(literalDataBodyLength());
+            LOGGER.debug("Encrypted data has a definite length of {} octets", length);
+            output.encryptedStream = encryptedDataGenerator.open(output.stream, length);
+            definiteLength = true;
+        } else {
+            output.encryptedStream = encryptedDataGenerator.open(output.stream, acquireBuffer(BUFFER_SIZE));
         }
+        output.stream = output.encryptedStream;
+    }
 
-        publicKeyEncryptedStream = encryptedDataGenerator.open(outermostStream, new byte[BUFFER_SIZE]);
-        outermostStream = publicKeyEncryptedStream;
+    private boolean isDefiniteLengthLiteralData(CompressionAlgorithm compressionAlgorithm) {
+        return options.hasExpectedPlaintextLength()
+                // compression and CR/LF encoding change the length of the data
+                && compressionAlgorithm == CompressionAlgorithm.UNCOMPRESSED
+                && !options.isApplyCRLFEncoding()
+                && !options.isCleartextSigned()
+                // data which was already written (e.g. sampled for adaptive compression) must fit
+                && plaintextLength <= options.getExpectedPlaintextLength();
     }
 
-    private void prepareCompression() throws IOException {
-        CompressionAlgorithm compressionAlgorithm = EncryptionBuilder.negotiateCompressionAlgorithm(options);
-        resultBuilder.setCompressionAlgorithm(compressionAlgorithm);
-        compressedDataGenerator = new PGPCompressedDataGenerator(
-                compressionAlgorithm.getAlgorithmId());
+    private boolean isDefiniteLengthEncryptedData(CompressionAlgorithm compressionAlgorithm) {
+        if (!isDefiniteLengthLiteralData(compressionAlgorithm)) {
+            return false;
+        }
+        // The length of signatures is not known in advance
+        SigningOptions signingOptions = options.getSigningOptions();
+        if (signingOptions != null) {
+            for (SigningOptions.SigningMethod signingMethod : signingOptions.getSigningMethods().values()) {
+                if (!signingMethod.isDetached()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the length of the body of the literal data packet.
+     * The body consists of the format octet, the file name with its length octet, the modification date and the data.
+     *
+     * @return body length
+     */
+    private long literalDataBodyLength() {
+        return 1 + 1 + Strings.toUTF8ByteArray(options.getFileName()).length + 4
+                + options.getExpectedPlaintextLength();
+    }
+
+    /**
+     * Return the length of a packet with a new format header and the given body length.
+     *
+     * @param bodyLength body length
+     * @return packet length
+     */
+    private static long packetLength(long bodyLength) {
+        int lengthOctets;
+        if (bodyLength < 192) {
+            lengthOctets = 1;
+        } else if (bodyLength <= 8383) {
+            lengthOctets = 2;
+        } else {
+            lengthOctets = 5;
+        }
+        return 1 + lengthOctets + bodyLength;
+    }
+
+    private void prepareCompression(CompressionAlgorithm compressionAlgorithm, boolean compressionSkipped)
+            throws IOException {
+        for (Output output : outputs) {
+            output.resultBuilder.setCompressionAlgorithm(compressionAlgorithm)
+                    .setCompressionSkipped(compressionSkipped);
+        }
         if (compressionAlgorithm == CompressionAlgorithm.UNCOMPRESSED) {
             return;
         }
 
         LOGGER.debug("Compress using {}", compressionAlgorithm);
-        basicCompressionStream = new BCPGOutputStream(compressedDataGenerator.open(outermostStream));
+        compressionStream = CompressionFactory.getInstance().openCompressedDataPacket(outermostStream, compressionAlgorithm);
+        basicCompressionStream = new BCPGOutputStream(compressionStream);
         outermostStream = basicCompressionStream;
     }
 
@@ -173,37 +304,85 @@ public final class EncryptionStream extends OutputStream {
         }
     }
 
-    private void prepareLiteralDataProcessing() throws IOException {
+    private void prepareLiteralDataProcessing(CompressionAlgorithm compressionAlgorithm) throws IOException {
         if (options.isCleartextSigned()) {
             int[] algorithmIds = collectHashAlgorithmsForCleartextSigning();
-            armorOutputStream.beginClearText(algorithmIds);
+            outputs.get(0).armorOutputStream.beginClearText(algorithmIds);
             return;
         }
 
         literalDataGenerator = new PGPLiteralDataGenerator();
-        literalDataStream = literalDataGenerator.open(outermostStream, options.getEncoding().getCode(),
-                options.getFileName(), options.getModificationDate(), new byte[BUFFER_SIZE]);
+        if (isDefiniteLengthLiteralData(compressionAlgorithm)) {
+            LOGGER.debug("Literal data has a definite length of {} octets", options.getExpectedPlaintextLength());
+            literalDataStream = literalDataGenerator.open(outermostStream, options.getEncoding().getCode(),
+                    options.getFileName(), options.getExpectedPlaintextLength(), options.getModificationDate());
+            definiteLength = true;
+        } else {
+            literalDataStream = literalDataGenerator.open(outermostStream, options.getEncoding().getCode(),
+                    options.getFileName(), options.getModificationDate(), acquireBuffer(BUFFER_SIZE));
+        }
         outermostStream = literalDataStream;
 
-        resultBuilder.setFileName(options.getFileName())
-                .setModificationDate(options.getModificationDate())
-                .setFileEncoding(options.getEncoding());
+        for (Output output : outputs) {
+            output.resultBuilder.setFileName(options.getFileName())
+                    .setModificationDate(options.getModificationDate())
+                    .setFileEncoding(options.getEncoding());
+        }
     }
 
     public void prepareSigningStream() {
-        outermostStream = new SignatureGenerationStream(outermostStream, options.getSigningOptions());
+        outermostStream = new SignatureGenerationStream(outermostStream, options.getSigningOptions(),
+                options.isCleartextSigned());
     }
 
     public void prepareInputEncoding() {
-        // By buffering here, we drastically improve performance
-        // Reason is that CRLFGeneratorStream only implements write(int), so we need BufferedOutputStream to
-        // "convert" to write(buf) calls again
-        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outermostStream);
+        // CRLFGeneratorStream writes each line separately, buffering combines them into larger writes again
+        BufferedOutputStream bufferedOutputStream = new PooledBufferedOutputStream(
+                outermostStream, acquireBuffer(STREAM_BUFFER_SIZE));
         CRLFGeneratorStream crlfGeneratorStream = new CRLFGeneratorStream(bufferedOutputStream,
                 options.isApplyCRLFEncoding() ? StreamEncoding.UTF8 : StreamEncoding.BINARY);
         outermostStream = crlfGeneratorStream;
     }
 
+    private byte[] acquireBuffer(int size) {
+        byte[] buffer = bufferPool.acquire(size);
+        pooledBuffers.add(buffer);
+        return buffer;
+    }
+
+    private void releaseBuffers() {
+        for (byte[] buffer : pooledBuffers) {
+            bufferPool.release(buffer);
+        }
+        pooledBuffers.clear();
+    }
+
+    /**
+     * Drop all layers of the message without finishing their packets, so that none of them can write to
+     * a buffer which was returned to the pool.
+     */
+    private void abandonLayers() {
+        outermostStream = null;
+        signatureLayerStream = null;
+        encryptionLayerStream = null;
+        compressionStream = null;
+        basicCompressionStream = null;
+        literalDataGenerator = null;
+        literalDataStream = null;
+        for (Output output : outputs) {
+            output.stream = null;
+            output.encryptedStream = null;
+            output.armorOutputStream = null;
+        }
+    }
+
+    private void throwIfClosed() throws IOException {
+        // Writing after close would otherwise end up in buffers which were already returned to the pool
+        if (closed) {
+            throw new IOException("EncryptionStream is already closed.");
+        }
+    }
+
     private int[] collectHashAlgorithmsForCleartextSigning() {
         SigningOptions signOpts = options.getSigningOptions();
         Set<HashAlgorithm> hashAlgorithms = new HashSet<>();
@@ -222,8 +401,19 @@ public final class EncryptionStream extends OutputStream {
         return algorithmIds;
     }
 
+    private void countPlaintext(int len) throws IOException {
+        plaintextLength += len;
+        if (definiteLength && plaintextLength > options.getExpectedPlaintextLength()) {
+            plaintextLength -= len;
+            throw new IOException("Plaintext is longer than the expected length of " +
+                    options.getExpectedPlaintextLength() + " octets.");
+        }
+    }
+
     @Override
     public void write(int data) throws IOException {
+        throwIfClosed();
+        countPlaintext(1);
         outermostStream.write(data);
     }
 
@@ -235,11 +425,17 @@ public final class EncryptionStream extends OutputStream {
 
     @Override
     public void write(@Nonnull byte[] buffer, int off, int len) throws IOException {
-        outermostStream.write(buffer, 0, len);
+        throwIfClosed();
+        countPlaintext(len);
+        outermostStream.write(buffer, off, len);
     }
 
     @Override
     public void flush() throws IOException {
+        if (closed) {
+            // All data was written out on close, the buffers of the layers might already be reused
+            return;
+        }
         outermostStream.flush();
     }
 
@@ -249,6 +445,16 @@ public final class EncryptionStream extends OutputStream {
             return;
         }
 
+        if (definiteLength && plaintextLength != options.getExpectedPlaintextLength()) {
+            // The packet headers are already written, finishing the packets would result in a corrupt message.
+            // Instead, the layers are abandoned, before their buffers are returned to the pool.
+            closed = true;
+            abandonLayers();
+            releaseBuffers();
+            throw new IOException("Plaintext length of " + plaintextLength + " octets does not match the expected " +
+                    "length of " + options.getExpectedPlaintextLength() + " octets.");
+        }
+
         outermostStream.close();
 
         // Literal Data
@@ -264,6 +470,7 @@ public final class EncryptionStream extends OutputStream {
             // Add linebreak between body and signatures
             // TODO: We should only add this line if required.
             //  I.e. if the message already ends with \n, don't add another linebreak.
+            ArmoredOutputStream armorOutputStream = outputs.get(0).armorOutputStream;
             armorOutputStream.write('\r');
             armorOutputStream.write('\n');
             armorOutputStream.endClearText();
@@ -276,20 +483,28 @@ public final class EncryptionStream extends OutputStream {
         }
 
         // Compressed Data
-        compressedDataGenerator.close();
-
-        // Public Key Encryption
-        if (publicKeyEncryptedStream != null) {
-            publicKeyEncryptedStream.flush();
-            publicKeyEncryptedStream.close();
+        if (compressionStream != null) {
+            compressionStream.close();
         }
 
-        // Armor
-        if (armorOutputStream != null) {
-            armorOutputStream.flush();
-            armorOutputStream.close();
+        for (Output output : outputs) {
+            // Public Key Encryption
+            if (output.encryptedStream != null) {
+                output.encryptedStream.flush();
+                output.encryptedStream.close();
+            }
+
+            // Armor
+            if (output.armorOutputStream != null) {
+                output.armorOutputStream.flush();
+                output.armorOutputStream.close();
+            }
+
+            // Write out data buffered by the target (e.g. for output channels), but do not close it
+            output.targetStream.flush();
         }
         closed = true;
+        releaseBuffers();
     }
 
     private void writeSignatures() throws PGPException, IOException {
@@ -307,7 +522,9 @@ public final class EncryptionStream extends OutputStream {
             PGPSignatureGenerator signatureGenerator = signingMethod.getSignatureGenerator();
             PGPSignature signature = signatureGenerator.generate();
             if (signingMethod.isDetached()) {
-                resultBuilder.addDetachedSignature(signingKey, signature);
+                for (Output output : outputs) {
+                    output.resultBuilder.addDetachedSignature(signingKey, signature);
+                }
             }
             if (!signingMethod.isDetached() || options.isCleartextSigned()) {
                 signature.encode(signatureLayerStream);
@@ -315,14 +532,187 @@ public final class EncryptionStream extends OutputStream {
         }
     }
 
+    /**
+     * Return the result of the encryption.
+     * If the message was written to multiple outputs, this is the result of the first output.
+     *
+     * @return result
+     */
     public EncryptionResult getResult() {
         if (!closed) {
             throw new IllegalStateException("EncryptionStream must be closed before accessing the Result.");
         }
-        return resultBuilder.build();
+        return outputs.get(0).resultBuilder.build();
+    }
+
+    /**
+     * Return the results of the encryption, one per output in the order in which the outputs were added.
+     *
+     * @return results
+     */
+    public List<EncryptionResult> getResults() {
+        if (!closed) {
+            throw new IllegalStateException("EncryptionStream must be closed before accessing the Result.");
+        }
+        List<EncryptionResult> results = new ArrayList<>(outputs.size());
+        for (Output output : outputs) {
+            results.add(output.resultBuilder.build());
+        }
+        return results;
     }
 
     public boolean isClosed() {
         return closed;
     }
+
+    /**
+     * Destination of the message, together with its encryption options and layers.
+     */
+    static final class Output {
+        private final EncryptionOptions encryptionOptions;
+        private final EncryptionResult.Builder resultBuilder = EncryptionResult.builder();
+        private final OutputStream targetStream;
+        // Innermost layer of this output, to which the shared layers write
+        private OutputStream stream;
+        private ArmoredOutputStream armorOutputStream = null;
+        private OutputStream encryptedStream = null;
+
+        Output(@Nonnull OutputStream outputStream, @Nullable EncryptionOptions encryptionOptions) {
+            this.targetStream = outputStream;
+            this.stream = outputStream;
+            this.encryptionOptions = encryptionOptions;
+        }
+    }
+
+    /**
+     * Passes the data of the shared layers on to the encryption layers of all outputs.
+     * The layers of the outputs are finished individually, so closing this stream only flushes them.
+     */
+    private static final class FanOutOutputStream extends OutputStream {
+
+        private final OutputStream[] streams;
+
+        private FanOutOutputStream(List<Output> outputs) {
+            this.streams = new OutputStream[outputs.size()];
+            for (int i = 0; i < streams.length; i++) {
+                streams[i] = outputs.get(i).stream;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            for (OutputStream stream : streams) {
+                stream.write(b);
+            }
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            for (OutputStream stream : streams) {
+                stream.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            for (OutputStream stream : streams) {
+                stream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Holds back the first octets of the data, until it is clear whether the data is worth compressing.
+     * Then the compression, signing and literal data layers are prepared, the sample is written to them and
+     * this stream is replaced as the {@link #outermostStream}.
+     */
+    private final class CompressionSamplingStream extends OutputStream {
+
+        private final CompressionAlgorithm compressionAlgorithm;
+        private final byte[] sample;
+        private int length = 0;
+        private boolean decided = false;
+
+        private CompressionSamplingStream(CompressionAlgorithm compressionAlgorithm, byte[] sample) {
+            this.compressionAlgorithm = compressionAlgorithm;
+            this.sample = sample;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (decided) {
+                outermostStream.write(b);
+                return;
+            }
+            sample[length++] = (byte) b;
+            if (length == options.getAdaptiveCompressionSampleSize()) {
+                decide();
+            }
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            if (decided) {
+                outermostStream.write(b, off, len);
+                return;
+            }
+            int n = Math.min(len, options.getAdaptiveCompressionSampleSize() - length);
+            System.arraycopy(b, off, sample, length, n);
+            length += n;
+            if (length == options.getAdaptiveCompressionSampleSize()) {
+                decide();
+                outermostStream.write(b, off + n, len - n);
+            }
+        }
+
+        private void decide() throws IOException {
+            if (decided) {
+                return;
+            }
+            decided = true;
+            // Without any data there is nothing to estimate, so the negotiated algorithm is kept
+            boolean compressible = length == 0 || CompressibilityEstimator.isCompressible(sample, 0, length);
+            LOGGER.debug("Sampled {} bytes, which are {}compressible", length, compressible ? "" : "not ");
+            try {
+                prepareLayers(compressible ? compressionAlgorithm : CompressionAlgorithm.UNCOMPRESSED, !compressible);
+            } catch (PGPException e) {
+                throw new IOException("Cannot prepare message.", e);
+            }
+            outermostStream.write(sample, 0, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // A partial sample is not representative of the data, so it is held back until the sample is complete
+            if (length == options.getAdaptiveCompressionSampleSize()) {
+                decide();
+            }
+            if (decided) {
+                outermostStream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            decide();
+            outermostStream.close();
+        }
+    }
+
+    /**
+     * {@link BufferedOutputStream} which uses a buffer taken from the {@link BufferPool}.
+     */
+    private static final class PooledBufferedOutputStream extends BufferedOutputStream {
+
+        private PooledBufferedOutputStream(OutputStream out, byte[] buffer) {
+            // Do not let BufferedOutputStream allocate a buffer, since we bring our own
+            super(out, 1);
+            this.buf = buffer;
+        }
+    }
 }
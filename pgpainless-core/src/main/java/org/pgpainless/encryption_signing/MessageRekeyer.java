@@ -0,0 +1,773 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.bcpg.AEADEncDataPacket;
+import org.bouncycastle.bcpg.ArmoredInputStream;
+import org.bouncycastle.bcpg.ArmoredOutputStream;
+import org.bouncycastle.bcpg.BCPGInputStream;
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.bcpg.SymmetricEncIntegrityPacket;
+import org.bouncycastle.openpgp.PGPEncryptedData;
+import org.bouncycastle.openpgp.PGPEncryptedDataList;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPBEEncryptedData;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyEncryptedData;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSessionKey;
+import org.bouncycastle.openpgp.operator.PBEDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.PGPDataDecryptor;
+import org.bouncycastle.openpgp.operator.PGPDigestCalculator;
+import org.bouncycastle.openpgp.operator.PGPKeyEncryptionMethodGenerator;
+import org.bouncycastle.openpgp.operator.PublicKeyDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.SessionKeyDataDecryptorFactory;
+import org.bouncycastle.util.io.Streams;
+import org.bouncycastle.util.io.TeeInputStream;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.AEADAlgorithm;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+import org.pgpainless.algorithm.StreamEncoding;
+import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.exception.MalformedOpenPgpMessageException;
+import org.pgpainless.exception.MessageNotIntegrityProtectedException;
+import org.pgpainless.exception.MissingDecryptionMethodException;
+import org.pgpainless.exception.UnacceptableAlgorithmException;
+import org.pgpainless.implementation.ImplementationFactory;
+import org.pgpainless.key.SubkeyIdentifier;
+import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+import org.pgpainless.key.protection.UnlockSecretKey;
+import org.pgpainless.policy.Policy;
+import org.pgpainless.util.AEADChunkCipher;
+import org.pgpainless.util.ArmoredInputStreamFactory;
+import org.pgpainless.util.ArmoredOutputStreamFactory;
+import org.pgpainless.util.BufferPool;
+import org.pgpainless.util.Passphrase;
+import org.pgpainless.util.SessionKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-key encrypted OpenPGP messages.
+ * Re-keying replaces the recipients of an encrypted message without re-encrypting the message itself.
+ * The session key of the message is recovered using the {@link ConsumerOptions}, after which new
+ * Public-Key and Symmetric-Key Encrypted Session Key packets are generated for the recipients and passphrases of
+ * the {@link EncryptionOptions}. The encrypted data packet is copied verbatim.
+ * Therefore, the cost of re-keying a message does not depend on the size of the message.
+ * Both version 1 and version 2 (AEAD) Symmetrically Encrypted Integrity Protected Data packets are supported.
+ * The new encrypted session key packets are of the versions, which PGPainless emits for the respective packet version.
+ *
+ * Since the encrypted data is not touched, the message keeps its symmetric encryption algorithm, even if the
+ * new recipients would prefer another one.
+ *
+ * A recovered session key candidate is only accepted, if it decrypts the beginning of the encrypted data to a
+ * plausible OpenPGP packet header. For version 2 packets (AEAD), the first chunk is authenticated as well.
+ * For version 1 packets, however, the check relies on the 16 bit quick check and the plaintext packet header only.
+ * There is a small residual chance (in the order of one in tens of millions of wrong candidates, e.g. wrong passphrases
+ * for S2K-only SKESKs) that a wrong session key is accepted. Since re-keying drops the original encrypted session
+ * keys, such a message would be lost. If that risk is not acceptable, use {@link #withIntegrityCheck()}, which
+ * decrypts the whole message to verify its integrity while it is copied, at the cost of a symmetric decryption.
+ *
+ * A {@link MessageRekeyer} does not hold any state of the processed messages, so one instance can be used to
+ * re-key many messages concurrently. Set an {@link org.pgpainless.key.protection.UnlockedKeyCache} on the
+ * {@link ConsumerOptions} to avoid unlocking the decryption keys again for each message.
+ */
+public final class MessageRekeyer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageRekeyer.class);
+
+    // Amount of the encrypted data that is read ahead to check recovered session keys
+    private static final int PREFIX_SIZE = 1024;
+    // Length of the fixed fields of a version 2 SEIPD packet (version, algorithms, chunk size and salt)
+    private static final int SEIPD_V2_HEADER_LENGTH = 4 + AEADChunkCipher.SALT_LENGTH;
+    // Authentication tag length of all AEAD algorithms
+    private static final int AEAD_TAG_LENGTH = 16;
+    // Number of decrypted octets that are checked for a plausible packet header (header and first body octet)
+    private static final int PLAINTEXT_CHECK_SIZE = 7;
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final ConsumerOptions decryptionOptions;
+    private final EncryptionOptions encryptionOptions;
+    private final Policy policy;
+    private final boolean integrityCheck;
+
+    MessageRekeyer(@Nonnull ConsumerOptions decryptionOptions,
+                   @Nonnull EncryptionOptions encryptionOptions,
+                   @Nonnull Policy policy) {
+        this(decryptionOptions, encryptionOptions, policy, false);
+    }
+
+    private MessageRekeyer(@Nonnull ConsumerOptions decryptionOptions,
+                           @Nonnull EncryptionOptions encryptionOptions,
+                           @Nonnull Policy policy,
+                           boolean integrityCheck) {
+        if (!encryptionOptions.hasEncryptionMethod()) {
+            throw new IllegalArgumentException("At least one recipient or passphrase is required for re-keying.");
+        }
+        this.decryptionOptions = decryptionOptions;
+        this.encryptionOptions = encryptionOptions;
+        this.policy = policy;
+        this.integrityCheck = integrityCheck;
+    }
+
+    /**
+     * Create a {@link MessageRekeyer}.
+     * This factory method uses the global PGPainless {@link Policy}.
+     *
+     * @param decryptionOptions options to recover the session key of messages (keys, passphrases or session key)
+     * @param encryptionOptions new recipients and passphrases of the messages
+     * @return message rekeyer
+     */
+    @Nonnull
+    public static MessageRekeyer create(@Nonnull ConsumerOptions decryptionOptions,
+                                        @Nonnull EncryptionOptions encryptionOptions) {
+        return new MessageRekeyer(decryptionOptions, encryptionOptions, PGPainless.getPolicy());
+    }
+
+    /**
+     * Return a {@link MessageRekeyer} with the same options, which additionally verifies the integrity of each
+     * message (modification detection code or AEAD authentication tags) using the recovered session key.
+     * The message is decrypted while it is copied, so the cost of re-keying grows with the size of the message.
+     * If the verification fails, an exception is thrown after (parts of) the re-keyed message were already written
+     * to the output stream. In that case, the output MUST be discarded and the original message kept.
+     *
+     * @return message rekeyer which verifies the integrity of the messages
+     */
+    @Nonnull
+    public MessageRekeyer withIntegrityCheck() {
+        return new MessageRekeyer(decryptionOptions, encryptionOptions, policy, true);
+    }
+
+    /**
+     * Re-key the encrypted message read from the input stream and write the result to the output stream.
+     * ASCII armored messages are written out ASCII armored.
+     * Neither stream is closed.
+     *
+     * @param inputStream encrypted message
+     * @param outputStream destination of the re-keyed message
+     * @return recovered session key of the message
+     *
+     * @throws IOException in case of an IO error
+     * @throws MissingDecryptionMethodException if the session key cannot be recovered
+     * @throws PGPException in case of an OpenPGP error, e.g. if the integrity check enabled via
+     * {@link #withIntegrityCheck()} fails
+     */
+    @Nonnull
+    public SessionKey rekey(@Nonnull InputStream inputStream, @Nonnull OutputStream outputStream)
+            throws IOException, PGPException {
+        BufferedInputStream bufferedIn = new BufferedInputStream(inputStream, PREFIX_SIZE);
+        bufferedIn.mark(1);
+        int first = bufferedIn.read();
+        bufferedIn.reset();
+        if (first == -1) {
+            throw new EOFException("Unexpected end of message.");
+        }
+
+        // Binary OpenPGP data starts with a packet tag, which always has its highest bit set
+        if ((first & 0x80) != 0) {
+            return rekeyPackets(bufferedIn, outputStream);
+        }
+
+        ArmoredInputStream armorIn = ArmoredInputStreamFactory.get(bufferedIn);
+        if (armorIn.isClearText()) {
+            throw new MalformedOpenPgpMessageException("Cleartext signed messages cannot be re-keyed.");
+        }
+        ArmoredOutputStream armorOut = ArmoredOutputStreamFactory.get(outputStream);
+        SessionKey sessionKey = rekeyPackets(new BufferedInputStream(armorIn, PREFIX_SIZE), armorOut);
+        // Writes the armor trailer, but does not close the underlying stream
+        armorOut.close();
+        return sessionKey;
+    }
+
+    private SessionKey rekeyPackets(BufferedInputStream in, OutputStream out)
+            throws IOException, PGPException {
+        ByteArrayOutputStream esks = new ByteArrayOutputStream();
+        while (true) {
+            PacketHeader header = PacketHeader.read(in);
+            if (header == null) {
+                throw new MalformedOpenPgpMessageException("Message does not contain encrypted data.");
+            }
+
+            switch (header.tag) {
+                case PacketTags.PUBLIC_KEY_ENC_SESSION:
+                case PacketTags.SYMMETRIC_KEY_ENC_SESSION:
+                    if (header.length < 0) {
+                        throw new MalformedOpenPgpMessageException("Encrypted session key packet has no definite length.");
+                    }
+                    byte[] body = new byte[(int) header.length];
+                    readFully(in, body);
+                    esks.write(header.encoded);
+                    esks.write(body);
+                    break;
+
+                case PacketTags.MARKER:
+                    // Marker packets are dropped
+                    if (header.length < 0) {
+                        throw new MalformedOpenPgpMessageException("Marker packet has no definite length.");
+                    }
+                    skipFully(in, header.length);
+                    break;
+
+                case PacketTags.SYMMETRIC_KEY_ENC:
+                    throw new MessageNotIntegrityProtectedException();
+
+                case PacketTags.SYM_ENC_INTEGRITY_PRO:
+                    return rekeyEncryptedData(in, out, esks.toByteArray(), header.encoded);
+
+                default:
+                    throw new MalformedOpenPgpMessageException("Unexpected packet with tag " + header.tag +
+                            ". Only messages consisting of encrypted session keys followed by " +
+                            "Symmetrically Encrypted Integrity Protected Data can be re-keyed.");
+            }
+        }
+    }
+
+    private SessionKey rekeyEncryptedData(BufferedInputStream in,
+                                          OutputStream out,
+                                          byte[] esks,
+                                          byte[] encryptedDataHeader)
+            throws IOException, PGPException {
+        // Read ahead the beginning of the encrypted data, which is needed to check session key candidates
+        byte[] prefix = readAhead(in, PREFIX_SIZE);
+        boolean aead = prefix.length > 0 && prefix[0] == SymmetricEncIntegrityPacket.VERSION_2;
+        if (aead) {
+            if (prefix.length < SEIPD_V2_HEADER_LENGTH) {
+                throw new MalformedOpenPgpMessageException("Truncated version 2 SEIPD packet.");
+            }
+            // Candidates are checked by authenticating the first chunk, so the whole chunk is read ahead.
+            // Partial body length headers take up at most one octet per 512 octets.
+            int chunkSize = prefix[3] & 0xff;
+            if (chunkSize < AEADChunkCipher.MIN_CHUNK_SIZE || chunkSize > AEADChunkCipher.MAX_CHUNK_SIZE) {
+                throw new MalformedOpenPgpMessageException("Invalid chunk size " + chunkSize + " in SEIPD packet.");
+            }
+            int chunkLength = AEADChunkCipher.getChunkLength(chunkSize) + 2 * AEAD_TAG_LENGTH;
+            prefix = readAhead(in, SEIPD_V2_HEADER_LENGTH + chunkLength + chunkLength / 512 + 16);
+        }
+
+        ByteArrayOutputStream packets = new ByteArrayOutputStream(esks.length + encryptedDataHeader.length + prefix.length);
+        packets.write(esks);
+        packets.write(encryptedDataHeader);
+        packets.write(prefix);
+        SessionKey sessionKey = recoverSessionKey(packets.toByteArray(), aead);
+
+        SymmetricKeyAlgorithm override = encryptionOptions.getEncryptionAlgorithmOverride();
+        if (override != null && override != sessionKey.getAlgorithm()) {
+            LOGGER.warn("Re-keyed message keeps its encryption algorithm " + sessionKey.getAlgorithm() +
+                    " instead of the requested " + override);
+        }
+
+        byte[] sessionInfo = createSessionInfo(sessionKey);
+        int algorithmId = sessionKey.getAlgorithm().getAlgorithmId();
+        List<PGPKeyEncryptionMethodGenerator> methods = encryptionOptions.getConcurrentEncryptionMethods();
+        if (aead) {
+            // Version 2 packets (AEAD) require the same versions of encrypted session key packets that
+            // AEADEncryptedDataGenerator emits
+            AEADEncryptedDataGenerator.writeEncryptedSessionKeys(out,
+                    new ArrayList<>(encryptionOptions.getEncryptionMethods()), methods,
+                    algorithmId, AEADAlgorithm.requireFromId(prefix[2] & 0xff), sessionInfo);
+        } else {
+            for (PGPKeyEncryptionMethodGenerator method : methods) {
+                out.write(method.generate(algorithmId, sessionInfo).getEncoded());
+            }
+        }
+
+        // Copy the encrypted data (and anything that follows) verbatim
+        out.write(encryptedDataHeader);
+        out.write(prefix);
+        skipFully(in, prefix.length);
+        if (integrityCheck) {
+            // Octets read by the decryption are copied to the output; neither stream must be closed
+            InputStream teeIn = new FilterInputStream(new TeeInputStream(in, out)) {
+                @Override
+                public void close() {
+                }
+            };
+            // Present the beginning of the packet in one piece, so that the decryption recognizes the packet
+            byte[] head = new byte[encryptedDataHeader.length + prefix.length];
+            System.arraycopy(encryptedDataHeader, 0, head, 0, encryptedDataHeader.length);
+            System.arraycopy(prefix, 0, head, encryptedDataHeader.length, prefix.length);
+            verifyIntegrity(new SequenceInputStream(new ByteArrayInputStream(head), teeIn), sessionKey);
+        }
+        BufferPool bufferPool = BufferPool.getInstance();
+        byte[] buffer = bufferPool.acquire(COPY_BUFFER_SIZE);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        return sessionKey;
+    }
+
+    /**
+     * Decrypt the encrypted data using the session key, which verifies its integrity.
+     *
+     * @param encryptedData encrypted data packet
+     * @param sessionKey session key
+     *
+     * @throws IOException in case of an IO error or if the integrity check fails
+     * @throws PGPException in case of an OpenPGP error or if the integrity check fails
+     */
+    private static void verifyIntegrity(InputStream encryptedData, SessionKey sessionKey)
+            throws IOException, PGPException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(encryptedData)
+                .withOptions(ConsumerOptions.get().setSessionKey(sessionKey));
+        Streams.drain(decryptionStream);
+        decryptionStream.close();
+        if (!decryptionStream.getMetadata().isEncrypted()) {
+            throw new PGPException("Encrypted data cannot be decrypted using the recovered session key.");
+        }
+    }
+
+    private SessionKey recoverSessionKey(byte[] packets, boolean aead)
+            throws IOException, PGPException {
+        List<PGPPBEEncryptedData> skesks = new ArrayList<>();
+        List<PGPPublicKeyEncryptedData> pkesks = new ArrayList<>();
+        for (PGPEncryptedData esk : parse(packets)) {
+            if (esk instanceof PGPPBEEncryptedData) {
+                skesks.add((PGPPBEEncryptedData) esk);
+            } else if (esk instanceof PGPPublicKeyEncryptedData) {
+                pkesks.add((PGPPublicKeyEncryptedData) esk);
+            }
+        }
+
+        // Try provided session key
+        SessionKey providedSessionKey = decryptionOptions.getSessionKey();
+        if (providedSessionKey != null) {
+            PGPSessionKey candidate = new PGPSessionKey(
+                    providedSessionKey.getAlgorithm().getAlgorithmId(), providedSessionKey.getKey());
+            if (matches(packets, candidate, aead)) {
+                return accept(candidate);
+            }
+            LOGGER.debug("Provided session key does not match the message");
+        }
+
+        // Try passphrases
+        for (Passphrase passphrase : decryptionOptions.getDecryptionPassphrases()) {
+            PBEDataDecryptorFactory decryptorFactory = ImplementationFactory.getInstance()
+                    .getPBEDataDecryptorFactory(passphrase);
+            for (PGPPBEEncryptedData skesk : skesks) {
+                try {
+                    PGPSessionKey candidate = skesk.getSessionKey(decryptorFactory);
+                    if (matches(packets, candidate, aead)) {
+                        return accept(candidate);
+                    }
+                } catch (PGPException e) {
+                    LOGGER.debug("Cannot decrypt SKESK using passphrase. Passphrase mismatch?", e);
+                }
+            }
+        }
+
+        // Try secret keys, including those of anonymous recipients
+        for (PGPPublicKeyEncryptedData pkesk : pkesks) {
+            for (SubkeyIdentifier candidateKey : findPotentialDecryptionKeys(pkesk)) {
+                PGPSecretKeyRing secretKeys = getSecretKeys(candidateKey);
+                PGPSecretKey secretKey = secretKeys.getSecretKey(candidateKey.getSubkeyId());
+                SecretKeyRingProtector protector = decryptionOptions.getSecretKeyProtector(secretKeys);
+                if (!protector.hasPassphraseFor(secretKey.getKeyID())) {
+                    LOGGER.debug("Skipping key " + candidateKey + " due to missing passphrase");
+                    continue;
+                }
+
+                PGPPrivateKey privateKey = UnlockSecretKey.unlockSecretKey(
+                        secretKey, protector, decryptionOptions.getUnlockedKeyCache());
+                PublicKeyDataDecryptorFactory decryptorFactory = ImplementationFactory.getInstance()
+                        .getPublicKeyDataDecryptorFactory(privateKey);
+                try {
+                    PGPSessionKey candidate = pkesk.getSessionKey(decryptorFactory);
+                    if (matches(packets, candidate, aead)) {
+                        return accept(candidate);
+                    }
+                } catch (PGPException e) {
+                    LOGGER.debug("Cannot decrypt PKESK using key " + candidateKey, e);
+                }
+            }
+        }
+
+        throw new MissingDecryptionMethodException("No valid decryption key, passphrase or session key found " +
+                "to recover the session key of the message.");
+    }
+
+    private SessionKey accept(PGPSessionKey sessionKey) throws UnacceptableAlgorithmException {
+        SymmetricKeyAlgorithm algorithm = SymmetricKeyAlgorithm.requireFromId(sessionKey.getAlgorithm());
+        if (!policy.getSymmetricKeyDecryptionAlgorithmPolicy().isAcceptable(algorithm)) {
+            throw new UnacceptableAlgorithmException("Symmetric-Key algorithm " + algorithm + " is not acceptable for message decryption.");
+        }
+        return new SessionKey(sessionKey);
+    }
+
+    private List<SubkeyIdentifier> findPotentialDecryptionKeys(PGPPublicKeyEncryptedData pkesk) {
+        List<SubkeyIdentifier> candidates = new ArrayList<>();
+        for (PGPSecretKeyRing secretKeys : decryptionOptions.getDecryptionKeys()) {
+            if (pkesk.getKeyID() != 0 && secretKeys.getSecretKey(pkesk.getKeyID()) == null) {
+                continue;
+            }
+            KeyRingInfo info = new KeyRingInfo(secretKeys, policy, new Date());
+            for (PGPPublicKey publicKey : info.getDecryptionSubkeys()) {
+                boolean isRecipient = pkesk.getKeyID() == 0 ?
+                        publicKey.getAlgorithm() == pkesk.getAlgorithm() :
+                        publicKey.getKeyID() == pkesk.getKeyID();
+                if (isRecipient && info.isSecretKeyAvailable(publicKey.getKeyID())) {
+                    candidates.add(new SubkeyIdentifier(secretKeys, publicKey.getKeyID()));
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private PGPSecretKeyRing getSecretKeys(SubkeyIdentifier subkeyIdentifier) {
+        for (PGPSecretKeyRing secretKeys : decryptionOptions.getDecryptionKeys()) {
+            if (secretKeys.getPublicKey().getKeyID() == subkeyIdentifier.getPrimaryKeyId()) {
+                return secretKeys;
+            }
+        }
+        throw new AssertionError("Decryption key " + subkeyIdentifier + " not found.");
+    }
+
+    /**
+     * Check the session key candidate against the beginning of the encrypted data.
+     * For version 1 packets, the candidate is checked against the quick check bytes.
+     * For version 2 packets (AEAD), the first chunk is authenticated.
+     * In both cases, the decrypted data needs to start with a plausible packet header.
+     *
+     * @param packets encrypted session keys and the beginning of the encrypted data
+     * @param candidate session key candidate
+     * @param aead whether the encrypted data is a version 2 packet
+     * @return true if the candidate matches
+     */
+    private static boolean matches(byte[] packets, PGPSessionKey candidate, boolean aead) throws IOException {
+        // The encrypted data of a parsed list can only be read once, so parse it again
+        PGPEncryptedDataList encryptedDataList = parse(packets);
+        try {
+            byte[] plaintext;
+            if (aead) {
+                FirstChunkDecryptorFactory decryptorFactory = new FirstChunkDecryptorFactory(candidate);
+                encryptedDataList.extractSessionKeyEncryptedData().getDataStream(decryptorFactory);
+                plaintext = decryptorFactory.decryptFirstChunk();
+            } else {
+                InputStream decrypted = encryptedDataList.extractSessionKeyEncryptedData().getDataStream(
+                        ImplementationFactory.getInstance().getSessionKeyDataDecryptorFactory(candidate));
+                plaintext = new byte[PLAINTEXT_CHECK_SIZE];
+                plaintext = Arrays.copyOf(plaintext, readFully(decrypted, plaintext));
+            }
+            if (!startsWithPlausiblePacket(plaintext)) {
+                LOGGER.debug("Session key candidate passed the quick check, but does not decrypt to a valid packet");
+                return false;
+            }
+            return true;
+        } catch (PGPException | IOException e) {
+            LOGGER.debug("Session key candidate does not match the encrypted data", e);
+            return false;
+        }
+    }
+
+    /**
+     * Check, whether the decrypted data starts with the header of a packet, which can start the content of
+     * an encrypted message, followed by a valid first octet of the packet body (usually a version number).
+     *
+     * @param plaintext beginning of the decrypted data
+     * @return true if the data starts with a plausible packet
+     */
+    private static boolean startsWithPlausiblePacket(byte[] plaintext) {
+        PacketHeader header;
+        try {
+            header = PacketHeader.read(new ByteArrayInputStream(plaintext));
+        } catch (IOException | MalformedOpenPgpMessageException e) {
+            return false;
+        }
+        if (header == null || header.encoded.length >= plaintext.length) {
+            return false;
+        }
+        int first = plaintext[header.encoded.length] & 0xff;
+        switch (header.tag) {
+            case PacketTags.LITERAL_DATA:
+                return StreamEncoding.fromCode(first) != null;
+            case PacketTags.COMPRESSED_DATA:
+                return CompressionAlgorithm.fromId(first) != null;
+            case PacketTags.ONE_PASS_SIGNATURE:
+                return first == 3 || first == 6;
+            case PacketTags.SIGNATURE:
+                return first >= 3 && first <= 6;
+            case PacketTags.PUBLIC_KEY_ENC_SESSION:
+                return first == 3 || first == 6;
+            case PacketTags.SYMMETRIC_KEY_ENC_SESSION:
+                return first == 4 || first == 6;
+            case PacketTags.SYM_ENC_INTEGRITY_PRO:
+                return first == 1 || first == 2;
+            case PacketTags.MARKER:
+                return first == 'P';
+            default:
+                return false;
+        }
+    }
+
+    private static PGPEncryptedDataList parse(byte[] packets) throws IOException {
+        return new PGPEncryptedDataList(new BCPGInputStream(new ByteArrayInputStream(packets)));
+    }
+
+    /**
+     * Encode the session key, as it is encrypted by encrypted session key packets.
+     * The encoding consists of the algorithm id, the key and a two octet checksum of the key.
+     *
+     * @param sessionKey session key
+     * @return session info
+     */
+    private static byte[] createSessionInfo(SessionKey sessionKey) {
+        byte[] key = sessionKey.getKey();
+        byte[] sessionInfo = new byte[key.length + 3];
+        sessionInfo[0] = (byte) sessionKey.getAlgorithm().getAlgorithmId();
+        System.arraycopy(key, 0, sessionInfo, 1, key.length);
+        int checksum = 0;
+        for (byte b : key) {
+            checksum += b & 0xff;
+        }
+        sessionInfo[key.length + 1] = (byte) (checksum >> 8);
+        sessionInfo[key.length + 2] = (byte) checksum;
+        return sessionInfo;
+    }
+
+    /**
+     * Read up to the given number of octets without consuming them.
+     *
+     * @param in input stream
+     * @param length number of octets
+     * @return octets read, shorter than length at the end of the stream
+     * @throws IOException in case of an IO error
+     */
+    private static byte[] readAhead(BufferedInputStream in, int length) throws IOException {
+        in.mark(length);
+        byte[] buffer = new byte[length];
+        int read = readFully(in, buffer);
+        in.reset();
+        return read == length ? buffer : Arrays.copyOf(buffer, read);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        while (length > 0) {
+            if (in.read() == -1) {
+                throw new EOFException("Unexpected end of message.");
+            }
+            length -= 1 + in.skip(length - 1);
+        }
+    }
+
+    /**
+     * {@link SessionKeyDataDecryptorFactory} which checks a session key candidate against a version 2 SEIPD packet
+     * by authenticating its first chunk.
+     * Bouncy Castle only hands out the parameters of the encrypted data packet (salt, algorithms, chunk size)
+     * to the decryptor factory, so the check is done through this factory.
+     */
+    private static final class FirstChunkDecryptorFactory implements SessionKeyDataDecryptorFactory {
+
+        private final PGPSessionKey sessionKey;
+        private AEADChunkCipher cipher;
+        private InputStream ciphertext;
+
+        private FirstChunkDecryptorFactory(@Nonnull PGPSessionKey sessionKey) {
+            this.sessionKey = sessionKey;
+        }
+
+        @Override
+        public PGPSessionKey getSessionKey() {
+            return sessionKey;
+        }
+
+        /**
+         * Decrypt the first chunk of the encrypted data and verify its authentication tag.
+         * If the encrypted data does not exceed a single chunk, the final authentication tag is verified as well.
+         *
+         * @return plaintext of the first chunk
+         *
+         * @throws PGPException if the session key does not match
+         * @throws IOException in case of an IO error
+         */
+        @Nonnull
+        private byte[] decryptFirstChunk() throws PGPException, IOException {
+            if (cipher == null) {
+                throw new PGPException("Encrypted data packet is not a version 2 SEIPD packet.");
+            }
+            int chunkLength = cipher.getChunkLength();
+            int tagLength = cipher.getTagLength();
+            // Read one tag further, to detect whether the first chunk is the last one
+            byte[] buffer = new byte[chunkLength + 2 * tagLength];
+            int length = readFully(ciphertext, buffer);
+            if (length == buffer.length) {
+                return cipher.decryptChunk(0, buffer, 0, chunkLength + tagLength);
+            }
+            if (length < tagLength) {
+                throw new PGPException("Encrypted data is truncated.");
+            }
+            int encryptedChunkLength = length - tagLength;
+            byte[] plaintext = encryptedChunkLength == 0 ? new byte[0] :
+                    cipher.decryptChunk(0, buffer, 0, encryptedChunkLength);
+            cipher.verifyFinalTag(encryptedChunkLength == 0 ? 0 : 1, plaintext.length, buffer, encryptedChunkLength);
+            return plaintext;
+        }
+
+        @Override
+        public PGPDataDecryptor createDataDecryptor(boolean withIntegrityPacket, int encAlgorithm, byte[] key)
+                throws PGPException {
+            throw new PGPException("Only version 2 SEIPD packets are supported.");
+        }
+
+        @Override
+        public PGPDataDecryptor createDataDecryptor(AEADEncDataPacket aeadEncDataPacket, PGPSessionKey sessionKey)
+                throws PGPException {
+            throw new PGPException("Only version 2 SEIPD packets are supported.");
+        }
+
+        @Override
+        public PGPDataDecryptor createDataDecryptor(SymmetricEncIntegrityPacket seipd, PGPSessionKey sessionKey)
+                throws PGPException {
+            SymmetricKeyAlgorithm symmetricKeyAlgorithm = SymmetricKeyAlgorithm.fromId(seipd.getCipherAlgorithm());
+            AEADAlgorithm aeadAlgorithm = AEADAlgorithm.fromId(seipd.getAeadAlgorithm());
+            if (symmetricKeyAlgorithm == null || aeadAlgorithm == null) {
+                throw new PGPException("Unsupported algorithms " + seipd.getCipherAlgorithm() + "/" +
+                        seipd.getAeadAlgorithm() + " in SEIPD packet.");
+            }
+            cipher = AEADChunkCipher.create(symmetricKeyAlgorithm, aeadAlgorithm,
+                    seipd.getChunkSize(), sessionKey.getKey(), seipd.getSalt());
+            return new PGPDataDecryptor() {
+                @Override
+                public InputStream getInputStream(InputStream in) {
+                    ciphertext = in;
+                    return in;
+                }
+
+                @Override
+                public int getBlockSize() {
+                    return 0;
+                }
+
+                @Override
+                public PGPDigestCalculator getIntegrityCalculator() {
+                    return null;
+                }
+            };
+        }
+    }
+
+    /**
+     * Header of an OpenPGP packet, as it was read from the message.
+     */
+    private static final class PacketHeader {
+        private final int tag;
+        // -1 for partial or indeterminate length
+        private final long length;
+        private final byte[] encoded;
+
+        private PacketHeader(int tag, long length, byte[] encoded) {
+            this.tag = tag;
+            this.length = length;
+            this.encoded = encoded;
+        }
+
+        /**
+         * Read a packet header.
+         * Only the first partial length of a packet with partial body lengths is consumed.
+         *
+         * @param in input stream
+         * @return header or null at the end of the stream
+         * @throws IOException in case of an IO error or malformed packet header
+         */
+        @Nullable
+        private static PacketHeader read(InputStream in) throws IOException {
+            int hdr = in.read();
+            if (hdr == -1) {
+                return null;
+            }
+            if ((hdr & 0x80) == 0) {
+                throw new MalformedOpenPgpMessageException("Invalid packet tag " + hdr + ".");
+            }
+
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(6);
+            encoded.write(hdr);
+            int tag;
+            long length;
+            if ((hdr & 0x40) != 0) {
+                // New packet format
+                tag = hdr & 0x3f;
+                int first = next(in, encoded);
+                if (first < 192) {
+                    length = first;
+                } else if (first < 224) {
+                    length = ((first - 192) << 8) + next(in, encoded) + 192;
+                } else if (first == 255) {
+                    length = readLength(in, encoded, 4);
+                } else {
+                    length = -1;
+                }
+            } else {
+                // Old packet format
+                tag = (hdr & 0x3f) >> 2;
+                switch (hdr & 0x03) {
+                    case 0:
+                        length = readLength(in, encoded, 1);
+                        break;
+                    case 1:
+                        length = readLength(in, encoded, 2);
+                        break;
+                    case 2:
+                        length = readLength(in, encoded, 4);
+                        break;
+                    default:
+                        length = -1;
+                        break;
+                }
+            }
+            return new PacketHeader(tag, length, encoded.toByteArray());
+        }
+
+        private static long readLength(InputStream in, ByteArrayOutputStream encoded, int octets) throws IOException {
+            long length = 0;
+            for (int i = 0; i < octets; i++) {
+                length = (length << 8) | next(in, encoded);
+            }
+            return length;
+        }
+
+        private static int next(InputStream in, ByteArrayOutputStream encoded) throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of packet header.");
+            }
+            encoded.write(b);
+            return b;
+        }
+    }
+}
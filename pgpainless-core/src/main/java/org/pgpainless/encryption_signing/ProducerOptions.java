@@ -15,6 +15,11 @@ import org.pgpainless.algorithm.StreamEncoding;
 
 public final class ProducerOptions {
 
+    /**
+     * Default number of octets, which are sampled to decide whether to compress the data (32 KiB).
+     */
+    public static final int DEFAULT_ADAPTIVE_COMPRESSION_SAMPLE_SIZE = 32 * 1024;
+
     private final EncryptionOptions encryptionOptions;
     private final SigningOptions signingOptions;
     private String fileName = "";
@@ -26,6 +31,9 @@ public final class ProducerOptions {
 
     private CompressionAlgorithm compressionAlgorithmOverride = PGPainless.getPolicy().getCompressionAlgorithmPolicy()
             .defaultCompressionAlgorithm();
+    private boolean adaptiveCompression = false;
+    private int adaptiveCompressionSampleSize = DEFAULT_ADAPTIVE_COMPRESSION_SAMPLE_SIZE;
+    private long expectedPlaintextLength = -1;
     private boolean asciiArmor = true;
     private String comment = null;
     private String version = null;
@@ -81,6 +89,33 @@ public final class ProducerOptions {
         return new ProducerOptions(null, null);
     }
 
+    /**
+     * Return a copy of these options, which uses the given encryption and signing options instead.
+     * This is used to create the options of a message from a {@link ProducerTemplate}.
+     *
+     * @param encryptionOptions encryption options or null
+     * @param signingOptions signing options or null
+     * @return copy
+     */
+    ProducerOptions copyWith(@Nullable EncryptionOptions encryptionOptions,
+                             @Nullable SigningOptions signingOptions) {
+        ProducerOptions copy = new ProducerOptions(encryptionOptions, signingOptions);
+        copy.fileName = fileName;
+        copy.modificationDate = modificationDate;
+        copy.encodingField = encodingField;
+        copy.applyCRLFEncoding = applyCRLFEncoding;
+        copy.cleartextSigned = cleartextSigned;
+        copy.hideArmorHeaders = hideArmorHeaders;
+        copy.compressionAlgorithmOverride = compressionAlgorithmOverride;
+        copy.adaptiveCompression = adaptiveCompression;
+        copy.adaptiveCompressionSampleSize = adaptiveCompressionSampleSize;
+        copy.expectedPlaintextLength = expectedPlaintextLength;
+        copy.asciiArmor = asciiArmor;
+        copy.comment = comment;
+        copy.version = version;
+        return copy;
+    }
+
     private static void throwIfNull(EncryptionOptions encryptionOptions) {
         if (encryptionOptions == null) {
             throw new NullPointerException("EncryptionOptions cannot be null.");
@@ -327,6 +362,106 @@ public final class ProducerOptions {
         return compressionAlgorithmOverride;
     }
 
+    /**
+     * Specify, whether compression shall be skipped for data which does not compress well.
+     * If enabled, the first {@link #setAdaptiveCompressionSampleSize(int) sample size} octets of the data are
+     * buffered and compressed on a trial basis before the literal data packet is started.
+     * If the sample does not shrink noticeably, the message is not compressed at all. This saves CPU time and
+     * output size for data which is already compressed, like images, archives or PDFs.
+     * Whether compression was skipped is reported by {@link EncryptionResult#isCompressionSkipped()}.
+     * <p>
+     * Until the sample is complete, the data is held back. Flushing the stream before that makes the decision based on
+     * the data written so far.
+     * This setting has no effect on cleartext signed messages, or if the compression algorithm is
+     * {@link CompressionAlgorithm#UNCOMPRESSED} anyway.
+     * The default value is false.
+     *
+     * @param adaptiveCompression adaptive compression
+     * @return builder
+     */
+    public ProducerOptions setAdaptiveCompression(boolean adaptiveCompression) {
+        this.adaptiveCompression = adaptiveCompression;
+        return this;
+    }
+
+    /**
+     * Return true if compression is skipped for incompressible data.
+     *
+     * @return adaptive compression
+     */
+    public boolean isAdaptiveCompression() {
+        return adaptiveCompression;
+    }
+
+    /**
+     * Set the number of octets, which are sampled to decide whether to compress the data, if
+     * {@link #setAdaptiveCompression(boolean) adaptive compression} is enabled.
+     * The default value is {@link #DEFAULT_ADAPTIVE_COMPRESSION_SAMPLE_SIZE}.
+     *
+     * @param sampleSize sample size in octets
+     * @return builder
+     */
+    public ProducerOptions setAdaptiveCompressionSampleSize(int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive.");
+        }
+        this.adaptiveCompressionSampleSize = sampleSize;
+        return this;
+    }
+
+    /**
+     * Return the number of octets, which are sampled to decide whether to compress the data.
+     *
+     * @return sample size in octets
+     */
+    public int getAdaptiveCompressionSampleSize() {
+        return adaptiveCompressionSampleSize;
+    }
+
+    /**
+     * Announce the number of octets of plaintext, which will be written to the {@link EncryptionStream}.
+     * If the length is known, the literal data packet, and if possible the encrypted data packet, are written with
+     * definite lengths instead of partial body lengths. This saves the partial length headers and allows consumers
+     * to skip over the packets.
+     * <p>
+     * Definite lengths can only be used if the message is not compressed and no CR/LF encoding is applied, since
+     * those change the length of the data.
+     * The encrypted data packet additionally requires the message to not contain inline signatures and not to be
+     * encrypted using AEAD. If a condition is not met, partial body lengths are used as usual.
+     * <p>
+     * Since the packet headers are written before the data, the written plaintext MUST match the announced length.
+     * Otherwise, the {@link EncryptionStream} throws an {@link java.io.IOException} instead of emitting a corrupt
+     * message.
+     *
+     * @param length length of the plaintext in octets
+     * @return builder
+     */
+    public ProducerOptions setExpectedPlaintextLength(long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Plaintext length cannot be negative.");
+        }
+        this.expectedPlaintextLength = length;
+        return this;
+    }
+
+    /**
+     * Return true, if the length of the plaintext was announced using {@link #setExpectedPlaintextLength(long)}.
+     *
+     * @return true if the plaintext length is known
+     */
+    public boolean hasExpectedPlaintextLength() {
+        return expectedPlaintextLength >= 0;
+    }
+
+    /**
+     * Return the announced length of the plaintext, or -1 if it is unknown.
+     *
+     * @return plaintext length in octets
+     */
+    public long getExpectedPlaintextLength() {
+        return expectedPlaintextLength;
+    }
+
     public @Nullable EncryptionOptions getEncryptionOptions() {
         return encryptionOptions;
     }
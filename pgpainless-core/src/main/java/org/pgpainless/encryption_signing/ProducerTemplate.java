@@ -0,0 +1,121 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
+import org.pgpainless.key.SubkeyIdentifier;
+
+/**
+ * Immutable, compiled form of {@link ProducerOptions}, which can be used to produce many messages with the same
+ * recipients, signers and settings.
+ *
+ * Setting up {@link EncryptionOptions} and {@link SigningOptions} is expensive: Recipient and signing keys are
+ * evaluated, signing keys are unlocked and algorithms are negotiated.
+ * A template does all of this only once, when it is {@link #compile(ProducerOptions) compiled}.
+ * It keeps the selected recipient subkeys and their encryption methods, the negotiated algorithms, the unlocked
+ * signing keys and the signature subpackets. For each message, only new signature generators, passphrase-based
+ * encryption methods and encryption streams are created.
+ * Passphrase-based encryption methods are never shared between messages, so that each message uses its own S2K salt.
+ * Therefore, the template keeps a copy of the passphrases for its whole lifetime.
+ * <p>
+ * A template can be used from multiple threads concurrently:
+ * <pre>
+ * {@code
+ * ProducerTemplate template = ProducerTemplate.compile(ProducerOptions.signAndEncrypt(encOpts, signOpts));
+ * EncryptionStream stream = PGPainless.encryptAndOrSign()
+ *         .onOutputStream(out)
+ *         .withTemplate(template);
+ * }
+ * </pre>
+ * Note, that the template does not notice changes made to the keys after compilation, e.g. if a recipient key
+ * expires or is revoked. In that case, compile a new template.
+ */
+public final class ProducerTemplate {
+
+    // Holds the settings of the compiled options, but no encryption or signing options
+    private final ProducerOptions settings;
+    private final EncryptionOptions encryptionOptions;
+    private final Map<SubkeyIdentifier, SigningOptions.SigningMethod> signingMethods;
+    private final boolean signing;
+
+    private ProducerTemplate(@Nonnull ProducerOptions settings,
+                             @Nullable EncryptionOptions encryptionOptions,
+                             @Nonnull Map<SubkeyIdentifier, SigningOptions.SigningMethod> signingMethods,
+                             boolean signing) {
+        this.settings = settings;
+        this.encryptionOptions = encryptionOptions;
+        this.signingMethods = signingMethods;
+        this.signing = signing;
+    }
+
+    /**
+     * Compile the given options into a template.
+     * Later changes to the options do not affect the template.
+     * The signature generators of the given options are not used by the template, so the options can still be used
+     * to produce a single message.
+     *
+     * @param options options
+     * @return template
+     *
+     * @throws IllegalArgumentException if the options contain a passphrase-based encryption method that was not added
+     * via {@link EncryptionOptions#addPassphrase(org.pgpainless.util.Passphrase)}
+     */
+    @Nonnull
+    public static ProducerTemplate compile(@Nonnull ProducerOptions options) {
+        EncryptionOptions compiledEncryptionOptions = null;
+        EncryptionOptions encryptionOptions = options.getEncryptionOptions();
+        if (encryptionOptions != null) {
+            SymmetricKeyAlgorithm encryptionAlgorithm = null;
+            if (encryptionOptions.hasEncryptionMethod()) {
+                encryptionAlgorithm = EncryptionBuilder.negotiateSymmetricEncryptionAlgorithm(encryptionOptions);
+            }
+            compiledEncryptionOptions = encryptionOptions.copyWithAlgorithm(encryptionAlgorithm);
+        }
+
+        Map<SubkeyIdentifier, SigningOptions.SigningMethod> signingMethods = new LinkedHashMap<>();
+        SigningOptions signingOptions = options.getSigningOptions();
+        if (signingOptions != null) {
+            signingMethods.putAll(signingOptions.getSigningMethods());
+        }
+
+        return new ProducerTemplate(options.copyWith(null, null), compiledEncryptionOptions,
+                Collections.unmodifiableMap(signingMethods), signingOptions != null);
+    }
+
+    /**
+     * Create the {@link ProducerOptions} for a single message.
+     * The returned options contain new signature generators and new passphrase-based encryption methods, but share
+     * the evaluated keys, negotiated algorithms and public-key encryption methods with the template.
+     *
+     * @return producer options
+     *
+     * @throws PGPException if a signature generator cannot be created
+     */
+    @Nonnull
+    public ProducerOptions createProducerOptions() throws PGPException {
+        EncryptionOptions messageEncryptionOptions = null;
+        if (encryptionOptions != null) {
+            messageEncryptionOptions = encryptionOptions.copyWithAlgorithm(
+                    encryptionOptions.getEncryptionAlgorithmOverride());
+        }
+
+        SigningOptions messageSigningOptions = null;
+        if (signing) {
+            messageSigningOptions = SigningOptions.get();
+            for (Map.Entry<SubkeyIdentifier, SigningOptions.SigningMethod> entry : signingMethods.entrySet()) {
+                messageSigningOptions.addSigningMethod(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return settings.copyWith(messageEncryptionOptions, messageSigningOptions);
+    }
+}
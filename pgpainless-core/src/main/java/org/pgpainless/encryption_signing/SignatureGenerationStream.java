@@ -5,37 +5,71 @@
 package org.pgpainless.encryption_signing;
 
 import org.bouncycastle.openpgp.PGPSignatureGenerator;
-import org.pgpainless.key.SubkeyIdentifier;
+import org.pgpainless.signature.SharedDigests;
+import org.pgpainless.util.TextCanonicalizer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * OutputStream which has the task of updating signature generators for written data.
+ * Signing methods which make use of shared digests are updated via their {@link SharedDigests}, so that
+ * the data is only hashed once per hash algorithm and signature type.
+ * For cleartext signed messages, trailing whitespace is removed from the hashed lines, as required by RFC4880 §7.1.
+ * The data written to the wrapped stream is not altered.
  */
 class SignatureGenerationStream extends OutputStream {
 
     private final OutputStream wrapped;
-    private final SigningOptions options;
+    private final List<PGPSignatureGenerator> signatureGenerators = new ArrayList<>();
+    private final List<SigningOptions.SigningMethod> sharedDigestMethods = new ArrayList<>();
+    private final SharedDigests<SigningOptions.SigningMethod> sharedDigests = new SharedDigests<>();
+    private final SharedDigests<SigningOptions.SigningMethod>.Updater sharedDigestUpdater;
+    // Only used for cleartext signed messages
+    private final TextCanonicalizer cleartextCanonicalizer;
 
-    SignatureGenerationStream(@Nonnull OutputStream wrapped, @Nullable SigningOptions signingOptions) {
+    SignatureGenerationStream(@Nonnull OutputStream wrapped, @Nullable SigningOptions signingOptions,
+                              boolean cleartextSigned) {
         this.wrapped = wrapped;
-        this.options = signingOptions;
+        if (signingOptions != null) {
+            for (SigningOptions.SigningMethod signingMethod : signingOptions.getSigningMethods().values()) {
+                if (signingMethod.getSharedDigest() != null && sharedDigests.add(
+                        signingMethod, signingMethod.getHashAlgorithm(), signingMethod.isCanonicalText())) {
+                    sharedDigestMethods.add(signingMethod);
+                } else {
+                    signatureGenerators.add(signingMethod.getSignatureGenerator());
+                }
+            }
+        }
+        this.sharedDigestUpdater = sharedDigests.updater(sharedDigestMethods);
+        if (cleartextSigned) {
+            cleartextCanonicalizer = new TextCanonicalizer(new TextCanonicalizer.Sink() {
+                @Override
+                public void write(@Nonnull byte[] b, int off, int len) {
+                    updateSignatures(b, off, len);
+                }
+            }, true);
+        } else {
+            cleartextCanonicalizer = null;
+        }
     }
 
     @Override
     public void write(int b) throws IOException {
         wrapped.write(b);
-        if (options == null || options.getSigningMethods().isEmpty()) {
+        byte asByte = (byte) (b & 0xff);
+        if (cleartextCanonicalizer != null) {
+            cleartextCanonicalizer.update(asByte);
             return;
         }
-
-        for (SubkeyIdentifier signingKey : options.getSigningMethods().keySet()) {
-            SigningOptions.SigningMethod signingMethod = options.getSigningMethods().get(signingKey);
-            PGPSignatureGenerator signatureGenerator = signingMethod.getSignatureGenerator();
-            byte asByte = (byte) (b & 0xff);
+        if (!sharedDigestMethods.isEmpty()) {
+            sharedDigestUpdater.update(asByte);
+        }
+        for (PGPSignatureGenerator signatureGenerator : signatureGenerators) {
             signatureGenerator.update(asByte);
         }
     }
@@ -47,19 +81,32 @@ class SignatureGenerationStream extends OutputStream {
 
     @Override
     public void write(@Nonnull byte[] buffer, int off, int len) throws IOException {
-        wrapped.write(buffer, 0, len);
-        if (options == null || options.getSigningMethods().isEmpty()) {
-            return;
+        wrapped.write(buffer, off, len);
+        if (cleartextCanonicalizer != null) {
+            cleartextCanonicalizer.update(buffer, off, len);
+        } else {
+            updateSignatures(buffer, off, len);
         }
-        for (SubkeyIdentifier signingKey : options.getSigningMethods().keySet()) {
-            SigningOptions.SigningMethod signingMethod = options.getSigningMethods().get(signingKey);
-            PGPSignatureGenerator signatureGenerator = signingMethod.getSignatureGenerator();
-            signatureGenerator.update(buffer, 0, len);
+    }
+
+    private void updateSignatures(byte[] buffer, int off, int len) {
+        if (!sharedDigestMethods.isEmpty()) {
+            sharedDigestUpdater.update(buffer, off, len);
+        }
+        for (PGPSignatureGenerator signatureGenerator : signatureGenerators) {
+            signatureGenerator.update(buffer, off, len);
         }
     }
 
     @Override
     public void close() throws IOException {
         wrapped.close();
+        if (cleartextCanonicalizer != null) {
+            cleartextCanonicalizer.finish();
+        }
+        // Hand each signature generator a copy of the shared digest to append its trailer to
+        for (SigningOptions.SigningMethod signingMethod : sharedDigestMethods) {
+            signingMethod.getSharedDigest().resolve(sharedDigests.getDigest(signingMethod));
+        }
     }
 }
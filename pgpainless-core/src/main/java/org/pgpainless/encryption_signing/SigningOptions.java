@@ -4,6 +4,7 @@
 
 package org.pgpainless.encryption_signing;
 
+import java.security.MessageDigest;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -19,20 +20,25 @@ import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPSecretKey;
 import org.bouncycastle.openpgp.PGPSecretKeyRing;
 import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketVector;
 import org.bouncycastle.openpgp.operator.PGPContentSignerBuilder;
 import org.pgpainless.PGPainless;
 import org.pgpainless.algorithm.DocumentSignatureType;
 import org.pgpainless.algorithm.HashAlgorithm;
 import org.pgpainless.algorithm.PublicKeyAlgorithm;
 import org.pgpainless.algorithm.negotiation.HashAlgorithmNegotiator;
+import org.pgpainless.decryption_verification.BcPGPHashContextContentVerifierBuilderProvider;
 import org.pgpainless.exception.KeyException;
 import org.pgpainless.implementation.ImplementationFactory;
 import org.pgpainless.key.OpenPgpFingerprint;
 import org.pgpainless.key.SubkeyIdentifier;
 import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.info.KeyRingInfoCache;
 import org.pgpainless.key.protection.SecretKeyRingProtector;
 import org.pgpainless.key.protection.UnlockSecretKey;
+import org.pgpainless.key.protection.UnlockedKeyCache;
 import org.pgpainless.policy.Policy;
+import org.pgpainless.signature.SharedDigests;
 import org.pgpainless.signature.subpackets.BaseSignatureSubpackets;
 import org.pgpainless.signature.subpackets.SignatureSubpackets;
 import org.pgpainless.signature.subpackets.SignatureSubpacketsHelper;
@@ -46,13 +52,37 @@ public final class SigningOptions {
         private final PGPSignatureGenerator signatureGenerator;
         private final boolean detached;
         private final HashAlgorithm hashAlgorithm;
+        private final DeferredMessageDigest sharedDigest;
+        private final boolean canonicalText;
+        // Inputs of the signature generator, from which a new generator can be created for another message
+        private final PGPPrivateKey signingKey;
+        private final DocumentSignatureType signatureType;
+        private final PGPSignatureSubpacketVector hashedSubpackets;
+        private final PGPSignatureSubpacketVector unhashedSubpackets;
 
         private SigningMethod(@Nonnull PGPSignatureGenerator signatureGenerator,
                               boolean detached,
                               @Nonnull HashAlgorithm hashAlgorithm) {
+            this(signatureGenerator, detached, hashAlgorithm, null, null, null, null, null);
+        }
+
+        private SigningMethod(@Nonnull PGPSignatureGenerator signatureGenerator,
+                              boolean detached,
+                              @Nonnull HashAlgorithm hashAlgorithm,
+                              @Nullable DeferredMessageDigest sharedDigest,
+                              @Nullable PGPPrivateKey signingKey,
+                              @Nullable DocumentSignatureType signatureType,
+                              @Nullable PGPSignatureSubpacketVector hashedSubpackets,
+                              @Nullable PGPSignatureSubpacketVector unhashedSubpackets) {
             this.signatureGenerator = signatureGenerator;
             this.detached = detached;
             this.hashAlgorithm = hashAlgorithm;
+            this.sharedDigest = sharedDigest;
+            this.canonicalText = signatureType == DocumentSignatureType.CANONICAL_TEXT_DOCUMENT;
+            this.signingKey = signingKey;
+            this.signatureType = signatureType;
+            this.hashedSubpackets = hashedSubpackets;
+            this.unhashedSubpackets = unhashedSubpackets;
         }
 
         /**
@@ -93,16 +123,86 @@ public final class SigningOptions {
         public HashAlgorithm getHashAlgorithm() {
             return hashAlgorithm;
         }
+
+        /**
+         * Return the digest of the signature generator, if the signed data is hashed into a shared digest.
+         * In that case, the signature generator MUST NOT be updated directly.
+         *
+         * @return deferred digest or null
+         */
+        @Nullable
+        DeferredMessageDigest getSharedDigest() {
+            return sharedDigest;
+        }
+
+        /**
+         * Return true, if the signed data is canonicalized as text.
+         *
+         * @return canonical text
+         */
+        boolean isCanonicalText() {
+            return canonicalText;
+        }
+
+        /**
+         * Return true, if this signing method was created by {@link SigningOptions} and therefore knows the key,
+         * signature type and subpackets to create another signature generator from.
+         *
+         * @return true if the signing method can be renewed
+         */
+        boolean isRenewable() {
+            return signingKey != null;
+        }
     }
 
     private final Map<SubkeyIdentifier, SigningMethod> signingMethods = new HashMap<>();
     private HashAlgorithm hashAlgorithmOverride;
+    private UnlockedKeyCache unlockedKeyCache;
+    private boolean sharedDigests = false;
 
     @Nonnull
     public static SigningOptions get() {
         return new SigningOptions();
     }
 
+    /**
+     * Set an {@link UnlockedKeyCache} which is used to cache unlocked signing keys.
+     * This prevents expensive S2K derivation if the same key is used to sign many messages.
+     * Note: The cache needs to be set before any signing keys are added.
+     *
+     * @param cache cache for unlocked secret keys or null
+     * @return this
+     * @throws IllegalStateException if signing keys were already added
+     */
+    @Nonnull
+    public SigningOptions setUnlockedKeyCache(@Nullable UnlockedKeyCache cache) {
+        if (!signingMethods.isEmpty()) {
+            throw new IllegalStateException("The unlocked key cache must be set before signing keys are added.");
+        }
+        this.unlockedKeyCache = cache;
+        return this;
+    }
+
+    /**
+     * If set to true, signatures which use the same hash algorithm and signature type share a single digest
+     * of the signed data, which is copied once the data is hashed to append the signature trailers.
+     * This way, the data is only hashed once per hash algorithm and signature type, instead of once per signature.
+     * Signatures made by keys which do not support signing of hash contexts are still calculated separately.
+     * Note: This needs to be set before any signing keys are added.
+     *
+     * @param sharedDigests whether to share digests between signatures
+     * @return this
+     * @throws IllegalStateException if signing keys were already added
+     */
+    @Nonnull
+    public SigningOptions setSharedDigests(boolean sharedDigests) {
+        if (!signingMethods.isEmpty()) {
+            throw new IllegalStateException("Shared digests must be configured before signing keys are added.");
+        }
+        this.sharedDigests = sharedDigests;
+        return this;
+    }
+
     /**
      * Sign the message using an inline signature made by the provided signing key.
      *
@@ -212,7 +312,7 @@ public final class SigningOptions {
                                              @Nonnull DocumentSignatureType signatureType,
                                              @Nullable BaseSignatureSubpackets.Callback subpacketsCallback)
             throws KeyException, PGPException {
-        KeyRingInfo keyRingInfo = new KeyRingInfo(secretKey, new Date());
+        KeyRingInfo keyRingInfo = KeyRingInfoCache.inspect(secretKey, new Date());
         if (userId != null && !keyRingInfo.isUserIdValid(userId)) {
             throw new KeyException.UnboundUserIdException(
                     OpenPgpFingerprint.of(secretKey),
@@ -232,7 +332,7 @@ public final class SigningOptions {
             if (signingSecKey == null) {
                 throw new KeyException.MissingSecretKeyException(OpenPgpFingerprint.of(secretKey), signingPubKey.getKeyID());
             }
-            PGPPrivateKey signingSubkey = UnlockSecretKey.unlockSecretKey(signingSecKey, secretKeyDecryptor);
+            PGPPrivateKey signingSubkey = UnlockSecretKey.unlockSecretKey(signingSecKey, secretKeyDecryptor, unlockedKeyCache);
             Set<HashAlgorithm> hashAlgorithms = userId != null ? keyRingInfo.getPreferredHashAlgorithms(userId)
                     : keyRingInfo.getPreferredHashAlgorithms(signingPubKey.getKeyID());
             HashAlgorithm hashAlgorithm = negotiateHashAlgorithm(hashAlgorithms, PGPainless.getPolicy());
@@ -280,7 +380,7 @@ public final class SigningOptions {
                                              long keyId,
                                              @Nonnull DocumentSignatureType signatureType,
                                              @Nullable BaseSignatureSubpackets.Callback subpacketsCallback) throws PGPException {
-        KeyRingInfo keyRingInfo = PGPainless.inspectKeyRing(secretKey);
+        KeyRingInfo keyRingInfo = KeyRingInfoCache.inspect(secretKey, new Date());
 
         List<PGPPublicKey> signingPubKeys = keyRingInfo.getSigningSubkeys();
         if (signingPubKeys.isEmpty()) {
@@ -294,7 +394,7 @@ public final class SigningOptions {
                 if (signingSecKey == null) {
                     throw new KeyException.MissingSecretKeyException(OpenPgpFingerprint.of(secretKey), signingPubKey.getKeyID());
                 }
-                PGPPrivateKey signingSubkey = UnlockSecretKey.unlockSecretKey(signingSecKey, secretKeyDecryptor);
+                PGPPrivateKey signingSubkey = UnlockSecretKey.unlockSecretKey(signingSecKey, secretKeyDecryptor, unlockedKeyCache);
                 Set<HashAlgorithm> hashAlgorithms = keyRingInfo.getPreferredHashAlgorithms(signingPubKey.getKeyID());
                 HashAlgorithm hashAlgorithm = negotiateHashAlgorithm(hashAlgorithms, PGPainless.getPolicy());
                 addSigningMethod(secretKey, signingSubkey, subpacketsCallback, hashAlgorithm, signatureType, false);
@@ -418,7 +518,7 @@ public final class SigningOptions {
                                                @Nonnull DocumentSignatureType signatureType,
                                                @Nullable BaseSignatureSubpackets.Callback subpacketCallback)
             throws PGPException {
-        KeyRingInfo keyRingInfo = new KeyRingInfo(secretKey, new Date());
+        KeyRingInfo keyRingInfo = KeyRingInfoCache.inspect(secretKey, new Date());
         if (userId != null && !keyRingInfo.isUserIdValid(userId)) {
             throw new KeyException.UnboundUserIdException(
                     OpenPgpFingerprint.of(secretKey),
@@ -438,7 +538,7 @@ public final class SigningOptions {
             if (signingSecKey == null) {
                 throw new KeyException.MissingSecretKeyException(OpenPgpFingerprint.of(secretKey), signingPubKey.getKeyID());
             }
-            PGPPrivateKey signingSubkey = UnlockSecretKey.unlockSecretKey(signingSecKey, secretKeyDecryptor);
+            PGPPrivateKey signingSubkey = UnlockSecretKey.unlockSecretKey(signingSecKey, secretKeyDecryptor, unlockedKeyCache);
             Set<HashAlgorithm> hashAlgorithms = userId != null ? keyRingInfo.getPreferredHashAlgorithms(userId)
                     : keyRingInfo.getPreferredHashAlgorithms(signingPubKey.getKeyID());
             HashAlgorithm hashAlgorithm = negotiateHashAlgorithm(hashAlgorithms, PGPainless.getPolicy());
@@ -485,7 +585,7 @@ public final class SigningOptions {
                                              long keyId,
                                              @Nonnull DocumentSignatureType signatureType,
                                              @Nullable BaseSignatureSubpackets.Callback subpacketsCallback) throws PGPException {
-        KeyRingInfo keyRingInfo = PGPainless.inspectKeyRing(secretKey);
+        KeyRingInfo keyRingInfo = KeyRingInfoCache.inspect(secretKey, new Date());
 
         List<PGPPublicKey> signingPubKeys = keyRingInfo.getSigningSubkeys();
         if (signingPubKeys.isEmpty()) {
@@ -499,7 +599,7 @@ public final class SigningOptions {
                 if (signingSecKey == null) {
                     throw new KeyException.MissingSecretKeyException(OpenPgpFingerprint.of(secretKey), signingPubKey.getKeyID());
                 }
-                PGPPrivateKey signingSubkey = UnlockSecretKey.unlockSecretKey(signingSecKey, secretKeyDecryptor);
+                PGPPrivateKey signingSubkey = UnlockSecretKey.unlockSecretKey(signingSecKey, secretKeyDecryptor, unlockedKeyCache);
                 Set<HashAlgorithm> hashAlgorithms = keyRingInfo.getPreferredHashAlgorithms(signingPubKey.getKeyID());
                 HashAlgorithm hashAlgorithm = negotiateHashAlgorithm(hashAlgorithms, PGPainless.getPolicy());
                 addSigningMethod(secretKey, signingSubkey, subpacketsCallback, hashAlgorithm, signatureType, true);
@@ -527,7 +627,13 @@ public final class SigningOptions {
                             OpenPgpFingerprint.of(secretKey), signingSecretKey.getKeyID(), publicKeyAlgorithm, bitStrength));
         }
 
-        PGPSignatureGenerator generator = createSignatureGenerator(signingSubkey, hashAlgorithm, signatureType);
+        DeferredMessageDigest sharedDigest = null;
+        if (sharedDigests && BcPGPHashContextContentVerifierBuilderProvider.isSupported(publicKeyAlgorithm.getAlgorithmId())) {
+            MessageDigest prototype = SharedDigests.createDigest(hashAlgorithm);
+            if (prototype != null) {
+                sharedDigest = new DeferredMessageDigest(prototype);
+            }
+        }
 
         // Subpackets
         SignatureSubpackets hashedSubpackets = SignatureSubpackets.createHashedSubpackets(signingSecretKey.getPublicKey());
@@ -536,12 +642,55 @@ public final class SigningOptions {
             subpacketCallback.modifyHashedSubpackets(hashedSubpackets);
             subpacketCallback.modifyUnhashedSubpackets(unhashedSubpackets);
         }
-        generator.setHashedSubpackets(SignatureSubpacketsHelper.toVector(hashedSubpackets));
-        generator.setUnhashedSubpackets(SignatureSubpacketsHelper.toVector(unhashedSubpackets));
 
-        SigningMethod signingMethod = detached ?
-                SigningMethod.detachedSignature(generator, hashAlgorithm) :
-                SigningMethod.inlineSignature(generator, hashAlgorithm);
+        addSigningMethod(signingKeyIdentifier, signingSubkey, hashAlgorithm, signatureType,
+                SignatureSubpacketsHelper.toVector(hashedSubpackets),
+                SignatureSubpacketsHelper.toVector(unhashedSubpackets),
+                sharedDigest, detached);
+    }
+
+    /**
+     * Add a signing method, which signs using the same key, hash algorithm, signature type and subpackets as the given
+     * signing method, but uses a new signature generator.
+     * No key evaluation or unlocking takes place.
+     * This is used to create the signing methods of a message from a {@link ProducerTemplate}.
+     *
+     * @param signingKeyIdentifier identifier of the signing key
+     * @param prototype signing method created by another instance of {@link SigningOptions}
+     *
+     * @throws PGPException if the signature generator cannot be created
+     */
+    void addSigningMethod(@Nonnull SubkeyIdentifier signingKeyIdentifier,
+                          @Nonnull SigningMethod prototype)
+            throws PGPException {
+        if (!prototype.isRenewable()) {
+            throw new IllegalArgumentException("Signing method of key " + signingKeyIdentifier + " cannot be renewed.");
+        }
+        DeferredMessageDigest sharedDigest = null;
+        if (prototype.getSharedDigest() != null) {
+            // Shared digests are only set if the hash algorithm is supported, so this is never null
+            sharedDigest = new DeferredMessageDigest(SharedDigests.createDigest(prototype.getHashAlgorithm()));
+        }
+        addSigningMethod(signingKeyIdentifier, prototype.signingKey, prototype.getHashAlgorithm(),
+                prototype.signatureType, prototype.hashedSubpackets, prototype.unhashedSubpackets,
+                sharedDigest, prototype.isDetached());
+    }
+
+    private void addSigningMethod(@Nonnull SubkeyIdentifier signingKeyIdentifier,
+                                  @Nonnull PGPPrivateKey signingSubkey,
+                                  @Nonnull HashAlgorithm hashAlgorithm,
+                                  @Nonnull DocumentSignatureType signatureType,
+                                  @Nonnull PGPSignatureSubpacketVector hashedSubpackets,
+                                  @Nonnull PGPSignatureSubpacketVector unhashedSubpackets,
+                                  @Nullable DeferredMessageDigest sharedDigest,
+                                  boolean detached)
+            throws PGPException {
+        PGPSignatureGenerator generator = createSignatureGenerator(signingSubkey, hashAlgorithm, signatureType, sharedDigest);
+        generator.setHashedSubpackets(hashedSubpackets);
+        generator.setUnhashedSubpackets(unhashedSubpackets);
+
+        SigningMethod signingMethod = new SigningMethod(generator, detached, hashAlgorithm, sharedDigest,
+                signingSubkey, signatureType, hashedSubpackets, unhashedSubpackets);
         signingMethods.put(signingKeyIdentifier, signingMethod);
     }
 
@@ -571,11 +720,14 @@ public final class SigningOptions {
     @Nonnull
     private PGPSignatureGenerator createSignatureGenerator(@Nonnull PGPPrivateKey privateKey,
                                                            @Nonnull HashAlgorithm hashAlgorithm,
-                                                           @Nonnull DocumentSignatureType signatureType)
+                                                           @Nonnull DocumentSignatureType signatureType,
+                                                           @Nullable DeferredMessageDigest sharedDigest)
             throws PGPException {
         int publicKeyAlgorithm = privateKey.getPublicKeyPacket().getAlgorithm();
-        PGPContentSignerBuilder signerBuilder = ImplementationFactory.getInstance()
-                .getPGPContentSignerBuilder(publicKeyAlgorithm, hashAlgorithm.getAlgorithmId());
+        PGPContentSignerBuilder signerBuilder = sharedDigest != null ?
+                new BcPGPHashContextContentSignerBuilder(sharedDigest) :
+                ImplementationFactory.getInstance()
+                        .getPGPContentSignerBuilder(publicKeyAlgorithm, hashAlgorithm.getAlgorithmId());
         PGPSignatureGenerator signatureGenerator = new PGPSignatureGenerator(signerBuilder);
         signatureGenerator.init(signatureType.getSignatureType().getCode(), privateKey);
 
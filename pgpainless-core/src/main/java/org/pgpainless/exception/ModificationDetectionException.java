@@ -11,4 +11,11 @@ import java.io.IOException;
  */
 public class ModificationDetectionException extends IOException {
 
+    public ModificationDetectionException() {
+        super();
+    }
+
+    public ModificationDetectionException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
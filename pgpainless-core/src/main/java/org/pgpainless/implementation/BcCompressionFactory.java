@@ -0,0 +1,35 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.implementation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.openpgp.PGPCompressedData;
+import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
+import org.bouncycastle.openpgp.PGPException;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+
+/**
+ * {@link CompressionFactory} which uses Bouncy Castles {@link PGPCompressedDataGenerator} and
+ * {@link PGPCompressedData} with their default settings.
+ */
+public class BcCompressionFactory extends CompressionFactory {
+
+    @Override
+    public OutputStream openCompressedDataPacket(@Nonnull OutputStream out,
+                                                 @Nonnull CompressionAlgorithm algorithm)
+            throws IOException {
+        return new PGPCompressedDataGenerator(algorithm.getAlgorithmId()).open(out);
+    }
+
+    @Override
+    public InputStream getDecompressionStream(@Nonnull PGPCompressedData compressedData)
+            throws PGPException {
+        return compressedData.getDataStream();
+    }
+}
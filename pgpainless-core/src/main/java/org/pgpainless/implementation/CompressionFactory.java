@@ -0,0 +1,63 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.implementation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.openpgp.PGPCompressedData;
+import org.bouncycastle.openpgp.PGPException;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+
+/**
+ * Factory for the streams, which compress and decompress the content of Compressed Data packets.
+ * Like the {@link ImplementationFactory}, this allows to switch out the compression engine.
+ * <p>
+ * By default, the {@link BcCompressionFactory} is used, which behaves like Bouncy Castle.
+ * The {@link JdkCompressionFactory} allows to configure the level, strategy and buffer sizes of the compression.
+ */
+public abstract class CompressionFactory {
+
+    private static CompressionFactory FACTORY_IMPLEMENTATION;
+
+    public static void setFactoryImplementation(CompressionFactory implementation) {
+        FACTORY_IMPLEMENTATION = implementation;
+    }
+
+    public static CompressionFactory getInstance() {
+        if (FACTORY_IMPLEMENTATION == null) {
+            FACTORY_IMPLEMENTATION = new BcCompressionFactory();
+        }
+        return FACTORY_IMPLEMENTATION;
+    }
+
+    /**
+     * Write the header of a Compressed Data packet to the given {@link OutputStream} and return a stream, which
+     * compresses the data written to it into the packet.
+     * Closing the returned stream finishes the packet, but does not close the underlying stream.
+     *
+     * @param out output stream
+     * @param algorithm compression algorithm
+     * @return compressing output stream
+     *
+     * @throws IOException in case of an IO error
+     */
+    public abstract OutputStream openCompressedDataPacket(@Nonnull OutputStream out,
+                                                          @Nonnull CompressionAlgorithm algorithm)
+            throws IOException;
+
+    /**
+     * Return a stream of the decompressed content of the given Compressed Data packet.
+     *
+     * @param compressedData compressed data packet
+     * @return decompressing input stream
+     *
+     * @throws PGPException if the compression algorithm is not supported
+     */
+    public abstract InputStream getDecompressionStream(@Nonnull PGPCompressedData compressedData)
+            throws PGPException;
+}
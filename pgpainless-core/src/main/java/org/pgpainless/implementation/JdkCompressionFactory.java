@@ -0,0 +1,198 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.implementation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.openpgp.PGPCompressedData;
+import org.bouncycastle.openpgp.PGPException;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+
+/**
+ * {@link CompressionFactory} which uses the {@link Deflater} and {@link Inflater} of the JDK (zlib) directly for
+ * {@link CompressionAlgorithm#ZIP} and {@link CompressionAlgorithm#ZLIB}.
+ * Contrary to the {@link BcCompressionFactory}, the compression level and strategy, as well as the size of the
+ * buffers can be configured.
+ * Bouncy Castle uses buffers of 512 bytes, which causes many small reads and writes on the surrounding streams.
+ * <p>
+ * Other algorithms ({@link CompressionAlgorithm#BZIP2}) are handled by the {@link BcCompressionFactory}.
+ */
+public class JdkCompressionFactory extends CompressionFactory {
+
+    /**
+     * Default size of the buffers used for compression and decompression.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final int level;
+    private final int strategy;
+    private final int bufferSize;
+    private final CompressionFactory fallback = new BcCompressionFactory();
+
+    /**
+     * Create a factory which uses the default compression level and strategy, as well as buffers of
+     * {@link #DEFAULT_BUFFER_SIZE} bytes.
+     */
+    public JdkCompressionFactory() {
+        this(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a factory.
+     *
+     * @param level compression level between {@link Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION},
+     *              or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param strategy compression strategy, one of {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED}
+     *                 and {@link Deflater#HUFFMAN_ONLY}
+     * @param bufferSize size of the buffers used for compression and decompression
+     */
+    public JdkCompressionFactory(int level, int strategy, int bufferSize) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("Invalid compression strategy: " + strategy);
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        }
+        this.level = level;
+        this.strategy = strategy;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Return the compression level.
+     *
+     * @return level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Return the compression strategy.
+     *
+     * @return strategy
+     */
+    public int getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Return the size of the buffers used for compression and decompression.
+     *
+     * @return buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public OutputStream openCompressedDataPacket(@Nonnull OutputStream out,
+                                                 @Nonnull CompressionAlgorithm algorithm)
+            throws IOException {
+        if (algorithm != CompressionAlgorithm.ZIP && algorithm != CompressionAlgorithm.ZLIB) {
+            return fallback.openCompressedDataPacket(out, algorithm);
+        }
+        // Same framing as Bouncy Castle (indeterminate length), followed by the algorithm octet
+        BCPGOutputStream packetOut = new BCPGOutputStream(out, PacketTags.COMPRESSED_DATA);
+        packetOut.write(algorithm.getAlgorithmId());
+
+        Deflater deflater = new Deflater(level, algorithm == CompressionAlgorithm.ZIP);
+        deflater.setStrategy(strategy);
+        return new PacketDeflaterOutputStream(packetOut, deflater, bufferSize);
+    }
+
+    @Override
+    public InputStream getDecompressionStream(@Nonnull PGPCompressedData compressedData)
+            throws PGPException {
+        CompressionAlgorithm algorithm = CompressionAlgorithm.fromId(compressedData.getAlgorithm());
+        if (algorithm != CompressionAlgorithm.ZIP && algorithm != CompressionAlgorithm.ZLIB) {
+            return fallback.getDecompressionStream(compressedData);
+        }
+        Inflater inflater = new Inflater(algorithm == CompressionAlgorithm.ZIP);
+        return new PacketInflaterInputStream(compressedData.getInputStream(), inflater, bufferSize);
+    }
+
+    /**
+     * Compresses into a Compressed Data packet.
+     * Closing the stream finishes the packet, but does not close the underlying stream.
+     */
+    private static final class PacketDeflaterOutputStream extends DeflaterOutputStream {
+
+        private final BCPGOutputStream packetOut;
+        private boolean closed = false;
+
+        private PacketDeflaterOutputStream(BCPGOutputStream packetOut, Deflater deflater, int bufferSize) {
+            super(packetOut, deflater, bufferSize);
+            this.packetOut = packetOut;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                finish();
+            } finally {
+                def.end();
+            }
+            packetOut.finish();
+            packetOut.flush();
+        }
+    }
+
+    /**
+     * Decompresses the content of a Compressed Data packet.
+     * Raw deflate streams (ZIP) require an additional dummy byte at the end of the input, which is provided once
+     * the packet is exhausted.
+     */
+    private static final class PacketInflaterInputStream extends InflaterInputStream {
+
+        private boolean eof = false;
+        private boolean closed = false;
+
+        private PacketInflaterInputStream(InputStream in, Inflater inflater, int bufferSize) {
+            super(in, inflater, bufferSize);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZIP input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            inf.end();
+            super.close();
+        }
+    }
+}
@@ -7,15 +7,19 @@ package org.pgpainless.key.info;
 import static org.pgpainless.util.CollectionUtils.iteratorToList;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nonnull;
@@ -65,8 +69,10 @@ public class KeyRingInfo {
     private final PGPKeyRing keys;
     private final Signatures signatures;
     private final Date referenceDate;
-    private final String primaryUserId;
-    private final RevocationState revocationState;
+    // memoized on first access
+    private volatile boolean primaryUserIdEvaluated = false;
+    private volatile String primaryUserId;
+    private volatile RevocationState revocationState;
 
     /**
      * Evaluate the key ring at creation time of the given signature.
@@ -111,11 +117,55 @@ public class KeyRingInfo {
     public KeyRingInfo(@Nonnull PGPKeyRing keys,
                        @Nonnull Policy policy,
                        @Nonnull Date referenceDate) {
+        this(keys, policy, referenceDate, false);
+    }
+
+    /**
+     * Evaluate the key ring at the provided validation date.
+     * In lazy mode, the signatures of a component (primary key, user-id or subkey) are only evaluated when
+     * the component is first accessed, so that callers which only care about a single subkey of a large
+     * certificate do not pay for the evaluation of all other components.
+     * Note, that some queries, e.g. {@link #getPrimaryUserId()} or {@link #getPrimaryKeyExpirationDate()},
+     * inherently require the evaluation of all user-ids.
+     *
+     * @param keys key ring
+     * @param policy policy
+     * @param referenceDate validation date
+     * @param lazy whether to evaluate components on first access instead of immediately
+     */
+    public KeyRingInfo(@Nonnull PGPKeyRing keys,
+                       @Nonnull Policy policy,
+                       @Nonnull Date referenceDate,
+                       boolean lazy) {
+        this.referenceDate = referenceDate;
+        this.keys = keys;
+        this.signatures = new Signatures(keys, this.referenceDate, policy, lazy);
+        if (!lazy) {
+            getPrimaryUserId();
+            getRevocationState();
+        }
+    }
+
+    /**
+     * Evaluate the key ring at the provided validation date.
+     * The signatures of the user-ids and subkeys are evaluated in parallel using the given executor.
+     * This reduces the latency of evaluating large certificates with many user-ids and subkeys on multicore systems.
+     * On the JVM, the executor can for example be a {@link java.util.concurrent.ForkJoinPool}.
+     *
+     * @param keys key ring
+     * @param policy policy
+     * @param referenceDate validation date
+     * @param executor executor used to evaluate components in parallel
+     */
+    public KeyRingInfo(@Nonnull PGPKeyRing keys,
+                       @Nonnull Policy policy,
+                       @Nonnull Date referenceDate,
+                       @Nonnull Executor executor) {
         this.referenceDate = referenceDate;
         this.keys = keys;
-        this.signatures = new Signatures(keys, this.referenceDate, policy);
-        this.primaryUserId = findPrimaryUserId();
-        this.revocationState = findRevocationState();
+        this.signatures = new Signatures(keys, this.referenceDate, policy, executor);
+        getPrimaryUserId();
+        getRevocationState();
     }
 
     /**
@@ -126,6 +176,14 @@ public class KeyRingInfo {
         return keys;
     }
 
+    /**
+     * Return the reference date at which the key ring was evaluated.
+     * @return reference date
+     */
+    public Date getReferenceDate() {
+        return referenceDate;
+    }
+
     public List<PGPPublicKey> getValidSubkeys() {
         List<PGPPublicKey> subkeys = new ArrayList<>();
         Iterator<PGPPublicKey> iterator = getKeys().getPublicKeys();
@@ -140,7 +198,7 @@ public class KeyRingInfo {
 
     @Nonnull
     private RevocationState findRevocationState() {
-        PGPSignature revocation = signatures.primaryKeyRevocation;
+        PGPSignature revocation = signatures.getPrimaryKeyRevocation();
         if (revocation != null) {
             return SignatureUtils.isHardRevocation(revocation) ?
                     RevocationState.hardRevoked() : RevocationState.softRevoked(revocation.getCreationTime());
@@ -205,14 +263,14 @@ public class KeyRingInfo {
         }
 
         if (publicKey == getPublicKey()) {
-            if (signatures.primaryKeyRevocation != null && SignatureUtils.isHardRevocation(signatures.primaryKeyRevocation)) {
+            if (signatures.getPrimaryKeyRevocation() != null && SignatureUtils.isHardRevocation(signatures.getPrimaryKeyRevocation())) {
                 return false;
             }
-            return signatures.primaryKeyRevocation == null;
+            return signatures.getPrimaryKeyRevocation() == null;
         }
 
-        PGPSignature binding = signatures.subkeyBindings.get(keyId);
-        PGPSignature revocation = signatures.subkeyRevocations.get(keyId);
+        PGPSignature binding = signatures.getSubkeyBinding(keyId);
+        PGPSignature revocation = signatures.getSubkeyRevocation(keyId);
 
         // No valid binding
         if (binding == null || SignatureUtils.isSignatureExpired(binding)) {
@@ -325,6 +383,12 @@ public class KeyRingInfo {
 
     @Nullable
     public String getPrimaryUserId() {
+        if (!primaryUserIdEvaluated) {
+            // only reads the memoized component signatures, which are evaluated under their own locks,
+            // so racing threads compute equal results without verifying any signature concurrently
+            primaryUserId = findPrimaryUserId();
+            primaryUserIdEvaluated = true;
+        }
         return primaryUserId;
     }
 
@@ -348,7 +412,7 @@ public class KeyRingInfo {
 
         String firstUserId = null;
         for (String userId : userIds) {
-            PGPSignature certification = signatures.userIdCertifications.get(userId);
+            PGPSignature certification = signatures.getUserIdCertification(userId);
             if (certification == null) {
                 continue;
             }
@@ -414,8 +478,8 @@ public class KeyRingInfo {
         List<String> userIds = getUserIds();
 
         for (String userId : userIds) {
-            PGPSignature certification = signatures.userIdCertifications.get(userId);
-            PGPSignature revocation = signatures.userIdRevocations.get(userId);
+            PGPSignature certification = signatures.getUserIdCertification(userId);
+            PGPSignature revocation = signatures.getUserIdRevocation(userId);
 
             // Unbound user-id
             if (certification == null) {
@@ -448,6 +512,7 @@ public class KeyRingInfo {
      * @return true if user-id is valid
      */
     public boolean isUserIdValid(@Nonnull CharSequence userId) {
+        String primaryUserId = getPrimaryUserId();
         if (primaryUserId == null) {
             // No primary userID? No userID at all!
             return false;
@@ -464,8 +529,8 @@ public class KeyRingInfo {
 
     private boolean isUserIdBound(@Nonnull CharSequence userId) {
         String userIdString = userId.toString();
-        PGPSignature certification = signatures.userIdCertifications.get(userIdString);
-        PGPSignature revocation = signatures.userIdRevocations.get(userIdString);
+        PGPSignature certification = signatures.getUserIdCertification(userIdString);
+        PGPSignature revocation = signatures.getUserIdRevocation(userIdString);
 
         if (certification == null) {
             return false;
@@ -524,7 +589,7 @@ public class KeyRingInfo {
      */
     @Nullable
     public PGPSignature getLatestDirectKeySelfSignature() {
-        return signatures.primaryKeySelfSignature;
+        return signatures.getPrimaryKeySelfSignature();
     }
 
     /**
@@ -534,7 +599,7 @@ public class KeyRingInfo {
      */
     @Nullable
     public PGPSignature getRevocationSelfSignature() {
-        return signatures.primaryKeyRevocation;
+        return signatures.getPrimaryKeyRevocation();
     }
 
     /**
@@ -545,7 +610,7 @@ public class KeyRingInfo {
      */
     @Nullable
     public PGPSignature getLatestUserIdCertification(@Nonnull CharSequence userId) {
-        return signatures.userIdCertifications.get(userId.toString());
+        return signatures.getUserIdCertification(userId.toString());
     }
 
     /**
@@ -556,7 +621,7 @@ public class KeyRingInfo {
      */
     @Nullable
     public PGPSignature getUserIdRevocation(@Nonnull CharSequence userId) {
-        return signatures.userIdRevocations.get(userId.toString());
+        return signatures.getUserIdRevocation(userId.toString());
     }
 
     /**
@@ -567,7 +632,7 @@ public class KeyRingInfo {
      */
     @Nullable
     public PGPSignature getCurrentSubkeyBindingSignature(long keyId) {
-        return signatures.subkeyBindings.get(keyId);
+        return signatures.getSubkeyBinding(keyId);
     }
 
     /**
@@ -578,7 +643,7 @@ public class KeyRingInfo {
      */
     @Nullable
     public PGPSignature getSubkeyRevocationSignature(long keyId) {
-        return signatures.subkeyRevocations.get(keyId);
+        return signatures.getSubkeyRevocation(keyId);
     }
 
     /**
@@ -711,10 +776,7 @@ public class KeyRingInfo {
         PGPSignature revocationSelfSignature = getRevocationSelfSignature();
         if (mostRecentSelfSignature != null) allSignatures.add(mostRecentSelfSignature);
         if (revocationSelfSignature != null) allSignatures.add(revocationSelfSignature);
-        allSignatures.addAll(signatures.userIdCertifications.values());
-        allSignatures.addAll(signatures.userIdRevocations.values());
-        allSignatures.addAll(signatures.subkeyBindings.values());
-        allSignatures.addAll(signatures.subkeyRevocations.values());
+        signatures.addUserIdAndSubkeySignatures(allSignatures);
 
         PGPSignature mostRecent = null;
         for (PGPSignature signature : allSignatures) {
@@ -727,7 +789,12 @@ public class KeyRingInfo {
 
     @Nonnull
     public RevocationState getRevocationState() {
-        return revocationState;
+        RevocationState state = revocationState;
+        if (state == null) {
+            state = findRevocationState();
+            revocationState = state;
+        }
+        return state;
     }
 
     /**
@@ -888,7 +955,7 @@ public class KeyRingInfo {
     }
 
     public boolean isHardRevoked(@Nonnull CharSequence userId) {
-        PGPSignature revocation = signatures.userIdRevocations.get(userId.toString());
+        PGPSignature revocation = signatures.getUserIdRevocation(userId.toString());
         if (revocation == null) {
             return false;
         }
@@ -1038,7 +1105,7 @@ public class KeyRingInfo {
 
             // subkeys have been valid at some point
             if (subKey.getKeyID() != getKeyId()) {
-                PGPSignature binding = signatures.subkeyBindings.get(subKey.getKeyID());
+                PGPSignature binding = signatures.getSubkeyBinding(subKey.getKeyID());
                 if (binding == null) {
                     LOGGER.debug("Subkey " + KeyIdUtil.formatKeyId(subKey.getKeyID()) + " was never validly bound.");
                     continue;
@@ -1265,49 +1332,275 @@ public class KeyRingInfo {
         }
     }
 
+    /**
+     * Current self-signatures and revocations of the components (primary key, user-ids and subkeys) of a key ring.
+     * Components are either evaluated eagerly when the object is constructed, or lazily on first access.
+     * Eager evaluation can be spread over an {@link Executor}.
+     * In all cases, the result of the evaluation of a component is memoized.
+     * Each component is evaluated at most once, since BouncyCastle's {@link PGPSignature} objects are not safe to
+     * verify concurrently.
+     */
     public static class Signatures {
 
-        private final PGPSignature primaryKeyRevocation;
-        private final PGPSignature primaryKeySelfSignature;
-        private final Map<String, PGPSignature> userIdRevocations;
-        private final Map<String, PGPSignature> userIdCertifications;
-        private final Map<Long, PGPSignature> subkeyRevocations;
-        private final Map<Long, PGPSignature> subkeyBindings;
+        private final PGPKeyRing keyRing;
+        private final Date referenceDate;
+        private final Policy policy;
+        private final Set<String> userIds;
+
+        private volatile ComponentSignatures primaryKeySignatures;
+        private final ConcurrentMap<String, ComponentSignatures> userIdSignatures = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Long, ComponentSignatures> subkeySignatures = new ConcurrentHashMap<>();
+
+        // per-component locks, so that distinct components can be evaluated in parallel
+        private final Object primaryKeyLock = new Object();
+        private final ConcurrentMap<Object, Object> componentLocks = new ConcurrentHashMap<>();
 
         public Signatures(@Nonnull PGPKeyRing keyRing,
                           @Nonnull Date referenceDate,
                           @Nonnull Policy policy) {
-            primaryKeyRevocation = SignaturePicker.pickCurrentRevocationSelfSignature(keyRing, policy, referenceDate);
-            primaryKeySelfSignature = SignaturePicker.pickLatestDirectKeySignature(keyRing, policy, referenceDate);
-            userIdRevocations = new HashMap<>();
-            userIdCertifications = new HashMap<>();
-            subkeyRevocations = new HashMap<>();
-            subkeyBindings = new HashMap<>();
-
-            List<String> userIds = KeyRingUtils.getUserIdsIgnoringInvalidUTF8(keyRing.getPublicKey());
-            for (String userId : userIds) {
-                PGPSignature revocation = SignaturePicker.pickCurrentUserIdRevocationSignature(keyRing, userId, policy, referenceDate);
-                if (revocation != null) {
-                    userIdRevocations.put(userId, revocation);
-                }
-                PGPSignature certification = SignaturePicker.pickLatestUserIdCertificationSignature(keyRing, userId, policy, referenceDate);
-                if (certification != null) {
-                    userIdCertifications.put(userId, certification);
+            this(keyRing, referenceDate, policy, false);
+        }
+
+        /**
+         * Evaluate the signatures of the components of the given key ring.
+         *
+         * @param keyRing key ring
+         * @param referenceDate reference date
+         * @param policy policy
+         * @param lazy if true, the signatures of a component are evaluated when the component is first accessed
+         */
+        public Signatures(@Nonnull PGPKeyRing keyRing,
+                          @Nonnull Date referenceDate,
+                          @Nonnull Policy policy,
+                          boolean lazy) {
+            this.keyRing = keyRing;
+            this.referenceDate = referenceDate;
+            this.policy = policy;
+            this.userIds = new LinkedHashSet<>(KeyRingUtils.getUserIdsIgnoringInvalidUTF8(keyRing.getPublicKey()));
+
+            if (!lazy) {
+                evaluateAll(null);
+            }
+        }
+
+        /**
+         * Evaluate the signatures of the components of the given key ring, distributing the evaluation of
+         * user-ids and subkeys over the given executor.
+         * The calling thread participates in the evaluation and the constructor returns once all components
+         * are evaluated. The result is the same as with sequential evaluation.
+         * On the JVM, the executor can for example be a {@link java.util.concurrent.ForkJoinPool}.
+         *
+         * @param keyRing key ring
+         * @param referenceDate reference date
+         * @param policy policy
+         * @param executor executor
+         */
+        public Signatures(@Nonnull PGPKeyRing keyRing,
+                          @Nonnull Date referenceDate,
+                          @Nonnull Policy policy,
+                          @Nonnull Executor executor) {
+            this(keyRing, referenceDate, policy, true);
+            evaluateAll(executor);
+        }
+
+        private void evaluateAll(@Nullable Executor executor) {
+            List<Runnable> tasks = new ArrayList<>();
+            for (final String userId : userIds) {
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        getUserIdSignatures(userId);
+                    }
+                });
+            }
+            Iterator<PGPPublicKey> keys = keyRing.getPublicKeys();
+            keys.next(); // Skip primary key
+            while (keys.hasNext()) {
+                final long keyId = keys.next().getKeyID();
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        getSubkeySignatures(keyId);
+                    }
+                });
+            }
+
+            if (executor != null) {
+                submitAll(executor, tasks);
+                // Work on the tasks from the back, while the executor picks them up from the front.
+                // Components that are already evaluated are skipped, components in evaluation are waited for.
+                Collections.reverse(tasks);
+            }
+            getPrimaryKeySignatures();
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+
+        private static void submitAll(@Nonnull Executor executor, @Nonnull List<Runnable> tasks) {
+            for (final Runnable task : tasks) {
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                task.run();
+                            } catch (RuntimeException e) {
+                                // The calling thread repeats the evaluation and reports the error
+                                LOGGER.debug("Could not evaluate component in background.", e);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // The calling thread evaluates the remaining components
+                    LOGGER.debug("Executor rejected evaluation of component.", e);
+                    return;
                 }
             }
+        }
+
+        @Nonnull
+        private Object lockFor(@Nonnull Object component) {
+            Object lock = new Object();
+            Object previous = componentLocks.putIfAbsent(component, lock);
+            return previous != null ? previous : lock;
+        }
+
+        @Nullable
+        public PGPSignature getPrimaryKeyRevocation() {
+            return getPrimaryKeySignatures().revocation;
+        }
+
+        @Nullable
+        public PGPSignature getPrimaryKeySelfSignature() {
+            return getPrimaryKeySignatures().signature;
+        }
+
+        @Nullable
+        public PGPSignature getUserIdCertification(@Nonnull String userId) {
+            ComponentSignatures component = getUserIdSignatures(userId);
+            return component == null ? null : component.signature;
+        }
+
+        @Nullable
+        public PGPSignature getUserIdRevocation(@Nonnull String userId) {
+            ComponentSignatures component = getUserIdSignatures(userId);
+            return component == null ? null : component.revocation;
+        }
+
+        @Nullable
+        public PGPSignature getSubkeyBinding(long keyId) {
+            ComponentSignatures component = getSubkeySignatures(keyId);
+            return component == null ? null : component.signature;
+        }
 
+        @Nullable
+        public PGPSignature getSubkeyRevocation(long keyId) {
+            ComponentSignatures component = getSubkeySignatures(keyId);
+            return component == null ? null : component.revocation;
+        }
+
+        /**
+         * Add the signatures of all user-ids and subkeys to the given collection.
+         * In lazy mode, this evaluates all remaining components.
+         *
+         * @param target collection
+         */
+        private void addUserIdAndSubkeySignatures(@Nonnull Collection<PGPSignature> target) {
+            for (String userId : userIds) {
+                getUserIdSignatures(userId).addTo(target);
+            }
             Iterator<PGPPublicKey> keys = keyRing.getPublicKeys();
             keys.next(); // Skip primary key
             while (keys.hasNext()) {
-                PGPPublicKey subkey = keys.next();
-                PGPSignature subkeyRevocation = SignaturePicker.pickCurrentSubkeyBindingRevocationSignature(keyRing, subkey, policy, referenceDate);
-                if (subkeyRevocation != null) {
-                    subkeyRevocations.put(subkey.getKeyID(), subkeyRevocation);
+                getSubkeySignatures(keys.next().getKeyID()).addTo(target);
+            }
+        }
+
+        @Nonnull
+        private ComponentSignatures getPrimaryKeySignatures() {
+            ComponentSignatures component = primaryKeySignatures;
+            if (component != null) {
+                return component;
+            }
+            synchronized (primaryKeyLock) {
+                component = primaryKeySignatures;
+                if (component == null) {
+                    component = new ComponentSignatures(
+                            SignaturePicker.pickLatestDirectKeySignature(keyRing, policy, referenceDate),
+                            SignaturePicker.pickCurrentRevocationSelfSignature(keyRing, policy, referenceDate));
+                    primaryKeySignatures = component;
                 }
-                PGPSignature subkeyBinding = SignaturePicker.pickLatestSubkeyBindingSignature(keyRing, subkey, policy, referenceDate);
-                if (subkeyBinding != null) {
-                    subkeyBindings.put(subkey.getKeyID(), subkeyBinding);
+                return component;
+            }
+        }
+
+        @Nullable
+        private ComponentSignatures getUserIdSignatures(@Nonnull String userId) {
+            if (!userIds.contains(userId)) {
+                return null;
+            }
+            ComponentSignatures component = userIdSignatures.get(userId);
+            if (component != null) {
+                return component;
+            }
+            synchronized (lockFor(userId)) {
+                component = userIdSignatures.get(userId);
+                if (component == null) {
+                    component = new ComponentSignatures(
+                            SignaturePicker.pickLatestUserIdCertificationSignature(keyRing, userId, policy, referenceDate),
+                            SignaturePicker.pickCurrentUserIdRevocationSignature(keyRing, userId, policy, referenceDate));
+                    userIdSignatures.put(userId, component);
                 }
+                return component;
+            }
+        }
+
+        @Nullable
+        private ComponentSignatures getSubkeySignatures(long keyId) {
+            if (keyId == keyRing.getPublicKey().getKeyID()) {
+                return null;
+            }
+            ComponentSignatures component = subkeySignatures.get(keyId);
+            if (component != null) {
+                return component;
+            }
+            PGPPublicKey subkey = keyRing.getPublicKey(keyId);
+            if (subkey == null) {
+                return null;
+            }
+            synchronized (lockFor(keyId)) {
+                component = subkeySignatures.get(keyId);
+                if (component == null) {
+                    component = new ComponentSignatures(
+                            SignaturePicker.pickLatestSubkeyBindingSignature(keyRing, subkey, policy, referenceDate),
+                            SignaturePicker.pickCurrentSubkeyBindingRevocationSignature(keyRing, subkey, policy, referenceDate));
+                    subkeySignatures.put(keyId, component);
+                }
+                return component;
+            }
+        }
+    }
+
+    /**
+     * Latest self-signature and current revocation of a single component of a key ring.
+     */
+    private static final class ComponentSignatures {
+
+        private final PGPSignature signature;
+        private final PGPSignature revocation;
+
+        private ComponentSignatures(@Nullable PGPSignature signature, @Nullable PGPSignature revocation) {
+            this.signature = signature;
+            this.revocation = revocation;
+        }
+
+        private void addTo(@Nonnull Collection<PGPSignature> target) {
+            if (signature != null) {
+                target.add(signature);
+            }
+            if (revocation != null) {
+                target.add(revocation);
             }
         }
     }
@@ -0,0 +1,320 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.key.info;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.openpgp.PGPKeyRing;
+import org.pgpainless.PGPainless;
+import org.pgpainless.policy.Policy;
+
+/**
+ * Opt-in cache for {@link KeyRingInfo} instances.
+ * Evaluating a key ring is expensive, and PGPainless evaluates the same certificates over and over again,
+ * e.g. when adding recipients to {@link org.pgpainless.encryption_signing.EncryptionOptions}, signing keys to
+ * {@link org.pgpainless.encryption_signing.SigningOptions} or when looking up decryption keys.
+ * If the cache is enabled via {@link #setInstance(KeyRingInfoCache)}, those call sites use {@link #inspect(PGPKeyRing, Policy, Date)}
+ * to reuse previous evaluations.
+ *
+ * Entries are identified by a digest over the encoded key ring, the identity and {@link Policy#getVersion() version}
+ * of the {@link Policy}, and the reference time, rounded down to a configurable time bucket.
+ * A cached {@link KeyRingInfo} may therefore have been evaluated at a slightly different reference time within
+ * the same bucket (see {@link KeyRingInfo#getReferenceDate()}).
+ * As a consequence, the expiration or revocation of a key might be noticed up to the bucket length late.
+ * Changes to the {@link org.pgpainless.util.NotationRegistry} of a policy are not detected, so the cache needs
+ * to be cleared using {@link #evictAll()} after such a change.
+ *
+ * The cache is bounded in size and evicts the least recently used entries first.
+ * Hit and miss counters can be used to find a suitable size.
+ */
+public class KeyRingInfoCache {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+    public static final long DEFAULT_BUCKET_MILLIS = 60 * 1000;
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private static volatile KeyRingInfoCache INSTANCE = null;
+
+    private final long bucketMillis;
+    private final Stripe[] stripes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Return the global cache, or null if caching of {@link KeyRingInfo} instances is disabled (default).
+     *
+     * @return cache or null
+     */
+    @Nullable
+    public static KeyRingInfoCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the global cache.
+     * Passing null disables caching of {@link KeyRingInfo} instances.
+     *
+     * @param cache cache or null
+     */
+    public static void setInstance(@Nullable KeyRingInfoCache cache) {
+        INSTANCE = cache;
+    }
+
+    /**
+     * Evaluate the given key ring at the given reference date under PGPainless' default policy.
+     * If the global cache is enabled, it is consulted first.
+     *
+     * @param keys key ring
+     * @param referenceDate reference date
+     * @return key ring info
+     */
+    @Nonnull
+    public static KeyRingInfo inspect(@Nonnull PGPKeyRing keys, @Nonnull Date referenceDate) {
+        return inspect(keys, PGPainless.getPolicy(), referenceDate);
+    }
+
+    /**
+     * Evaluate the given key ring at the given reference date under the given policy.
+     * If the global cache is enabled, it is consulted first.
+     *
+     * @param keys key ring
+     * @param policy policy
+     * @param referenceDate reference date
+     * @return key ring info
+     */
+    @Nonnull
+    public static KeyRingInfo inspect(@Nonnull PGPKeyRing keys, @Nonnull Policy policy, @Nonnull Date referenceDate) {
+        KeyRingInfoCache cache = INSTANCE;
+        if (cache == null) {
+            return new KeyRingInfo(keys, policy, referenceDate);
+        }
+        return cache.get(keys, policy, referenceDate);
+    }
+
+    /**
+     * Create a {@link KeyRingInfoCache} with default settings.
+     */
+    public KeyRingInfoCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_BUCKET_MILLIS);
+    }
+
+    /**
+     * Create a {@link KeyRingInfoCache}.
+     *
+     * @param maxSize maximum number of {@link KeyRingInfo} instances held by the cache
+     * @param bucketMillis length of the reference time buckets in milliseconds
+     */
+    public KeyRingInfoCache(int maxSize, long bucketMillis) {
+        this(maxSize, bucketMillis, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create a {@link KeyRingInfoCache}.
+     *
+     * @param maxSize maximum number of {@link KeyRingInfo} instances held by the cache
+     * @param bucketMillis length of the reference time buckets in milliseconds
+     * @param concurrencyLevel number of independently locked stripes
+     */
+    public KeyRingInfoCache(int maxSize, long bucketMillis, int concurrencyLevel) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size MUST be positive.");
+        }
+        if (bucketMillis < 1) {
+            throw new IllegalArgumentException("Bucket length MUST be positive.");
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Concurrency level MUST be positive.");
+        }
+        this.bucketMillis = bucketMillis;
+
+        int numStripes = Math.min(concurrencyLevel, maxSize);
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            // distribute the capacity evenly over the stripes
+            int capacity = maxSize / numStripes + (i < maxSize % numStripes ? 1 : 0);
+            stripes[i] = new Stripe(capacity);
+        }
+    }
+
+    /**
+     * Return the {@link KeyRingInfo} of the given key ring.
+     * If the cache holds an evaluation of the key ring under the given policy within the time bucket of the
+     * reference date, it is returned. Otherwise, the key ring is evaluated and the result is stored in the cache.
+     *
+     * @param keys key ring
+     * @param policy policy
+     * @param referenceDate reference date
+     * @return key ring info
+     */
+    @Nonnull
+    public KeyRingInfo get(@Nonnull PGPKeyRing keys, @Nonnull Policy policy, @Nonnull Date referenceDate) {
+        CacheKey cacheKey = CacheKey.of(keys, policy, bucket(referenceDate));
+        if (cacheKey == null) {
+            misses.incrementAndGet();
+            return new KeyRingInfo(keys, policy, referenceDate);
+        }
+
+        Stripe stripe = stripeFor(cacheKey);
+        KeyRingInfo cached = stripe.get(cacheKey);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        // Evaluate outside the lock, so that evaluation of a large key ring does not block other lookups
+        KeyRingInfo info = new KeyRingInfo(keys, policy, referenceDate);
+        stripe.put(cacheKey, info);
+        return info;
+    }
+
+    /**
+     * Return the number of lookups that were answered from the cache.
+     *
+     * @return hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of lookups that required an evaluation of the key ring.
+     *
+     * @return miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Reset the hit and miss counters.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Evict all entries.
+     */
+    public void evictAll() {
+        for (Stripe stripe : stripes) {
+            stripe.evictAll();
+        }
+    }
+
+    /**
+     * Return the number of entries in the cache.
+     *
+     * @return size
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private long bucket(Date referenceDate) {
+        long time = referenceDate.getTime();
+        // round towards negative infinity, so that buckets before the epoch have the same length
+        return time >= 0 ? time / bucketMillis : (time - bucketMillis + 1) / bucketMillis;
+    }
+
+    private Stripe stripeFor(CacheKey key) {
+        return stripes[(key.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    /**
+     * Lookup key of a cache entry.
+     * Entries are bound to the identity of the policy, as well as its version.
+     */
+    private static final class CacheKey {
+        private final byte[] keyRingDigest;
+        private final Policy policy;
+        private final int policyVersion;
+        private final long bucket;
+        private final int hashCode;
+
+        private CacheKey(byte[] keyRingDigest, Policy policy, int policyVersion, long bucket) {
+            this.keyRingDigest = keyRingDigest;
+            this.policy = policy;
+            this.policyVersion = policyVersion;
+            this.bucket = bucket;
+            this.hashCode = 31 * (31 * Arrays.hashCode(keyRingDigest) + System.identityHashCode(policy))
+                    + (int) (bucket ^ (bucket >>> 32));
+        }
+
+        @Nullable
+        static CacheKey of(PGPKeyRing keys, Policy policy, long bucket) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return new CacheKey(digest.digest(keys.getEncoded()), policy, policy.getVersion(), bucket);
+            } catch (NoSuchAlgorithmException | IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return policy == other.policy && policyVersion == other.policyVersion && bucket == other.bucket
+                    && Arrays.equals(keyRingDigest, other.keyRingDigest);
+        }
+    }
+
+    /**
+     * Independently locked LRU segment of the cache.
+     */
+    private static final class Stripe {
+        private final LinkedHashMap<CacheKey, KeyRingInfo> entries;
+
+        private Stripe(final int capacity) {
+            this.entries = new LinkedHashMap<CacheKey, KeyRingInfo>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, KeyRingInfo> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private synchronized KeyRingInfo get(CacheKey key) {
+            return entries.get(key);
+        }
+
+        private synchronized void put(CacheKey key, KeyRingInfo info) {
+            entries.put(key, info);
+        }
+
+        private synchronized void evictAll() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
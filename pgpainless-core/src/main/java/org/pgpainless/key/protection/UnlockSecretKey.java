@@ -5,6 +5,8 @@
 
 package org.pgpainless.key.protection;
 
+import javax.annotation.Nullable;
+
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPSecretKey;
@@ -33,6 +35,29 @@ public final class UnlockSecretKey {
         return privateKey;
     }
 
+    /**
+     * Unlock the given secret key using the protector.
+     * If an {@link UnlockedKeyCache} is given, it is consulted first and the result of the unlocking operation
+     * is stored in it.
+     *
+     * @param secretKey secret key
+     * @param protector protector to unlock the secret key
+     * @param cache cache for unlocked keys or null
+     * @return private key
+     *
+     * @throws PGPException if the key cannot be unlocked
+     * @throws KeyIntegrityException if the key parameters are invalid
+     */
+    public static PGPPrivateKey unlockSecretKey(PGPSecretKey secretKey,
+                                                SecretKeyRingProtector protector,
+                                                @Nullable UnlockedKeyCache cache)
+            throws PGPException, KeyIntegrityException {
+        if (cache == null) {
+            return unlockSecretKey(secretKey, protector);
+        }
+        return cache.unlock(secretKey, protector);
+    }
+
     public static PGPPrivateKey unlockSecretKey(PGPSecretKey secretKey, PBESecretKeyDecryptor decryptor)
             throws PGPException {
         PGPPrivateKey privateKey;
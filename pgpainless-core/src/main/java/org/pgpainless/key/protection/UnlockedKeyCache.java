@@ -0,0 +1,420 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.key.protection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.bcpg.BCPGInputStream;
+import org.bouncycastle.bcpg.BCPGKey;
+import org.bouncycastle.bcpg.DSASecretBCPGKey;
+import org.bouncycastle.bcpg.ECSecretBCPGKey;
+import org.bouncycastle.bcpg.EdSecretBCPGKey;
+import org.bouncycastle.bcpg.Ed25519SecretBCPGKey;
+import org.bouncycastle.bcpg.Ed448SecretBCPGKey;
+import org.bouncycastle.bcpg.ElGamalSecretBCPGKey;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.bcpg.PublicKeyPacket;
+import org.bouncycastle.bcpg.RSASecretBCPGKey;
+import org.bouncycastle.bcpg.X25519SecretBCPGKey;
+import org.bouncycastle.bcpg.X448SecretBCPGKey;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.pgpainless.exception.KeyIntegrityException;
+import org.pgpainless.key.info.KeyInfo;
+
+/**
+ * Opt-in cache for unlocked secret keys.
+ * Unlocking a protected secret key requires an expensive S2K derivation and - depending on the
+ * {@link org.pgpainless.policy.Policy} - a validation of the key parameters.
+ * If the same key is used to decrypt or sign many messages, this cache can be used to only pay that price once.
+ *
+ * The cache is bounded in size and entries expire after an idle timeout, as well as after a maximum lifetime,
+ * whichever happens first.
+ * Entries are distributed over a number of independently locked stripes, so that concurrent access to
+ * different keys does not contend on a single lock.
+ *
+ * Unlocked key material is kept in encoded form and gets overwritten with zeros once an entry is evicted,
+ * expires or the cache is cleared via {@link #evictAll()}.
+ * Each cache hit returns a freshly decoded {@link PGPPrivateKey}.
+ *
+ * Entries for encrypted secret keys are bound to the {@link SecretKeyRingProtector} instance that was used to
+ * unlock them, so a different protector (which might hold a wrong passphrase) cannot obtain the unlocked key from
+ * the cache. Therefore, callers should reuse their protector instances to benefit from this cache.
+ */
+public class UnlockedKeyCache {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    public static final long DEFAULT_MAX_LIFETIME_MILLIS = 60 * 60 * 1000;
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final Stripe[] stripes;
+
+    /**
+     * Create an {@link UnlockedKeyCache} with default settings.
+     */
+    public UnlockedKeyCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_MAX_LIFETIME_MILLIS);
+    }
+
+    /**
+     * Create an {@link UnlockedKeyCache}.
+     *
+     * @param maxSize maximum number of unlocked keys held by the cache
+     * @param idleTimeoutMillis time in milliseconds after which an unused entry expires
+     * @param maxLifetimeMillis time in milliseconds after which an entry expires, regardless of its use
+     */
+    public UnlockedKeyCache(int maxSize, long idleTimeoutMillis, long maxLifetimeMillis) {
+        this(maxSize, idleTimeoutMillis, maxLifetimeMillis, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create an {@link UnlockedKeyCache}.
+     *
+     * @param maxSize maximum number of unlocked keys held by the cache
+     * @param idleTimeoutMillis time in milliseconds after which an unused entry expires
+     * @param maxLifetimeMillis time in milliseconds after which an entry expires, regardless of its use
+     * @param concurrencyLevel number of independently locked stripes
+     */
+    public UnlockedKeyCache(int maxSize, long idleTimeoutMillis, long maxLifetimeMillis, int concurrencyLevel) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size MUST be positive.");
+        }
+        if (idleTimeoutMillis < 0 || maxLifetimeMillis < 0) {
+            throw new IllegalArgumentException("Timeouts cannot be negative.");
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Concurrency level MUST be positive.");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+
+        int numStripes = Math.min(concurrencyLevel, maxSize);
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            // distribute the capacity evenly over the stripes
+            int capacity = maxSize / numStripes + (i < maxSize % numStripes ? 1 : 0);
+            stripes[i] = new Stripe(capacity);
+        }
+    }
+
+    /**
+     * Return the unlocked private key of the given secret key.
+     * If the cache holds a non-expired entry for the secret key (and protector), the private key is taken from it.
+     * Otherwise, the secret key is unlocked using the protector and the result is stored in the cache.
+     *
+     * @param secretKey secret key
+     * @param protector protector to unlock the secret key
+     * @return private key
+     *
+     * @throws PGPException if the key cannot be unlocked
+     * @throws KeyIntegrityException if the key parameters are invalid
+     */
+    public PGPPrivateKey unlock(@Nonnull PGPSecretKey secretKey, @Nonnull SecretKeyRingProtector protector)
+            throws PGPException, KeyIntegrityException {
+        CacheKey cacheKey = CacheKey.of(secretKey, protector);
+        Stripe stripe = stripeFor(cacheKey);
+
+        PGPPrivateKey cached = stripe.get(cacheKey, System.currentTimeMillis());
+        if (cached != null) {
+            return cached;
+        }
+
+        // Unlock outside the lock, so expensive S2K derivation does not block other keys in the same stripe
+        PGPPrivateKey privateKey = UnlockSecretKey.unlockSecretKey(secretKey, protector);
+        byte[] encoded = encode(privateKey);
+        if (encoded != null) {
+            stripe.put(cacheKey, new CachedKey(privateKey.getKeyID(), privateKey.getPublicKeyPacket(), encoded,
+                    System.currentTimeMillis()));
+        }
+        return privateKey;
+    }
+
+    /**
+     * Evict all entries of the given secret key and overwrite their key material.
+     *
+     * @param secretKey secret key
+     */
+    public void evict(@Nonnull PGPSecretKey secretKey) {
+        byte[] fingerprint = secretKey.getPublicKey().getFingerprint();
+        for (Stripe stripe : stripes) {
+            stripe.evict(fingerprint);
+        }
+    }
+
+    /**
+     * Evict all entries which are expired.
+     * Expired entries are also evicted lazily on access, so calling this method is only necessary in order to
+     * overwrite key material of keys which are no longer used in a timely manner.
+     */
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            stripe.evictExpired(now);
+        }
+    }
+
+    /**
+     * Evict all entries and overwrite their key material.
+     */
+    public void evictAll() {
+        for (Stripe stripe : stripes) {
+            stripe.evictAll();
+        }
+    }
+
+    /**
+     * Return the number of entries in the cache, including expired entries that were not yet evicted.
+     *
+     * @return size
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(CacheKey key) {
+        return stripes[(key.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    private boolean isExpired(CachedKey entry, long now) {
+        return now - entry.lastAccess >= idleTimeoutMillis || now - entry.created >= maxLifetimeMillis;
+    }
+
+    @Nullable
+    private static byte[] encode(PGPPrivateKey privateKey) {
+        if (!isSupported(privateKey.getPublicKeyPacket().getAlgorithm())) {
+            return null;
+        }
+        return privateKey.getPrivateKeyDataPacket().getEncoded();
+    }
+
+    private static boolean isSupported(int algorithm) {
+        switch (algorithm) {
+            case PublicKeyAlgorithmTags.RSA_GENERAL:
+            case PublicKeyAlgorithmTags.RSA_ENCRYPT:
+            case PublicKeyAlgorithmTags.RSA_SIGN:
+            case PublicKeyAlgorithmTags.DSA:
+            case PublicKeyAlgorithmTags.ELGAMAL_ENCRYPT:
+            case PublicKeyAlgorithmTags.ELGAMAL_GENERAL:
+            case PublicKeyAlgorithmTags.ECDH:
+            case PublicKeyAlgorithmTags.ECDSA:
+            case PublicKeyAlgorithmTags.EDDSA_LEGACY:
+            case PublicKeyAlgorithmTags.X25519:
+            case PublicKeyAlgorithmTags.X448:
+            case PublicKeyAlgorithmTags.Ed25519:
+            case PublicKeyAlgorithmTags.Ed448:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static PGPPrivateKey decode(CachedKey entry) throws IOException {
+        BCPGInputStream in = new BCPGInputStream(new ByteArrayInputStream(entry.encodedKey));
+        BCPGKey key;
+        switch (entry.publicKeyPacket.getAlgorithm()) {
+            case PublicKeyAlgorithmTags.RSA_GENERAL:
+            case PublicKeyAlgorithmTags.RSA_ENCRYPT:
+            case PublicKeyAlgorithmTags.RSA_SIGN:
+                key = new RSASecretBCPGKey(in);
+                break;
+            case PublicKeyAlgorithmTags.DSA:
+                key = new DSASecretBCPGKey(in);
+                break;
+            case PublicKeyAlgorithmTags.ELGAMAL_ENCRYPT:
+            case PublicKeyAlgorithmTags.ELGAMAL_GENERAL:
+                key = new ElGamalSecretBCPGKey(in);
+                break;
+            case PublicKeyAlgorithmTags.ECDH:
+            case PublicKeyAlgorithmTags.ECDSA:
+                key = new ECSecretBCPGKey(in);
+                break;
+            case PublicKeyAlgorithmTags.EDDSA_LEGACY:
+                key = new EdSecretBCPGKey(in);
+                break;
+            case PublicKeyAlgorithmTags.X25519:
+                key = new X25519SecretBCPGKey(in);
+                break;
+            case PublicKeyAlgorithmTags.X448:
+                key = new X448SecretBCPGKey(in);
+                break;
+            case PublicKeyAlgorithmTags.Ed25519:
+                key = new Ed25519SecretBCPGKey(in);
+                break;
+            case PublicKeyAlgorithmTags.Ed448:
+                key = new Ed448SecretBCPGKey(in);
+                break;
+            default:
+                throw new IOException("Unsupported public key algorithm " + entry.publicKeyPacket.getAlgorithm());
+        }
+        return new PGPPrivateKey(entry.keyId, entry.publicKeyPacket, key);
+    }
+
+    /**
+     * Lookup key of a cache entry.
+     * Entries of encrypted secret keys are bound to the identity of the protector used to unlock them.
+     */
+    private static final class CacheKey {
+        private final byte[] fingerprint;
+        private final byte[] secretKeyDigest;
+        private final SecretKeyRingProtector protector;
+        private final int hashCode;
+
+        private CacheKey(byte[] fingerprint, byte[] secretKeyDigest, SecretKeyRingProtector protector) {
+            this.fingerprint = fingerprint;
+            this.secretKeyDigest = secretKeyDigest;
+            this.protector = protector;
+            this.hashCode = 31 * Arrays.hashCode(secretKeyDigest) + System.identityHashCode(protector);
+        }
+
+        static CacheKey of(PGPSecretKey secretKey, SecretKeyRingProtector protector) throws PGPException {
+            // Unencrypted keys can be unlocked by anyone, so there is no need to bind them to the protector
+            SecretKeyRingProtector owner = KeyInfo.isEncrypted(secretKey) ? protector : null;
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                byte[] secretKeyDigest = digest.digest(secretKey.getEncoded());
+                return new CacheKey(secretKey.getPublicKey().getFingerprint(), secretKeyDigest, owner);
+            } catch (NoSuchAlgorithmException | IOException e) {
+                throw new PGPException("Cannot compute cache key for secret key " +
+                        Long.toHexString(secretKey.getKeyID()), e);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return protector == other.protector && Arrays.equals(secretKeyDigest, other.secretKeyDigest);
+        }
+    }
+
+    private static final class CachedKey {
+        private final long keyId;
+        private final PublicKeyPacket publicKeyPacket;
+        private final byte[] encodedKey;
+        private final long created;
+        private long lastAccess;
+
+        private CachedKey(long keyId, PublicKeyPacket publicKeyPacket, byte[] encodedKey, long created) {
+            this.keyId = keyId;
+            this.publicKeyPacket = publicKeyPacket;
+            this.encodedKey = encodedKey;
+            this.created = created;
+            this.lastAccess = created;
+        }
+
+        private void destroy() {
+            Arrays.fill(encodedKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Independently locked LRU segment of the cache.
+     */
+    private final class Stripe {
+        private final LinkedHashMap<CacheKey, CachedKey> entries;
+
+        private Stripe(int capacity) {
+            this.entries = new LinkedHashMap<CacheKey, CachedKey>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedKey> eldest) {
+                    if (size() > capacity) {
+                        eldest.getValue().destroy();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private synchronized PGPPrivateKey get(CacheKey key, long now) {
+            CachedKey entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (isExpired(entry, now)) {
+                entries.remove(key);
+                entry.destroy();
+                return null;
+            }
+
+            try {
+                PGPPrivateKey privateKey = decode(entry);
+                entry.lastAccess = now;
+                return privateKey;
+            } catch (IOException e) {
+                entries.remove(key);
+                entry.destroy();
+                return null;
+            }
+        }
+
+        private synchronized void put(CacheKey key, CachedKey entry) {
+            CachedKey previous = entries.put(key, entry);
+            if (previous != null) {
+                previous.destroy();
+            }
+        }
+
+        private synchronized void evict(byte[] fingerprint) {
+            Iterator<Map.Entry<CacheKey, CachedKey>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<CacheKey, CachedKey> next = iterator.next();
+                if (Arrays.equals(fingerprint, next.getKey().fingerprint)) {
+                    next.getValue().destroy();
+                    iterator.remove();
+                }
+            }
+        }
+
+        private synchronized void evictExpired(long now) {
+            Iterator<CachedKey> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CachedKey next = iterator.next();
+                if (isExpired(next, now)) {
+                    next.destroy();
+                    iterator.remove();
+                }
+            }
+        }
+
+        private synchronized void evictAll() {
+            for (CachedKey entry : entries.values()) {
+                entry.destroy();
+            }
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
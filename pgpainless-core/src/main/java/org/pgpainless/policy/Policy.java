@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
@@ -51,6 +52,8 @@ public final class Policy {
 
     private boolean enableKeyParameterValidation = false;
 
+    private final AtomicInteger version = new AtomicInteger();
+
     public enum SignerUserIdValidationLevel {
         /**
          * PGPainless will verify {@link org.bouncycastle.bcpg.sig.SignerUserID} subpackets in signatures strictly.
@@ -82,6 +85,18 @@ public final class Policy {
         return INSTANCE;
     }
 
+    /**
+     * Return the version of this policy.
+     * The version is incremented every time a setting of the policy is changed using one of its setters.
+     * It can be used to detect whether results, which were computed under this policy, are outdated.
+     * Note, that changes to the {@link NotationRegistry} do not change the version.
+     *
+     * @return version
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
     /**
      * Return the hash algorithm policy for signatures.
      * @return hash algorithm policy
@@ -100,6 +115,7 @@ public final class Policy {
             throw new NullPointerException("Policy cannot be null.");
         }
         this.signatureHashAlgorithmPolicy = policy;
+        version.incrementAndGet();
     }
 
     /**
@@ -123,6 +139,7 @@ public final class Policy {
             throw new NullPointerException("Policy cannot be null.");
         }
         this.revocationSignatureHashAlgorithmPolicy = policy;
+        version.incrementAndGet();
     }
 
     /**
@@ -155,6 +172,7 @@ public final class Policy {
             throw new NullPointerException("Policy cannot be null.");
         }
         this.symmetricKeyEncryptionAlgorithmPolicy = policy;
+        version.incrementAndGet();
     }
 
     /**
@@ -167,6 +185,7 @@ public final class Policy {
             throw new NullPointerException("Policy cannot be null.");
         }
         this.symmetricKeyDecryptionAlgorithmPolicy = policy;
+        version.incrementAndGet();
     }
 
     public CompressionAlgorithmPolicy getCompressionAlgorithmPolicy() {
@@ -178,6 +197,7 @@ public final class Policy {
             throw new NullPointerException("Compression policy cannot be null.");
         }
         this.compressionAlgorithmPolicy = policy;
+        version.incrementAndGet();
     }
 
     /**
@@ -199,6 +219,7 @@ public final class Policy {
             throw new NullPointerException("Public key algorithm policy cannot be null.");
         }
         this.publicKeyAlgorithmPolicy = publicKeyAlgorithmPolicy;
+        version.incrementAndGet();
     }
 
     public static final class SymmetricKeyAlgorithmPolicy {
@@ -677,6 +698,7 @@ public final class Policy {
      */
     public void setKeyGenerationAlgorithmSuite(@Nonnull AlgorithmSuite algorithmSuite) {
         this.keyGenerationAlgorithmSuite = algorithmSuite;
+        version.incrementAndGet();
     }
 
     /**
@@ -701,6 +723,7 @@ public final class Policy {
             throw new NullPointerException("SignerUserIdValidationLevel cannot be null.");
         }
         this.signerUserIdValidationLevel = signerUserIdValidationLevel;
+        version.incrementAndGet();
         return this;
     }
 
@@ -719,6 +742,7 @@ public final class Policy {
      */
     public Policy setEnableKeyParameterValidation(boolean enable) {
         this.enableKeyParameterValidation = enable;
+        version.incrementAndGet();
         return this;
     }
 
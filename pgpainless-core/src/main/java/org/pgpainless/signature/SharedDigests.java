@@ -0,0 +1,339 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.signature;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.pgpainless.algorithm.HashAlgorithm;
+import org.pgpainless.provider.ProviderFactory;
+import org.pgpainless.util.TextCanonicalizer;
+
+/**
+ * Digests of signed data, which are shared between signatures using the same hash algorithm and
+ * signature type (binary or canonical text).
+ * Instead of hashing the data once per signature, it is hashed once per distinct pair of hash algorithm and
+ * signature type.
+ * When the signatures are finished, each signature gets a copy of the shared digest to append its trailer to.
+ *
+ * Sharing is copy-on-write. If only some members of a shared digest get updated, the updated members are
+ * moved to a copy of the digest. That way, each member always sees exactly the data it was updated with.
+ *
+ * This class is not thread-safe.
+ *
+ * @param <T> type of the members, e.g. signature checks or signature generators
+ */
+public final class SharedDigests<T> {
+
+    private final Map<T, Node> members = new IdentityHashMap<>();
+    private final Map<Key, Node> pristineNodes = new HashMap<>();
+    private int version = 0;
+
+    /**
+     * Add a member.
+     * Members which are added before any data was hashed share a digest if they use the same hash algorithm
+     * and signature type.
+     *
+     * @param member member
+     * @param hashAlgorithm hash algorithm
+     * @param canonicalText true if the data is canonicalized as text (signature type 0x01), false for binary
+     * @return true if the member was added, false if the hash algorithm is not supported
+     */
+    public boolean add(@Nonnull T member, @Nonnull HashAlgorithm hashAlgorithm, boolean canonicalText) {
+        if (members.containsKey(member)) {
+            throw new IllegalArgumentException("Member was already added.");
+        }
+
+        Key key = new Key(hashAlgorithm, canonicalText);
+        Node node = pristineNodes.get(key);
+        if (node == null || node.updated) {
+            MessageDigest digest = createDigest(hashAlgorithm);
+            if (digest == null) {
+                return false;
+            }
+            node = new Node(digest, canonicalText);
+            pristineNodes.put(key, node);
+        }
+        node.references++;
+        members.put(member, node);
+        version++;
+        return true;
+    }
+
+    /**
+     * Return true if the given object was added as a member.
+     * This also applies to members which were already {@link #remove(Object) removed}.
+     *
+     * @param member member
+     * @return true if member
+     */
+    public boolean contains(@Nonnull T member) {
+        return members.containsKey(member);
+    }
+
+    /**
+     * Return the number of distinct digests currently in use.
+     *
+     * @return number of digests
+     */
+    public int getNumberOfDigests() {
+        List<Node> distinct = new ArrayList<>();
+        for (Node node : members.values()) {
+            if (node != null && !containsIdentical(distinct, node)) {
+                distinct.add(node);
+            }
+        }
+        return distinct.size();
+    }
+
+    /**
+     * Return a copy of the digest of the given member.
+     * The copy can be used to append the signature trailer and finish the signature.
+     *
+     * @param member member
+     * @return copy of the digest
+     */
+    @Nonnull
+    public MessageDigest getDigest(@Nonnull T member) {
+        Node node = members.get(member);
+        if (node == null) {
+            throw new IllegalArgumentException("Not a member.");
+        }
+        return copy(node.digest);
+    }
+
+    /**
+     * Retire a member.
+     * The member no longer receives any updates, but is still {@link #contains(Object) contained}.
+     *
+     * @param member member
+     */
+    public void remove(@Nonnull T member) {
+        Node node = members.get(member);
+        if (node == null) {
+            return;
+        }
+        node.references--;
+        members.put(member, null);
+        version++;
+    }
+
+    /**
+     * Return an {@link Updater} which updates the given set of members.
+     * Objects which are not members are ignored.
+     * The updater stays valid as long as the given collection is not modified.
+     *
+     * @param targets members to update
+     * @return updater
+     */
+    @Nonnull
+    public Updater updater(@Nonnull Iterable<? extends T> targets) {
+        return new Updater(targets);
+    }
+
+    /**
+     * Updates a fixed set of members.
+     */
+    public final class Updater {
+
+        private final Iterable<? extends T> targets;
+        private int resolvedVersion = -1;
+        private Node[] nodes;
+
+        private Updater(Iterable<? extends T> targets) {
+            this.targets = targets;
+        }
+
+        public void update(byte b) {
+            for (Node node : resolve()) {
+                node.update(b);
+            }
+        }
+
+        public void update(@Nonnull byte[] b, int off, int len) {
+            for (Node node : resolve()) {
+                node.update(b, off, len);
+            }
+        }
+
+        private Node[] resolve() {
+            if (resolvedVersion == version) {
+                return nodes;
+            }
+
+            // Group targets by their digest
+            Map<Node, List<T>> targetsByNode = new IdentityHashMap<>();
+            Map<T, Boolean> seen = new IdentityHashMap<>();
+            for (T target : targets) {
+                Node node = members.get(target);
+                if (node == null || seen.put(target, Boolean.TRUE) != null) {
+                    continue;
+                }
+                List<T> nodeTargets = targetsByNode.get(node);
+                if (nodeTargets == null) {
+                    nodeTargets = new ArrayList<>();
+                    targetsByNode.put(node, nodeTargets);
+                }
+                nodeTargets.add(target);
+            }
+
+            List<Node> resolved = new ArrayList<>(targetsByNode.size());
+            for (Map.Entry<Node, List<T>> entry : targetsByNode.entrySet()) {
+                Node node = entry.getKey();
+                List<T> nodeTargets = entry.getValue();
+                if (nodeTargets.size() < node.references) {
+                    // Not all members of the digest are updated, so split off the targets
+                    Node split = node.copy();
+                    split.references = nodeTargets.size();
+                    node.references -= nodeTargets.size();
+                    for (T target : nodeTargets) {
+                        members.put(target, split);
+                    }
+                    version++;
+                    node = split;
+                }
+                node.updated = true;
+                resolved.add(node);
+            }
+
+            nodes = resolved.toArray(new Node[0]);
+            resolvedVersion = version;
+            return nodes;
+        }
+    }
+
+    /**
+     * Create a fresh digest for the given hash algorithm, which can be shared.
+     * Return null, if the hash algorithm is not available or its digest cannot be copied.
+     *
+     * @param hashAlgorithm hash algorithm
+     * @return digest or null
+     */
+    @Nullable
+    public static MessageDigest createDigest(@Nonnull HashAlgorithm hashAlgorithm) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(hashAlgorithm.getAlgorithmName(), ProviderFactory.getProvider());
+            // Sharing requires the digest to be cloneable
+            digest.clone();
+            return digest;
+        } catch (NoSuchAlgorithmException | CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest copy(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            // cannot happen, since we check cloneability in createDigest()
+            throw new AssertionError(e);
+        }
+    }
+
+    private static boolean containsIdentical(List<Node> nodes, Node node) {
+        for (Node n : nodes) {
+            if (n == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Digest state, including the state of the text canonicalization.
+     */
+    private static final class Node {
+        private final MessageDigest digest;
+        // Same canonicalization as BCs PGPSignature, PGPOnePassSignature and PGPSignatureGenerator, null for binary
+        private final TextCanonicalizer canonicalizer;
+        private int references = 0;
+        private boolean updated = false;
+
+        private Node(MessageDigest digest, boolean canonicalText) {
+            this.digest = digest;
+            this.canonicalizer = canonicalText ? new TextCanonicalizer(sink(digest), false) : null;
+        }
+
+        private Node(MessageDigest digest, TextCanonicalizer canonicalizer) {
+            this.digest = digest;
+            this.canonicalizer = canonicalizer;
+        }
+
+        private Node copy() {
+            MessageDigest digestCopy = SharedDigests.copy(digest);
+            Node copy = new Node(digestCopy, canonicalizer == null ? null : canonicalizer.copy(sink(digestCopy)));
+            copy.updated = updated;
+            return copy;
+        }
+
+        private static TextCanonicalizer.Sink sink(final MessageDigest digest) {
+            return new TextCanonicalizer.Sink() {
+                @Override
+                public void write(@Nonnull byte[] b, int off, int len) {
+                    digest.update(b, off, len);
+                }
+            };
+        }
+
+        private void update(byte b) {
+            if (canonicalizer == null) {
+                digest.update(b);
+                return;
+            }
+            try {
+                canonicalizer.update(b);
+            } catch (IOException e) {
+                throw new AssertionError("Updating a digest cannot fail.", e);
+            }
+        }
+
+        private void update(byte[] b, int off, int len) {
+            if (canonicalizer == null) {
+                digest.update(b, off, len);
+                return;
+            }
+            try {
+                canonicalizer.update(b, off, len);
+            } catch (IOException e) {
+                throw new AssertionError("Updating a digest cannot fail.", e);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final HashAlgorithm hashAlgorithm;
+        private final boolean canonicalText;
+
+        private Key(HashAlgorithm hashAlgorithm, boolean canonicalText) {
+            this.hashAlgorithm = hashAlgorithm;
+            this.canonicalText = canonicalText;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashAlgorithm == other.hashAlgorithm && canonicalText == other.canonicalText;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * hashAlgorithm.hashCode() + (canonicalText ? 1 : 0);
+        }
+    }
+}
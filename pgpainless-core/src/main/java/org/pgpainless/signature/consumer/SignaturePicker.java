@@ -30,6 +30,11 @@ import org.pgpainless.util.CollectionUtils;
  *    [User ID [Signature ...] ...]
  *    [User Attribute [Signature ...] ...]
  *    [[Subkey [Binding-Signature-Revocation] Primary-Key-Binding-Signature] ...]
+ *
+ * Candidate signatures are examined newest first, and the pickers return as soon as they find a suitable
+ * signature, so that keys with a long history of self-signatures do not require each of them to be verified.
+ * Cheap checks (signature type, issuer, creation and expiration time) are done before the signature is
+ * verified cryptographically.
  */
 public final class SignaturePicker {
 
@@ -51,7 +56,6 @@ public final class SignaturePicker {
         PGPPublicKey primaryKey = keyRing.getPublicKey();
 
         List<PGPSignature> signatures = getSortedSignaturesOfType(primaryKey, SignatureType.KEY_REVOCATION);
-        PGPSignature mostCurrentValidSig = null;
 
         for (PGPSignature signature : signatures) {
             try {
@@ -60,10 +64,10 @@ public final class SignaturePicker {
                 // Signature is not valid
                 continue;
             }
-            mostCurrentValidSig = signature;
+            return signature;
         }
 
-        return mostCurrentValidSig;
+        return null;
     }
 
     /**
@@ -93,7 +97,6 @@ public final class SignaturePicker {
     public static PGPSignature pickCurrentDirectKeySignature(PGPPublicKey signingKey, PGPPublicKey signedKey, Policy policy, Date validationDate) {
         List<PGPSignature> directKeySignatures = getSortedSignaturesOfType(signedKey, SignatureType.DIRECT_KEY);
 
-        PGPSignature mostRecentDirectKeySigBySigningKey = null;
         for (PGPSignature signature : directKeySignatures) {
             try {
                 SignatureVerifier.verifyDirectKeySignature(signature, signingKey, signedKey, policy, validationDate);
@@ -101,10 +104,10 @@ public final class SignaturePicker {
                 // Direct key sig is not valid
                 continue;
             }
-            mostRecentDirectKeySigBySigningKey = signature;
+            return signature;
         }
 
-        return mostRecentDirectKeySigBySigningKey;
+        return null;
     }
 
     /**
@@ -138,25 +141,30 @@ public final class SignaturePicker {
     public static PGPSignature pickLatestDirectKeySignature(PGPPublicKey signingKey, PGPPublicKey signedKey, Policy policy, Date validationDate) {
         List<PGPSignature> signatures = getSortedSignaturesOfType(signedKey, SignatureType.DIRECT_KEY);
 
-        PGPSignature latestDirectKeySignature = null;
+        // latest valid, but expired signature, which is returned if there is no valid non-expired signature
+        PGPSignature latestExpiredSignature = null;
         for (PGPSignature signature : signatures) {
+            boolean expired = SignatureUtils.isSignatureExpired(signature, validationDate);
+            if (expired && latestExpiredSignature != null) {
+                // we already have a newer expired fallback
+                continue;
+            }
             try {
                 SignatureValidator.signatureIsOfType(SignatureType.DIRECT_KEY).verify(signature);
                 SignatureValidator.signatureStructureIsAcceptable(signingKey, policy).verify(signature);
                 SignatureValidator.signatureIsAlreadyEffective(validationDate).verify(signature);
-                // if the currently latest signature is not yet expired, check if the next candidate is not yet expired
-                if (latestDirectKeySignature != null && !SignatureUtils.isSignatureExpired(latestDirectKeySignature, validationDate)) {
-                    SignatureValidator.signatureIsNotYetExpired(validationDate).verify(signature);
-                }
                 SignatureValidator.correctSignatureOverKey(signingKey, signedKey).verify(signature);
             } catch (SignatureValidationException e) {
                 // Direct key signature is not valid
                 continue;
             }
-            latestDirectKeySignature = signature;
+            if (!expired) {
+                return signature;
+            }
+            latestExpiredSignature = signature;
         }
 
-        return latestDirectKeySignature;
+        return latestExpiredSignature;
     }
 
     /**
@@ -174,7 +182,6 @@ public final class SignaturePicker {
         PGPPublicKey primaryKey = keyRing.getPublicKey();
         List<PGPSignature> signatures = getSortedSignaturesOfType(primaryKey, SignatureType.CERTIFICATION_REVOCATION);
 
-        PGPSignature latestUserIdRevocation = null;
         for (PGPSignature signature : signatures) {
             PGPPublicKey signer = keyRing.getPublicKey(signature.getKeyID());
             if (signer == null) {
@@ -187,10 +194,10 @@ public final class SignaturePicker {
                 // User-id revocation is not valid
                 continue;
             }
-            latestUserIdRevocation = signature;
+            return signature;
         }
 
-        return latestUserIdRevocation;
+        return null;
     }
 
     /**
@@ -207,12 +214,8 @@ public final class SignaturePicker {
     public static PGPSignature pickCurrentUserIdCertificationSignature(PGPKeyRing keyRing, String userId, Policy policy, Date validationDate) {
         PGPPublicKey primaryKey = keyRing.getPublicKey();
 
-        Iterator<PGPSignature> userIdSigIterator = primaryKey.getSignaturesForID(userId);
-        List<PGPSignature> signatures = CollectionUtils.iteratorToList(userIdSigIterator);
+        List<PGPSignature> signatures = sortNewestFirst(primaryKey.getSignaturesForID(userId));
 
-        Collections.sort(signatures, new SignatureCreationDateComparator());
-
-        PGPSignature mostRecentUserIdCertification = null;
         for (PGPSignature signature : signatures) {
             if (primaryKey.getKeyID() != signature.getKeyID()) {
                 // Signature not made by primary key
@@ -224,10 +227,10 @@ public final class SignaturePicker {
                 // User-id certification is not valid
                 continue;
             }
-            mostRecentUserIdCertification = signature;
+            return signature;
         }
 
-        return mostRecentUserIdCertification;
+        return null;
     }
 
     /**
@@ -245,11 +248,8 @@ public final class SignaturePicker {
     public static PGPSignature pickLatestUserIdCertificationSignature(PGPKeyRing keyRing, String userId, Policy policy, Date validationDate) {
         PGPPublicKey primaryKey = keyRing.getPublicKey();
 
-        Iterator<PGPSignature> userIdSigIterator = primaryKey.getSignaturesForID(userId);
-        List<PGPSignature> signatures = CollectionUtils.iteratorToList(userIdSigIterator);
-        Collections.sort(signatures, new SignatureCreationDateComparator());
+        List<PGPSignature> signatures = sortNewestFirst(primaryKey.getSignaturesForID(userId));
 
-        PGPSignature latestUserIdCert = null;
         for (PGPSignature signature : signatures) {
             try {
                 SignatureValidator.wasPossiblyMadeByKey(primaryKey).verify(signature);
@@ -261,11 +261,10 @@ public final class SignaturePicker {
                 // User-id certification is not valid
                 continue;
             }
-
-            latestUserIdCert = signature;
+            return signature;
         }
 
-        return latestUserIdCert;
+        return null;
     }
 
     /**
@@ -286,7 +285,6 @@ public final class SignaturePicker {
         }
 
         List<PGPSignature> signatures = getSortedSignaturesOfType(subkey, SignatureType.SUBKEY_REVOCATION);
-        PGPSignature latestSubkeyRevocation = null;
 
         for (PGPSignature signature : signatures) {
             try {
@@ -295,10 +293,10 @@ public final class SignaturePicker {
                 // subkey binding revocation is not valid
                 continue;
             }
-            latestSubkeyRevocation = signature;
+            return signature;
         }
 
-        return latestSubkeyRevocation;
+        return null;
     }
 
     /**
@@ -319,7 +317,6 @@ public final class SignaturePicker {
         }
 
         List<PGPSignature> subkeyBindingSigs = getSortedSignaturesOfType(subkey, SignatureType.SUBKEY_BINDING);
-        PGPSignature mostCurrentValidSig = null;
 
         for (PGPSignature signature : subkeyBindingSigs) {
             try {
@@ -328,10 +325,10 @@ public final class SignaturePicker {
                 // Subkey binding sig is not valid
                 continue;
             }
-            mostCurrentValidSig = signature;
+            return signature;
         }
 
-        return mostCurrentValidSig;
+        return null;
     }
 
     /**
@@ -353,43 +350,59 @@ public final class SignaturePicker {
         }
 
         List<PGPSignature> signatures = getSortedSignaturesOfType(subkey, SignatureType.SUBKEY_BINDING);
-        PGPSignature latestSubkeyBinding = null;
 
+        // latest valid, but expired signature, which is returned if there is no valid non-expired signature
+        PGPSignature latestExpiredSignature = null;
         for (PGPSignature signature : signatures) {
+            boolean expired = SignatureUtils.isSignatureExpired(signature, validationDate);
+            if (expired && latestExpiredSignature != null) {
+                // we already have a newer expired fallback
+                continue;
+            }
             try {
                 SignatureValidator.signatureIsOfType(SignatureType.SUBKEY_BINDING).verify(signature);
                 SignatureValidator.signatureStructureIsAcceptable(primaryKey, policy).verify(signature);
                 SignatureValidator.signatureDoesNotPredateSignee(subkey).verify(signature);
                 SignatureValidator.signatureIsAlreadyEffective(validationDate).verify(signature);
-                // if the currently latest signature is not yet expired, check if the next candidate is not yet expired
-                if (latestSubkeyBinding != null && !SignatureUtils.isSignatureExpired(latestSubkeyBinding, validationDate)) {
-                    SignatureValidator.signatureIsNotYetExpired(validationDate).verify(signature);
-                }
                 SignatureValidator.correctSubkeyBindingSignature(primaryKey, subkey).verify(signature);
             } catch (SignatureValidationException e) {
                 // Subkey binding sig is not valid
                 continue;
             }
-            latestSubkeyBinding = signature;
+            if (!expired) {
+                return signature;
+            }
+            latestExpiredSignature = signature;
         }
 
-        return latestSubkeyBinding;
+        return latestExpiredSignature;
     }
 
     /**
-     * Return a list of all signatures of the given {@link SignatureType} on the given key, sorted using a
-     * {@link SignatureCreationDateComparator}.
-     *
-     * The returned list will be sorted first by ascending signature creation time.
+     * Return a list of all signatures of the given {@link SignatureType} on the given key, sorted
+     * newest first.
      *
      * @param key key
      * @param type type of signatures which shall be collected and sorted
      * @return sorted list of signatures
      */
     private static List<PGPSignature> getSortedSignaturesOfType(PGPPublicKey key, SignatureType type) {
-        Iterator<PGPSignature> signaturesOfType = key.getSignaturesOfType(type.getCode());
-        List<PGPSignature> signatureList = CollectionUtils.iteratorToList(signaturesOfType);
+        return sortNewestFirst(key.getSignaturesOfType(type.getCode()));
+    }
+
+    /**
+     * Collect the given signatures into a list, which is sorted by descending signature creation time.
+     * Signatures with the same creation time end up in reverse order of appearance on the key, so that the
+     * pickers, which return the first valid signature of the list, prefer the same signature as if they
+     * picked the last valid signature of the list in ascending order.
+     *
+     * @param signatures signatures
+     * @return signatures, newest first
+     */
+    private static List<PGPSignature> sortNewestFirst(Iterator<PGPSignature> signatures) {
+        List<PGPSignature> signatureList = CollectionUtils.iteratorToList(signatures);
         Collections.sort(signatureList, new SignatureCreationDateComparator());
+        Collections.reverse(signatureList);
         return signatureList;
     }
 }
@@ -493,6 +493,13 @@ public abstract class SignatureValidator {
                 if (primaryKey.getKeyID() == subkey.getKeyID()) {
                     throw new SignatureValidationException("Primary key cannot be its own subkey.");
                 }
+                VerifiedSignatureCache cache = VerifiedSignatureCache.getInstance();
+                VerifiedSignatureCache.CacheKey cacheKey = cache == null ? null :
+                        VerifiedSignatureCache.keyOverKeys(
+                                VerifiedSignatureCache.Check.SUBKEY_BINDING, signature, primaryKey, primaryKey, subkey);
+                if (cache != null && cache.isCorrect(cacheKey)) {
+                    return;
+                }
                 try {
                     signature.init(ImplementationFactory.getInstance()
                             .getPGPContentVerifierBuilderProvider(), primaryKey);
@@ -500,6 +507,9 @@ public abstract class SignatureValidator {
                     if (!valid) {
                         throw new SignatureValidationException("Signature is not correct.");
                     }
+                    if (cache != null) {
+                        cache.markCorrect(cacheKey);
+                    }
                 } catch (PGPException | ClassCastException e) {
                     throw new SignatureValidationException("Cannot verify subkey binding signature correctness", e);
                 }
@@ -518,12 +528,22 @@ public abstract class SignatureValidator {
         return new SignatureValidator() {
             @Override
             public void verify(PGPSignature signature) throws SignatureValidationException {
+                VerifiedSignatureCache cache = VerifiedSignatureCache.getInstance();
+                VerifiedSignatureCache.CacheKey cacheKey = cache == null ? null :
+                        VerifiedSignatureCache.keyOverKeys(
+                                VerifiedSignatureCache.Check.PRIMARY_KEY_BINDING, signature, subkey, primaryKey, subkey);
+                if (cache != null && cache.isCorrect(cacheKey)) {
+                    return;
+                }
                 try {
                     signature.init(ImplementationFactory.getInstance().getPGPContentVerifierBuilderProvider(), subkey);
                     boolean valid = signature.verifyCertification(primaryKey, subkey);
                     if (!valid) {
                         throw new SignatureValidationException("Primary Key Binding Signature is not correct.");
                     }
+                    if (cache != null) {
+                        cache.markCorrect(cacheKey);
+                    }
                 } catch (PGPException | ClassCastException e) {
                     throw new SignatureValidationException(
                             "Cannot verify primary key binding signature correctness", e);
@@ -543,6 +563,13 @@ public abstract class SignatureValidator {
         return new SignatureValidator() {
             @Override
             public void verify(PGPSignature signature) throws SignatureValidationException {
+                VerifiedSignatureCache cache = VerifiedSignatureCache.getInstance();
+                VerifiedSignatureCache.CacheKey cacheKey = cache == null ? null :
+                        VerifiedSignatureCache.keyOverKeys(
+                                VerifiedSignatureCache.Check.SIGNATURE_OVER_KEY, signature, signer, signer, signee);
+                if (cache != null && cache.isCorrect(cacheKey)) {
+                    return;
+                }
                 try {
                     signature.init(ImplementationFactory.getInstance().getPGPContentVerifierBuilderProvider(), signer);
                     boolean valid;
@@ -554,6 +581,9 @@ public abstract class SignatureValidator {
                     if (!valid) {
                         throw new SignatureValidationException("Signature is not correct.");
                     }
+                    if (cache != null) {
+                        cache.markCorrect(cacheKey);
+                    }
                 } catch (PGPException | ClassCastException e) {
                     throw new SignatureValidationException("Cannot verify direct-key signature correctness", e);
                 }
@@ -613,6 +643,12 @@ public abstract class SignatureValidator {
         return new SignatureValidator() {
             @Override
             public void verify(PGPSignature signature) throws SignatureValidationException {
+                VerifiedSignatureCache cache = VerifiedSignatureCache.getInstance();
+                VerifiedSignatureCache.CacheKey cacheKey = cache == null ? null :
+                        VerifiedSignatureCache.keyOverUserId(signature, certifyingKey, userId, certifiedKey);
+                if (cache != null && cache.isCorrect(cacheKey)) {
+                    return;
+                }
                 try {
                     signature.init(ImplementationFactory.getInstance()
                             .getPGPContentVerifierBuilderProvider(), certifyingKey);
@@ -621,6 +657,9 @@ public abstract class SignatureValidator {
                         throw new SignatureValidationException("Signature over user-id '" + userId +
                                 "' is not correct.");
                     }
+                    if (cache != null) {
+                        cache.markCorrect(cacheKey);
+                    }
                 } catch (PGPException | ClassCastException e) {
                     throw new SignatureValidationException("Cannot verify signature over user-id '" +
                             userId + "'.", e);
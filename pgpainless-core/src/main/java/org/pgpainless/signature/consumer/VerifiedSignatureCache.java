@@ -0,0 +1,288 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.signature.consumer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSignature;
+
+/**
+ * Opt-in cache which remembers signatures over keys and user-ids, which were found to be cryptographically correct.
+ * Evaluating a certificate (e.g. using {@link org.pgpainless.key.info.KeyRingInfo}) requires verification of
+ * its self-signatures and binding signatures, which is repeated every time the certificate is evaluated.
+ * If the cache is enabled via {@link #setInstance(VerifiedSignatureCache)}, the correctness checks of
+ * {@link SignatureValidator} only perform the public key operation once per signature.
+ *
+ * Only the cryptographic correctness is cached. Checks against the {@link org.pgpainless.policy.Policy},
+ * as well as creation and expiration date checks are still performed every time.
+ *
+ * Entries are identified by a digest over the encoded signature, the public key packet of the signing key and
+ * the signed material (public key packets and user-id), so a modified signature or key will not match an entry.
+ * Only positive results are cached.
+ * The cache is bounded in size and evicts the least recently used entries first.
+ */
+public class VerifiedSignatureCache {
+
+    public static final int DEFAULT_MAX_SIZE = 4096;
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private static volatile VerifiedSignatureCache INSTANCE = null;
+
+    private final Stripe[] stripes;
+
+    /**
+     * Return the global cache, or null if caching of verified signatures is disabled (default).
+     *
+     * @return cache or null
+     */
+    @Nullable
+    public static VerifiedSignatureCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the global cache.
+     * Passing null disables caching of verified signatures.
+     *
+     * @param cache cache or null
+     */
+    public static void setInstance(@Nullable VerifiedSignatureCache cache) {
+        INSTANCE = cache;
+    }
+
+    /**
+     * Create a {@link VerifiedSignatureCache} with default settings.
+     */
+    public VerifiedSignatureCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a {@link VerifiedSignatureCache}.
+     *
+     * @param maxSize maximum number of signatures held by the cache
+     */
+    public VerifiedSignatureCache(int maxSize) {
+        this(maxSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create a {@link VerifiedSignatureCache}.
+     *
+     * @param maxSize maximum number of signatures held by the cache
+     * @param concurrencyLevel number of independently locked stripes
+     */
+    public VerifiedSignatureCache(int maxSize, int concurrencyLevel) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size MUST be positive.");
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Concurrency level MUST be positive.");
+        }
+
+        int numStripes = Math.min(concurrencyLevel, maxSize);
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            // distribute the capacity evenly over the stripes
+            int capacity = maxSize / numStripes + (i < maxSize % numStripes ? 1 : 0);
+            stripes[i] = new Stripe(capacity);
+        }
+    }
+
+    /**
+     * Evict all entries.
+     */
+    public void evictAll() {
+        for (Stripe stripe : stripes) {
+            stripe.evictAll();
+        }
+    }
+
+    /**
+     * Return the number of entries in the cache.
+     *
+     * @return size
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Return true, if the signature with the given cache key was previously found to be correct.
+     *
+     * @param key cache key, might be null if no key could be computed
+     * @return true if the signature is known to be correct
+     */
+    boolean isCorrect(@Nullable CacheKey key) {
+        return key != null && stripeFor(key).contains(key);
+    }
+
+    /**
+     * Remember that the signature with the given cache key is correct.
+     *
+     * @param key cache key, might be null if no key could be computed
+     */
+    void markCorrect(@Nullable CacheKey key) {
+        if (key != null) {
+            stripeFor(key).add(key);
+        }
+    }
+
+    private Stripe stripeFor(CacheKey key) {
+        return stripes[(key.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    /**
+     * Kind of correctness check.
+     * Different checks verify a signature in different ways, so their results are cached separately.
+     */
+    enum Check {
+        SIGNATURE_OVER_KEY,
+        SUBKEY_BINDING,
+        PRIMARY_KEY_BINDING,
+        SIGNATURE_OVER_USER_ID
+    }
+
+    /**
+     * Compute the cache key of a signature made by signer over a key (direct-key signatures, key revocations,
+     * subkey binding signatures and primary key binding signatures).
+     *
+     * @param check kind of correctness check
+     * @param signature signature
+     * @param signer signing key
+     * @param keys signed key(s)
+     * @return cache key or null, if the key cannot be computed
+     */
+    @Nullable
+    static CacheKey keyOverKeys(@Nonnull Check check,
+                                @Nonnull PGPSignature signature,
+                                @Nonnull PGPPublicKey signer,
+                                @Nonnull PGPPublicKey... keys) {
+        try {
+            MessageDigest digest = digestSignatureAndSigner(check, signature, signer);
+            for (PGPPublicKey key : keys) {
+                update(digest, key.getPublicKeyPacket().getEncodedContents());
+            }
+            return new CacheKey(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compute the cache key of a signature made by signer over a user-id on the certified key.
+     *
+     * @param signature signature
+     * @param signer signing key
+     * @param userId user-id
+     * @param certifiedKey key carrying the user-id
+     * @return cache key or null, if the key cannot be computed
+     */
+    @Nullable
+    static CacheKey keyOverUserId(@Nonnull PGPSignature signature,
+                                  @Nonnull PGPPublicKey signer,
+                                  @Nonnull String userId,
+                                  @Nonnull PGPPublicKey certifiedKey) {
+        try {
+            MessageDigest digest = digestSignatureAndSigner(Check.SIGNATURE_OVER_USER_ID, signature, signer);
+            update(digest, certifiedKey.getPublicKeyPacket().getEncodedContents());
+            update(digest, userId.getBytes(StandardCharsets.UTF_8));
+            return new CacheKey(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest digestSignatureAndSigner(Check check, PGPSignature signature, PGPPublicKey signer)
+            throws NoSuchAlgorithmException, IOException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((byte) check.ordinal());
+        update(digest, signature.getEncoded());
+        update(digest, signer.getPublicKeyPacket().getEncodedContents());
+        return digest;
+    }
+
+    // Length-prefix each field, so that the concatenation of the fields is unambiguous
+    private static void update(MessageDigest digest, byte[] field) {
+        int length = field.length;
+        digest.update(new byte[] {(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        digest.update(field);
+    }
+
+    /**
+     * Lookup key of a cache entry.
+     */
+    static final class CacheKey {
+        private final byte[] digest;
+        private final int hashCode;
+
+        private CacheKey(byte[] digest) {
+            this.digest = digest;
+            this.hashCode = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            return Arrays.equals(digest, ((CacheKey) obj).digest);
+        }
+    }
+
+    /**
+     * Independently locked LRU segment of the cache.
+     */
+    private static final class Stripe {
+        private final LinkedHashMap<CacheKey, Boolean> entries;
+
+        private Stripe(final int capacity) {
+            this.entries = new LinkedHashMap<CacheKey, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, Boolean> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private synchronized boolean contains(CacheKey key) {
+            // get() instead of containsKey() updates the access order
+            return entries.get(key) != null;
+        }
+
+        private synchronized void add(CacheKey key) {
+            entries.put(key, Boolean.TRUE);
+        }
+
+        private synchronized void evictAll() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.util;
+
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.bcpg.SymmetricEncIntegrityPacket;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.modes.AEADBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.HKDFParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.operator.bc.BcAEADUtil;
+import org.pgpainless.algorithm.AEADAlgorithm;
+import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
+
+/**
+ * Encrypts and decrypts the chunks of a version 2 Symmetrically Encrypted Integrity Protected Data packet.
+ *
+ * The message key and IV are derived from the session key and the salt of the packet using HKDF.
+ * Each chunk is encrypted independently, using a nonce which is derived from the index of the chunk.
+ * Therefore, the chunks of a message can be encrypted and decrypted concurrently.
+ * The final authentication tag protects the total length of the message against truncation.
+ *
+ * Instances of this class are immutable and can be shared between threads.
+ *
+ * @see <a href="https://www.ietf.org/archive/id/draft-ietf-openpgp-crypto-refresh-10.html#name-version-2-symmetrically-enc">
+ *     Crypto-Refresh §5.13.2 - Version 2 Symmetrically Encrypted Integrity Protected Data Packet Format</a>
+ */
+public final class AEADChunkCipher {
+
+    /**
+     * Length of the salt of the packet in octets.
+     */
+    public static final int SALT_LENGTH = 32;
+    /**
+     * Smallest chunk size octet (chunks of 64 octets).
+     */
+    public static final int MIN_CHUNK_SIZE = 0;
+    /**
+     * Largest chunk size octet (chunks of 4 MiB).
+     */
+    public static final int MAX_CHUNK_SIZE = 16;
+
+    private static final int CHUNK_INDEX_LENGTH = 8;
+
+    private final SymmetricKeyAlgorithm symmetricKeyAlgorithm;
+    private final AEADAlgorithm aeadAlgorithm;
+    private final int chunkSize;
+    private final KeyParameter messageKey;
+    private final byte[] ivPrefix;
+    private final byte[] associatedData;
+
+    private AEADChunkCipher(SymmetricKeyAlgorithm symmetricKeyAlgorithm,
+                            AEADAlgorithm aeadAlgorithm,
+                            int chunkSize,
+                            KeyParameter messageKey,
+                            byte[] ivPrefix,
+                            byte[] associatedData) {
+        this.symmetricKeyAlgorithm = symmetricKeyAlgorithm;
+        this.aeadAlgorithm = aeadAlgorithm;
+        this.chunkSize = chunkSize;
+        this.messageKey = messageKey;
+        this.ivPrefix = ivPrefix;
+        this.associatedData = associatedData;
+    }
+
+    /**
+     * Derive the chunk cipher of a message from its session key and the parameters of its encrypted data packet.
+     *
+     * @param symmetricKeyAlgorithm symmetric cipher
+     * @param aeadAlgorithm AEAD mode
+     * @param chunkSize chunk size octet
+     * @param sessionKey session key
+     * @param salt salt of the packet
+     * @return chunk cipher
+     *
+     * @throws PGPException if the combination of algorithms is not supported
+     */
+    @Nonnull
+    public static AEADChunkCipher create(@Nonnull SymmetricKeyAlgorithm symmetricKeyAlgorithm,
+                                         @Nonnull AEADAlgorithm aeadAlgorithm,
+                                         int chunkSize,
+                                         @Nonnull byte[] sessionKey,
+                                         @Nonnull byte[] salt)
+            throws PGPException {
+        if (chunkSize < MIN_CHUNK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+            throw new PGPException("Unsupported AEAD chunk size octet: " + chunkSize);
+        }
+        if (salt.length != SALT_LENGTH) {
+            throw new PGPException("Invalid salt length: " + salt.length);
+        }
+        // Fail early if BC does not support the combination of algorithms
+        BcAEADUtil.createAEADCipher(symmetricKeyAlgorithm.getAlgorithmId(), aeadAlgorithm.getAlgorithmId());
+
+        byte[] associatedData = SymmetricEncIntegrityPacket.createAAData(SymmetricEncIntegrityPacket.VERSION_2,
+                symmetricKeyAlgorithm.getAlgorithmId(), aeadAlgorithm.getAlgorithmId(), chunkSize);
+
+        int ivPrefixLength = aeadAlgorithm.getIvLength() - CHUNK_INDEX_LENGTH;
+        byte[] keyAndIv = new byte[sessionKey.length + ivPrefixLength];
+        HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA256Digest());
+        hkdf.init(new HKDFParameters(sessionKey, salt, associatedData));
+        hkdf.generateBytes(keyAndIv, 0, keyAndIv.length);
+
+        byte[] key = new byte[sessionKey.length];
+        byte[] ivPrefix = new byte[ivPrefixLength];
+        System.arraycopy(keyAndIv, 0, key, 0, key.length);
+        System.arraycopy(keyAndIv, key.length, ivPrefix, 0, ivPrefix.length);
+        return new AEADChunkCipher(symmetricKeyAlgorithm, aeadAlgorithm, chunkSize,
+                new KeyParameter(key), ivPrefix, associatedData);
+    }
+
+    /**
+     * Return the length of a chunk of plaintext in octets.
+     * All chunks but the last one have this length.
+     *
+     * @param chunkSize chunk size octet
+     * @return chunk length
+     */
+    public static int getChunkLength(int chunkSize) {
+        return 1 << (chunkSize + 6);
+    }
+
+    /**
+     * Return the symmetric cipher.
+     *
+     * @return symmetric key algorithm
+     */
+    public SymmetricKeyAlgorithm getSymmetricKeyAlgorithm() {
+        return symmetricKeyAlgorithm;
+    }
+
+    /**
+     * Return the AEAD mode.
+     *
+     * @return AEAD algorithm
+     */
+    public AEADAlgorithm getAeadAlgorithm() {
+        return aeadAlgorithm;
+    }
+
+    /**
+     * Return the chunk size octet.
+     *
+     * @return chunk size octet
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Return the length of a chunk of plaintext in octets.
+     *
+     * @return chunk length
+     */
+    public int getChunkLength() {
+        return getChunkLength(chunkSize);
+    }
+
+    /**
+     * Return the length of an authentication tag in octets.
+     *
+     * @return tag length
+     */
+    public int getTagLength() {
+        return aeadAlgorithm.getTagLength();
+    }
+
+    /**
+     * Encrypt a chunk of plaintext.
+     * The returned array contains the ciphertext, followed by the authentication tag of the chunk.
+     *
+     * @param chunkIndex index of the chunk
+     * @param plaintext buffer containing the plaintext
+     * @param off offset of the plaintext
+     * @param len length of the plaintext
+     * @return ciphertext and authentication tag
+     *
+     * @throws PGPException if the chunk cannot be encrypted
+     */
+    @Nonnull
+    public byte[] encryptChunk(long chunkIndex, @Nonnull byte[] plaintext, int off, int len)
+            throws PGPException {
+        AEADBlockCipher cipher = init(true, chunkIndex);
+        cipher.processAADBytes(associatedData, 0, associatedData.length);
+        return process(cipher, plaintext, off, len);
+    }
+
+    /**
+     * Decrypt a chunk of ciphertext and verify its authentication tag.
+     *
+     * @param chunkIndex index of the chunk
+     * @param ciphertext buffer containing the ciphertext, followed by the authentication tag
+     * @param off offset of the ciphertext
+     * @param len length of ciphertext and authentication tag
+     * @return plaintext
+     *
+     * @throws PGPException if the authentication tag does not match
+     */
+    @Nonnull
+    public byte[] decryptChunk(long chunkIndex, @Nonnull byte[] ciphertext, int off, int len)
+            throws PGPException {
+        if (len < getTagLength()) {
+            throw new PGPException("Chunk " + chunkIndex + " is too short.");
+        }
+        AEADBlockCipher cipher = init(false, chunkIndex);
+        cipher.processAADBytes(associatedData, 0, associatedData.length);
+        return process(cipher, ciphertext, off, len);
+    }
+
+    /**
+     * Compute the final authentication tag, which authenticates the number of chunks and the total length
+     * of the plaintext.
+     *
+     * @param numberOfChunks number of chunks of the message
+     * @param totalLength total length of the plaintext in octets
+     * @return final authentication tag
+     *
+     * @throws PGPException if the tag cannot be computed
+     */
+    @Nonnull
+    public byte[] finalTag(long numberOfChunks, long totalLength)
+            throws PGPException {
+        AEADBlockCipher cipher = initFinal(true, numberOfChunks, totalLength);
+        return process(cipher, new byte[0], 0, 0);
+    }
+
+    /**
+     * Verify the final authentication tag of a message.
+     *
+     * @param numberOfChunks number of chunks of the message
+     * @param totalLength total length of the plaintext in octets
+     * @param tag buffer containing the final authentication tag
+     * @param off offset of the tag
+     *
+     * @throws PGPException if the tag does not match
+     */
+    public void verifyFinalTag(long numberOfChunks, long totalLength, @Nonnull byte[] tag, int off)
+            throws PGPException {
+        AEADBlockCipher cipher = initFinal(false, numberOfChunks, totalLength);
+        process(cipher, tag, off, getTagLength());
+    }
+
+    private AEADBlockCipher initFinal(boolean forEncryption, long numberOfChunks, long totalLength)
+            throws PGPException {
+        AEADBlockCipher cipher = init(forEncryption, numberOfChunks);
+        cipher.processAADBytes(associatedData, 0, associatedData.length);
+        byte[] length = new byte[8];
+        writeLong(totalLength, length, 0);
+        cipher.processAADBytes(length, 0, length.length);
+        return cipher;
+    }
+
+    private AEADBlockCipher init(boolean forEncryption, long chunkIndex)
+            throws PGPException {
+        byte[] nonce = new byte[ivPrefix.length + CHUNK_INDEX_LENGTH];
+        System.arraycopy(ivPrefix, 0, nonce, 0, ivPrefix.length);
+        writeLong(chunkIndex, nonce, ivPrefix.length);
+
+        AEADBlockCipher cipher = BcAEADUtil.createAEADCipher(
+                symmetricKeyAlgorithm.getAlgorithmId(), aeadAlgorithm.getAlgorithmId());
+        cipher.init(forEncryption, new AEADParameters(messageKey, getTagLength() * 8, nonce));
+        return cipher;
+    }
+
+    private static byte[] process(AEADBlockCipher cipher, byte[] in, int off, int len)
+            throws PGPException {
+        byte[] out = new byte[cipher.getOutputSize(len)];
+        int written = cipher.processBytes(in, off, len, out, 0);
+        try {
+            cipher.doFinal(out, written);
+        } catch (InvalidCipherTextException e) {
+            throw new PGPException("Authentication tag mismatch.", e);
+        }
+        return out;
+    }
+
+    private static void writeLong(long value, byte[] out, int off) {
+        for (int i = 7; i >= 0; i--) {
+            out[off + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
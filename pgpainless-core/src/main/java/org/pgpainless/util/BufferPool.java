@@ -0,0 +1,223 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+
+/**
+ * Pool of byte arrays used as stream buffers.
+ * Streams like {@link org.pgpainless.decryption_verification.OpenPgpInputStream} or
+ * {@link org.pgpainless.encryption_signing.EncryptionStream} acquire their buffers from the pool and release them
+ * once they get closed, which avoids allocating fresh buffers for every (nested) message.
+ *
+ * Released buffers are zeroed, since they may have held plaintext.
+ * Streams which are not closed simply do not return their buffers to the pool.
+ *
+ * The pool in use can be replaced globally using {@link #setInstance(BufferPool)}.
+ */
+public abstract class BufferPool {
+
+    /**
+     * Default number of buffers per buffer size that are kept by the pool.
+     */
+    public static final int DEFAULT_MAX_BUFFERS_PER_SIZE = 16;
+
+    private static volatile BufferPool INSTANCE = concurrent(DEFAULT_MAX_BUFFERS_PER_SIZE);
+
+    /**
+     * Return the global buffer pool.
+     *
+     * @return buffer pool
+     */
+    @Nonnull
+    public static BufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replace the global buffer pool.
+     * Buffers that were acquired from the previous pool are released to the new one.
+     *
+     * @param pool buffer pool
+     */
+    public static void setInstance(@Nonnull BufferPool pool) {
+        INSTANCE = pool;
+    }
+
+    /**
+     * Return a buffer of exactly the given size.
+     * The contents of the buffer are all zeros.
+     *
+     * @param size size of the buffer
+     * @return buffer
+     */
+    @Nonnull
+    public abstract byte[] acquire(int size);
+
+    /**
+     * Return a buffer to the pool.
+     * The caller MUST NOT use the buffer afterwards.
+     *
+     * @param buffer buffer
+     */
+    public abstract void release(@Nonnull byte[] buffer);
+
+    /**
+     * Return a {@link BufferPool} which does not pool at all, but allocates a new buffer on every call.
+     *
+     * @return unpooled buffer pool
+     */
+    @Nonnull
+    public static BufferPool unpooled() {
+        return new Unpooled();
+    }
+
+    /**
+     * Return a {@link BufferPool} which keeps up to the given number of buffers per buffer size and thread.
+     * This pool does not require any synchronization, but buffers that are released on a thread are only
+     * reused by the same thread.
+     *
+     * @param maxBuffersPerSize maximum number of pooled buffers per size and thread
+     * @return thread-local buffer pool
+     */
+    @Nonnull
+    public static BufferPool threadLocal(int maxBuffersPerSize) {
+        return new ThreadLocalPool(maxBuffersPerSize);
+    }
+
+    /**
+     * Return a {@link BufferPool} which keeps up to the given number of buffers per buffer size, shared among
+     * all threads.
+     *
+     * @param maxBuffersPerSize maximum number of pooled buffers per size
+     * @return concurrent buffer pool
+     */
+    @Nonnull
+    public static BufferPool concurrent(int maxBuffersPerSize) {
+        return new ConcurrentPool(maxBuffersPerSize);
+    }
+
+    private static final class Unpooled extends BufferPool {
+
+        @Nonnull
+        @Override
+        public byte[] acquire(int size) {
+            return new byte[size];
+        }
+
+        @Override
+        public void release(@Nonnull byte[] buffer) {
+            // let the garbage collector take care of it
+        }
+    }
+
+    private static final class ThreadLocalPool extends BufferPool {
+
+        private final int maxBuffersPerSize;
+        private final ThreadLocal<Map<Integer, List<byte[]>>> buffers = new ThreadLocal<Map<Integer, List<byte[]>>>() {
+            @Override
+            protected Map<Integer, List<byte[]>> initialValue() {
+                return new HashMap<>();
+            }
+        };
+
+        private ThreadLocalPool(int maxBuffersPerSize) {
+            if (maxBuffersPerSize < 0) {
+                throw new IllegalArgumentException("Maximum number of buffers cannot be negative.");
+            }
+            this.maxBuffersPerSize = maxBuffersPerSize;
+        }
+
+        @Nonnull
+        @Override
+        public byte[] acquire(int size) {
+            List<byte[]> free = buffers.get().get(size);
+            if (free == null || free.isEmpty()) {
+                return new byte[size];
+            }
+            return free.remove(free.size() - 1);
+        }
+
+        @Override
+        public void release(@Nonnull byte[] buffer) {
+            Map<Integer, List<byte[]>> bySize = buffers.get();
+            List<byte[]> free = bySize.get(buffer.length);
+            if (free == null) {
+                free = new ArrayList<>();
+                bySize.put(buffer.length, free);
+            }
+            if (free.size() < maxBuffersPerSize) {
+                Arrays.fill(buffer, (byte) 0);
+                free.add(buffer);
+            }
+        }
+    }
+
+    private static final class ConcurrentPool extends BufferPool {
+
+        private final int maxBuffersPerSize;
+        private final ConcurrentMap<Integer, FreeList> buffers = new ConcurrentHashMap<>();
+
+        private ConcurrentPool(int maxBuffersPerSize) {
+            if (maxBuffersPerSize < 0) {
+                throw new IllegalArgumentException("Maximum number of buffers cannot be negative.");
+            }
+            this.maxBuffersPerSize = maxBuffersPerSize;
+        }
+
+        @Nonnull
+        @Override
+        public byte[] acquire(int size) {
+            FreeList free = buffers.get(size);
+            byte[] buffer = free != null ? free.poll() : null;
+            return buffer != null ? buffer : new byte[size];
+        }
+
+        @Override
+        public void release(@Nonnull byte[] buffer) {
+            FreeList free = buffers.get(buffer.length);
+            if (free == null) {
+                FreeList newList = new FreeList();
+                free = buffers.putIfAbsent(buffer.length, newList);
+                if (free == null) {
+                    free = newList;
+                }
+            }
+            free.offer(buffer, maxBuffersPerSize);
+        }
+
+        private static final class FreeList {
+            private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+            private final AtomicInteger size = new AtomicInteger();
+
+            byte[] poll() {
+                byte[] buffer = queue.poll();
+                if (buffer != null) {
+                    size.decrementAndGet();
+                }
+                return buffer;
+            }
+
+            void offer(byte[] buffer, int maxSize) {
+                if (size.incrementAndGet() > maxSize) {
+                    size.decrementAndGet();
+                    return;
+                }
+                Arrays.fill(buffer, (byte) 0);
+                queue.offer(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import javax.annotation.Nonnull;
+
+/**
+ * {@link InputStream} which reads from a (blocking) {@link ReadableByteChannel} through a direct {@link ByteBuffer}.
+ * Contrary to {@link java.nio.channels.Channels#newInputStream(ReadableByteChannel)}, the channel is read in large
+ * chunks, even if the stream is consumed in small pieces.
+ * <p>
+ * Data which does not need to be transformed can be copied to another channel using
+ * {@link #transferTo(WritableByteChannel)}, which uses {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+ * if the source is a {@link FileChannel}.
+ */
+public class ChannelInputStream extends InputStream {
+
+    /**
+     * Default size of the direct buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean eof = false;
+
+    /**
+     * Create a stream which reads from the given channel using a buffer of {@link #DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @param channel channel
+     */
+    public ChannelInputStream(@Nonnull ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a stream which reads from the given channel.
+     *
+     * @param channel channel
+     * @param bufferSize size of the direct buffer
+     */
+    public ChannelInputStream(@Nonnull ReadableByteChannel channel, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        }
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        // buffer is empty
+        ((Buffer) buffer).limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining() && !fill()) {
+            return 0;
+        }
+        int skipped = (int) Math.min(n, buffer.remaining());
+        ((Buffer) buffer).position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Copy the remaining data of this stream to the given channel without looking at it.
+     * If the underlying channel is a {@link FileChannel}, the data is transferred using
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which allows the operating system to copy the
+     * data without moving it through the JVM.
+     *
+     * @param target target channel
+     * @return number of transferred bytes
+     *
+     * @throws IOException in case of an IO error
+     */
+    public long transferTo(@Nonnull WritableByteChannel target) throws IOException {
+        long transferred = drainTo(target);
+        if (eof) {
+            return transferred;
+        }
+
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            long position = fileChannel.position();
+            long size = fileChannel.size();
+            while (position < size) {
+                long n = fileChannel.transferTo(position, size - position, target);
+                if (n <= 0) {
+                    break;
+                }
+                position += n;
+                transferred += n;
+            }
+            fileChannel.position(position);
+        }
+
+        // Copy what is left (or everything, if the channel is not a file) through the buffer
+        while (fill()) {
+            transferred += drainTo(target);
+        }
+        return transferred;
+    }
+
+    private long drainTo(WritableByteChannel target) throws IOException {
+        long drained = 0;
+        while (buffer.hasRemaining()) {
+            drained += target.write(buffer);
+        }
+        return drained;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        ((Buffer) buffer).clear();
+        int n;
+        do {
+            n = channel.read(buffer);
+        } while (n == 0);
+        ((Buffer) buffer).flip();
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,109 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import javax.annotation.Nonnull;
+
+/**
+ * {@link OutputStream} which writes to a {@link WritableByteChannel} through a direct {@link ByteBuffer}.
+ * Small writes are collected in the buffer, so that the channel is only written in large chunks.
+ * Since the buffer is direct, the channel does not need to copy the data into a temporary direct buffer.
+ * <p>
+ * Call {@link #flush()} or {@link #close()} to write out buffered data.
+ */
+public class ChannelOutputStream extends OutputStream {
+
+    /**
+     * Default size of the direct buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean closed = false;
+
+    /**
+     * Create a stream which writes to the given channel using a buffer of {@link #DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @param channel channel
+     */
+    public ChannelOutputStream(@Nonnull WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a stream which writes to the given channel.
+     *
+     * @param channel channel
+     * @param bufferSize size of the direct buffer
+     */
+    public ChannelOutputStream(@Nonnull WritableByteChannel channel, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        }
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    private void drain() throws IOException {
+        ((Buffer) buffer).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        ((Buffer) buffer).clear();
+    }
+
+    /**
+     * Write out buffered data and close the channel.
+     *
+     * @throws IOException in case of an IO error
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.util;
+
+import java.io.IOException;
+import javax.annotation.Nonnull;
+
+/**
+ * Canonicalization of text data for text signatures and CR/LF encoding.
+ * Line endings ({@code \r\n}, {@code \n} and a lone {@code \r}) are converted to {@code \r\n}.
+ * Optionally, trailing whitespace (spaces and tabs) at the end of each line is removed, as required for signatures
+ * using the Cleartext Signature Framework (RFC4880 §7.1).
+ * Dash-escaping of the cleartext is done by Bouncy Castle's armor streams.
+ * <p>
+ * The data is processed in bulk. It is scanned for line endings and the text between them is passed on to the
+ * {@link Sink} in one piece, instead of byte by byte.
+ * The canonicalizer is stateful, so that line endings and whitespace which span multiple updates are handled
+ * correctly. Call {@link #finish()} once all data was processed.
+ */
+public final class TextCanonicalizer {
+
+    /**
+     * Receives the canonicalized data.
+     */
+    public interface Sink {
+
+        /**
+         * Process a chunk of canonicalized data.
+         *
+         * @param b buffer
+         * @param off offset of the data
+         * @param len length of the data
+         *
+         * @throws IOException in case of an IO error
+         */
+        void write(@Nonnull byte[] b, int off, int len) throws IOException;
+    }
+
+    private static final byte[] CRLF = new byte[] {'\r', '\n'};
+
+    private final Sink sink;
+    private final boolean stripTrailingWhitespace;
+    private final byte[] singleByte = new byte[1];
+    // Last processed input byte, used to detect \r\n sequences which span multiple updates
+    private byte lastByte = 0;
+    // Whitespace which is held back until it is known whether it is trailing
+    private byte[] whitespace = new byte[0];
+    private int whitespaceLength = 0;
+
+    /**
+     * Create a canonicalizer.
+     *
+     * @param sink sink for the canonicalized data
+     * @param stripTrailingWhitespace whether trailing whitespace shall be removed from lines
+     */
+    public TextCanonicalizer(@Nonnull Sink sink, boolean stripTrailingWhitespace) {
+        this.sink = sink;
+        this.stripTrailingWhitespace = stripTrailingWhitespace;
+    }
+
+    /**
+     * Return a copy of this canonicalizer, which has the same state, but writes to another sink.
+     *
+     * @param sink sink of the copy
+     * @return copy
+     */
+    @Nonnull
+    public TextCanonicalizer copy(@Nonnull Sink sink) {
+        TextCanonicalizer copy = new TextCanonicalizer(sink, stripTrailingWhitespace);
+        copy.lastByte = lastByte;
+        copy.whitespace = whitespace.clone();
+        copy.whitespaceLength = whitespaceLength;
+        return copy;
+    }
+
+    /**
+     * Canonicalize a single byte.
+     *
+     * @param b byte
+     *
+     * @throws IOException if the sink throws
+     */
+    public void update(byte b) throws IOException {
+        if (b == '\r' || b == '\n') {
+            lineEnding(b);
+            return;
+        }
+        singleByte[0] = b;
+        text(singleByte, 0, 1);
+    }
+
+    /**
+     * Canonicalize a chunk of data.
+     *
+     * @param b buffer
+     * @param off offset of the data
+     * @param len length of the data
+     *
+     * @throws IOException if the sink throws
+     */
+    public void update(@Nonnull byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        int start = off;
+        int lineEnd;
+        while ((lineEnd = indexOfLineEnding(b, start, end)) != -1) {
+            if (lineEnd > start) {
+                text(b, start, lineEnd - start);
+            }
+            lineEnding(b[lineEnd]);
+            start = lineEnd + 1;
+        }
+        if (end > start) {
+            text(b, start, end - start);
+        }
+    }
+
+    /**
+     * Finish the canonicalization.
+     * If trailing whitespace is stripped, whitespace at the end of the last line is dropped.
+     */
+    public void finish() {
+        whitespaceLength = 0;
+    }
+
+    /**
+     * Return the index of the first line ending character ({@code \r} or {@code \n}) in the given range,
+     * or -1 if the range does not contain a line ending.
+     *
+     * @param b buffer
+     * @param from start index (inclusive)
+     * @param to end index (exclusive)
+     * @return index of the first line ending or -1
+     */
+    public static int indexOfLineEnding(@Nonnull byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte c = b[i];
+            if (c == '\r' || c == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the length of the given line without trailing whitespace and line ending characters.
+     *
+     * @param line buffer containing the line
+     * @param off offset of the line
+     * @param len length of the line
+     * @return length of the line without trailing whitespace
+     */
+    public static int lengthWithoutTrailingWhitespace(@Nonnull byte[] line, int off, int len) {
+        int end = off + len;
+        while (end > off && isWhitespaceOrLineEnding(line[end - 1])) {
+            end--;
+        }
+        return end - off;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isWhitespaceOrLineEnding(byte b) {
+        return isWhitespace(b) || b == '\r' || b == '\n';
+    }
+
+    private void lineEnding(byte b) throws IOException {
+        if (b == '\n' && lastByte == '\r') {
+            // second half of \r\n, which was already written
+            lastByte = b;
+            return;
+        }
+        // whitespace before the line ending is trailing
+        whitespaceLength = 0;
+        sink.write(CRLF, 0, 2);
+        lastByte = b;
+    }
+
+    // Process text which does not contain line endings
+    private void text(byte[] b, int off, int len) throws IOException {
+        lastByte = b[off + len - 1];
+        if (!stripTrailingWhitespace) {
+            sink.write(b, off, len);
+            return;
+        }
+
+        int end = off + len;
+        int contentEnd = end;
+        while (contentEnd > off && isWhitespace(b[contentEnd - 1])) {
+            contentEnd--;
+        }
+        if (contentEnd > off) {
+            // The held back whitespace is followed by content, so it is not trailing
+            if (whitespaceLength != 0) {
+                sink.write(whitespace, 0, whitespaceLength);
+                whitespaceLength = 0;
+            }
+            sink.write(b, off, contentEnd - off);
+        }
+        holdBackWhitespace(b, contentEnd, end - contentEnd);
+    }
+
+    private void holdBackWhitespace(byte[] b, int off, int len) {
+        if (len == 0) {
+            return;
+        }
+        if (whitespaceLength + len > whitespace.length) {
+            byte[] grown = new byte[Math.max(2 * whitespace.length, whitespaceLength + len)];
+            System.arraycopy(whitespace, 0, grown, 0, whitespaceLength);
+            whitespace = grown;
+        }
+        System.arraycopy(b, off, whitespace, whitespaceLength, len);
+        whitespaceLength += len;
+    }
+}
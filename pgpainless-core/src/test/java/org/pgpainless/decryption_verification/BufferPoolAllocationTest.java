@@ -0,0 +1,103 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+import org.pgpainless.util.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark-style test which measures the number of bytes allocated per processed message with and without
+ * pooling of stream buffers.
+ */
+public class BufferPoolAllocationTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferPoolAllocationTest.class);
+
+    private static final byte[] MESSAGE = "Hello, World!\n".getBytes(StandardCharsets.UTF_8);
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void pooledBuffersReduceAllocationsPerMessage() throws PGPException, IOException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        BufferPool previous = BufferPool.getInstance();
+        try {
+            BufferPool.setInstance(BufferPool.unpooled());
+            long unpooled = allocatedBytesPerMessage(allocations);
+
+            BufferPool.setInstance(BufferPool.threadLocal(BufferPool.DEFAULT_MAX_BUFFERS_PER_SIZE));
+            long threadLocal = allocatedBytesPerMessage(allocations);
+
+            BufferPool.setInstance(BufferPool.concurrent(BufferPool.DEFAULT_MAX_BUFFERS_PER_SIZE));
+            long concurrent = allocatedBytesPerMessage(allocations);
+
+            LOGGER.info("Allocated bytes per message (encrypt + decrypt): unpooled {}, thread-local pool {}, " +
+                    "concurrent pool {}", unpooled, threadLocal, concurrent);
+
+            // Decryption alone allocates two 16 KiB buffers per nested layer without pooling
+            long expectedSavings = 2 * OpenPgpInputStream.MAX_BUFFER_SIZE;
+            assertTrue(threadLocal + expectedSavings < unpooled);
+            assertTrue(concurrent + expectedSavings < unpooled);
+        } finally {
+            BufferPool.setInstance(previous);
+        }
+    }
+
+    private static long allocatedBytesPerMessage(com.sun.management.ThreadMXBean allocations)
+            throws PGPException, IOException {
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            roundTrip();
+        }
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            roundTrip();
+        }
+        long after = allocations.getThreadAllocatedBytes(threadId);
+        return (after - before) / ROUNDS;
+    }
+
+    private static void roundTrip() throws PGPException, IOException {
+        ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(ciphertext)
+                .withOptions(ProducerOptions.noEncryptionNoSigning()
+                        .overrideCompressionAlgorithm(CompressionAlgorithm.ZIP)
+                        .setAsciiArmor(true));
+        encryptionStream.write(MESSAGE);
+        encryptionStream.close();
+
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext.toByteArray()))
+                .withOptions(ConsumerOptions.get());
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertArrayEquals(MESSAGE, plaintext.toByteArray());
+    }
+}
@@ -0,0 +1,62 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.S2K;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.operator.PBEDataDecryptorFactory;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.implementation.ImplementationFactory;
+import org.pgpainless.util.Passphrase;
+
+public class CachingPBEDataDecryptorFactoryTest {
+
+    private static final byte[] SALT = new byte[] {1, 2, 3, 4, 5, 6, 7, 8};
+    private static final byte[] OTHER_SALT = new byte[] {8, 7, 6, 5, 4, 3, 2, 1};
+
+    @Test
+    public void identicalS2KIsDerivedOnce() throws PGPException {
+        PBEDataDecryptorFactory plain = ImplementationFactory.getInstance()
+                .getPBEDataDecryptorFactory(Passphrase.fromPassword("sw0rdf1sh"));
+        CachingPBEDataDecryptorFactory caching = new CachingPBEDataDecryptorFactory(
+                ImplementationFactory.getInstance().getPBEDataDecryptorFactory(Passphrase.fromPassword("sw0rdf1sh")));
+
+        S2K s2k = new S2K(HashAlgorithmTags.SHA256, SALT, 0x60);
+        S2K sameParameters = new S2K(HashAlgorithmTags.SHA256, SALT.clone(), 0x60);
+
+        byte[] expected = plain.makeKeyFromPassPhrase(SymmetricKeyAlgorithmTags.AES_256, s2k);
+        assertArrayEquals(expected, caching.makeKeyFromPassPhrase(SymmetricKeyAlgorithmTags.AES_256, s2k));
+        assertArrayEquals(expected, caching.makeKeyFromPassPhrase(SymmetricKeyAlgorithmTags.AES_256, sameParameters));
+        assertEquals(1, caching.getNumberOfDerivations());
+    }
+
+    @Test
+    public void differentParametersAreDerivedSeparately() throws PGPException {
+        PBEDataDecryptorFactory plain = ImplementationFactory.getInstance()
+                .getPBEDataDecryptorFactory(Passphrase.fromPassword("sw0rdf1sh"));
+        CachingPBEDataDecryptorFactory caching = new CachingPBEDataDecryptorFactory(
+                ImplementationFactory.getInstance().getPBEDataDecryptorFactory(Passphrase.fromPassword("sw0rdf1sh")));
+
+        S2K[] s2ks = new S2K[] {
+                new S2K(HashAlgorithmTags.SHA256, SALT, 0x60),
+                new S2K(HashAlgorithmTags.SHA256, OTHER_SALT, 0x60),
+                new S2K(HashAlgorithmTags.SHA256, SALT, 0x61),
+                new S2K(HashAlgorithmTags.SHA512, SALT, 0x60)
+        };
+        for (S2K s2k : s2ks) {
+            assertArrayEquals(plain.makeKeyFromPassPhrase(SymmetricKeyAlgorithmTags.AES_256, s2k),
+                    caching.makeKeyFromPassPhrase(SymmetricKeyAlgorithmTags.AES_256, s2k));
+        }
+        // Different key size
+        caching.makeKeyFromPassPhrase(SymmetricKeyAlgorithmTags.AES_128, s2ks[0]);
+
+        assertEquals(5, caching.getNumberOfDerivations());
+    }
+}
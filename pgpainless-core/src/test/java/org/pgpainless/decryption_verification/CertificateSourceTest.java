@@ -0,0 +1,125 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.DocumentSignatureType;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+import org.pgpainless.encryption_signing.SigningOptions;
+import org.pgpainless.key.OpenPgpFingerprint;
+import org.pgpainless.key.TestKeys;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+
+public class CertificateSourceTest {
+
+    @Test
+    public void lookupBySubkeyIdAndFingerprint() throws IOException {
+        PGPPublicKeyRing julietCert = TestKeys.getJulietPublicKeyRing();
+        PGPPublicKeyRing romeoCert = TestKeys.getRomeoPublicKeyRing();
+        ConsumerOptions.CertificateSource source = new ConsumerOptions.CertificateSource();
+        source.addCertificate(julietCert);
+        source.addCertificate(romeoCert);
+
+        for (PGPPublicKey key : julietCert) {
+            assertSame(julietCert, source.getCertificate(key.getKeyID()));
+            assertSame(julietCert, source.getCertificate(OpenPgpFingerprint.of(key)));
+        }
+        for (PGPPublicKey key : romeoCert) {
+            assertSame(romeoCert, source.getCertificate(key.getKeyID()));
+            assertSame(romeoCert, source.getCertificate(OpenPgpFingerprint.of(key)));
+        }
+
+        assertNull(source.getCertificate(TestKeys.EMIL_KEY_ID));
+        assertNull(source.getCertificate(TestKeys.EMIL_FINGERPRINT));
+        assertEquals(2, source.getExplicitCertificates().size());
+    }
+
+    @Test
+    public void readOnlySourceCannotBeModified() throws IOException {
+        ConsumerOptions.CertificateSource source = ConsumerOptions.CertificateSource.readOnly(
+                Arrays.asList(TestKeys.getJulietPublicKeyRing(), TestKeys.getRomeoPublicKeyRing()));
+
+        assertTrue(source.isReadOnly());
+        PGPPublicKeyRing emilCert = TestKeys.getEmilPublicKeyRing();
+        assertThrows(IllegalStateException.class, () -> source.addCertificate(emilCert));
+        assertThrows(IllegalStateException.class, () ->
+                source.addCertificateSource(new ConsumerOptions.CertificateSource()));
+    }
+
+    @Test
+    public void sharedSourceIsConsultedByConsumerOptions() throws IOException {
+        PGPPublicKeyRing emilCert = TestKeys.getEmilPublicKeyRing();
+        ConsumerOptions.CertificateSource shared = ConsumerOptions.CertificateSource.readOnly(
+                Arrays.asList(TestKeys.getJulietPublicKeyRing(), TestKeys.getRomeoPublicKeyRing()));
+
+        ConsumerOptions first = ConsumerOptions.get()
+                .addVerificationCerts(shared);
+        ConsumerOptions second = ConsumerOptions.get()
+                .addVerificationCert(emilCert)
+                .addVerificationCerts(shared);
+
+        assertEquals(TestKeys.JULIET_FINGERPRINT, OpenPgpFingerprint.of(
+                first.getCertificateSource().getCertificate(TestKeys.JULIET_KEY_ID)));
+        assertNull(first.getCertificateSource().getCertificate(TestKeys.EMIL_KEY_ID));
+        assertSame(emilCert, second.getCertificateSource().getCertificate(TestKeys.EMIL_KEY_ID));
+        assertEquals(TestKeys.ROMEO_FINGERPRINT, OpenPgpFingerprint.of(
+                second.getCertificateSource().getCertificate(TestKeys.ROMEO_FINGERPRINT)));
+        assertEquals(3, second.getCertificateSource().getExplicitCertificates().size());
+    }
+
+    @Test
+    public void verifySignatureUsingSharedSource()
+            throws PGPException, IOException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice <alice@pgpainless.org>");
+        PGPPublicKeyRing certificate = PGPainless.extractCertificate(secretKeys);
+        byte[] data = "Hello, World!\n".getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream signedOut = new ByteArrayOutputStream();
+        EncryptionStream signingStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(signedOut)
+                .withOptions(ProducerOptions.sign(SigningOptions.get()
+                        .addInlineSignature(SecretKeyRingProtector.unprotectedKeys(), secretKeys,
+                                DocumentSignatureType.BINARY_DOCUMENT)));
+        signingStream.write(data);
+        signingStream.close();
+
+        ConsumerOptions.CertificateSource shared = ConsumerOptions.CertificateSource.readOnly(
+                Arrays.asList(TestKeys.getJulietPublicKeyRing(), certificate));
+
+        for (int i = 0; i < 2; i++) {
+            DecryptionStream verificationStream = PGPainless.decryptAndOrVerify()
+                    .onInputStream(new ByteArrayInputStream(signedOut.toByteArray()))
+                    .withOptions(ConsumerOptions.get().addVerificationCerts(shared));
+            ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+            Streams.pipeAll(verificationStream, plainOut);
+            verificationStream.close();
+
+            assertArrayEquals(data, plainOut.toByteArray());
+            assertTrue(verificationStream.getMetadata().isVerifiedSignedBy(certificate));
+        }
+    }
+}
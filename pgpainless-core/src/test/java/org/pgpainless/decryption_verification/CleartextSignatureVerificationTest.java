@@ -245,6 +245,38 @@ public class CleartextSignatureVerificationTest {
         decryptionStream.close();
     }
 
+    @Test
+    public void trailingWhitespaceIsNotSigned()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, IOException {
+        String message = "Trailing spaces  \n-Dash-escaped line with tab\t\r\nTrailing whitespace at the end \t";
+
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.sign(
+                        SigningOptions.get()
+                                .addDetachedSignature(SecretKeyRingProtector.unprotectedKeys(),
+                                        secretKeys, DocumentSignatureType.CANONICAL_TEXT_DOCUMENT)
+                ).setCleartextSigned());
+
+        // write in small pieces, so that whitespace spans multiple writes
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += 3) {
+            encryptionStream.write(bytes, i, Math.min(3, bytes.length - i));
+        }
+        encryptionStream.close();
+
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(out.toByteArray()))
+                .withOptions(new ConsumerOptions()
+                        .addVerificationCert(PGPainless.extractCertificate(secretKeys)));
+
+        Streams.drain(decryptionStream);
+        decryptionStream.close();
+        assertTrue(decryptionStream.getMetadata().isVerifiedSigned());
+    }
+
     @Test
     public void clearsignedMessageUtil_detachSignaturesFromInbandNonClearsignedMessageThrows() {
         // Message is inband signed, but does not use cleartext signature framework
@@ -0,0 +1,178 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.encryption_signing.EncryptionOptions;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+import org.pgpainless.exception.MissingDecryptionMethodException;
+import org.pgpainless.exception.WrongPassphraseException;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+import org.pgpainless.util.Passphrase;
+
+public class ConcurrentHiddenRecipientDecryptionTest {
+
+    private static final byte[] MESSAGE = "Hello, hidden World!\n".getBytes(StandardCharsets.UTF_8);
+    private static ExecutorService executor;
+
+    @BeforeAll
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void decryptMessageWithManyHiddenRecipients()
+            throws PGPException, IOException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        List<PGPSecretKeyRing> recipients = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            recipients.add(PGPainless.generateKeyRing().modernKeyRing("Recipient " + i));
+        }
+        List<PGPSecretKeyRing> unrelated = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            unrelated.add(PGPainless.generateKeyRing().modernKeyRing("Unrelated " + i));
+        }
+
+        EncryptionOptions encryptionOptions = EncryptionOptions.get();
+        for (PGPSecretKeyRing recipient : recipients) {
+            encryptionOptions.addHiddenRecipient(PGPainless.extractCertificate(recipient));
+        }
+        byte[] ciphertext = encrypt(encryptionOptions);
+
+        // Decrypt using only the last recipient's key among unrelated keys
+        ConsumerOptions consumerOptions = ConsumerOptions.get()
+                .setDecryptionTrialExecutor(executor)
+                .addDecryptionKey(recipients.get(3));
+        for (PGPSecretKeyRing key : unrelated) {
+            consumerOptions.addDecryptionKey(key);
+        }
+
+        MessageMetadata metadata = decrypt(ciphertext, consumerOptions);
+        assertEquals(recipients.get(3).getPublicKey().getKeyID(),
+                metadata.getDecryptionKey().getPrimaryKeyId());
+    }
+
+    @Test
+    public void decryptWithSaturatedOrBusyExecutor()
+            throws PGPException, IOException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing recipient = PGPainless.generateKeyRing().modernKeyRing("Recipient");
+        PGPSecretKeyRing unrelated = PGPainless.generateKeyRing().modernKeyRing("Unrelated");
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addHiddenRecipient(PGPainless.extractCertificate(recipient)));
+
+        Executor saturated = command -> {
+            throw new RejectedExecutionException();
+        };
+        // Accepts tasks, but never gets around to run them
+        Executor busy = command -> {
+        };
+        for (Executor trialExecutor : new Executor[] {saturated, busy}) {
+            ConsumerOptions consumerOptions = ConsumerOptions.get()
+                    .setDecryptionTrialExecutor(trialExecutor)
+                    .addDecryptionKey(unrelated)
+                    .addDecryptionKey(recipient);
+
+            MessageMetadata metadata = decrypt(ciphertext, consumerOptions);
+            assertEquals(recipient.getPublicKey().getKeyID(), metadata.getDecryptionKey().getPrimaryKeyId());
+        }
+    }
+
+    @Test
+    public void keysAreOnlyUnlockedWhenTried()
+            throws PGPException, IOException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing recipient = PGPainless.generateKeyRing().modernKeyRing("Recipient");
+        PGPSecretKeyRing locked = PGPainless.generateKeyRing().modernKeyRing("Locked", "sw0rdf1sh");
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addHiddenRecipient(PGPainless.extractCertificate(recipient)));
+
+        // The trials are run by the calling thread in reverse order, so the recipient key is tried first
+        // and the locked key with the wrong passphrase is never unlocked
+        Executor saturated = command -> {
+            throw new RejectedExecutionException();
+        };
+        ConsumerOptions consumerOptions = ConsumerOptions.get()
+                .setDecryptionTrialExecutor(saturated)
+                .addDecryptionKey(locked, SecretKeyRingProtector.unlockAnyKeyWith(Passphrase.fromPassword("wrong")))
+                .addDecryptionKey(recipient);
+        MessageMetadata metadata = decrypt(ciphertext, consumerOptions);
+        assertEquals(recipient.getPublicKey().getKeyID(), metadata.getDecryptionKey().getPrimaryKeyId());
+
+        // If no other key succeeds, the failure to unlock the key is reported
+        ConsumerOptions lockedOnly = ConsumerOptions.get()
+                .setDecryptionTrialExecutor(executor)
+                .addDecryptionKey(locked, SecretKeyRingProtector.unlockAnyKeyWith(Passphrase.fromPassword("wrong")))
+                .addDecryptionKey(PGPainless.generateKeyRing().modernKeyRing("Unrelated"));
+        assertThrows(WrongPassphraseException.class, () -> decrypt(ciphertext, lockedOnly));
+    }
+
+    @Test
+    public void noMatchingKeyFails()
+            throws PGPException, IOException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing recipient = PGPainless.generateKeyRing().modernKeyRing("Recipient");
+        PGPSecretKeyRing first = PGPainless.generateKeyRing().modernKeyRing("Unrelated 1");
+        PGPSecretKeyRing second = PGPainless.generateKeyRing().modernKeyRing("Unrelated 2");
+
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addHiddenRecipient(PGPainless.extractCertificate(recipient)));
+
+        ConsumerOptions consumerOptions = ConsumerOptions.get()
+                .setDecryptionTrialExecutor(executor)
+                .addDecryptionKey(first, SecretKeyRingProtector.unprotectedKeys())
+                .addDecryptionKey(second, SecretKeyRingProtector.unprotectedKeys());
+
+        assertThrows(MissingDecryptionMethodException.class, () -> decrypt(ciphertext, consumerOptions));
+    }
+
+    private static byte[] encrypt(EncryptionOptions encryptionOptions) throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.encrypt(encryptionOptions));
+        encryptionStream.write(MESSAGE);
+        encryptionStream.close();
+        return out.toByteArray();
+    }
+
+    private static MessageMetadata decrypt(byte[] ciphertext, ConsumerOptions consumerOptions)
+            throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(consumerOptions);
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+
+        assertArrayEquals(MESSAGE, plaintext.toByteArray());
+        return decryptionStream.getMetadata();
+    }
+}
@@ -0,0 +1,123 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.encryption_signing.EncryptionOptions;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+import org.pgpainless.exception.MissingDecryptionMethodException;
+import org.pgpainless.util.Passphrase;
+
+public class ConcurrentSKESKDecryptionTest {
+
+    private static final byte[] MESSAGE = "Hello, symmetric World!\n".getBytes(StandardCharsets.UTF_8);
+    private static ExecutorService executor;
+
+    @BeforeAll
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void decryptWithOneOfManyPassphrases() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addPassphrase(Passphrase.fromPassword("orange"))
+                .addPassphrase(Passphrase.fromPassword("banana"))
+                .addPassphrase(Passphrase.fromPassword("cherry")));
+
+        for (String candidate : new String[] {"orange", "banana", "cherry"}) {
+            ConsumerOptions consumerOptions = ConsumerOptions.get()
+                    .setDecryptionTrialExecutor(executor)
+                    .addDecryptionPassphrase(Passphrase.fromPassword("apple"))
+                    .addDecryptionPassphrase(Passphrase.fromPassword("lemon"))
+                    .addDecryptionPassphrase(Passphrase.fromPassword(candidate));
+
+            MessageMetadata metadata = decrypt(ciphertext, consumerOptions);
+            assertNotNull(metadata.getSessionKey());
+        }
+    }
+
+    @Test
+    public void decryptWithSaturatedOrSameThreadExecutor() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addPassphrase(Passphrase.fromPassword("orange"))
+                .addPassphrase(Passphrase.fromPassword("banana")));
+
+        Executor saturated = command -> {
+            throw new RejectedExecutionException();
+        };
+        Executor sameThread = Runnable::run;
+        for (Executor trialExecutor : new Executor[] {saturated, sameThread}) {
+            ConsumerOptions consumerOptions = ConsumerOptions.get()
+                    .setDecryptionTrialExecutor(trialExecutor)
+                    .addDecryptionPassphrase(Passphrase.fromPassword("apple"))
+                    .addDecryptionPassphrase(Passphrase.fromPassword("banana"));
+
+            MessageMetadata metadata = decrypt(ciphertext, consumerOptions);
+            assertNotNull(metadata.getSessionKey());
+        }
+    }
+
+    @Test
+    public void wrongPassphrasesFail() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addPassphrase(Passphrase.fromPassword("orange"))
+                .addPassphrase(Passphrase.fromPassword("banana")));
+
+        ConsumerOptions consumerOptions = ConsumerOptions.get()
+                .setDecryptionTrialExecutor(executor)
+                .addDecryptionPassphrase(Passphrase.fromPassword("apple"))
+                .addDecryptionPassphrase(Passphrase.fromPassword("lemon"));
+
+        assertThrows(MissingDecryptionMethodException.class, () -> decrypt(ciphertext, consumerOptions));
+    }
+
+    private static byte[] encrypt(EncryptionOptions encryptionOptions) throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.encrypt(encryptionOptions));
+        encryptionStream.write(MESSAGE);
+        encryptionStream.close();
+        return out.toByteArray();
+    }
+
+    private static MessageMetadata decrypt(byte[] ciphertext, ConsumerOptions consumerOptions)
+            throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(consumerOptions);
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+
+        assertArrayEquals(MESSAGE, plaintext.toByteArray());
+        return decryptionStream.getMetadata();
+    }
+}
@@ -0,0 +1,109 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.EncryptionPurpose;
+import org.pgpainless.encryption_signing.EncryptionOptions;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+import org.pgpainless.key.SubkeyIdentifier;
+import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+
+public class DecryptionKeyIndexTest {
+
+    private static final byte[] MESSAGE = "Hello, World!\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void indexContainsOnlyDecryptionSubkeys()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice <alice@pgpainless.org>");
+        KeyRingInfo info = PGPainless.inspectKeyRing(secretKeys);
+        PGPPublicKey encryptionKey = info.getEncryptionSubkeys(EncryptionPurpose.ANY).get(0);
+        PGPPublicKey signingKey = info.getSigningSubkeys().get(0);
+
+        DecryptionKeyIndex index = new DecryptionKeyIndex()
+                .addDecryptionKey(secretKeys, SecretKeyRingProtector.unprotectedKeys());
+
+        DecryptionKeyIndex.Entry entry = index.getDecryptionKey(encryptionKey.getKeyID());
+        assertNotNull(entry);
+        assertSame(secretKeys, entry.getSecretKeyRing());
+        assertEquals(new SubkeyIdentifier(secretKeys, encryptionKey.getKeyID()), entry.getSubkeyIdentifier());
+        assertNull(index.getDecryptionKey(signingKey.getKeyID()));
+        assertNull(index.getDecryptionKey(secretKeys.getPublicKey().getKeyID()));
+
+        assertEquals(1, index.getDecryptionKeys(encryptionKey.getAlgorithm()).size());
+        assertTrue(index.getDecryptionKeys(signingKey.getAlgorithm()).isEmpty());
+
+        index.removeDecryptionKey(secretKeys);
+        assertNull(index.getDecryptionKey(encryptionKey.getKeyID()));
+    }
+
+    @Test
+    public void decryptUsingIndex()
+            throws PGPException, IOException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing alice = PGPainless.generateKeyRing().modernKeyRing("Alice <alice@pgpainless.org>");
+        PGPSecretKeyRing bob = PGPainless.generateKeyRing().modernKeyRing("Bob <bob@pgpainless.org>");
+        PGPPublicKeyRing bobCert = PGPainless.extractCertificate(bob);
+
+        DecryptionKeyIndex index = new DecryptionKeyIndex()
+                .addDecryptionKey(alice, SecretKeyRingProtector.unprotectedKeys())
+                .addDecryptionKey(bob, SecretKeyRingProtector.unprotectedKeys());
+
+        byte[] ciphertext = encrypt(EncryptionOptions.encryptCommunications().addRecipient(bobCert));
+        MessageMetadata metadata = decrypt(ciphertext, index);
+        assertEquals(new SubkeyIdentifier(bob, metadata.getDecryptionKey().getSubkeyId()),
+                metadata.getDecryptionKey());
+
+        byte[] hiddenCiphertext = encrypt(EncryptionOptions.encryptCommunications().addHiddenRecipient(bobCert));
+        MessageMetadata hiddenMetadata = decrypt(hiddenCiphertext, index);
+        assertEquals(new SubkeyIdentifier(bob, hiddenMetadata.getDecryptionKey().getSubkeyId()),
+                hiddenMetadata.getDecryptionKey());
+    }
+
+    private static byte[] encrypt(EncryptionOptions encryptionOptions) throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.encrypt(encryptionOptions));
+        encryptionStream.write(MESSAGE);
+        encryptionStream.close();
+        return out.toByteArray();
+    }
+
+    private static MessageMetadata decrypt(byte[] ciphertext, DecryptionKeyIndex index)
+            throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(ConsumerOptions.get().setDecryptionKeyIndex(index));
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+
+        assertArrayEquals(MESSAGE, plaintext.toByteArray());
+        return decryptionStream.getMetadata();
+    }
+}
@@ -0,0 +1,125 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+import org.pgpainless.algorithm.DocumentSignatureType;
+import org.pgpainless.encryption_signing.EncryptionOptions;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+import org.pgpainless.encryption_signing.SigningOptions;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+
+public class PipelinedDecryptionTest {
+
+    private static ExecutorService executor;
+    private static PGPSecretKeyRing key;
+    private static PGPPublicKeyRing cert;
+    private static byte[] plaintext;
+    private static byte[] ciphertext;
+
+    @BeforeAll
+    public static void setup()
+            throws PGPException, IOException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        executor = Executors.newFixedThreadPool(2);
+        key = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        cert = PGPainless.extractCertificate(key);
+
+        // Compressible, but not trivially
+        plaintext = new byte[3 * 1024 * 1024];
+        Random random = new Random(42);
+        for (int i = 0; i < plaintext.length; i++) {
+            plaintext[i] = (byte) ('a' + random.nextInt(8));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.signAndEncrypt(
+                                EncryptionOptions.get().addRecipient(cert),
+                                SigningOptions.get().addInlineSignature(
+                                        SecretKeyRingProtector.unprotectedKeys(), key, DocumentSignatureType.BINARY_DOCUMENT))
+                        .overrideCompressionAlgorithm(CompressionAlgorithm.ZIP)
+                        .setAsciiArmor(false));
+        encryptionStream.write(plaintext);
+        encryptionStream.close();
+        ciphertext = out.toByteArray();
+    }
+
+    @AfterAll
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static ConsumerOptions options(boolean pipelined) {
+        return ConsumerOptions.get()
+                .setPipelineExecutor(pipelined ? executor : null)
+                .addDecryptionKey(key)
+                .addVerificationCert(cert);
+    }
+
+    @Test
+    public void decryptAndVerifyPipelined() throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(options(true));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, out);
+        decryptionStream.close();
+
+        assertArrayEquals(plaintext, out.toByteArray());
+        MessageMetadata metadata = decryptionStream.getMetadata();
+        assertEquals(CompressionAlgorithm.ZIP, metadata.getCompressionAlgorithm());
+        assertTrue(metadata.isVerifiedSignedBy(cert));
+    }
+
+    @Test
+    public void tamperedCiphertextFailsLikeNonPipelined() throws PGPException, IOException {
+        byte[] tampered = ciphertext.clone();
+        tampered[tampered.length / 2] ^= 0x01;
+
+        Throwable expected = decryptExpectingFailure(tampered, false);
+        Throwable actual = decryptExpectingFailure(tampered, true);
+        assertNotNull(expected);
+        assertNotNull(actual);
+        assertEquals(expected.getClass(), actual.getClass());
+    }
+
+    private static Throwable decryptExpectingFailure(byte[] message, boolean pipelined)
+            throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(message))
+                .withOptions(options(pipelined));
+        try {
+            Streams.drain(decryptionStream);
+            decryptionStream.close();
+        } catch (IOException | RuntimeException e) {
+            return e;
+        }
+        return null;
+    }
+}
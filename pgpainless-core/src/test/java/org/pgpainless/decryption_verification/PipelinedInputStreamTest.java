@@ -0,0 +1,185 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.util.BufferPool;
+
+public class PipelinedInputStreamTest {
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterAll
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void readsAllDataInOrder() throws IOException {
+        byte[] data = randomBytes(100_000);
+        PipelinedInputStream pipelined = new PipelinedInputStream(
+                new ByteArrayInputStream(data), executor, 1000, 3, BufferPool.unpooled());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // mix of single byte and bulk reads
+        out.write(pipelined.read());
+        byte[] buf = new byte[777];
+        int r;
+        while ((r = pipelined.read(buf, 0, buf.length)) != -1) {
+            out.write(buf, 0, r);
+        }
+        assertEquals(-1, pipelined.read());
+        pipelined.close();
+
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void exceptionIsThrownAfterPrecedingData() throws IOException {
+        byte[] data = randomBytes(5000);
+        InputStream failing = new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int r = super.read(b, off, len);
+                if (r == -1) {
+                    throw new IOException("Broken");
+                }
+                return r;
+            }
+        };
+        PipelinedInputStream pipelined = new PipelinedInputStream(failing, executor, 1024, 2, BufferPool.unpooled());
+
+        byte[] read = new byte[data.length];
+        int off = 0;
+        while (off < read.length) {
+            off += pipelined.read(read, off, read.length - off);
+        }
+        assertArrayEquals(data, read);
+        IOException e = assertThrows(IOException.class, () -> pipelined.read(new byte[10], 0, 10));
+        assertEquals("Broken", e.getMessage());
+        pipelined.close();
+    }
+
+    @Test
+    public void closeBeforeEndOfStreamStopsWorkerAndClosesSource() throws IOException {
+        AtomicInteger readChunks = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                readChunks.incrementAndGet();
+                return len;
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        PipelinedInputStream pipelined = new PipelinedInputStream(endless, executor, 16, 4, BufferPool.unpooled());
+        assertEquals(0, pipelined.read());
+        pipelined.close();
+        int chunksAfterClose = readChunks.get();
+
+        assertTrue(closed.get());
+        // Backpressure: the worker reads at most one chunk more than fits into the ring
+        assertTrue(chunksAfterClose <= 5, "read " + chunksAfterClose + " chunks");
+        assertThrows(IOException.class, pipelined::read);
+    }
+
+    @Test
+    public void stalledWorkerReleasesExecutorThread() throws Exception {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            byte[] data = randomBytes(10_000);
+            PipelinedInputStream pipelined = new PipelinedInputStream(
+                    new ByteArrayInputStream(data), singleThread, 100, 2, BufferPool.unpooled(), 100);
+            assertEquals(data[0] & 0xff, pipelined.read());
+
+            // The worker fills the ring and gives up waiting for the consumer, which frees the only thread
+            Future<?> next = singleThread.submit(() -> { });
+            next.get(10, TimeUnit.SECONDS);
+
+            // The consumer continues reading the remaining data from the source
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(data[0]);
+            Streams.pipeAll(pipelined, out);
+            pipelined.close();
+            assertArrayEquals(data, out.toByteArray());
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void nestedPipelinesOnSingleThreadDoNotDeadlock() throws IOException {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            byte[] data = randomBytes(50_000);
+            InputStream inner = new PipelinedInputStream(
+                    new ByteArrayInputStream(data), singleThread, 512, 2, BufferPool.unpooled());
+            InputStream outer = new PipelinedInputStream(inner, singleThread, 512, 2, BufferPool.unpooled());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Streams.pipeAll(outer, out);
+            outer.close();
+
+            assertArrayEquals(data, out.toByteArray());
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void directExecutorFallsBackToReadingSource() throws IOException {
+        byte[] data = randomBytes(10_000);
+        PipelinedInputStream pipelined = new PipelinedInputStream(
+                new ByteArrayInputStream(data), Runnable::run, 100, 2, BufferPool.unpooled());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Streams.pipeAll(pipelined, out);
+        pipelined.close();
+
+        assertArrayEquals(data, out.toByteArray());
+    }
+}
@@ -0,0 +1,251 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.DocumentSignatureType;
+import org.pgpainless.encryption_signing.EncryptionOptions;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+import org.pgpainless.encryption_signing.SigningOptions;
+import org.pgpainless.exception.MissingDecryptionMethodException;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+
+public class PushDecryptorTest {
+
+    private static ExecutorService executor;
+    private static PGPSecretKeyRing key;
+    private static PGPPublicKeyRing cert;
+
+    @BeforeAll
+    public static void setup() throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        executor = Executors.newFixedThreadPool(2);
+        key = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        cert = PGPainless.extractCertificate(key);
+    }
+
+    @AfterAll
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] encryptAndSign(byte[] plaintext) throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.signAndEncrypt(
+                        EncryptionOptions.get().addRecipient(cert),
+                        SigningOptions.get().addInlineSignature(
+                                SecretKeyRingProtector.unprotectedKeys(), key, DocumentSignatureType.BINARY_DOCUMENT)));
+        encryptionStream.write(plaintext);
+        encryptionStream.close();
+        return out.toByteArray();
+    }
+
+    private static class CollectingCallback implements PushDecryptor.Callback {
+
+        private final ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        private final CountDownLatch firstPlaintext = new CountDownLatch(1);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private MessageMetadata metadata;
+        private Exception error;
+
+        @Override
+        public void onPlaintext(@Nonnull ByteBuffer chunk) {
+            while (chunk.hasRemaining()) {
+                plaintext.write(chunk.get());
+            }
+            firstPlaintext.countDown();
+        }
+
+        @Override
+        public void onComplete(@Nonnull MessageMetadata metadata) {
+            this.metadata = metadata;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(@Nonnull Exception e) {
+            this.error = e;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void decryptFedChunks() throws PGPException, IOException, InterruptedException {
+        byte[] plaintext = "Hello, pushed World!\n".getBytes(StandardCharsets.UTF_8);
+        byte[] ciphertext = encryptAndSign(plaintext);
+
+        CollectingCallback callback = new CollectingCallback();
+        PushDecryptor decryptor = PGPainless.decryptAndOrVerify()
+                .onPushedData(callback)
+                .withOptions(ConsumerOptions.get().addDecryptionKey(key).addVerificationCert(cert), executor);
+        for (int off = 0; off < ciphertext.length; off += 7) {
+            decryptor.feed(ciphertext, off, Math.min(7, ciphertext.length - off));
+        }
+        // Small messages are not processed before they are complete
+        assertEquals(ciphertext.length, decryptor.getBufferedBytes());
+        decryptor.finish();
+        callback.await();
+
+        assertNull(callback.error);
+        assertArrayEquals(plaintext, callback.plaintext.toByteArray());
+        assertTrue(callback.metadata.isVerifiedSignedBy(cert));
+        assertEquals(0, decryptor.getBufferedBytes());
+    }
+
+    @Test
+    public void largeMessageIsProcessedWhileArriving() throws PGPException, IOException, InterruptedException {
+        // Random data, so that compression does not shrink the message below the streaming threshold
+        byte[] plaintext = new byte[512 * 1024];
+        new Random(42).nextBytes(plaintext);
+        byte[] ciphertext = encryptAndSign(plaintext);
+
+        CollectingCallback callback = new CollectingCallback();
+        PushDecryptor decryptor = PushDecryptor.create(
+                ConsumerOptions.get().addDecryptionKey(key).addVerificationCert(cert), executor, callback)
+                .setStreamingThreshold(64 * 1024);
+
+        int half = ciphertext.length / 2;
+        decryptor.feed(ByteBuffer.wrap(ciphertext, 0, half));
+        assertTrue(callback.firstPlaintext.await(30, TimeUnit.SECONDS));
+        decryptor.feed(ByteBuffer.wrap(ciphertext, half, ciphertext.length - half));
+        decryptor.finish();
+        callback.await();
+
+        assertNull(callback.error);
+        assertArrayEquals(plaintext, callback.plaintext.toByteArray());
+        assertTrue(callback.metadata.isVerifiedSignedBy(cert));
+    }
+
+    @Test
+    public void decryptOnSameThreadExecutor() throws PGPException, IOException, InterruptedException {
+        // Random data, so that compression does not shrink the message
+        byte[] plaintext = new byte[256 * 1024];
+        new Random(42).nextBytes(plaintext);
+        byte[] ciphertext = encryptAndSign(plaintext);
+
+        CollectingCallback callback = new CollectingCallback();
+        PushDecryptor decryptor = PushDecryptor.create(
+                ConsumerOptions.get().addDecryptionKey(key).addVerificationCert(cert), Runnable::run, callback);
+        int half = ciphertext.length / 2;
+        decryptor.feed(ByteBuffer.wrap(ciphertext, 0, half));
+        decryptor.feed(ByteBuffer.wrap(ciphertext, half, ciphertext.length - half));
+        // Processing does not start before the message is complete, so it never waits for data
+        assertEquals(ciphertext.length, decryptor.getBufferedBytes());
+        decryptor.finish();
+        callback.await();
+
+        assertNull(callback.error);
+        assertArrayEquals(plaintext, callback.plaintext.toByteArray());
+        assertTrue(callback.metadata.isVerifiedSignedBy(cert));
+    }
+
+    @Test
+    public void streamingOnSameThreadExecutorIsReportedAsError() throws PGPException, IOException, InterruptedException {
+        byte[] ciphertext = encryptAndSign("Hello, World!\n".getBytes(StandardCharsets.UTF_8));
+        CollectingCallback callback = new CollectingCallback();
+        PushDecryptor decryptor = PushDecryptor.create(
+                ConsumerOptions.get().addDecryptionKey(key), Runnable::run, callback)
+                .setStreamingThreshold(16);
+        decryptor.feed(ByteBuffer.wrap(ciphertext));
+        callback.await();
+
+        assertTrue(callback.error instanceof IllegalStateException);
+        assertEquals(0, decryptor.getBufferedBytes());
+    }
+
+    @Test
+    public void rejectedProcessingIsReportedAsError() throws PGPException, IOException, InterruptedException {
+        byte[] ciphertext = encryptAndSign("Hello, World!\n".getBytes(StandardCharsets.UTF_8));
+        CollectingCallback callback = new CollectingCallback();
+        Executor saturated = command -> {
+            throw new RejectedExecutionException();
+        };
+        PushDecryptor decryptor = PushDecryptor.create(ConsumerOptions.get().addDecryptionKey(key), saturated, callback);
+        decryptor.feed(ByteBuffer.wrap(ciphertext));
+        decryptor.finish();
+        callback.await();
+
+        assertTrue(callback.error instanceof RejectedExecutionException);
+        assertNull(callback.metadata);
+    }
+
+    @Test
+    public void exceedingBufferLimitIsReportedAsError() throws PGPException, IOException, InterruptedException {
+        byte[] ciphertext = encryptAndSign(new byte[4096]);
+        CollectingCallback callback = new CollectingCallback();
+        PushDecryptor decryptor = PushDecryptor.create(ConsumerOptions.get().addDecryptionKey(key), executor, callback)
+                .setMaxBufferedBytes(ciphertext.length - 1);
+        decryptor.feed(ciphertext, 0, ciphertext.length - 1);
+        assertEquals(ciphertext.length - 1, decryptor.getBufferedBytes());
+        decryptor.feed(ciphertext, ciphertext.length - 1, 1);
+        callback.await();
+
+        assertTrue(callback.error instanceof IOException);
+        assertEquals(0, decryptor.getBufferedBytes());
+        // Further data is ignored
+        decryptor.feed(ciphertext, 0, 1);
+        decryptor.finish();
+        assertEquals(0, decryptor.getBufferedBytes());
+    }
+
+    @Test
+    public void missingDecryptionKeyIsReportedAsError() throws PGPException, IOException, InterruptedException {
+        byte[] ciphertext = encryptAndSign("Hello, World!\n".getBytes(StandardCharsets.UTF_8));
+        CollectingCallback callback = new CollectingCallback();
+        PushDecryptor decryptor = PushDecryptor.create(ConsumerOptions.get(), executor, callback);
+        decryptor.feed(ByteBuffer.wrap(ciphertext));
+        decryptor.finish();
+        callback.await();
+
+        assertTrue(callback.error instanceof MissingDecryptionMethodException);
+        assertNull(callback.metadata);
+    }
+
+    @Test
+    public void cancelledDecryptorDoesNotInvokeCallbacks() throws PGPException, IOException, InterruptedException {
+        byte[] ciphertext = encryptAndSign("Cancelled".getBytes(StandardCharsets.UTF_8));
+        CollectingCallback callback = new CollectingCallback();
+        PushDecryptor decryptor = PushDecryptor.create(
+                ConsumerOptions.get().addDecryptionKey(key), executor, callback);
+        decryptor.feed(ByteBuffer.wrap(ciphertext));
+        decryptor.cancel();
+        decryptor.finish();
+
+        assertTrue(!callback.done.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, decryptor.getBufferedBytes());
+    }
+}
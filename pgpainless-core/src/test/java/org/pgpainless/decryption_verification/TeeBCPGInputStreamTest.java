@@ -0,0 +1,86 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.decryption_verification;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.annotation.Nonnull;
+
+import org.junit.jupiter.api.Test;
+
+public class TeeBCPGInputStreamTest {
+
+    private static final byte[] DATA = new byte[] {1, 2, 3, 4, 5, 6, 7, 8};
+
+    @Test
+    public void bulkReadIsTeedOutAsWhole() throws IOException {
+        CountingOutputStream tee = new CountingOutputStream();
+        TeeBCPGInputStream.DelayedTeeInputStream in =
+                new TeeBCPGInputStream.DelayedTeeInputStream(new ByteArrayInputStream(DATA), tee);
+
+        byte[] buf = new byte[5];
+        assertEquals(5, in.read(buf, 0, buf.length));
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, tee.toByteArray());
+        assertEquals(1, tee.writeCalls);
+        assertEquals(0, tee.singleByteWriteCalls);
+    }
+
+    @Test
+    public void singleByteReadIsDelayed() throws IOException {
+        CountingOutputStream tee = new CountingOutputStream();
+        TeeBCPGInputStream.DelayedTeeInputStream in =
+                new TeeBCPGInputStream.DelayedTeeInputStream(new ByteArrayInputStream(DATA), tee);
+
+        assertEquals(1, in.read());
+        assertEquals(0, tee.size());
+
+        // the held back byte is flushed before the bulk range
+        byte[] buf = new byte[3];
+        assertEquals(3, in.read(buf, 0, buf.length));
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, tee.toByteArray());
+
+        assertEquals(5, in.read());
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, tee.toByteArray());
+        in.squeeze();
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, tee.toByteArray());
+    }
+
+    @Test
+    public void allBytesAreTeedOutWhenReadingMixed() throws IOException {
+        ByteArrayOutputStream tee = new ByteArrayOutputStream();
+        TeeBCPGInputStream.DelayedTeeInputStream in =
+                new TeeBCPGInputStream.DelayedTeeInputStream(new ByteArrayInputStream(DATA), tee);
+
+        byte[] buf = new byte[3];
+        in.read();
+        in.read(buf, 0, buf.length);
+        in.read();
+        in.read(buf, 0, buf.length);
+        assertEquals(-1, in.read());
+
+        assertArrayEquals(DATA, tee.toByteArray());
+    }
+
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+        private int writeCalls = 0;
+        private int singleByteWriteCalls = 0;
+
+        @Override
+        public synchronized void write(int b) {
+            singleByteWriteCalls++;
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(@Nonnull byte[] b, int off, int len) {
+            writeCalls++;
+            super.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bouncycastle.bcpg.SymmetricEncIntegrityPacket;
+import org.bouncycastle.openpgp.PGPEncryptedDataGenerator;
+import org.bouncycastle.openpgp.PGPEncryptedDataList;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPLiteralData;
+import org.bouncycastle.openpgp.PGPLiteralDataGenerator;
+import org.bouncycastle.openpgp.PGPPBEEncryptedData;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.bc.BcPGPObjectFactory;
+import org.bouncycastle.openpgp.operator.bc.BcPBEDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDataEncryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+import org.bouncycastle.openpgp.operator.bc.BcPublicKeyKeyEncryptionMethodGenerator;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.AEADAlgorithm;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+import org.pgpainless.algorithm.EncryptionPurpose;
+import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.decryption_verification.MessageMetadata;
+import org.pgpainless.exception.ModificationDetectionException;
+import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.util.Passphrase;
+
+public class AEADEncryptionTest {
+
+    private static final byte[] PLAINTEXT = new byte[100 * 1024 + 17];
+
+    private static PGPSecretKeyRing key;
+    private static ExecutorService executor;
+
+    @BeforeAll
+    public static void setup()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        new Random(42).nextBytes(PLAINTEXT);
+        key = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    public static void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void encryptAndDecryptWithAllAEADAlgorithms() throws PGPException, IOException {
+        for (AEADAlgorithm aeadAlgorithm : AEADAlgorithm.values()) {
+            byte[] ciphertext = encrypt(EncryptionOptions.get()
+                    .addRecipient(PGPainless.extractCertificate(key))
+                    .addPassphrase(Passphrase.fromPassword("sw0rdf1sh"))
+                    .setAEADAlgorithm(aeadAlgorithm)
+                    .setAEADChunkSize(4)
+                    .setChunkEncryptionExecutor(executor));
+
+            PGPEncryptedDataList encryptedDataList = new PGPEncryptedDataList(new ByteArrayInputStream(ciphertext));
+            assertEquals(SymmetricEncIntegrityPacket.VERSION_2,
+                    encryptedDataList.extractSessionKeyEncryptedData().getVersion());
+
+            MessageMetadata metadata = decrypt(ciphertext, ConsumerOptions.get()
+                    .addDecryptionKey(key)
+                    .setChunkDecryptionExecutor(executor));
+            assertEquals(SymmetricKeyAlgorithm.AES_256, metadata.getEncryptionAlgorithm());
+            decrypt(ciphertext, ConsumerOptions.get()
+                    .addDecryptionPassphrase(Passphrase.fromPassword("sw0rdf1sh")));
+            decrypt(ciphertext, ConsumerOptions.get()
+                    .setSessionKey(metadata.getSessionKey()));
+        }
+    }
+
+    @Test
+    public void encryptAndDecryptWithPassphraseOnly() throws PGPException, IOException {
+        // The message starts with a version 6 SKESK
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addPassphrase(Passphrase.fromPassword("sw0rdf1sh"))
+                .setAEADAlgorithm(AEADAlgorithm.OCB));
+
+        MessageMetadata metadata = decrypt(ciphertext, ConsumerOptions.get()
+                .addDecryptionPassphrase(Passphrase.fromPassword("sw0rdf1sh")));
+        assertTrue(metadata.isEncrypted());
+
+        // The message starts with the version 2 SEIPD packet
+        // Skip the SKESK, which is written with a one-octet length
+        assertTrue((ciphertext[1] & 0xff) < 192);
+        byte[] encryptedData = Arrays.copyOfRange(ciphertext, 2 + ciphertext[1], ciphertext.length);
+        assertTrue(decrypt(encryptedData, ConsumerOptions.get().setSessionKey(metadata.getSessionKey())).isEncrypted());
+    }
+
+    @Test
+    public void chunksAreProcessedByCallerIfExecutorDoesNotRunTasks() throws PGPException, IOException {
+        List<Runnable> neverRun = new ArrayList<>();
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addRecipient(PGPainless.extractCertificate(key))
+                .setAEADAlgorithm(AEADAlgorithm.OCB)
+                .setAEADChunkSize(6)
+                .setChunkEncryptionExecutor(neverRun::add));
+        // 100 KiB in chunks of 4 KiB
+        assertEquals(26, neverRun.size());
+
+        neverRun.clear();
+        decrypt(ciphertext, ConsumerOptions.get()
+                .addDecryptionKey(key)
+                .setChunkDecryptionExecutor(neverRun::add));
+        assertEquals(26, neverRun.size());
+    }
+
+    @Test
+    public void decryptMessageEncryptedByBouncyCastle() throws PGPException, IOException {
+        KeyRingInfo info = PGPainless.inspectKeyRing(key);
+        PGPPublicKey encryptionKey = info.getEncryptionSubkeys(EncryptionPurpose.ANY).get(0);
+
+        for (AEADAlgorithm aeadAlgorithm : AEADAlgorithm.values()) {
+            BcPGPDataEncryptorBuilder dataEncryptorBuilder = new BcPGPDataEncryptorBuilder(
+                    SymmetricKeyAlgorithm.AES_128.getAlgorithmId());
+            dataEncryptorBuilder.setWithAEAD(aeadAlgorithm.getAlgorithmId(), 6);
+            dataEncryptorBuilder.setUseV6AEAD();
+            PGPEncryptedDataGenerator encryptedDataGenerator = new PGPEncryptedDataGenerator(dataEncryptorBuilder);
+            encryptedDataGenerator.addMethod(new BcPublicKeyKeyEncryptionMethodGenerator(encryptionKey));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            OutputStream encrypted = encryptedDataGenerator.open(out, new byte[1 << 9]);
+            PGPLiteralDataGenerator literalDataGenerator = new PGPLiteralDataGenerator();
+            OutputStream literalData = literalDataGenerator.open(
+                    encrypted, PGPLiteralData.BINARY, "", new Date(), new byte[1 << 9]);
+            literalData.write(PLAINTEXT);
+            literalData.close();
+            encrypted.close();
+
+            MessageMetadata metadata = decrypt(out.toByteArray(), ConsumerOptions.get()
+                    .addDecryptionKey(key)
+                    .setChunkDecryptionExecutor(executor));
+            assertEquals(SymmetricKeyAlgorithm.AES_128, metadata.getEncryptionAlgorithm());
+        }
+    }
+
+    @Test
+    public void bouncyCastleDecryptsMessage() throws PGPException, IOException {
+        for (AEADAlgorithm aeadAlgorithm : AEADAlgorithm.values()) {
+            byte[] ciphertext = encrypt(EncryptionOptions.get()
+                    .addPassphrase(Passphrase.fromPassword("sw0rdf1sh"))
+                    .setAEADAlgorithm(aeadAlgorithm)
+                    .setAEADChunkSize(6)
+                    .setChunkEncryptionExecutor(executor));
+
+            PGPEncryptedDataList encryptedDataList = new PGPEncryptedDataList(new ByteArrayInputStream(ciphertext));
+            PGPPBEEncryptedData encryptedData = (PGPPBEEncryptedData) encryptedDataList.get(0);
+            InputStream decrypted = encryptedData.getDataStream(new BcPBEDataDecryptorFactory(
+                    "sw0rdf1sh".toCharArray(), new BcPGPDigestCalculatorProvider()));
+            PGPLiteralData literalData = (PGPLiteralData) new BcPGPObjectFactory(decrypted).nextObject();
+            assertArrayEquals(PLAINTEXT, Streams.readAll(literalData.getDataStream()));
+        }
+    }
+
+    @Test
+    public void modifiedChunkIsNotReleased() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addRecipient(PGPainless.extractCertificate(key))
+                .setAEADAlgorithm(AEADAlgorithm.GCM)
+                .setAEADChunkSize(8));
+        // Flip a bit in the middle of the message (chunks of 16 KiB)
+        ciphertext[ciphertext.length / 2] ^= 0x01;
+
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(ConsumerOptions.get()
+                        .addDecryptionKey(key)
+                        .setChunkDecryptionExecutor(executor));
+        ByteArrayOutputStream released = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        assertThrows(IOException.class, () -> {
+            int read;
+            while ((read = decryptionStream.read(buffer)) != -1) {
+                released.write(buffer, 0, read);
+            }
+        });
+
+        // Only the verified chunks in front of the modified one were released
+        byte[] releasedBytes = released.toByteArray();
+        assertTrue(releasedBytes.length < PLAINTEXT.length / 2);
+        for (int i = 0; i < releasedBytes.length; i++) {
+            assertEquals(PLAINTEXT[i], releasedBytes[i]);
+        }
+    }
+
+    @Test
+    public void modifiedFinalTagIsDetectedOnClose() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addRecipient(PGPainless.extractCertificate(key))
+                .setAEADAlgorithm(AEADAlgorithm.OCB));
+        // The final authentication tag follows the last chunk
+        ciphertext[ciphertext.length - 1] ^= 0x01;
+
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(ConsumerOptions.get().addDecryptionKey(key));
+        // The literal data ends before the final authentication tag is read
+        assertThrows(ModificationDetectionException.class, () -> {
+            Streams.drain(decryptionStream);
+            decryptionStream.close();
+        });
+    }
+
+    @Test
+    public void invalidChunkSizeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> EncryptionOptions.get().setAEADChunkSize(17));
+        assertThrows(IllegalArgumentException.class, () -> EncryptionOptions.get().setAEADChunkSize(-1));
+    }
+
+    private static byte[] encrypt(EncryptionOptions encryptionOptions) throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.encrypt(encryptionOptions)
+                        .overrideCompressionAlgorithm(CompressionAlgorithm.UNCOMPRESSED)
+                        .setAsciiArmor(false));
+        encryptionStream.write(PLAINTEXT);
+        encryptionStream.close();
+        return out.toByteArray();
+    }
+
+    private static MessageMetadata decrypt(byte[] ciphertext, ConsumerOptions options)
+            throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(options);
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertArrayEquals(PLAINTEXT, plaintext.toByteArray());
+        return decryptionStream.getMetadata();
+    }
+}
@@ -0,0 +1,174 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+import org.pgpainless.algorithm.DocumentSignatureType;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.decryption_verification.MessageMetadata;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+
+public class AdaptiveCompressionTest {
+
+    private static PGPSecretKeyRing key;
+    private static PGPPublicKeyRing cert;
+    private static byte[] randomData;
+    private static byte[] textData;
+
+    @BeforeAll
+    public static void setup()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        key = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        cert = PGPainless.extractCertificate(key);
+
+        randomData = new byte[100 * 1024];
+        new Random(42).nextBytes(randomData);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 100 * 1024; i++) {
+            text.append("Line ").append(i).append(": The quick brown fox jumps over the lazy dog.\n");
+        }
+        textData = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void incompressibleDataIsNotCompressed() throws PGPException, IOException {
+        EncryptionResult result = roundTrip(randomData, adaptiveOptions(), null);
+        assertTrue(result.isCompressionSkipped());
+        assertEquals(CompressionAlgorithm.UNCOMPRESSED, result.getCompressionAlgorithm());
+    }
+
+    @Test
+    public void compressibleDataIsCompressed() throws PGPException, IOException {
+        EncryptionResult result = roundTrip(textData, adaptiveOptions(), CompressionAlgorithm.ZLIB);
+        assertFalse(result.isCompressionSkipped());
+        assertEquals(CompressionAlgorithm.ZLIB, result.getCompressionAlgorithm());
+    }
+
+    @Test
+    public void messageShorterThanSampleIsDecidedOnClose() throws PGPException, IOException {
+        byte[] shortText = new byte[1000];
+        System.arraycopy(textData, 0, shortText, 0, shortText.length);
+        EncryptionResult result = roundTrip(shortText, adaptiveOptions(), CompressionAlgorithm.ZLIB);
+        assertFalse(result.isCompressionSkipped());
+
+        byte[] shortRandom = new byte[1000];
+        System.arraycopy(randomData, 0, shortRandom, 0, shortRandom.length);
+        result = roundTrip(shortRandom, adaptiveOptions(), null);
+        assertTrue(result.isCompressionSkipped());
+    }
+
+    @Test
+    public void flushDoesNotDecideOnPartialSample() throws PGPException, IOException {
+        // Starts with incompressible data, but the whole sample is compressible
+        byte[] data = new byte[20 * 1024];
+        System.arraycopy(randomData, 0, data, 0, 1000);
+        System.arraycopy(textData, 0, data, 1000, data.length - 1000);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(adaptiveOptions());
+        encryptionStream.write(data, 0, 1000);
+        encryptionStream.flush();
+        encryptionStream.write(data, 1000, data.length - 1000);
+        encryptionStream.close();
+
+        EncryptionResult result = encryptionStream.getResult();
+        assertFalse(result.isCompressionSkipped());
+        assertEquals(CompressionAlgorithm.ZLIB, result.getCompressionAlgorithm());
+    }
+
+    @Test
+    public void emptyMessageKeepsNegotiatedAlgorithm() throws PGPException, IOException {
+        EncryptionResult result = roundTrip(new byte[0], adaptiveOptions(), CompressionAlgorithm.ZLIB);
+        assertFalse(result.isCompressionSkipped());
+        assertEquals(CompressionAlgorithm.ZLIB, result.getCompressionAlgorithm());
+    }
+
+    @Test
+    public void disabledByDefault() throws PGPException, IOException {
+        ProducerOptions options = ProducerOptions.encrypt(EncryptionOptions.get().addRecipient(cert))
+                .overrideCompressionAlgorithm(CompressionAlgorithm.ZLIB);
+        EncryptionResult result = roundTrip(randomData, options, CompressionAlgorithm.ZLIB);
+        assertFalse(result.isCompressionSkipped());
+    }
+
+    @Test
+    public void invalidSampleSizeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ProducerOptions.noEncryptionNoSigning()
+                .setAdaptiveCompressionSampleSize(0));
+    }
+
+    private static ProducerOptions adaptiveOptions() throws PGPException {
+        return ProducerOptions.signAndEncrypt(
+                EncryptionOptions.get().addRecipient(cert),
+                SigningOptions.get().addInlineSignature(SecretKeyRingProtector.unprotectedKeys(), key,
+                        DocumentSignatureType.BINARY_DOCUMENT))
+                .overrideCompressionAlgorithm(CompressionAlgorithm.ZLIB)
+                .setAdaptiveCompression(true)
+                .setAdaptiveCompressionSampleSize(8 * 1024);
+    }
+
+    private static EncryptionResult roundTrip(byte[] data, ProducerOptions options,
+                                              CompressionAlgorithm expectedCompression)
+            throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(options);
+        // Write in uneven pieces, so that the sample boundary falls in the middle of a write
+        int written = 0;
+        while (written < data.length) {
+            int len = Math.min(3001, data.length - written);
+            encryptionStream.write(data, written, len);
+            written += len;
+        }
+        encryptionStream.close();
+
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(out.toByteArray()))
+                .withOptions(ConsumerOptions.get()
+                        .addDecryptionKey(key)
+                        .addVerificationCert(cert));
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertArrayEquals(data, plaintext.toByteArray());
+
+        MessageMetadata metadata = decryptionStream.getMetadata();
+        if (expectedCompression == null) {
+            assertNull(metadata.getCompressionAlgorithm());
+        } else {
+            assertEquals(expectedCompression, metadata.getCompressionAlgorithm());
+        }
+        if (options.getSigningOptions() != null) {
+            assertTrue(metadata.isVerifiedSignedBy(cert));
+        }
+        return encryptionStream.getResult();
+    }
+}
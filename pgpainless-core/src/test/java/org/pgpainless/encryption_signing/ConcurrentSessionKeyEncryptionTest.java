@@ -0,0 +1,133 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.bouncycastle.bcpg.ArmoredInputStream;
+import org.bouncycastle.openpgp.PGPEncryptedData;
+import org.bouncycastle.openpgp.PGPEncryptedDataList;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyEncryptedData;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.key.generation.type.rsa.RsaLength;
+import org.pgpainless.util.Passphrase;
+
+public class ConcurrentSessionKeyEncryptionTest {
+
+    private static final byte[] MESSAGE = "Hello, mailing list!\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final List<PGPSecretKeyRing> recipients = new ArrayList<>();
+    private static ExecutorService executor;
+
+    @BeforeAll
+    public static void setup()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        for (int i = 0; i < 6; i++) {
+            recipients.add(PGPainless.generateKeyRing().modernKeyRing("Recipient " + i));
+        }
+        recipients.add(PGPainless.generateKeyRing().simpleRsaKeyRing("RSA Recipient", RsaLength._3072));
+        recipients.add(PGPainless.generateKeyRing().simpleEcKeyRing("EC Recipient"));
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    public static void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentlyEncryptedSessionKeysKeepRecipientOrder() throws PGPException, IOException {
+        byte[] sequential = encrypt(encryptionOptions());
+        byte[] concurrent = encrypt(encryptionOptions().setSessionKeyEncryptionExecutor(executor));
+
+        assertEquals(recipientKeyIds(sequential), recipientKeyIds(concurrent));
+        for (PGPSecretKeyRing recipient : recipients) {
+            decrypt(concurrent, ConsumerOptions.get().addDecryptionKey(recipient));
+        }
+        decrypt(concurrent, ConsumerOptions.get().addDecryptionPassphrase(Passphrase.fromPassword("sw0rdf1sh")));
+    }
+
+    @Test
+    public void sessionKeysAreEncryptedByCallerIfExecutorRejectsTasks() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(encryptionOptions().setSessionKeyEncryptionExecutor(command -> {
+            throw new RejectedExecutionException();
+        }));
+
+        for (PGPSecretKeyRing recipient : recipients) {
+            decrypt(ciphertext, ConsumerOptions.get().addDecryptionKey(recipient));
+        }
+    }
+
+    @Test
+    public void sessionKeysAreEncryptedByCallerIfExecutorDoesNotRunTasks() throws PGPException, IOException {
+        List<Runnable> neverRun = new ArrayList<>();
+        byte[] ciphertext = encrypt(encryptionOptions().setSessionKeyEncryptionExecutor(neverRun::add));
+
+        assertEquals(recipients.size() + 1, neverRun.size());
+        for (PGPSecretKeyRing recipient : recipients) {
+            decrypt(ciphertext, ConsumerOptions.get().addDecryptionKey(recipient));
+        }
+    }
+
+    private static EncryptionOptions encryptionOptions() {
+        EncryptionOptions options = EncryptionOptions.get();
+        for (PGPSecretKeyRing recipient : recipients) {
+            options.addRecipient(PGPainless.extractCertificate(recipient));
+        }
+        return options.addPassphrase(Passphrase.fromPassword("sw0rdf1sh"));
+    }
+
+    private static byte[] encrypt(EncryptionOptions options) throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.encrypt(options));
+        encryptionStream.write(MESSAGE);
+        encryptionStream.close();
+        return out.toByteArray();
+    }
+
+    private static List<Long> recipientKeyIds(byte[] ciphertext) throws IOException {
+        PGPEncryptedDataList encryptedDataList = new PGPEncryptedDataList(
+                new ArmoredInputStream(new ByteArrayInputStream(ciphertext)));
+        List<Long> keyIds = new ArrayList<>();
+        for (PGPEncryptedData esk : encryptedDataList) {
+            keyIds.add(esk instanceof PGPPublicKeyEncryptedData ? ((PGPPublicKeyEncryptedData) esk).getKeyID() : -1L);
+        }
+        assertEquals(recipients.size() + 1, keyIds.size());
+        return keyIds;
+    }
+
+    private static void decrypt(byte[] ciphertext, ConsumerOptions options) throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(options);
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertArrayEquals(MESSAGE, plaintext.toByteArray());
+    }
+}
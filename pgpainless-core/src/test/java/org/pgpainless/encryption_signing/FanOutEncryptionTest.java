@@ -0,0 +1,115 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.DocumentSignatureType;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.decryption_verification.MessageMetadata;
+import org.pgpainless.exception.MissingDecryptionMethodException;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+import org.pgpainless.util.Passphrase;
+
+public class FanOutEncryptionTest {
+
+    private static final byte[] MESSAGE = "Hello, recipient groups!\n".getBytes(StandardCharsets.UTF_8);
+
+    private static PGPSecretKeyRing alice;
+    private static PGPSecretKeyRing bob;
+    private static PGPSecretKeyRing signer;
+
+    @BeforeAll
+    public static void setup()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        alice = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        bob = PGPainless.generateKeyRing().modernKeyRing("Bob");
+        signer = PGPainless.generateKeyRing().modernKeyRing("Signer");
+    }
+
+    @Test
+    public void encryptAndSignForMultipleRecipientGroups() throws PGPException, IOException {
+        ByteArrayOutputStream forAlice = new ByteArrayOutputStream();
+        ByteArrayOutputStream forBob = new ByteArrayOutputStream();
+        ByteArrayOutputStream forPassphrase = new ByteArrayOutputStream();
+
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStreams()
+                .addOutputStream(forAlice, EncryptionOptions.get().addRecipient(PGPainless.extractCertificate(alice)))
+                .addOutputStream(forBob, EncryptionOptions.get().addRecipient(PGPainless.extractCertificate(bob)))
+                .addOutputStream(forPassphrase, EncryptionOptions.get().addPassphrase(Passphrase.fromPassword("sw0rdf1sh")))
+                .withOptions(ProducerOptions.sign(SigningOptions.get()
+                        .addInlineSignature(SecretKeyRingProtector.unprotectedKeys(), signer, DocumentSignatureType.BINARY_DOCUMENT))
+                        .setAsciiArmor(true));
+        encryptionStream.write(MESSAGE);
+        encryptionStream.close();
+
+        List<EncryptionResult> results = encryptionStream.getResults();
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isEncryptedFor(PGPainless.extractCertificate(alice)));
+        assertFalse(results.get(0).isEncryptedFor(PGPainless.extractCertificate(bob)));
+        assertTrue(results.get(1).isEncryptedFor(PGPainless.extractCertificate(bob)));
+        assertTrue(results.get(2).getRecipients().isEmpty());
+
+        PGPPublicKeyRing signerCert = PGPainless.extractCertificate(signer);
+        MessageMetadata aliceMetadata = decrypt(forAlice.toByteArray(), ConsumerOptions.get()
+                .addDecryptionKey(alice).addVerificationCert(signerCert));
+        MessageMetadata bobMetadata = decrypt(forBob.toByteArray(), ConsumerOptions.get()
+                .addDecryptionKey(bob).addVerificationCert(signerCert));
+        MessageMetadata passphraseMetadata = decrypt(forPassphrase.toByteArray(), ConsumerOptions.get()
+                .addDecryptionPassphrase(Passphrase.fromPassword("sw0rdf1sh")).addVerificationCert(signerCert));
+
+        // The message was signed only once
+        byte[] signature = aliceMetadata.getVerifiedInlineSignatures().get(0).getSignature().getEncoded();
+        assertArrayEquals(signature, bobMetadata.getVerifiedInlineSignatures().get(0).getSignature().getEncoded());
+        assertArrayEquals(signature, passphraseMetadata.getVerifiedInlineSignatures().get(0).getSignature().getEncoded());
+
+        assertThrows(MissingDecryptionMethodException.class, () ->
+                decrypt(forAlice.toByteArray(), ConsumerOptions.get().addDecryptionKey(bob)));
+    }
+
+    @Test
+    public void encryptionOptionsMustBeSetPerOutput() {
+        assertThrows(IllegalArgumentException.class, () -> PGPainless.encryptAndOrSign()
+                .onOutputStreams()
+                .addOutputStream(new ByteArrayOutputStream(), EncryptionOptions.get().addRecipient(PGPainless.extractCertificate(alice)))
+                .withOptions(ProducerOptions.encrypt(EncryptionOptions.get().addRecipient(PGPainless.extractCertificate(bob)))));
+    }
+
+    private static MessageMetadata decrypt(byte[] ciphertext, ConsumerOptions options)
+            throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(options);
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertArrayEquals(MESSAGE, plaintext.toByteArray());
+
+        MessageMetadata metadata = decryptionStream.getMetadata();
+        assertEquals(1, metadata.getVerifiedInlineSignatures().size());
+        return metadata;
+    }
+}
@@ -0,0 +1,223 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+import org.pgpainless.algorithm.DocumentSignatureType;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.decryption_verification.MessageMetadata;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+
+public class KnownLengthTest {
+
+    private static PGPSecretKeyRing key;
+    private static PGPPublicKeyRing cert;
+
+    @BeforeAll
+    public static void setup() throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        key = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        cert = PGPainless.extractCertificate(key);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 100, 191, 8000, 8400, 100000})
+    public void encryptedMessageWithKnownLengthHasNoPartialLengths(int length) throws PGPException, IOException {
+        byte[] data = randomData(length);
+        ProducerOptions options = ProducerOptions.encrypt(EncryptionOptions.get().addRecipient(cert))
+                .overrideCompressionAlgorithm(CompressionAlgorithm.UNCOMPRESSED)
+                .setFileName("file.bin")
+                .setAsciiArmor(false)
+                .setExpectedPlaintextLength(length);
+        byte[] message = produce(data, options);
+
+        assertFalse(hasPartialLengthPacket(message));
+        MessageMetadata metadata = consume(message, data);
+        assertEquals("file.bin", metadata.getFilename());
+    }
+
+    @Test
+    public void literalDataOnlyWithKnownLength() throws PGPException, IOException {
+        byte[] data = randomData(20000);
+        ProducerOptions options = ProducerOptions.noEncryptionNoSigning()
+                .overrideCompressionAlgorithm(CompressionAlgorithm.UNCOMPRESSED)
+                .setAsciiArmor(false)
+                .setExpectedPlaintextLength(data.length);
+        byte[] message = produce(data, options);
+
+        assertFalse(hasPartialLengthPacket(message));
+        consume(message, data);
+    }
+
+    @Test
+    public void inlineSignedMessageUsesPartialLengthsForEncryptedData() throws PGPException, IOException {
+        byte[] data = randomData(20000);
+        ProducerOptions options = ProducerOptions.signAndEncrypt(
+                EncryptionOptions.get().addRecipient(cert),
+                SigningOptions.get().addInlineSignature(SecretKeyRingProtector.unprotectedKeys(), key,
+                        DocumentSignatureType.BINARY_DOCUMENT))
+                .overrideCompressionAlgorithm(CompressionAlgorithm.UNCOMPRESSED)
+                .setAsciiArmor(false)
+                .setExpectedPlaintextLength(data.length);
+        byte[] message = produce(data, options);
+
+        assertTrue(hasPartialLengthPacket(message));
+        assertTrue(consume(message, data).isVerifiedSignedBy(cert));
+    }
+
+    @Test
+    public void compressedMessageIgnoresKnownLength() throws PGPException, IOException {
+        byte[] data = randomData(20000);
+        ProducerOptions options = ProducerOptions.noEncryptionNoSigning()
+                .overrideCompressionAlgorithm(CompressionAlgorithm.ZIP)
+                .setAsciiArmor(false)
+                .setExpectedPlaintextLength(data.length + 10);
+        // length mismatch does not matter, since the length is not used
+        consume(produce(data, options), data);
+    }
+
+    @Test
+    public void tooMuchDataIsRejected() throws PGPException, IOException {
+        ProducerOptions options = ProducerOptions.encrypt(EncryptionOptions.get().addRecipient(cert))
+                .overrideCompressionAlgorithm(CompressionAlgorithm.UNCOMPRESSED)
+                .setExpectedPlaintextLength(10);
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(new ByteArrayOutputStream())
+                .withOptions(options);
+        encryptionStream.write(new byte[10]);
+        assertThrows(IOException.class, () -> encryptionStream.write(1));
+        encryptionStream.close();
+    }
+
+    @Test
+    public void tooLittleDataIsRejected() throws PGPException, IOException {
+        ProducerOptions options = ProducerOptions.encrypt(EncryptionOptions.get().addRecipient(cert))
+                .overrideCompressionAlgorithm(CompressionAlgorithm.UNCOMPRESSED)
+                .setExpectedPlaintextLength(10);
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(new ByteArrayOutputStream())
+                .withOptions(options);
+        encryptionStream.write(new byte[9]);
+        assertThrows(IOException.class, encryptionStream::close);
+    }
+
+    @Test
+    public void rejectedStreamDoesNotWriteAfterClose() throws PGPException, IOException {
+        ByteArrayOutputStream rejectedOut = new ByteArrayOutputStream();
+        EncryptionStream rejected = PGPainless.encryptAndOrSign()
+                .onOutputStream(rejectedOut)
+                .withOptions(ProducerOptions.noEncryptionNoSigning()
+                        .overrideCompressionAlgorithm(CompressionAlgorithm.UNCOMPRESSED)
+                        .setExpectedPlaintextLength(10));
+        rejected.write(new byte[9]);
+        assertThrows(IOException.class, rejected::close);
+        byte[] writtenOnClose = rejectedOut.toByteArray();
+
+        // The next stream reuses the pooled buffers of the rejected stream
+        byte[] data = randomData(100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.encrypt(EncryptionOptions.get().addRecipient(cert)));
+        encryptionStream.write(data);
+
+        rejected.flush();
+        rejected.close();
+        assertArrayEquals(writtenOnClose, rejectedOut.toByteArray());
+
+        encryptionStream.close();
+        consume(out.toByteArray(), data);
+    }
+
+    @Test
+    public void negativeLengthIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ProducerOptions.noEncryptionNoSigning()
+                .setExpectedPlaintextLength(-1));
+    }
+
+    private static byte[] randomData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] produce(byte[] data, ProducerOptions options) throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(options);
+        for (int i = 0; i < data.length; i += 1000) {
+            encryptionStream.write(data, i, Math.min(1000, data.length - i));
+        }
+        encryptionStream.close();
+        return out.toByteArray();
+    }
+
+    private static MessageMetadata consume(byte[] message, byte[] expectedData) throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(message))
+                .withOptions(ConsumerOptions.get()
+                        .addDecryptionKey(key)
+                        .addVerificationCert(cert));
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertArrayEquals(expectedData, plaintext.toByteArray());
+        return decryptionStream.getMetadata();
+    }
+
+    /**
+     * Walk the top-level packets of a binary message and check, whether any of them uses partial body lengths.
+     * Expects new format packet headers, as written by Bouncy Castle.
+     */
+    private static boolean hasPartialLengthPacket(byte[] message) {
+        int pos = 0;
+        while (pos < message.length) {
+            int tag = message[pos++] & 0xff;
+            assertEquals(0xc0, tag & 0xc0, "Expected new format packet header");
+            int first = message[pos++] & 0xff;
+            long bodyLength;
+            if (first < 192) {
+                bodyLength = first;
+            } else if (first <= 223) {
+                bodyLength = ((first - 192) << 8) + (message[pos++] & 0xff) + 192;
+            } else if (first < 255) {
+                return true;
+            } else {
+                bodyLength = ((long) (message[pos] & 0xff) << 24) | ((message[pos + 1] & 0xff) << 16)
+                        | ((message[pos + 2] & 0xff) << 8) | (message[pos + 3] & 0xff);
+                pos += 4;
+            }
+            if ((tag & 0x3f) == PacketTags.LITERAL_DATA || (tag & 0x3f) == PacketTags.SYM_ENC_INTEGRITY_PRO) {
+                assertEquals(message.length, pos + bodyLength, "Data packet must end the message");
+            }
+            pos += bodyLength;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,244 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.encoders.Hex;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.AEADAlgorithm;
+import org.pgpainless.algorithm.SymmetricKeyAlgorithm;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.decryption_verification.MessageMetadata;
+import org.pgpainless.exception.MissingDecryptionMethodException;
+import org.pgpainless.util.AEADChunkCipher;
+import org.pgpainless.util.Passphrase;
+import org.pgpainless.util.SessionKey;
+
+public class MessageRekeyerTest {
+
+    private static final byte[] PLAINTEXT = new byte[100 * 1024];
+
+    private static PGPSecretKeyRing alice;
+    private static PGPSecretKeyRing bob;
+    private static PGPPublicKeyRing bobCert;
+
+    @BeforeAll
+    public static void setup()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        new Random(42).nextBytes(PLAINTEXT);
+        alice = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        bob = PGPainless.generateKeyRing().modernKeyRing("Bob");
+        bobCert = PGPainless.extractCertificate(bob);
+    }
+
+    @Test
+    public void rekeyFromKeyToKey() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addRecipient(PGPainless.extractCertificate(alice)), false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SessionKey sessionKey = MessageRekeyer.create(
+                ConsumerOptions.get().addDecryptionKey(alice),
+                EncryptionOptions.get().addRecipient(bobCert))
+                .rekey(new ByteArrayInputStream(ciphertext), out);
+        byte[] rekeyed = out.toByteArray();
+
+        // The encrypted data is copied as is
+        int tail = PLAINTEXT.length / 2;
+        assertArrayEquals(
+                Arrays.copyOfRange(ciphertext, ciphertext.length - tail, ciphertext.length),
+                Arrays.copyOfRange(rekeyed, rekeyed.length - tail, rekeyed.length));
+
+        MessageMetadata metadata = decrypt(rekeyed, ConsumerOptions.get().addDecryptionKey(bob));
+        assertEquals(sessionKey.getAlgorithm(), metadata.getSessionKey().getAlgorithm());
+        assertArrayEquals(sessionKey.getKey(), metadata.getSessionKey().getKey());
+
+        assertThrows(MissingDecryptionMethodException.class, () ->
+                decrypt(rekeyed, ConsumerOptions.get().addDecryptionKey(alice)));
+    }
+
+    @Test
+    public void rekeyFromPassphraseToKeyAndPassphrase() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addPassphrase(Passphrase.fromPassword("old")), false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageRekeyer.create(
+                ConsumerOptions.get().addDecryptionPassphrase(Passphrase.fromPassword("old")),
+                EncryptionOptions.get()
+                        .addRecipient(bobCert)
+                        .addPassphrase(Passphrase.fromPassword("new")))
+                .rekey(new ByteArrayInputStream(ciphertext), out);
+        byte[] rekeyed = out.toByteArray();
+
+        decrypt(rekeyed, ConsumerOptions.get().addDecryptionKey(bob));
+        decrypt(rekeyed, ConsumerOptions.get().addDecryptionPassphrase(Passphrase.fromPassword("new")));
+        assertThrows(MissingDecryptionMethodException.class, () ->
+                decrypt(rekeyed, ConsumerOptions.get().addDecryptionPassphrase(Passphrase.fromPassword("old"))));
+    }
+
+    @Test
+    public void rekeyArmoredMessageWithSessionKey() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addRecipient(PGPainless.extractCertificate(alice)), true);
+        MessageMetadata original = decrypt(ciphertext, ConsumerOptions.get().addDecryptionKey(alice));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageRekeyer.create(
+                ConsumerOptions.get().setSessionKey(original.getSessionKey()),
+                EncryptionOptions.get().addRecipient(bobCert))
+                .rekey(new ByteArrayInputStream(ciphertext), out);
+        byte[] rekeyed = out.toByteArray();
+
+        assertTrue(new String(rekeyed, StandardCharsets.US_ASCII).startsWith("-----BEGIN PGP MESSAGE-----"));
+        decrypt(rekeyed, ConsumerOptions.get().addDecryptionKey(bob));
+    }
+
+    @Test
+    public void rekeyWithoutMatchingKeyFails() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .addRecipient(PGPainless.extractCertificate(alice)), false);
+
+        MessageRekeyer rekeyer = MessageRekeyer.create(
+                ConsumerOptions.get().addDecryptionKey(bob),
+                EncryptionOptions.get().addRecipient(bobCert));
+        assertThrows(MissingDecryptionMethodException.class, () ->
+                rekeyer.rekey(new ByteArrayInputStream(ciphertext), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void rekeyAEADMessageFromPassphraseToPassphrase() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .setAEADAlgorithm(AEADAlgorithm.OCB)
+                .addPassphrase(Passphrase.fromPassword("old")), false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageRekeyer.create(
+                ConsumerOptions.get().addDecryptionPassphrase(Passphrase.fromPassword("old")),
+                EncryptionOptions.get().addPassphrase(Passphrase.fromPassword("new")))
+                .rekey(new ByteArrayInputStream(ciphertext), out);
+
+        decrypt(out.toByteArray(), ConsumerOptions.get().addDecryptionPassphrase(Passphrase.fromPassword("new")));
+    }
+
+    @Test
+    public void rekeyAEADMessageFromKeyToKeyAndPassphrase() throws PGPException, IOException {
+        byte[] ciphertext = encrypt(EncryptionOptions.get()
+                .setAEADAlgorithm(AEADAlgorithm.OCB)
+                .addRecipient(PGPainless.extractCertificate(alice)), true);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageRekeyer.create(
+                ConsumerOptions.get().addDecryptionKey(alice),
+                EncryptionOptions.get()
+                        .addRecipient(bobCert)
+                        .addPassphrase(Passphrase.fromPassword("new")))
+                .rekey(new ByteArrayInputStream(ciphertext), out);
+        byte[] rekeyed = out.toByteArray();
+
+        decrypt(rekeyed, ConsumerOptions.get().addDecryptionKey(bob));
+        decrypt(rekeyed, ConsumerOptions.get().addDecryptionPassphrase(Passphrase.fromPassword("new")));
+    }
+
+    @Test
+    public void sessionKeyPassingOnlyTheQuickCheckIsRejected() throws IOException {
+        // Encrypted using the passphrase "sw0rdf1sh"
+        String message = "-----BEGIN PGP MESSAGE-----\n" +
+                "\n" +
+                "ww0EBwMCRCqgCwxyaw1g0kABYWeL6GPmW5c8HQrIPcn7xXD6tInBz7IJbu5a3S6l\n" +
+                "Oi5CxSQ5HyCTuffFlBLfUxVGFyl1KYbj/+NdtfeIcnOl\n" +
+                "=V0mT\n" +
+                "-----END PGP MESSAGE-----\n";
+        // Wrong session key, which passes the 16 bit quick check of the encrypted data
+        SessionKey wrong = new SessionKey(SymmetricKeyAlgorithm.AES_128,
+                Hex.decode("35f6bbd4cb30c37c3a126a4eb2cb02ed"));
+
+        MessageRekeyer rekeyer = MessageRekeyer.create(
+                ConsumerOptions.get().setSessionKey(wrong),
+                EncryptionOptions.get().addRecipient(bobCert));
+        assertThrows(MissingDecryptionMethodException.class, () -> rekeyer.rekey(
+                new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void integrityCheckAcceptsIntactMessages() throws PGPException, IOException {
+        for (AEADAlgorithm aeadAlgorithm : new AEADAlgorithm[] {null, AEADAlgorithm.OCB}) {
+            byte[] ciphertext = encrypt(EncryptionOptions.get()
+                    .setAEADAlgorithm(aeadAlgorithm)
+                    .addRecipient(PGPainless.extractCertificate(alice)), false);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MessageRekeyer.create(
+                    ConsumerOptions.get().addDecryptionKey(alice),
+                    EncryptionOptions.get().addRecipient(bobCert))
+                    .withIntegrityCheck()
+                    .rekey(new ByteArrayInputStream(ciphertext), out);
+            decrypt(out.toByteArray(), ConsumerOptions.get().addDecryptionKey(bob));
+        }
+    }
+
+    @Test
+    public void integrityCheckRejectsModifiedMessages() throws PGPException, IOException {
+        for (AEADAlgorithm aeadAlgorithm : new AEADAlgorithm[] {null, AEADAlgorithm.OCB}) {
+            // Small chunks, so that the message spans multiple chunks
+            byte[] ciphertext = encrypt(EncryptionOptions.get()
+                    .setAEADAlgorithm(aeadAlgorithm)
+                    .setAEADChunkSize(AEADChunkCipher.MIN_CHUNK_SIZE)
+                    .addRecipient(PGPainless.extractCertificate(alice)), false);
+            // Modify the MDC / final authentication tag, which is not checked when recovering the session key
+            ciphertext[ciphertext.length - 1] ^= 0x01;
+
+            MessageRekeyer rekeyer = MessageRekeyer.create(
+                    ConsumerOptions.get().addDecryptionKey(alice),
+                    EncryptionOptions.get().addRecipient(bobCert));
+            rekeyer.rekey(new ByteArrayInputStream(ciphertext), new ByteArrayOutputStream());
+            assertThrows(IOException.class, () -> rekeyer.withIntegrityCheck()
+                    .rekey(new ByteArrayInputStream(ciphertext), new ByteArrayOutputStream()));
+        }
+    }
+
+    private static byte[] encrypt(EncryptionOptions encryptionOptions, boolean armor)
+            throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.encrypt(encryptionOptions).setAsciiArmor(armor));
+        encryptionStream.write(PLAINTEXT);
+        encryptionStream.close();
+        return out.toByteArray();
+    }
+
+    private static MessageMetadata decrypt(byte[] ciphertext, ConsumerOptions options)
+            throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(ciphertext))
+                .withOptions(options);
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertArrayEquals(PLAINTEXT, plaintext.toByteArray());
+        return decryptionStream.getMetadata();
+    }
+}
@@ -0,0 +1,247 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+import org.bouncycastle.bcpg.BCPGInputStream;
+import org.bouncycastle.bcpg.Packet;
+import org.bouncycastle.bcpg.PublicKeyEncSessionPacket;
+import org.bouncycastle.bcpg.SymmetricKeyEncSessionPacket;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.PBESecretKeyDecryptor;
+import org.bouncycastle.openpgp.operator.PBESecretKeyEncryptor;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.DocumentSignatureType;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.decryption_verification.MessageMetadata;
+import org.pgpainless.implementation.ImplementationFactory;
+import org.pgpainless.key.SubkeyIdentifier;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+import org.pgpainless.util.Passphrase;
+import org.pgpainless.util.SessionKey;
+
+public class ProducerTemplateTest {
+
+    private static final byte[] MESSAGE = "Hello, World!\nThis message was produced from a template.\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static PGPSecretKeyRing alice;
+    private static PGPSecretKeyRing bob;
+    private static PGPPublicKeyRing bobCert;
+
+    @BeforeAll
+    public static void generateKeys()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        alice = PGPainless.generateKeyRing().modernKeyRing("Alice", "sw0rdf1sh");
+        bob = PGPainless.generateKeyRing().modernKeyRing("Bob");
+        bobCert = PGPainless.extractCertificate(bob);
+    }
+
+    @Test
+    public void produceMessagesConcurrentlyWithoutUnlockingKeysAgain() throws Exception {
+        CountingProtector protector = new CountingProtector(
+                SecretKeyRingProtector.unlockAnyKeyWith(Passphrase.fromPassword("sw0rdf1sh")));
+        ProducerOptions options = ProducerOptions.signAndEncrypt(
+                EncryptionOptions.get().addRecipient(bobCert),
+                SigningOptions.get()
+                        .setSharedDigests(true)
+                        .addInlineSignature(protector, alice, DocumentSignatureType.CANONICAL_TEXT_DOCUMENT))
+                .setFileName("message.txt");
+        final ProducerTemplate template = ProducerTemplate.compile(options);
+        int unlocks = protector.decryptorRequests.get();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> messages = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                messages.add(executor.submit(() -> produce(template)));
+            }
+            for (Future<byte[]> message : messages) {
+                MessageMetadata metadata = consume(message.get(), ConsumerOptions.get()
+                        .addDecryptionKey(bob)
+                        .addVerificationCert(PGPainless.extractCertificate(alice)));
+                assertTrue(metadata.isVerifiedSignedBy(alice));
+                assertTrue(metadata.isEncryptedFor(bobCert));
+                assertEquals("message.txt", metadata.getFilename());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(unlocks, protector.decryptorRequests.get());
+    }
+
+    @Test
+    public void templateIsNotAffectedByLaterChangesToOptions() throws PGPException, IOException,
+            InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPPublicKeyRing carol = PGPainless.extractCertificate(PGPainless.generateKeyRing().modernKeyRing("Carol"));
+        EncryptionOptions encryptionOptions = EncryptionOptions.get().addRecipient(bobCert);
+        ProducerOptions options = ProducerOptions.encrypt(encryptionOptions);
+        ProducerTemplate template = ProducerTemplate.compile(options);
+
+        encryptionOptions.addRecipient(carol);
+        options.setFileName("changed.txt");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withTemplate(template);
+        encryptionStream.write(MESSAGE);
+        encryptionStream.close();
+
+        EncryptionResult result = encryptionStream.getResult();
+        assertTrue(result.isEncryptedFor(bobCert));
+        assertFalse(result.isEncryptedFor(carol));
+        assertEquals("", result.getFileName());
+    }
+
+    @Test
+    public void detachedSignaturesAreCreatedPerMessage() throws PGPException, IOException {
+        ProducerTemplate template = ProducerTemplate.compile(ProducerOptions.sign(SigningOptions.get()
+                .addDetachedSignature(SecretKeyRingProtector.unlockAnyKeyWith(Passphrase.fromPassword("sw0rdf1sh")),
+                        alice, DocumentSignatureType.BINARY_DOCUMENT)));
+
+        EncryptionResult first = produceResult(template, MESSAGE);
+        EncryptionResult second = produceResult(template, Arrays.copyOf(MESSAGE, 5));
+        SubkeyIdentifier signingKey = first.getDetachedSignatures().keySet().iterator().next();
+        assertEquals(1, first.getDetachedSignatures().get(signingKey).size());
+        assertEquals(1, second.getDetachedSignatures().get(signingKey).size());
+        assertFalse(Arrays.equals(
+                first.getDetachedSignatures().get(signingKey).iterator().next().getSignature(),
+                second.getDetachedSignatures().get(signingKey).iterator().next().getSignature()));
+    }
+
+    @Test
+    public void lonePassphraseUsesFreshSessionKeys() throws PGPException, IOException {
+        Passphrase passphrase = Passphrase.fromPassword("correct horse battery staple");
+        ProducerTemplate template = ProducerTemplate.compile(ProducerOptions.encrypt(
+                EncryptionOptions.get().addPassphrase(passphrase)));
+
+        SessionKey first = consume(produce(template), ConsumerOptions.get()
+                .addDecryptionPassphrase(passphrase)).getSessionKey();
+        SessionKey second = consume(produce(template), ConsumerOptions.get()
+                .addDecryptionPassphrase(passphrase)).getSessionKey();
+        assertFalse(Arrays.equals(first.getKey(), second.getKey()));
+    }
+
+    @Test
+    public void passphraseMethodsUseFreshSaltPerMessage() throws PGPException, IOException {
+        Passphrase passphrase = Passphrase.fromPassword("correct horse battery staple");
+        ProducerTemplate template = ProducerTemplate.compile(ProducerOptions.encrypt(
+                EncryptionOptions.get().addPassphrase(passphrase).addRecipient(bobCert)));
+
+        byte[] first = produce(template);
+        byte[] second = produce(template);
+        assertFalse(Arrays.equals(s2kSalt(first), s2kSalt(second)));
+
+        // both messages can still be decrypted using the passphrase
+        consume(first, ConsumerOptions.get().addDecryptionPassphrase(passphrase));
+        consume(second, ConsumerOptions.get().addDecryptionPassphrase(passphrase));
+    }
+
+    @Test
+    public void foreignPassphraseMethodsCannotBeCompiled() {
+        EncryptionOptions encryptionOptions = EncryptionOptions.get().addEncryptionMethod(
+                ImplementationFactory.getInstance().getPBEKeyEncryptionMethodGenerator(Passphrase.fromPassword("sw0rdf1sh")));
+        assertThrows(IllegalArgumentException.class, () -> ProducerTemplate.compile(ProducerOptions.encrypt(encryptionOptions)));
+    }
+
+    private static byte[] s2kSalt(byte[] message) throws IOException {
+        BCPGInputStream packets = new BCPGInputStream(PGPUtil.getDecoderStream(new ByteArrayInputStream(message)));
+        while (true) {
+            Packet packet = packets.readPacket();
+            if (packet instanceof SymmetricKeyEncSessionPacket) {
+                return ((SymmetricKeyEncSessionPacket) packet).getS2K().getIV();
+            }
+            assertTrue(packet instanceof PublicKeyEncSessionPacket);
+        }
+    }
+
+    private static byte[] produce(ProducerTemplate template) throws PGPException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withTemplate(template);
+        encryptionStream.write(MESSAGE);
+        encryptionStream.close();
+        return out.toByteArray();
+    }
+
+    private static EncryptionResult produceResult(ProducerTemplate template, byte[] message)
+            throws PGPException, IOException {
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(new ByteArrayOutputStream())
+                .withTemplate(template);
+        encryptionStream.write(message);
+        encryptionStream.close();
+        return encryptionStream.getResult();
+    }
+
+    private static MessageMetadata consume(byte[] message, ConsumerOptions options)
+            throws PGPException, IOException {
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(message))
+                .withOptions(options);
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertArrayEquals(MESSAGE, plaintext.toByteArray());
+        return decryptionStream.getMetadata();
+    }
+
+    private static final class CountingProtector implements SecretKeyRingProtector {
+
+        private final SecretKeyRingProtector delegate;
+        private final AtomicInteger decryptorRequests = new AtomicInteger();
+
+        private CountingProtector(SecretKeyRingProtector delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasPassphraseFor(Long keyId) {
+            return delegate.hasPassphraseFor(keyId);
+        }
+
+        @Nullable
+        @Override
+        public PBESecretKeyDecryptor getDecryptor(Long keyId) throws PGPException {
+            decryptorRequests.incrementAndGet();
+            return delegate.getDecryptor(keyId);
+        }
+
+        @Nullable
+        @Override
+        public PBESecretKeyEncryptor getEncryptor(Long keyId) throws PGPException {
+            return delegate.getEncryptor(keyId);
+        }
+    }
+}
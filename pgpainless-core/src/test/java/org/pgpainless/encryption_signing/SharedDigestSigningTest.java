@@ -0,0 +1,153 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.encryption_signing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.DocumentSignatureType;
+import org.pgpainless.algorithm.HashAlgorithm;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.decryption_verification.MessageMetadata;
+import org.pgpainless.key.generation.type.rsa.RsaLength;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+
+public class SharedDigestSigningTest {
+
+    private static final byte[] MESSAGE = ("Hello, World!\n" +
+            "Signed by many\r\n" +
+            "keys at once.\r").getBytes(StandardCharsets.UTF_8);
+
+    private static List<PGPSecretKeyRing> keys;
+    private static PGPPublicKeyRingCollection certs;
+
+    @BeforeAll
+    public static void generateKeys()
+            throws PGPException, IOException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        keys = Arrays.asList(
+                PGPainless.generateKeyRing().modernKeyRing("Alice"),
+                PGPainless.generateKeyRing().modernKeyRing("Bob"),
+                PGPainless.generateKeyRing().simpleEcKeyRing("Carol"),
+                PGPainless.generateKeyRing().simpleRsaKeyRing("Dave", RsaLength._3072));
+        List<PGPPublicKeyRing> certList = new ArrayList<>();
+        for (PGPSecretKeyRing key : keys) {
+            certList.add(PGPainless.extractCertificate(key));
+        }
+        certs = new PGPPublicKeyRingCollection(certList);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = DocumentSignatureType.class)
+    public void inlineSignaturesWithSharedDigests(DocumentSignatureType signatureType)
+            throws PGPException, IOException {
+        SigningOptions signingOptions = SigningOptions.get().setSharedDigests(true);
+        for (PGPSecretKeyRing key : keys) {
+            signingOptions.addInlineSignature(SecretKeyRingProtector.unprotectedKeys(), key, signatureType);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream signingStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.sign(signingOptions));
+        signingStream.write(MESSAGE, 0, 3);
+        signingStream.write(MESSAGE[3]);
+        signingStream.write(MESSAGE, 4, MESSAGE.length - 4);
+        signingStream.close();
+
+        for (boolean sharedDigests : new boolean[] {false, true}) {
+            DecryptionStream verificationStream = PGPainless.decryptAndOrVerify()
+                    .onInputStream(new ByteArrayInputStream(out.toByteArray()))
+                    .withOptions(ConsumerOptions.get()
+                            .setSharedDigests(sharedDigests)
+                            .addVerificationCerts(certs));
+            ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+            Streams.pipeAll(verificationStream, plaintext);
+            verificationStream.close();
+
+            assertArrayEquals(MESSAGE, plaintext.toByteArray());
+            MessageMetadata metadata = verificationStream.getMetadata();
+            assertEquals(keys.size(), metadata.getVerifiedInlineSignatures().size());
+            assertTrue(metadata.getRejectedInlineSignatures().isEmpty());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = DocumentSignatureType.class)
+    public void detachedSignaturesWithSharedDigests(DocumentSignatureType signatureType)
+            throws PGPException, IOException, NoSuchAlgorithmException {
+        SigningOptions signingOptions = SigningOptions.get().setSharedDigests(true);
+        for (PGPSecretKeyRing key : keys) {
+            signingOptions.addDetachedSignature(SecretKeyRingProtector.unprotectedKeys(), key, signatureType);
+        }
+
+        EncryptionStream signingStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(new ByteArrayOutputStream())
+                .withOptions(ProducerOptions.sign(signingOptions));
+        signingStream.write(MESSAGE);
+        signingStream.close();
+        List<PGPSignature> signatures = new ArrayList<>(signingStream.getResult().getDetachedSignatures().flatten());
+        assertEquals(keys.size(), signatures.size());
+
+        // The left 16 bits of the hash must match the hashed data
+        byte[] signedData = signatureType == DocumentSignatureType.CANONICAL_TEXT_DOCUMENT ?
+                "Hello, World!\r\nSigned by many\r\nkeys at once.\r\n".getBytes(StandardCharsets.UTF_8) : MESSAGE;
+        for (PGPSignature signature : signatures) {
+            MessageDigest digest = MessageDigest.getInstance(
+                    HashAlgorithm.requireFromId(signature.getHashAlgorithm()).getAlgorithmName());
+            digest.update(signedData);
+            digest.update(signature.getSignatureTrailer());
+            byte[] hash = digest.digest();
+            assertArrayEquals(new byte[] {hash[0], hash[1]}, signature.getDigestPrefix());
+        }
+
+        for (boolean sharedDigests : new boolean[] {false, true}) {
+            DecryptionStream verificationStream = PGPainless.decryptAndOrVerify()
+                    .onInputStream(new ByteArrayInputStream(MESSAGE))
+                    .withOptions(ConsumerOptions.get()
+                            .setSharedDigests(sharedDigests)
+                            .addVerificationCerts(certs)
+                            .addVerificationOfDetachedSignatures(signatures));
+            Streams.drain(verificationStream);
+            verificationStream.close();
+
+            MessageMetadata metadata = verificationStream.getMetadata();
+            assertEquals(keys.size(), metadata.getVerifiedDetachedSignatures().size());
+            assertTrue(metadata.getRejectedDetachedSignatures().isEmpty());
+        }
+    }
+
+    @Test
+    public void sharedDigestsCannotBeSetAfterKeysWereAdded() throws PGPException {
+        SigningOptions signingOptions = SigningOptions.get()
+                .addInlineSignature(SecretKeyRingProtector.unprotectedKeys(), keys.get(0),
+                        DocumentSignatureType.BINARY_DOCUMENT);
+        assertThrows(IllegalStateException.class, () -> signingOptions.setSharedDigests(true));
+    }
+}
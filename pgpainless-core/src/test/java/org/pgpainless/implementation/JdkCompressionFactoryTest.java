@@ -0,0 +1,129 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.implementation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.CompressionAlgorithm;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.encryption_signing.EncryptionResult;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+
+public class JdkCompressionFactoryTest {
+
+    private static final byte[] DATA;
+
+    static {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 50 * 1024; i++) {
+            text.append("Line ").append(i).append(": Lorem ipsum dolor sit amet.\n");
+        }
+        DATA = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @AfterEach
+    public void resetFactory() {
+        CompressionFactory.setFactoryImplementation(new BcCompressionFactory());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionAlgorithm.class, names = {"ZIP", "ZLIB", "BZIP2"})
+    public void jdkToJdk(CompressionAlgorithm algorithm) throws PGPException, IOException {
+        JdkCompressionFactory factory = new JdkCompressionFactory(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY, 1024);
+        assertArrayEquals(DATA, consume(produce(factory, algorithm), factory, algorithm));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionAlgorithm.class, names = {"ZIP", "ZLIB"})
+    public void jdkToBc(CompressionAlgorithm algorithm) throws PGPException, IOException {
+        byte[] message = produce(new JdkCompressionFactory(Deflater.BEST_COMPRESSION, Deflater.FILTERED, 64), algorithm);
+        assertArrayEquals(DATA, consume(message, new BcCompressionFactory(), algorithm));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionAlgorithm.class, names = {"ZIP", "ZLIB"})
+    public void bcToJdk(CompressionAlgorithm algorithm) throws PGPException, IOException {
+        byte[] message = produce(new BcCompressionFactory(), algorithm);
+        assertArrayEquals(DATA, consume(message, new JdkCompressionFactory(), algorithm));
+    }
+
+    @Test
+    public void closingCompressionStreamDoesNotCloseUnderlyingStream() throws IOException {
+        CloseTrackingOutputStream out = new CloseTrackingOutputStream();
+        OutputStream compressed = new JdkCompressionFactory().openCompressedDataPacket(out, CompressionAlgorithm.ZIP);
+        compressed.write(DATA);
+        compressed.close();
+        compressed.close();
+        assertEquals(0, out.closed);
+    }
+
+    @Test
+    public void invalidParametersAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new JdkCompressionFactory(10, Deflater.DEFAULT_STRATEGY, 1024));
+        assertThrows(IllegalArgumentException.class,
+                () -> new JdkCompressionFactory(Deflater.DEFAULT_COMPRESSION, 5, 1024));
+        assertThrows(IllegalArgumentException.class,
+                () -> new JdkCompressionFactory(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0));
+    }
+
+    private static byte[] produce(CompressionFactory factory, CompressionAlgorithm algorithm)
+            throws PGPException, IOException {
+        CompressionFactory.setFactoryImplementation(factory);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(out)
+                .withOptions(ProducerOptions.noEncryptionNoSigning()
+                        .overrideCompressionAlgorithm(algorithm)
+                        .setAsciiArmor(false));
+        encryptionStream.write(DATA);
+        encryptionStream.close();
+        EncryptionResult result = encryptionStream.getResult();
+        assertEquals(algorithm, result.getCompressionAlgorithm());
+        return out.toByteArray();
+    }
+
+    private static byte[] consume(byte[] message, CompressionFactory factory, CompressionAlgorithm algorithm)
+            throws PGPException, IOException {
+        CompressionFactory.setFactoryImplementation(factory);
+        DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                .onInputStream(new ByteArrayInputStream(message))
+                .withOptions(ConsumerOptions.get());
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertEquals(algorithm, decryptionStream.getMetadata().getCompressionAlgorithm());
+        return plaintext.toByteArray();
+    }
+
+    private static final class CloseTrackingOutputStream extends ByteArrayOutputStream {
+
+        private int closed = 0;
+
+        @Override
+        public void close() throws IOException {
+            closed++;
+            super.close();
+        }
+    }
+}
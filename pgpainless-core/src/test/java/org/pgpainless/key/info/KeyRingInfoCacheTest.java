@@ -0,0 +1,130 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.key.info;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.encryption_signing.EncryptionOptions;
+import org.pgpainless.policy.Policy;
+
+public class KeyRingInfoCacheTest {
+
+    private PGPPublicKeyRing cert;
+    private final Date now = new Date(1_700_000_000_000L);
+
+    @BeforeEach
+    public void setup() throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        cert = PGPainless.extractCertificate(secretKeys);
+    }
+
+    @AfterEach
+    public void disableCache() {
+        KeyRingInfoCache.setInstance(null);
+    }
+
+    @Test
+    public void withoutCacheEveryLookupEvaluates() {
+        Policy policy = PGPainless.getPolicy();
+        assertNotSame(KeyRingInfoCache.inspect(cert, policy, now), KeyRingInfoCache.inspect(cert, policy, now));
+    }
+
+    @Test
+    public void lookupsWithinSameBucketHit() {
+        KeyRingInfoCache cache = new KeyRingInfoCache(16, 60 * 1000);
+        Policy policy = PGPainless.getPolicy();
+
+        KeyRingInfo first = cache.get(cert, policy, now);
+        assertEquals(now, first.getReferenceDate());
+        assertSame(first, cache.get(cert, policy, new Date(now.getTime() + 1000)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // next bucket
+        KeyRingInfo later = cache.get(cert, policy, new Date(now.getTime() + 60 * 1000));
+        assertNotSame(first, later);
+        assertEquals(2, cache.getMissCount());
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void entriesAreKeyedByContent()
+            throws IOException, PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        KeyRingInfoCache cache = new KeyRingInfoCache();
+        Policy policy = PGPainless.getPolicy();
+        KeyRingInfo info = cache.get(cert, policy, now);
+
+        PGPPublicKeyRing copy = PGPainless.readKeyRing().publicKeyRing(cert.getEncoded());
+        assertSame(info, cache.get(copy, policy, now));
+
+        PGPPublicKeyRing other = PGPainless.extractCertificate(PGPainless.generateKeyRing().simpleEcKeyRing("Bob"));
+        assertNotSame(info, cache.get(other, policy, now));
+    }
+
+    @Test
+    public void policyChangeInvalidatesEntries() {
+        KeyRingInfoCache cache = new KeyRingInfoCache();
+        Policy policy = PGPainless.getPolicy();
+        KeyRingInfo info = cache.get(cert, policy, now);
+
+        boolean validation = policy.isEnableKeyParameterValidation();
+        policy.setEnableKeyParameterValidation(!validation);
+        policy.setEnableKeyParameterValidation(validation);
+        assertNotSame(info, cache.get(cert, policy, now));
+    }
+
+    @Test
+    public void cacheIsBounded() throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        KeyRingInfoCache cache = new KeyRingInfoCache(2, 1000, 1);
+        Policy policy = PGPainless.getPolicy();
+        KeyRingInfo info = cache.get(cert, policy, now);
+        cache.get(PGPainless.generateKeyRing().simpleEcKeyRing("Bob"), policy, now);
+        cache.get(PGPainless.generateKeyRing().simpleEcKeyRing("Charlie"), policy, now);
+        assertEquals(2, cache.size());
+
+        // least recently used entry was evicted
+        assertNotSame(info, cache.get(cert, policy, now));
+
+        cache.evictAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void globalCacheIsUsedByEncryptionOptions() {
+        // single time bucket, so that the test does not depend on the current time
+        KeyRingInfoCache cache = new KeyRingInfoCache(16, Long.MAX_VALUE);
+        KeyRingInfoCache.setInstance(cache);
+
+        EncryptionOptions.get().addRecipient(cert);
+        EncryptionOptions.get().addRecipient(cert);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void invalidParametersAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new KeyRingInfoCache(0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new KeyRingInfoCache(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new KeyRingInfoCache(10, 1000, 0));
+    }
+}
@@ -0,0 +1,146 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.key.info;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.EncryptionPurpose;
+import org.pgpainless.algorithm.KeyFlag;
+import org.pgpainless.key.TestKeys;
+import org.pgpainless.key.generation.KeySpec;
+import org.pgpainless.key.generation.type.KeyType;
+import org.pgpainless.key.generation.type.eddsa.EdDSACurve;
+import org.pgpainless.key.generation.type.xdh.XDHSpec;
+import org.pgpainless.policy.Policy;
+import org.pgpainless.signature.consumer.VerifiedSignatureCache;
+
+public class LazyKeyRingInfoTest {
+
+    @AfterEach
+    public void disableCache() {
+        VerifiedSignatureCache.setInstance(null);
+    }
+
+    @Test
+    public void lazyEvaluationYieldsSameResults() throws IOException, PGPException {
+        Policy policy = PGPainless.getPolicy();
+        Date now = new Date();
+        for (PGPKeyRing keys : new PGPKeyRing[] {TestKeys.getEmilSecretKeyRing(), TestKeys.getCryptiePublicKeyRing()}) {
+            KeyRingInfo eager = new KeyRingInfo(keys, policy, now);
+            KeyRingInfo lazy = new KeyRingInfo(keys, policy, now, true);
+
+            assertEquals(eager.getPrimaryUserId(), lazy.getPrimaryUserId());
+            assertEquals(eager.getValidUserIds(), lazy.getValidUserIds());
+            assertEquals(eager.getRevocationState(), lazy.getRevocationState());
+            assertEquals(eager.getPrimaryKeyExpirationDate(), lazy.getPrimaryKeyExpirationDate());
+            assertEquals(eager.getLastModified(), lazy.getLastModified());
+            assertEquals(keyIds(eager.getValidSubkeys()), keyIds(lazy.getValidSubkeys()));
+            assertEquals(keyIds(eager.getEncryptionSubkeys(EncryptionPurpose.ANY)),
+                    keyIds(lazy.getEncryptionSubkeys(EncryptionPurpose.ANY)));
+            assertEquals(keyIds(eager.getSigningSubkeys()), keyIds(lazy.getSigningSubkeys()));
+        }
+    }
+
+    @Test
+    public void onlyAccessedSubkeyIsEvaluated()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.buildKeyRing()
+                .setPrimaryKey(KeySpec.getBuilder(KeyType.EDDSA(EdDSACurve._Ed25519), KeyFlag.CERTIFY_OTHER))
+                .addSubkey(KeySpec.getBuilder(KeyType.XDH(XDHSpec._X25519), KeyFlag.ENCRYPT_COMMS))
+                .addSubkey(KeySpec.getBuilder(KeyType.XDH(XDHSpec._X25519), KeyFlag.ENCRYPT_COMMS))
+                .addSubkey(KeySpec.getBuilder(KeyType.XDH(XDHSpec._X25519), KeyFlag.ENCRYPT_COMMS))
+                .addUserId("Alice")
+                .addUserId("Alice <alice@pgpainless.org>")
+                .build();
+        PGPPublicKeyRing cert = PGPainless.extractCertificate(secretKeys);
+        List<PGPPublicKey> keys = PGPainless.inspectKeyRing(cert).getPublicKeys();
+        long subkeyId = keys.get(2).getKeyID();
+
+        // use the cache to count signature verifications
+        VerifiedSignatureCache cache = new VerifiedSignatureCache();
+        VerifiedSignatureCache.setInstance(cache);
+
+        KeyRingInfo lazy = new KeyRingInfo(cert, PGPainless.getPolicy(), new Date(), true);
+        assertEquals(0, cache.size());
+        assertTrue(lazy.isKeyValidlyBound(subkeyId));
+        assertEquals(1, cache.size());
+
+        // subsequent access is memoized
+        lazy.getCurrentSubkeyBindingSignature(subkeyId);
+        assertEquals(1, cache.size());
+
+        // eager evaluation verifies the bindings of all subkeys and user-ids
+        new KeyRingInfo(cert, PGPainless.getPolicy(), new Date());
+        assertEquals(keys.size() - 1 + 2, cache.size());
+    }
+
+    @Test
+    public void concurrentAccessYieldsSameResults() throws Exception {
+        final PGPKeyRing keys = TestKeys.getEmilSecretKeyRing();
+        final Policy policy = PGPainless.getPolicy();
+        final Date now = new Date();
+        final String expected = summary(new KeyRingInfo(keys, policy, now));
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 20; round++) {
+                final KeyRingInfo lazy = new KeyRingInfo(keys, policy, now, true);
+                final CountDownLatch start = new CountDownLatch(1);
+                List<Future<String>> results = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    results.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws InterruptedException {
+                            start.await();
+                            return summary(lazy);
+                        }
+                    }));
+                }
+                start.countDown();
+                for (Future<String> result : results) {
+                    assertEquals(expected, result.get());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String summary(KeyRingInfo info) {
+        return info.getPrimaryUserId() + ' ' + info.getValidUserIds() + ' ' + info.getRevocationState() + ' ' +
+                keyIds(info.getValidSubkeys()) + keyIds(info.getEncryptionSubkeys(EncryptionPurpose.ANY)) +
+                keyIds(info.getSigningSubkeys());
+    }
+
+    private static String keyIds(List<PGPPublicKey> keys) {
+        StringBuilder sb = new StringBuilder();
+        for (PGPPublicKey key : keys) {
+            sb.append(Long.toHexString(key.getKeyID())).append(' ');
+        }
+        return sb.toString();
+    }
+}
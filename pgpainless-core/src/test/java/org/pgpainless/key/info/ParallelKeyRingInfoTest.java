@@ -0,0 +1,91 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.key.info;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.EncryptionPurpose;
+import org.pgpainless.key.TestKeys;
+import org.pgpainless.policy.Policy;
+
+public class ParallelKeyRingInfoTest {
+
+    @Test
+    public void parallelEvaluationYieldsSameResults() throws IOException, PGPException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (PGPKeyRing keys : new PGPKeyRing[] {TestKeys.getEmilSecretKeyRing(), TestKeys.getCryptiePublicKeyRing()}) {
+                assertSameResults(keys, executor);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void callingThreadEvaluatesRejectedComponents() throws IOException, PGPException {
+        final AtomicInteger submitted = new AtomicInteger();
+        Executor rejecting = command -> {
+            submitted.incrementAndGet();
+            throw new RejectedExecutionException();
+        };
+        assertSameResults(TestKeys.getEmilSecretKeyRing(), rejecting);
+        assertEquals(1, submitted.get());
+    }
+
+    @Test
+    public void componentsAreSubmittedToExecutor() throws IOException, PGPException {
+        final AtomicInteger submitted = new AtomicInteger();
+        Executor direct = command -> {
+            submitted.incrementAndGet();
+            command.run();
+        };
+        PGPKeyRing keys = TestKeys.getEmilSecretKeyRing();
+        KeyRingInfo info = new KeyRingInfo(keys, PGPainless.getPolicy(), new Date(), direct);
+        // one task per user-id and subkey
+        assertEquals(info.getUserIds().size() + info.getPublicKeys().size() - 1, submitted.get());
+        assertTrue(info.isUserIdValid(info.getPrimaryUserId()));
+    }
+
+    private static void assertSameResults(PGPKeyRing keys, Executor executor) {
+        Policy policy = PGPainless.getPolicy();
+        Date now = new Date();
+        KeyRingInfo sequential = new KeyRingInfo(keys, policy, now);
+        KeyRingInfo parallel = new KeyRingInfo(keys, policy, now, executor);
+
+        assertEquals(sequential.getPrimaryUserId(), parallel.getPrimaryUserId());
+        assertEquals(sequential.getValidUserIds(), parallel.getValidUserIds());
+        assertEquals(sequential.getRevocationState(), parallel.getRevocationState());
+        assertEquals(sequential.getPrimaryKeyExpirationDate(), parallel.getPrimaryKeyExpirationDate());
+        assertEquals(sequential.getLastModified(), parallel.getLastModified());
+        assertEquals(keyIds(sequential.getValidSubkeys()), keyIds(parallel.getValidSubkeys()));
+        assertEquals(keyIds(sequential.getEncryptionSubkeys(EncryptionPurpose.ANY)),
+                keyIds(parallel.getEncryptionSubkeys(EncryptionPurpose.ANY)));
+        assertEquals(keyIds(sequential.getSigningSubkeys()), keyIds(parallel.getSigningSubkeys()));
+    }
+
+    private static String keyIds(List<PGPPublicKey> keys) {
+        StringBuilder sb = new StringBuilder();
+        for (PGPPublicKey key : keys) {
+            sb.append(Long.toHexString(key.getKeyID())).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,157 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.key.protection;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.DocumentSignatureType;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.encryption_signing.EncryptionOptions;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+import org.pgpainless.encryption_signing.SigningOptions;
+import org.pgpainless.exception.WrongPassphraseException;
+import org.pgpainless.key.TestKeys;
+import org.pgpainless.util.Passphrase;
+
+public class UnlockedKeyCacheTest {
+
+    @Test
+    public void cachedKeyEqualsUnlockedKey()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing()
+                .modernKeyRing("Alice <alice@pgpainless.org>", "sw0rdf1sh");
+        SecretKeyRingProtector protector = SecretKeyRingProtector.unlockAnyKeyWith(Passphrase.fromPassword("sw0rdf1sh"));
+        UnlockedKeyCache cache = new UnlockedKeyCache();
+
+        for (PGPSecretKey secretKey : secretKeys) {
+            PGPPrivateKey unlocked = UnlockSecretKey.unlockSecretKey(secretKey, protector);
+            PGPPrivateKey first = cache.unlock(secretKey, protector);
+            PGPPrivateKey cached = cache.unlock(secretKey, protector);
+
+            assertEquals(unlocked.getKeyID(), cached.getKeyID());
+            assertArrayEquals(unlocked.getPrivateKeyDataPacket().getEncoded(), first.getPrivateKeyDataPacket().getEncoded());
+            assertArrayEquals(unlocked.getPrivateKeyDataPacket().getEncoded(), cached.getPrivateKeyDataPacket().getEncoded());
+        }
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void wrongProtectorDoesNotHitCache()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing()
+                .simpleEcKeyRing("Alice <alice@pgpainless.org>", "sw0rdf1sh");
+        PGPSecretKey secretKey = secretKeys.getSecretKey();
+        SecretKeyRingProtector correct = SecretKeyRingProtector.unlockAnyKeyWith(Passphrase.fromPassword("sw0rdf1sh"));
+        SecretKeyRingProtector incorrect = SecretKeyRingProtector.unlockAnyKeyWith(Passphrase.fromPassword("letmein"));
+        UnlockedKeyCache cache = new UnlockedKeyCache();
+
+        cache.unlock(secretKey, correct);
+        assertThrows(WrongPassphraseException.class, () -> cache.unlock(secretKey, incorrect));
+    }
+
+    @Test
+    public void evictionRemovesEntries()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice <alice@pgpainless.org>");
+        SecretKeyRingProtector protector = SecretKeyRingProtector.unprotectedKeys();
+        UnlockedKeyCache cache = new UnlockedKeyCache();
+
+        for (PGPSecretKey secretKey : secretKeys) {
+            cache.unlock(secretKey, protector);
+        }
+        assertEquals(3, cache.size());
+
+        cache.evict(secretKeys.getSecretKey());
+        assertEquals(2, cache.size());
+
+        cache.evictAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cacheIsBoundedInSize()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice <alice@pgpainless.org>");
+        SecretKeyRingProtector protector = SecretKeyRingProtector.unprotectedKeys();
+        UnlockedKeyCache cache = new UnlockedKeyCache(1, 60000, 60000);
+
+        for (PGPSecretKey secretKey : secretKeys) {
+            cache.unlock(secretKey, protector);
+        }
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void expiredEntriesAreEvicted()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, InterruptedException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice <alice@pgpainless.org>");
+        SecretKeyRingProtector protector = SecretKeyRingProtector.unprotectedKeys();
+        UnlockedKeyCache cache = new UnlockedKeyCache(10, 60000, 1);
+
+        cache.unlock(secretKeys.getSecretKey(), protector);
+        assertEquals(1, cache.size());
+
+        Thread.sleep(10);
+        cache.evictExpired();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void decryptWithCachedKey() throws PGPException, IOException {
+        PGPSecretKeyRing secretKeys = TestKeys.getCryptieSecretKeyRing();
+        SecretKeyRingProtector protector = SecretKeyRingProtector.unlockAnyKeyWith(TestKeys.CRYPTIE_PASSPHRASE);
+        UnlockedKeyCache cache = new UnlockedKeyCache();
+        byte[] message = "Hello, World!\n".getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+        EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                .onOutputStream(ciphertext)
+                .withOptions(ProducerOptions.encrypt(EncryptionOptions.get()
+                        .addRecipient(PGPainless.extractCertificate(secretKeys))));
+        encryptionStream.write(message);
+        encryptionStream.close();
+
+        for (int i = 0; i < 2; i++) {
+            DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                    .onInputStream(new ByteArrayInputStream(ciphertext.toByteArray()))
+                    .withOptions(ConsumerOptions.get()
+                            .setUnlockedKeyCache(cache)
+                            .addDecryptionKey(secretKeys, protector));
+            ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+            Streams.pipeAll(decryptionStream, plaintext);
+            decryptionStream.close();
+
+            assertArrayEquals(message, plaintext.toByteArray());
+            assertEquals(1, cache.size());
+        }
+    }
+
+    @Test
+    public void signingCacheCannotBeSetAfterKeysWereAdded() throws PGPException, IOException {
+        PGPSecretKeyRing secretKeys = TestKeys.getCryptieSecretKeyRing();
+        SigningOptions signingOptions = SigningOptions.get()
+                .addInlineSignature(SecretKeyRingProtector.unlockAnyKeyWith(TestKeys.CRYPTIE_PASSPHRASE),
+                        secretKeys, DocumentSignatureType.BINARY_DOCUMENT);
+        assertThrows(IllegalStateException.class, () -> signingOptions.setUnlockedKeyCache(new UnlockedKeyCache()));
+    }
+}
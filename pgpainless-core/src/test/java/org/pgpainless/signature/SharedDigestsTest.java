@@ -0,0 +1,140 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.signature;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.pgpainless.algorithm.HashAlgorithm;
+
+public class SharedDigestsTest {
+
+    private static final byte[] DATA = "Hello, World!\nLorem\r\nIpsum\r".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CANONICAL_DATA = "Hello, World!\r\nLorem\r\nIpsum\r\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void membersWithSameAlgorithmAndTypeShareDigest() throws NoSuchAlgorithmException {
+        SharedDigests<String> sharedDigests = new SharedDigests<>();
+        assertTrue(sharedDigests.add("a", HashAlgorithm.SHA256, false));
+        assertTrue(sharedDigests.add("b", HashAlgorithm.SHA256, false));
+        assertTrue(sharedDigests.add("c", HashAlgorithm.SHA256, true));
+        assertTrue(sharedDigests.add("d", HashAlgorithm.SHA512, false));
+        assertEquals(3, sharedDigests.getNumberOfDigests());
+
+        sharedDigests.updater(Arrays.asList("a", "b", "c", "d")).update(DATA, 0, DATA.length);
+
+        assertEquals(3, sharedDigests.getNumberOfDigests());
+        assertArrayEquals(sha256(DATA), sharedDigests.getDigest("a").digest());
+        assertArrayEquals(sha256(DATA), sharedDigests.getDigest("b").digest());
+        assertArrayEquals(sha256(CANONICAL_DATA), sharedDigests.getDigest("c").digest());
+        assertArrayEquals(MessageDigest.getInstance("SHA-512").digest(DATA), sharedDigests.getDigest("d").digest());
+    }
+
+    @Test
+    public void getDigestReturnsCopy() throws NoSuchAlgorithmException {
+        SharedDigests<String> sharedDigests = new SharedDigests<>();
+        sharedDigests.add("a", HashAlgorithm.SHA256, false);
+        sharedDigests.updater(Collections.singletonList("a")).update(DATA, 0, DATA.length);
+
+        MessageDigest copy = sharedDigests.getDigest("a");
+        copy.update((byte) 42);
+
+        assertArrayEquals(sha256(DATA), sharedDigests.getDigest("a").digest());
+    }
+
+    @Test
+    public void updatingSubsetOfMembersSplitsDigest() throws NoSuchAlgorithmException {
+        SharedDigests<String> sharedDigests = new SharedDigests<>();
+        sharedDigests.add("a", HashAlgorithm.SHA256, false);
+        sharedDigests.add("b", HashAlgorithm.SHA256, false);
+        SharedDigests<String>.Updater both = sharedDigests.updater(Arrays.asList("a", "b"));
+        SharedDigests<String>.Updater onlyA = sharedDigests.updater(Collections.singletonList("a"));
+
+        both.update(DATA, 0, 5);
+        assertEquals(1, sharedDigests.getNumberOfDigests());
+        onlyA.update(DATA, 5, DATA.length - 5);
+        assertEquals(2, sharedDigests.getNumberOfDigests());
+        both.update((byte) '!');
+
+        byte[] expectedA = Arrays.copyOf(DATA, DATA.length + 1);
+        expectedA[DATA.length] = '!';
+        byte[] expectedB = new byte[] {DATA[0], DATA[1], DATA[2], DATA[3], DATA[4], '!'};
+        assertArrayEquals(sha256(expectedA), sharedDigests.getDigest("a").digest());
+        assertArrayEquals(sha256(expectedB), sharedDigests.getDigest("b").digest());
+    }
+
+    @Test
+    public void membersAddedAfterUpdateDoNotShareDigest() throws NoSuchAlgorithmException {
+        SharedDigests<String> sharedDigests = new SharedDigests<>();
+        sharedDigests.add("a", HashAlgorithm.SHA256, false);
+        sharedDigests.updater(Collections.singletonList("a")).update(DATA, 0, DATA.length);
+        sharedDigests.add("b", HashAlgorithm.SHA256, false);
+
+        assertEquals(2, sharedDigests.getNumberOfDigests());
+        assertArrayEquals(sha256(new byte[0]), sharedDigests.getDigest("b").digest());
+    }
+
+    @Test
+    public void removedMembersAreNoLongerUpdated() throws NoSuchAlgorithmException {
+        SharedDigests<String> sharedDigests = new SharedDigests<>();
+        sharedDigests.add("a", HashAlgorithm.SHA256, false);
+        sharedDigests.add("b", HashAlgorithm.SHA256, false);
+        SharedDigests<String>.Updater updater = sharedDigests.updater(Arrays.asList("a", "b"));
+        updater.update(DATA, 0, DATA.length);
+
+        byte[] digestOfA = sharedDigests.getDigest("a").digest();
+        sharedDigests.remove("a");
+        updater.update(DATA, 0, DATA.length);
+
+        assertTrue(sharedDigests.contains("a"));
+        assertFalse(sharedDigests.contains("c"));
+        assertEquals(1, sharedDigests.getNumberOfDigests());
+        assertArrayEquals(sha256(DATA), digestOfA);
+        assertThrows(IllegalArgumentException.class, () -> sharedDigests.getDigest("a"));
+    }
+
+    @Test
+    public void textCanonicalizationIsIndependentOfChunking() {
+        byte[] data = "a\rb\nc\r\nd\n\re\r\r\n".getBytes(StandardCharsets.UTF_8);
+        SharedDigests<Integer> sharedDigests = new SharedDigests<>();
+        for (int chunkSize = 0; chunkSize <= data.length; chunkSize++) {
+            sharedDigests.add(chunkSize, HashAlgorithm.SHA256, true);
+            SharedDigests<Integer>.Updater updater = sharedDigests.updater(Collections.singletonList(chunkSize));
+            if (chunkSize == 0) {
+                // byte-wise
+                for (byte b : data) {
+                    updater.update(b);
+                }
+                continue;
+            }
+            for (int off = 0; off < data.length; off += chunkSize) {
+                updater.update(data, off, Math.min(chunkSize, data.length - off));
+            }
+        }
+
+        byte[] expected = sha256("a\r\nb\r\nc\r\nd\r\n\r\ne\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        for (int chunkSize = 0; chunkSize <= data.length; chunkSize++) {
+            assertArrayEquals(expected, sharedDigests.getDigest(chunkSize).digest(), "chunk size " + chunkSize);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.signature;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.SignatureType;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+import org.pgpainless.key.util.KeyRingUtils;
+import org.pgpainless.policy.Policy;
+import org.pgpainless.signature.builder.DirectKeySelfSignatureBuilder;
+import org.pgpainless.signature.builder.SelfSignatureBuilder;
+import org.pgpainless.signature.consumer.SignaturePicker;
+import org.pgpainless.signature.subpackets.SelfSignatureSubpackets;
+
+public class SignaturePickerTest {
+
+    private static final long HOUR = 1000L * 60 * 60;
+    private static final Policy POLICY = PGPainless.getPolicy();
+
+    @Test
+    public void pickNewestValidUserIdCertification() throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        Date t0 = secretKeys.getPublicKey().getCreationTime();
+        PGPSignature[] certifications = new PGPSignature[10];
+        for (int i = 0; i < certifications.length; i++) {
+            certifications[i] = userIdCertification(secretKeys, "Alice", hours(t0, i + 1));
+            secretKeys = KeyRingUtils.injectCertification(secretKeys, "Alice", certifications[i]);
+        }
+
+        assertEquals(certifications[9], SignaturePicker.pickCurrentUserIdCertificationSignature(
+                secretKeys, "Alice", POLICY, hours(t0, 20)));
+        assertEquals(certifications[9], SignaturePicker.pickLatestUserIdCertificationSignature(
+                secretKeys, "Alice", POLICY, hours(t0, 20)));
+        // signatures created after the reference date are not yet effective
+        Date halfPastFive = new Date(hours(t0, 5).getTime() + HOUR / 2);
+        assertEquals(certifications[4], SignaturePicker.pickCurrentUserIdCertificationSignature(
+                secretKeys, "Alice", POLICY, halfPastFive));
+        assertEquals(certifications[4], SignaturePicker.pickLatestUserIdCertificationSignature(
+                secretKeys, "Alice", POLICY, halfPastFive));
+    }
+
+    @Test
+    public void expiredDirectKeySignaturesAreSkipped() throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        Date t0 = secretKeys.getPublicKey().getCreationTime();
+
+        PGPSignature nonExpiring = directKeySignature(secretKeys, hours(t0, 1), null);
+        PGPSignature expired1 = directKeySignature(secretKeys, hours(t0, 2), hours(t0, 3));
+        PGPSignature expired2 = directKeySignature(secretKeys, hours(t0, 3), hours(t0, 4));
+        secretKeys = KeyRingUtils.injectCertification(secretKeys, nonExpiring);
+        secretKeys = KeyRingUtils.injectCertification(secretKeys, expired1);
+        secretKeys = KeyRingUtils.injectCertification(secretKeys, expired2);
+
+        Date referenceDate = hours(t0, 10);
+        assertEquals(nonExpiring, SignaturePicker.pickCurrentDirectKeySelfSignature(secretKeys, POLICY, referenceDate));
+        // the latest non-expired signature is preferred over newer, expired signatures
+        assertEquals(nonExpiring, SignaturePicker.pickLatestDirectKeySignature(secretKeys, POLICY, referenceDate));
+        // before expiration, the newest signature is picked
+        assertEquals(expired2, SignaturePicker.pickLatestDirectKeySignature(secretKeys, POLICY,
+                new Date(hours(t0, 3).getTime() + HOUR / 2)));
+    }
+
+    @Test
+    public void latestDirectKeySignatureFallsBackToNewestExpiredSignature()
+            throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().simpleEcKeyRing("Alice");
+        Date t0 = secretKeys.getPublicKey().getCreationTime();
+
+        PGPSignature expired1 = directKeySignature(secretKeys, hours(t0, 1), hours(t0, 2));
+        PGPSignature expired2 = directKeySignature(secretKeys, hours(t0, 2), hours(t0, 3));
+        secretKeys = KeyRingUtils.injectCertification(secretKeys, expired2);
+        secretKeys = KeyRingUtils.injectCertification(secretKeys, expired1);
+
+        Date referenceDate = hours(t0, 10);
+        assertNull(SignaturePicker.pickCurrentDirectKeySelfSignature(secretKeys, POLICY, referenceDate));
+        assertEquals(expired2, SignaturePicker.pickLatestDirectKeySignature(secretKeys, POLICY, referenceDate));
+    }
+
+    private static Date hours(Date base, int hours) {
+        return new Date(base.getTime() + hours * HOUR);
+    }
+
+    private static PGPSignature userIdCertification(PGPSecretKeyRing secretKeys, String userId, Date creationTime)
+            throws PGPException {
+        SelfSignatureBuilder builder = new SelfSignatureBuilder(SignatureType.POSITIVE_CERTIFICATION,
+                secretKeys.getSecretKey(), SecretKeyRingProtector.unprotectedKeys());
+        builder.applyCallback(subpacketCallback(creationTime, null));
+        return builder.build(secretKeys.getPublicKey(), userId);
+    }
+
+    private static PGPSignature directKeySignature(PGPSecretKeyRing secretKeys,
+                                                   Date creationTime, Date expirationTime)
+            throws PGPException {
+        DirectKeySelfSignatureBuilder builder = new DirectKeySelfSignatureBuilder(
+                secretKeys.getSecretKey(), SecretKeyRingProtector.unprotectedKeys());
+        builder.applyCallback(subpacketCallback(creationTime, expirationTime));
+        return builder.build(secretKeys.getPublicKey());
+    }
+
+    private static SelfSignatureSubpackets.Callback subpacketCallback(final Date creationTime, final Date expirationTime) {
+        return new SelfSignatureSubpackets.Callback() {
+            @Override
+            public void modifyHashedSubpackets(SelfSignatureSubpackets hashedSubpackets) {
+                hashedSubpackets.setSignatureCreationTime(creationTime);
+                if (expirationTime != null) {
+                    hashedSubpackets.setSignatureExpirationTime(creationTime, expirationTime);
+                }
+            }
+        };
+    }
+}
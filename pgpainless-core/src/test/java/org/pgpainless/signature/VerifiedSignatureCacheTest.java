@@ -0,0 +1,102 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.signature;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.pgpainless.PGPainless;
+import org.pgpainless.algorithm.EncryptionPurpose;
+import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.util.KeyRingUtils;
+import org.pgpainless.signature.consumer.VerifiedSignatureCache;
+
+public class VerifiedSignatureCacheTest {
+
+    private static PGPPublicKeyRing cert;
+
+    @BeforeEach
+    public void setup() throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        PGPSecretKeyRing secretKeys = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        cert = PGPainless.extractCertificate(secretKeys);
+    }
+
+    @AfterEach
+    public void disableCache() {
+        VerifiedSignatureCache.setInstance(null);
+    }
+
+    @Test
+    public void cacheIsDisabledByDefault() {
+        PGPainless.inspectKeyRing(cert);
+        assertNull(VerifiedSignatureCache.getInstance());
+    }
+
+    @Test
+    public void warmCacheYieldsSameResult() {
+        KeyRingInfo uncached = PGPainless.inspectKeyRing(cert);
+
+        VerifiedSignatureCache cache = new VerifiedSignatureCache();
+        VerifiedSignatureCache.setInstance(cache);
+        KeyRingInfo cold = PGPainless.inspectKeyRing(cert);
+        int size = cache.size();
+        assertTrue(size > 0);
+
+        KeyRingInfo warm = PGPainless.inspectKeyRing(cert);
+        assertEquals(size, cache.size());
+
+        for (KeyRingInfo info : new KeyRingInfo[] {cold, warm}) {
+            assertEquals(uncached.getValidUserIds(), info.getValidUserIds());
+            assertEquals(uncached.getPrimaryUserId(), info.getPrimaryUserId());
+            assertEquals(uncached.getEncryptionSubkeys(EncryptionPurpose.ANY).size(),
+                    info.getEncryptionSubkeys(EncryptionPurpose.ANY).size());
+            assertEquals(uncached.getSigningSubkeys().size(), info.getSigningSubkeys().size());
+        }
+    }
+
+    @Test
+    public void dateChecksAreNotCached() {
+        VerifiedSignatureCache.setInstance(new VerifiedSignatureCache());
+        assertTrue(PGPainless.inspectKeyRing(cert).isUserIdValid("Alice"));
+
+        Date beforeCreation = new Date(cert.getPublicKey().getCreationTime().getTime() - 1000 * 60 * 60);
+        assertFalse(PGPainless.inspectKeyRing(cert, beforeCreation).isUserIdValid("Alice"));
+    }
+
+    @Test
+    public void cachedSignatureDoesNotApplyToOtherUserId() {
+        VerifiedSignatureCache.setInstance(new VerifiedSignatureCache());
+        KeyRingInfo info = PGPainless.inspectKeyRing(cert);
+        PGPSignature aliceCertification = info.getLatestUserIdCertification("Alice");
+        assertTrue(info.isUserIdValid("Alice"));
+
+        PGPPublicKeyRing forged = KeyRingUtils.injectCertification(cert, "Mallory", aliceCertification);
+        assertFalse(PGPainless.inspectKeyRing(forged).isUserIdValid("Mallory"));
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(2, 1);
+        VerifiedSignatureCache.setInstance(cache);
+        PGPainless.inspectKeyRing(cert);
+        assertEquals(2, cache.size());
+
+        cache.evictAll();
+        assertEquals(0, cache.size());
+    }
+}
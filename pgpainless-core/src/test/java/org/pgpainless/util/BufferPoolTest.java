@@ -0,0 +1,77 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    public void unpooledAllocatesFreshBuffers() {
+        BufferPool pool = BufferPool.unpooled();
+        byte[] first = pool.acquire(16);
+        pool.release(first);
+        assertNotSame(first, pool.acquire(16));
+    }
+
+    @Test
+    public void concurrentPoolReusesZeroedBuffers() {
+        BufferPool pool = BufferPool.concurrent(2);
+        byte[] buffer = pool.acquire(16);
+        assertEquals(16, buffer.length);
+        Arrays.fill(buffer, (byte) 42);
+        pool.release(buffer);
+
+        byte[] reused = pool.acquire(16);
+        assertSame(buffer, reused);
+        assertArrayEquals(new byte[16], reused);
+
+        // different size is not served from the pooled buffers
+        pool.release(reused);
+        assertEquals(32, pool.acquire(32).length);
+    }
+
+    @Test
+    public void concurrentPoolIsBounded() {
+        BufferPool pool = BufferPool.concurrent(1);
+        byte[] first = pool.acquire(16);
+        byte[] second = pool.acquire(16);
+        pool.release(first);
+        pool.release(second);
+
+        assertSame(first, pool.acquire(16));
+        assertNotSame(second, pool.acquire(16));
+    }
+
+    @Test
+    public void threadLocalPoolDoesNotShareBuffersAcrossThreads() throws InterruptedException {
+        final BufferPool pool = BufferPool.threadLocal(4);
+        final byte[] buffer = pool.acquire(16);
+        pool.release(buffer);
+
+        final AtomicReference<byte[]> otherThreadBuffer = new AtomicReference<>();
+        Thread thread = new Thread(() -> otherThreadBuffer.set(pool.acquire(16)));
+        thread.start();
+        thread.join();
+
+        assertNotSame(buffer, otherThreadBuffer.get());
+        assertSame(buffer, pool.acquire(16));
+    }
+
+    @Test
+    public void negativeMaximumIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BufferPool.concurrent(-1));
+        assertThrows(IllegalArgumentException.class, () -> BufferPool.threadLocal(-1));
+    }
+}
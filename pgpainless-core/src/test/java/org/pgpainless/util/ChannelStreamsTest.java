@@ -0,0 +1,159 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.io.Streams;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.pgpainless.PGPainless;
+import org.pgpainless.decryption_verification.ConsumerOptions;
+import org.pgpainless.decryption_verification.DecryptionStream;
+import org.pgpainless.encryption_signing.EncryptionOptions;
+import org.pgpainless.encryption_signing.EncryptionStream;
+import org.pgpainless.encryption_signing.ProducerOptions;
+import org.pgpainless.encryption_signing.SigningOptions;
+import org.pgpainless.key.protection.SecretKeyRingProtector;
+
+public class ChannelStreamsTest {
+
+    private static PGPSecretKeyRing key;
+    private static PGPPublicKeyRing cert;
+    private static byte[] data;
+
+    @TempDir
+    File tempDir;
+
+    @BeforeAll
+    public static void setup() throws PGPException, InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        key = PGPainless.generateKeyRing().modernKeyRing("Alice");
+        cert = PGPainless.extractCertificate(key);
+        data = new byte[300 * 1024 + 17];
+        new Random(7).nextBytes(data);
+    }
+
+    @Test
+    public void encryptToChannelAndDecryptFromChannelAndByteBuffer() throws PGPException, IOException {
+        File ciphertext = new File(tempDir, "message.pgp");
+        try (FileChannel channel = FileChannel.open(ciphertext.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            EncryptionStream encryptionStream = PGPainless.encryptAndOrSign()
+                    .onOutputChannel(channel)
+                    .withOptions(ProducerOptions.signAndEncrypt(
+                            EncryptionOptions.get().addRecipient(cert),
+                            SigningOptions.get().addSignature(SecretKeyRingProtector.unprotectedKeys(), key)));
+            for (int i = 0; i < data.length; i += 1000) {
+                encryptionStream.write(data, i, Math.min(1000, data.length - i));
+            }
+            encryptionStream.close();
+            assertTrue(channel.isOpen());
+        }
+
+        try (FileChannel channel = FileChannel.open(ciphertext.toPath(), StandardOpenOption.READ)) {
+            DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                    .onChannel(channel)
+                    .withOptions(options());
+            assertDecrypts(decryptionStream);
+        }
+
+        try (FileChannel channel = FileChannel.open(ciphertext.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DecryptionStream decryptionStream = PGPainless.decryptAndOrVerify()
+                    .onByteBuffer(mapped)
+                    .withOptions(options());
+            assertDecrypts(decryptionStream);
+            assertEquals(0, mapped.remaining());
+        }
+    }
+
+    @Test
+    public void transferToCopiesRemainingData() throws IOException {
+        File source = new File(tempDir, "source");
+        Files.write(source.toPath(), data);
+
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            ChannelInputStream in = new ChannelInputStream(channel, 4096);
+            byte[] head = new byte[100];
+            assertEquals(100, in.read(head));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long transferred = in.transferTo(Channels.newChannel(out));
+            assertEquals(data.length - 100, transferred);
+
+            byte[] copy = new byte[data.length];
+            System.arraycopy(head, 0, copy, 0, 100);
+            System.arraycopy(out.toByteArray(), 0, copy, 100, out.size());
+            assertArrayEquals(data, copy);
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void transferToFromNonFileChannel() throws IOException {
+        ChannelInputStream in = new ChannelInputStream(Channels.newChannel(new ByteArrayInputStream(data)), 1000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, in.transferTo(Channels.newChannel(out)));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void channelOutputStreamWritesOnFlush() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelOutputStream channelOut = new ChannelOutputStream(Channels.newChannel(out), 512);
+        channelOut.write(data, 0, 100);
+        assertEquals(0, out.size());
+        channelOut.flush();
+        assertEquals(100, out.size());
+        channelOut.write(data, 100, data.length - 100);
+        channelOut.close();
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void byteBufferInputStreamReadsRemainingBytes() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.position(10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Streams.pipeAll(new ByteBufferInputStream(buffer), out);
+        assertEquals(data.length - 10, out.size());
+        assertEquals(data[10], out.toByteArray()[0]);
+    }
+
+    private static ConsumerOptions options() {
+        return ConsumerOptions.get()
+                .addDecryptionKey(key)
+                .addVerificationCert(cert);
+    }
+
+    private static void assertDecrypts(DecryptionStream decryptionStream) throws IOException {
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        Streams.pipeAll(decryptionStream, plaintext);
+        decryptionStream.close();
+        assertArrayEquals(data, plaintext.toByteArray());
+        assertTrue(decryptionStream.getMetadata().isVerifiedSignedBy(cert));
+    }
+}
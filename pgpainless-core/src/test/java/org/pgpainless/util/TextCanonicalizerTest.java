@@ -0,0 +1,138 @@
+// SPDX-FileCopyrightText: 2023 Paul Schaub <vanitasvitae@fsfe.org>
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.pgpainless.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import javax.annotation.Nonnull;
+
+import org.junit.jupiter.api.Test;
+
+public class TextCanonicalizerTest {
+
+    @Test
+    public void lineEndingsAreConverted() throws IOException {
+        assertEquals("a\r\nb\r\nc\r\nd\r\n\r\ne", canonicalize("a\nb\rc\r\nd\n\ne", false, 100));
+        assertEquals("\r\n\r\n", canonicalize("\r\r", false, 100));
+        assertEquals("\r\n\r\n", canonicalize("\n\r\n", false, 100));
+    }
+
+    @Test
+    public void crlfSpanningUpdatesIsNotDuplicated() throws IOException {
+        assertEquals("a\r\nb", canonicalize("a\r\nb", false, 2));
+        assertEquals("a\r\nb", canonicalize("a\r\nb", false, 1));
+    }
+
+    @Test
+    public void trailingWhitespaceIsStripped() throws IOException {
+        assertEquals("a\r\nb c\r\n\r\nd", canonicalize("a \t\nb c\t \r\n  \nd  \t", true, 100));
+        assertEquals("a\r\nb c\r\n\r\nd", canonicalize("a \t\nb c\t \r\n  \nd  \t", true, 1));
+        assertEquals("a \t b", canonicalize("a \t b", true, 2));
+    }
+
+    @Test
+    public void whitespaceIsKeptWithoutStripping() throws IOException {
+        assertEquals("a \r\nb\t", canonicalize("a \nb\t", false, 100));
+    }
+
+    @Test
+    public void bulkAndBytewiseUpdatesMatchReference() throws IOException {
+        Random random = new Random(42);
+        byte[] alphabet = "ab \t\r\n".getBytes(StandardCharsets.UTF_8);
+        for (int run = 0; run < 200; run++) {
+            byte[] data = new byte[random.nextInt(200)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String text = new String(data, StandardCharsets.UTF_8);
+            for (boolean strip : new boolean[] {false, true}) {
+                String expected = reference(text, strip);
+                assertEquals(expected, canonicalize(text, strip, data.length + 1));
+                assertEquals(expected, canonicalize(text, strip, 1 + random.nextInt(7)));
+                assertEquals(expected, canonicalizeBytewise(text, strip));
+            }
+        }
+    }
+
+    @Test
+    public void copyContinuesWithSameState() throws IOException {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        TextCanonicalizer canonicalizer = new TextCanonicalizer(sink(first), true);
+        byte[] head = "a  \r".getBytes(StandardCharsets.UTF_8);
+        canonicalizer.update(head, 0, head.length);
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        second.write(first.toByteArray());
+        TextCanonicalizer copy = canonicalizer.copy(sink(second));
+        byte[] tail = "\nb".getBytes(StandardCharsets.UTF_8);
+        copy.update(tail, 0, tail.length);
+        copy.finish();
+
+        assertEquals("a\r\nb", second.toString("UTF-8"));
+        assertEquals("a\r\n", first.toString("UTF-8"));
+    }
+
+    @Test
+    public void lengthWithoutTrailingWhitespace() {
+        byte[] line = "xx foo \t\r\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals(4, TextCanonicalizer.lengthWithoutTrailingWhitespace(line, 2, line.length - 2));
+        assertEquals(0, TextCanonicalizer.lengthWithoutTrailingWhitespace(line, 6, 4));
+    }
+
+    private static String canonicalize(String text, boolean strip, int chunkSize) throws IOException {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TextCanonicalizer canonicalizer = new TextCanonicalizer(sink(out), strip);
+        for (int i = 0; i < data.length; i += chunkSize) {
+            canonicalizer.update(data, i, Math.min(chunkSize, data.length - i));
+        }
+        canonicalizer.finish();
+        return out.toString("UTF-8");
+    }
+
+    private static String canonicalizeBytewise(String text, boolean strip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TextCanonicalizer canonicalizer = new TextCanonicalizer(sink(out), strip);
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            canonicalizer.update(b);
+        }
+        canonicalizer.finish();
+        return out.toString("UTF-8");
+    }
+
+    // Straight forward implementation: split into lines, optionally strip them and join them with CRLF
+    private static String reference(String text, boolean strip) {
+        String[] lines = text.replace("\r\n", "\n").replace("\r", "\n").split("\n", -1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            if (i > 0) {
+                sb.append("\r\n");
+            }
+            String line = lines[i];
+            if (strip) {
+                int end = line.length();
+                while (end > 0 && (line.charAt(end - 1) == ' ' || line.charAt(end - 1) == '\t')) {
+                    end--;
+                }
+                line = line.substring(0, end);
+            }
+            sb.append(line);
+        }
+        return sb.toString();
+    }
+
+    private static TextCanonicalizer.Sink sink(final ByteArrayOutputStream out) {
+        return new TextCanonicalizer.Sink() {
+            @Override
+            public void write(@Nonnull byte[] b, int off, int len) {
+                out.write(b, off, len);
+            }
+        };
+    }
+}
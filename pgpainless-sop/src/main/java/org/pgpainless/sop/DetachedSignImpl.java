@@ -10,6 +10,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.bouncycastle.openpgp.PGPException;
@@ -27,6 +28,7 @@ import org.pgpainless.exception.KeyException;
 import org.pgpainless.key.OpenPgpFingerprint;
 import org.pgpainless.key.SubkeyIdentifier;
 import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.info.KeyRingInfoCache;
 import org.pgpainless.util.ArmoredOutputStreamFactory;
 import org.pgpainless.util.Passphrase;
 import sop.MicAlg;
@@ -63,7 +65,7 @@ public class DetachedSignImpl implements DetachedSign {
     public DetachedSign key(InputStream keyIn) throws SOPGPException.KeyCannotSign, SOPGPException.BadData, IOException {
         PGPSecretKeyRingCollection keys = KeyReader.readSecretKeys(keyIn, true);
         for (PGPSecretKeyRing key : keys) {
-            KeyRingInfo info = PGPainless.inspectKeyRing(key);
+            KeyRingInfo info = KeyRingInfoCache.inspect(key, new Date());
             if (!info.isUsableForSigning()) {
                 throw new SOPGPException.KeyCannotSign("Key " + info.getFingerprint() + " does not have valid, signing capable subkeys.");
             }
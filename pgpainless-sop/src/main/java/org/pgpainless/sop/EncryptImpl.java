@@ -9,6 +9,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -29,6 +30,7 @@ import org.pgpainless.exception.KeyException;
 import org.pgpainless.exception.WrongPassphraseException;
 import org.pgpainless.key.OpenPgpFingerprint;
 import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.info.KeyRingInfoCache;
 import org.pgpainless.util.Passphrase;
 import sop.Profile;
 import sop.Ready;
@@ -79,7 +81,7 @@ public class EncryptImpl implements Encrypt {
         }
         PGPSecretKeyRing signingKey = keys.iterator().next();
 
-        KeyRingInfo info = PGPainless.inspectKeyRing(signingKey);
+        KeyRingInfo info = KeyRingInfoCache.inspect(signingKey, new Date());
         if (info.getSigningSubkeys().isEmpty()) {
             throw new SOPGPException.KeyCannotSign("Key " + OpenPgpFingerprint.of(signingKey) + " cannot sign.");
         }
@@ -9,6 +9,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.bouncycastle.openpgp.PGPException;
@@ -23,6 +24,7 @@ import org.pgpainless.encryption_signing.SigningOptions;
 import org.pgpainless.exception.KeyException;
 import org.pgpainless.key.OpenPgpFingerprint;
 import org.pgpainless.key.info.KeyRingInfo;
+import org.pgpainless.key.info.KeyRingInfoCache;
 import org.pgpainless.util.Passphrase;
 import sop.Ready;
 import sop.enums.InlineSignAs;
@@ -56,7 +58,7 @@ public class InlineSignImpl implements InlineSign {
     public InlineSign key(InputStream keyIn) throws SOPGPException.KeyCannotSign, SOPGPException.BadData, IOException {
         PGPSecretKeyRingCollection keys = KeyReader.readSecretKeys(keyIn, true);
         for (PGPSecretKeyRing key : keys) {
-            KeyRingInfo info = PGPainless.inspectKeyRing(key);
+            KeyRingInfo info = KeyRingInfoCache.inspect(key, new Date());
             if (!info.isUsableForSigning()) {
                 throw new SOPGPException.KeyCannotSign("Key " + info.getFingerprint() + " does not have valid, signing capable subkeys.");
             }